@@ -12,6 +12,7 @@
 package org.ontoware.rdf2go.model;
 
 import java.io.IOException;
+import java.util.List;
 
 import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
@@ -103,6 +104,26 @@ public boolean contains(ResourceOrVariable subject, UriOrVariable predicate, Str
 	 */
 	public boolean contains(Statement s) throws ModelRuntimeException;
 	
+	// ////////////////////////////
+	// joining
+	
+	/**
+	 * Evaluate a basic graph pattern without SPARQL. Triple patterns sharing a
+	 * named {@link Variable} (see {@link Variable#Variable(String)}) are joined
+	 * on it, {@link Variable#ANY} matches anything without binding.
+	 * 
+	 * Iterator must be auto-close, i.e. when last element is fetched, the
+	 * implementation must call close().
+	 * 
+	 * @param patterns to be matched together
+	 * @return one row per solution, binding the named variables by their name
+	 * @throws ModelRuntimeException most often caused by underlying
+	 *             {@link IOException}, if any
+	 * @since 5.1
+	 */
+	public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException;
+	
 	/**
 	 * @param subject defined or a {@link Variable}, e.g. {@link Variable#ANY}
 	 * @param predicate defined or a {@link Variable}, e.g. {@link Variable#ANY}
@@ -0,0 +1,65 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model;
+
+/**
+ * Isolation levels for a {@link Transaction}, ordered from weakest to
+ * strongest. They are modeled after the RDF4J IsolationLevels. Adapters map
+ * them to the closest level their store supports; a store may always run a
+ * transaction at a stronger level than requested.
+ * 
+ * @author agent
+ * @since 5.1
+ */
+public enum IsolationLevel {
+	
+	/**
+	 * No isolation. Operations may be applied directly and there is no
+	 * guarantee that a rollback restores the previous state. Cheapest level,
+	 * meant for bulk loads.
+	 */
+	NONE,
+	
+	/**
+	 * Changes of other transactions may be seen before they are committed.
+	 */
+	READ_UNCOMMITTED,
+	
+	/**
+	 * Only committed changes of other transactions are seen.
+	 */
+	READ_COMMITTED,
+	
+	/**
+	 * Each query sees a consistent snapshot, but consecutive queries of the
+	 * same transaction may see different snapshots.
+	 */
+	SNAPSHOT_READ,
+	
+	/**
+	 * All reads of the transaction see the same snapshot, taken at its start.
+	 */
+	SNAPSHOT,
+	
+	/**
+	 * The transaction behaves as if it were the only one running.
+	 */
+	SERIALIZABLE;
+	
+	/**
+	 * @param other
+	 * @return true if this level gives at least the guarantees of the other
+	 *         level
+	 */
+	public boolean isCompatibleWith(IsolationLevel other) {
+		return this.compareTo(other) >= 0;
+	}
+	
+}
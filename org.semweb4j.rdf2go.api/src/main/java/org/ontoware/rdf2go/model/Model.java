@@ -27,7 +27,8 @@
  */
 @SuppressWarnings("deprecation")
 public interface Model extends ModelValueFactory, ModelAddRemove, ModelRemovePatterns,
-        QueryableModel, ModelIO, Commitable, ReificationSupport, NamespaceSupport {
+        QueryableModel, ModelIO, Commitable, ReificationSupport, NamespaceSupport,
+        TransactionSupport {
 	
 	/**
 	 * @return the context URI or null
@@ -136,4 +137,29 @@ public interface Model extends ModelValueFactory, ModelAddRemove, ModelRemovePat
 	 */
 	boolean isIsomorphicWith(Model other);
 	
+	/**
+	 * Create a read-only, point-in-time view of this model. The snapshot
+	 * reflects the state of the model at the time this method was called and
+	 * does not see any later changes. Long-running readers can work on the
+	 * snapshot without holding a lock on this model and without blocking
+	 * concurrent writers.
+	 * 
+	 * The cost of creating a snapshot depends on the implementation: stores
+	 * with native snapshot isolation only start a transaction, others copy
+	 * all statements, which takes time and memory linear in the size of the
+	 * model. See the documentation of the implementation.
+	 * 
+	 * All write operations on the returned model throw a
+	 * {@link ModelRuntimeException}. The snapshot might hold resources of the
+	 * underlying store (a transaction, a connection or a copy of the data),
+	 * so callers should {@link #close()} it when done.
+	 * 
+	 * @return an open, read-only snapshot of this model
+	 * @throws ModelRuntimeException if the snapshot could not be created
+	 * @throws UnsupportedOperationException if the implementation does not
+	 *             support snapshots
+	 * @since 5.1
+	 */
+	Model snapshot() throws ModelRuntimeException;
+	
 }
@@ -40,7 +40,7 @@
  */
 @SuppressWarnings("deprecation")
 public interface ModelSet extends Sparqlable, ModelSetIO, FindableModelSet, ModelSetAddRemove,
-        ModelValueFactory, Commitable, ReificationSupport, NamespaceSupport {
+        ModelValueFactory, Commitable, ReificationSupport, NamespaceSupport, TransactionSupport {
 	
 	/**
 	 * Open connection to the underlying implementation
@@ -231,4 +231,28 @@ public interface ModelSet extends Sparqlable, ModelSetIO, FindableModelSet, Mode
 	 */
 	void dump();
 	
+	/**
+	 * Create a read-only, point-in-time view of this ModelSet. The snapshot
+	 * reflects the state of all models at the time this method was called and
+	 * does not see any later changes. Models obtained from the snapshot via
+	 * {@link #getModel(URI)}, {@link #getDefaultModel()} or
+	 * {@link #getModels()} are part of the same snapshot.
+	 * 
+	 * The cost of creating a snapshot depends on the implementation: stores
+	 * with native snapshot isolation only start a transaction, others copy
+	 * all statements, which takes time and memory linear in the size of the
+	 * ModelSet. See the documentation of the implementation.
+	 * 
+	 * All write operations on the returned ModelSet throw a
+	 * {@link ModelRuntimeException}. Callers should {@link #close()} the
+	 * snapshot when done to release the resources it holds.
+	 * 
+	 * @return an open, read-only snapshot of this ModelSet
+	 * @throws ModelRuntimeException if the snapshot could not be created
+	 * @throws UnsupportedOperationException if the implementation does not
+	 *             support snapshots
+	 * @since 5.1
+	 */
+	ModelSet snapshot() throws ModelRuntimeException;
+	
 }
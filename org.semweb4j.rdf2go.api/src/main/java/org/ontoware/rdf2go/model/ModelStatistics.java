@@ -0,0 +1,94 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model;
+
+import java.util.Set;
+
+import org.ontoware.rdf2go.model.node.URI;
+
+
+/**
+ * Statistics about the statements of a model or model set, in the spirit of
+ * VoID dataset descriptions. Counts are exact, numbers of distinct nodes are
+ * estimates.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public interface ModelStatistics {
+
+	/**
+	 * @return the number of statements
+	 */
+	public long size();
+
+	/**
+	 * @return the contexts with statements, null stands for the default model
+	 */
+	public Set<URI> getContexts();
+
+	/**
+	 * @param contextURI null for the default model
+	 * @return the number of statements in the context
+	 */
+	public long getContextSize(URI contextURI);
+
+	/**
+	 * @return the predicates used in statements
+	 */
+	public Set<URI> getPredicates();
+
+	/**
+	 * @return the number of statements with the predicate
+	 */
+	public long getPredicateCount(URI predicate);
+
+	/**
+	 * @return estimated number of distinct subjects
+	 */
+	public long getDistinctSubjects();
+
+	/**
+	 * @return estimated number of distinct objects
+	 */
+	public long getDistinctObjects();
+
+	/**
+	 * @return estimated number of distinct subjects of statements with the
+	 *         predicate
+	 */
+	public long getDistinctSubjects(URI predicate);
+
+	/**
+	 * @return estimated number of distinct objects of statements with the
+	 *         predicate
+	 */
+	public long getDistinctObjects(URI predicate);
+
+	/**
+	 * @return the classes with instances, i.e. the URI objects of rdf:type
+	 *         statements
+	 */
+	public Set<URI> getClasses();
+
+	/**
+	 * @return the number of rdf:type statements with the class as object
+	 */
+	public long getInstanceCount(URI classURI);
+
+	/**
+	 * Estimate the number of statements matching a pattern, e.g. to order the
+	 * patterns of a join. The context is ignored.
+	 *
+	 * @return 0 only if no statement can match
+	 */
+	public long estimate(TriplePattern pattern);
+
+}
@@ -0,0 +1,76 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model;
+
+import java.io.Closeable;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+
+/**
+ * A transaction started with {@link TransactionSupport#begin(IsolationLevel)}.
+ * All changes made through the {@link Model} or {@link ModelSet} that started
+ * the transaction become visible to others only after {@link #commit()}, and
+ * are discarded by {@link #rollback()}.
+ * 
+ * A transaction is bound to the Model or ModelSet instance that started it.
+ * Implementations without native transactions, like the Jena model, may also
+ * bind it to the thread which started it: only this thread sees the changes
+ * before commit, and it has to end the transaction. Closing an active transaction rolls it back, so it can be
+ * used in a try-with-resources block:
+ * 
+ * <pre>
+ * Transaction tx = model.begin(IsolationLevel.READ_COMMITTED);
+ * try {
+ * 	model.addStatement(s, p, o);
+ * 	tx.commit();
+ * } finally {
+ * 	tx.close();
+ * }
+ * </pre>
+ * 
+ * @author agent
+ * @since 5.1
+ */
+public interface Transaction extends Closeable {
+	
+	/**
+	 * @return the isolation level this transaction was started with
+	 */
+	IsolationLevel getIsolationLevel();
+	
+	/**
+	 * @return true until the transaction has been committed, rolled back or
+	 *         closed
+	 */
+	boolean isActive();
+	
+	/**
+	 * Make all changes of this transaction permanent and end it.
+	 * 
+	 * @throws ModelRuntimeException if the transaction is not active or the
+	 *             changes could not be committed. In the latter case the
+	 *             transaction has been rolled back.
+	 */
+	void commit() throws ModelRuntimeException;
+	
+	/**
+	 * Discard all changes of this transaction and end it.
+	 * 
+	 * @throws ModelRuntimeException if the transaction is not active
+	 */
+	void rollback() throws ModelRuntimeException;
+	
+	/**
+	 * Roll back the transaction if it is still active, do nothing otherwise.
+	 */
+	@Override
+	void close() throws ModelRuntimeException;
+	
+}
@@ -0,0 +1,49 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.node.URI;
+
+/**
+ * Explicit transactions. This replaces the deprecated {@link Commitable} API
+ * and, for grouping writes, {@link Lockable}: all writes between
+ * {@link #begin(IsolationLevel)} and {@link Transaction#commit()} are committed
+ * at once, which is much cheaper than committing every single statement.
+ * 
+ * At most one transaction can be active per Model or ModelSet instance.
+ * Models obtained from a ModelSet via {@link ModelSet#getModel(URI)} might run
+ * their own transactions; use the quad methods of the ModelSet to write to
+ * several contexts within one transaction.
+ * 
+ * @author agent
+ * @since 5.1
+ */
+public interface TransactionSupport {
+	
+	/**
+	 * Start a transaction with the default isolation level of the store.
+	 * 
+	 * @return the new, active transaction
+	 * @throws ModelRuntimeException if a transaction is already active
+	 */
+	Transaction begin() throws ModelRuntimeException;
+	
+	/**
+	 * Start a transaction.
+	 * 
+	 * @param isolationLevel the minimal isolation required
+	 * @return the new, active transaction
+	 * @throws ModelRuntimeException if a transaction is already active or the
+	 *             store cannot provide the requested isolation
+	 */
+	Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException;
+	
+}
@@ -21,6 +21,7 @@
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -32,11 +33,13 @@
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.QueryRow;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.TriplePattern;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
@@ -285,6 +288,16 @@ public ClosableIterator<Statement> findStatements(TriplePattern triplepattern)
 		        triplepattern.getObject());
 	}
 	
+	/**
+	 * Joins findStatements calls with a {@link PatternJoinEngine}.
+	 */
+	@Override
+	public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException {
+		assertModel();
+		return new PatternJoinEngine(this).evaluate(patterns);
+	}
+	
 	/**
 	 * Computes a Diff by using HashSets.
 	 */
@@ -343,6 +356,42 @@ public boolean isEmpty() {
 		return size() == 0;
 	}
 	
+	/**
+	 * Implementations which can provide a consistent point-in-time view
+	 * should override this method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Snapshots are not supported by "
+		        + this.getClass().getName());
+	}
+	
+	/**
+	 * Implementations which support transactions should override this
+	 * method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + this.getClass().getName());
+	}
+	
+	/**
+	 * Implementations which support transactions should override this
+	 * method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + this.getClass().getName());
+	}
+	
 	@Override
 	public boolean isOpen() {
 		return this.open;
@@ -32,6 +32,7 @@
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
@@ -39,6 +40,7 @@
 import org.ontoware.rdf2go.model.QueryRow;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
@@ -480,6 +482,42 @@ public void update(DiffReader diff) throws ModelRuntimeException {
     public boolean isEmpty() {
 		return size() == 0;
 	}
+	
+	/**
+	 * Implementations which can provide a consistent point-in-time view
+	 * should override this method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Snapshots are not supported by "
+		        + this.getClass().getName());
+	}
+	
+	/**
+	 * Implementations which support transactions should override this
+	 * method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + this.getClass().getName());
+	}
+	
+	/**
+	 * Implementations which support transactions should override this
+	 * method.
+	 * 
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + this.getClass().getName());
+	}
 
 	// work around Sesame not having this yet
 	/* subclasses should overwrite this method for better performance */
@@ -0,0 +1,82 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Transaction;
+
+
+/**
+ * Keeps track of the state of a {@link Transaction}. Subclasses only have to
+ * implement the store specific {@link #doCommit()} and {@link #doRollback()},
+ * which are called at most once.
+ * 
+ * @author agent
+ */
+public abstract class AbstractTransaction implements Transaction {
+	
+	private final IsolationLevel isolationLevel;
+	
+	private boolean active = true;
+	
+	public AbstractTransaction(IsolationLevel isolationLevel) {
+		this.isolationLevel = isolationLevel;
+	}
+	
+	@Override
+	public IsolationLevel getIsolationLevel() {
+		return this.isolationLevel;
+	}
+	
+	@Override
+	public synchronized boolean isActive() {
+		return this.active;
+	}
+	
+	@Override
+	public synchronized void commit() throws ModelRuntimeException {
+		assertActive();
+		this.active = false;
+		doCommit();
+	}
+	
+	@Override
+	public synchronized void rollback() throws ModelRuntimeException {
+		assertActive();
+		this.active = false;
+		doRollback();
+	}
+	
+	@Override
+	public synchronized void close() throws ModelRuntimeException {
+		if(this.active) {
+			rollback();
+		}
+	}
+	
+	private void assertActive() {
+		if(!this.active) {
+			throw new ModelRuntimeException("Transaction is not active");
+		}
+	}
+	
+	/**
+	 * Make the changes permanent. If this fails, the implementation has to
+	 * roll back before throwing.
+	 */
+	protected abstract void doCommit() throws ModelRuntimeException;
+	
+	/**
+	 * Discard the changes.
+	 */
+	protected abstract void doRollback() throws ModelRuntimeException;
+	
+}
@@ -0,0 +1,201 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.Statement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Decouples a (slow) listener from the writing threads. Events are put into a
+ * bounded buffer and delivered by a task running on the given
+ * {@link Executor}. All events which accumulated since the last delivery are
+ * merged into one {@link DiffReader} and passed to
+ * {@link ModelChangedListener#performedUpdate(DiffReader)} of the target
+ * listener, so the target only has to implement that method.
+ *
+ * When the buffer is full, writers either wait for the listener to catch up
+ * or, if <code>dropWhenFull</code> is set, the event is discarded and counted
+ * in {@link #getDroppedCount()}, so writers are never stalled.
+ *
+ * Register an instance of this class instead of the target listener with a
+ * {@link NotifyingModelLayer} or {@link NotifyingModelSetLayer}.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class AsyncModelChangedListener implements ModelChangedListener {
+
+	private static final Logger log = LoggerFactory.getLogger(AsyncModelChangedListener.class);
+
+	private static class Event {
+
+		final Statement statement;
+
+		final boolean added;
+
+		Event(Statement statement, boolean added) {
+			this.statement = statement;
+			this.added = added;
+		}
+	}
+
+	private final ModelChangedListener target;
+
+	private final Executor executor;
+
+	private final boolean dropWhenFull;
+
+	private final BlockingQueue<Event> buffer;
+
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Runnable delivery = new Runnable() {
+
+		@Override
+		public void run() {
+			deliver();
+		}
+	};
+
+	/**
+	 * @param target the listener to deliver batched events to
+	 * @param capacity maximum number of buffered statement events
+	 * @param executor runs the delivery, e.g. a single thread executor shared
+	 *            by several listeners
+	 * @param dropWhenFull true to discard events instead of blocking writers
+	 *            when the buffer is full
+	 */
+	public AsyncModelChangedListener(ModelChangedListener target, int capacity,
+	        Executor executor, boolean dropWhenFull) {
+		this.target = target;
+		this.executor = executor;
+		this.dropWhenFull = dropWhenFull;
+		this.buffer = new ArrayBlockingQueue<Event>(capacity);
+	}
+
+	/**
+	 * @return the number of events discarded because the buffer was full
+	 */
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	@Override
+	public void addedStatement(Statement statement) {
+		enqueue(new Event(statement, true));
+	}
+
+	@Override
+	public void addedStatements(Iterator<? extends Statement> statements) {
+		while(statements.hasNext()) {
+			enqueue(new Event(statements.next(), true));
+		}
+	}
+
+	@Override
+	public void removedStatement(Statement statement) {
+		enqueue(new Event(statement, false));
+	}
+
+	@Override
+	public void removedStatements(Iterator<? extends Statement> statements) {
+		while(statements.hasNext()) {
+			enqueue(new Event(statements.next(), false));
+		}
+	}
+
+	@Override
+	public void performedUpdate(DiffReader diff) {
+		for(Statement statement : diff.getRemoved()) {
+			enqueue(new Event(statement, false));
+		}
+		for(Statement statement : diff.getAdded()) {
+			enqueue(new Event(statement, true));
+		}
+	}
+
+	private void enqueue(Event event) {
+		if(this.dropWhenFull) {
+			if(!this.buffer.offer(event)) {
+				this.dropped.incrementAndGet();
+			}
+		} else {
+			try {
+				if(!this.buffer.offer(event)) {
+					// make sure the buffer is being drained while we wait
+					schedule();
+					this.buffer.put(event);
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.dropped.incrementAndGet();
+			}
+		}
+		schedule();
+	}
+
+	private void schedule() {
+		if(this.scheduled.compareAndSet(false, true)) {
+			this.executor.execute(this.delivery);
+		}
+	}
+
+	private void deliver() {
+		List<Event> events = new ArrayList<Event>();
+		this.buffer.drainTo(events);
+		if(!events.isEmpty()) {
+			deliver(events);
+		}
+		// events enqueued during delivery could not schedule a new delivery
+		this.scheduled.set(false);
+		if(!this.buffer.isEmpty()) {
+			schedule();
+		}
+	}
+
+	private void deliver(List<Event> events) {
+		// net effect of the events, in the order of the DiffReader contract:
+		// removals are applied before additions
+		Set<Statement> added = new LinkedHashSet<Statement>();
+		Set<Statement> removed = new LinkedHashSet<Statement>();
+		for(Event event : events) {
+			if(event.added) {
+				removed.remove(event.statement);
+				added.add(event.statement);
+			} else {
+				added.remove(event.statement);
+				removed.add(event.statement);
+			}
+		}
+		try {
+			this.target.performedUpdate(new DiffImpl(added.iterator(), removed.iterator()));
+		} catch(RuntimeException e) {
+			log.warn("Listener " + this.target + " failed", e);
+		}
+	}
+
+}
@@ -17,6 +17,7 @@
 import java.io.Reader;
 import java.io.Writer;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.ontoware.aifbcommons.collection.ClosableIterable;
@@ -26,10 +27,13 @@
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
+import org.ontoware.rdf2go.model.QueryRow;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.TriplePattern;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.Node;
@@ -171,6 +175,12 @@ public ClosableIterator<Statement> findStatements(TriplePattern pattern)
 		return this.delegatedModel.findStatements(pattern);
 	}
 	
+	@Override
+	public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException {
+		return this.delegatedModel.findBindings(patterns);
+	}
+	
 	@Override
 	public URI getContextURI() {
 		return this.delegatedModel.getContextURI();
@@ -356,6 +366,21 @@ public long size() throws ModelRuntimeException {
 		return this.delegatedModel.size();
 	}
 	
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		return this.delegatedModel.snapshot();
+	}
+	
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.delegatedModel.begin();
+	}
+	
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.delegatedModel.begin(isolationLevel);
+	}
+	
 	@Override
 	public boolean sparqlAsk(String query) throws ModelRuntimeException {
 		boolean result = this.delegatedModel.sparqlAsk(query);
@@ -29,12 +29,14 @@
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.Resource;
@@ -192,6 +194,21 @@ public long size() throws ModelRuntimeException {
 		return this.baseModelSet.size();
 	}
 	
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		return this.baseModelSet.snapshot();
+	}
+	
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.baseModelSet.begin();
+	}
+	
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.baseModelSet.begin(isolationLevel);
+	}
+	
 	@Override
 	public boolean sparqlAsk(String query) throws ModelRuntimeException, MalformedQueryException {
 		return this.baseModelSet.sparqlAsk(query);
@@ -0,0 +1,741 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.ontoware.aifbcommons.collection.ClosableIterable;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.LockException;
+import org.ontoware.rdf2go.exception.MalformedQueryException;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.NotifyingModel;
+import org.ontoware.rdf2go.model.QueryResultTable;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.BloomFilter;
+import org.ontoware.rdf2go.util.ModelCanonicalizer;
+import org.ontoware.rdf2go.vocabulary.RDF;
+
+
+/**
+ * A read-only union of several models, which may come from different
+ * backends. When opened, a summary of each member is computed: its
+ * predicates, its classes and a {@link BloomFilter} of the namespaces of its
+ * subjects. Each lookup is sent only to the members which can have matching
+ * statements. If there are several, they are asked in parallel and their
+ * results are merged as they arrive.
+ *
+ * This is a union of statements, not of sets: a statement contained in
+ * several members is found and counted once per member. The summaries of
+ * members which are {@link NotifyingModel}s are extended as statements are
+ * added to them. The summary of another member is stale once its size
+ * changed: it is then asked for every lookup until it has been summarized
+ * again in the background. Changes which keep the size of such a member, or
+ * removals, are only reflected by {@link #refresh()}.
+ *
+ * The members have to be open, closing this model does not close them.
+ * SPARQL is not supported, use {@link #findBindings(List)}.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class FederatedModel extends AbstractModel {
+
+	private static final long serialVersionUID = 6113940126628137805L;
+
+	/** statements buffered per member while merging results */
+	public static final int DEFAULT_BUFFER_SIZE = 1000;
+
+	/** of the subject namespace filters */
+	public static final double FALSE_POSITIVE_RATE = 0.01;
+
+	/** what a member can match */
+	private static class Summary {
+
+		private final Set<URI> predicates = new HashSet<URI>();
+
+		private final Set<URI> classes = new HashSet<URI>();
+
+		private final BloomFilter subjectNamespaces;
+
+		/** of the member when it was summarized, -1 if it notifies its changes */
+		private final long size;
+
+		Summary(int expectedNamespaces, long size) {
+			this.subjectNamespaces = new BloomFilter(expectedNamespaces, FALSE_POSITIVE_RATE);
+			this.size = size;
+		}
+
+		synchronized void add(Statement statement) {
+			this.predicates.add(statement.getPredicate());
+			if(RDF.type.equals(statement.getPredicate()) && statement.getObject() instanceof URI) {
+				this.classes.add((URI)statement.getObject());
+			}
+			if(statement.getSubject() instanceof URI) {
+				this.subjectNamespaces.add(namespace((URI)statement.getSubject()));
+			}
+		}
+
+		synchronized boolean mightMatch(ResourceOrVariable subject, UriOrVariable predicate,
+		        NodeOrVariable object) {
+			if(predicate instanceof URI) {
+				if(!this.predicates.contains(predicate)) {
+					return false;
+				}
+				if(RDF.type.equals(predicate) && object instanceof URI
+				        && !this.classes.contains(object)) {
+					return false;
+				}
+			}
+			return !(subject instanceof URI)
+			        || this.subjectNamespaces.mightContain(namespace((URI)subject));
+		}
+	}
+
+	/**
+	 * Extends the summary of a member which notifies its changes. Removals are
+	 * ignored, a summary may describe more than its member contains.
+	 */
+	private class SummaryUpdater implements ModelChangedListener {
+
+		private final int index;
+
+		SummaryUpdater(int index) {
+			this.index = index;
+		}
+
+		private void added(Iterator<? extends Statement> statements) {
+			synchronized(FederatedModel.this.summaryLock) {
+				Summary summary = FederatedModel.this.summaries == null ? null
+				        : FederatedModel.this.summaries[this.index];
+				// statements added while refresh() summarizes the member
+				List<Statement> pending = FederatedModel.this.pending.get(this.index);
+				while(statements.hasNext()) {
+					Statement statement = statements.next();
+					if(summary != null) {
+						summary.add(statement);
+					}
+					if(pending != null) {
+						pending.add(statement);
+					}
+				}
+			}
+		}
+
+		@Override
+		public void addedStatement(Statement statement) {
+			added(Collections.singletonList(statement).iterator());
+		}
+
+		@Override
+		public void addedStatements(Iterator<? extends Statement> statements) {
+			added(statements);
+		}
+
+		@Override
+		public void removedStatement(Statement statement) {
+			// the summary stays valid
+		}
+
+		@Override
+		public void removedStatements(Iterator<? extends Statement> statements) {
+			// the summary stays valid
+		}
+
+		@Override
+		public void performedUpdate(DiffReader diff) {
+			added(diff.getAdded().iterator());
+		}
+	}
+
+	private final List<Model> members;
+
+	private final int bufferSize;
+
+	private transient volatile Summary[] summaries;
+
+	/** guards changes of the summaries */
+	private transient Object summaryLock;
+
+	/** per member, collects its notified statements while it is summarized */
+	private transient List<List<Statement>> pending;
+
+	private transient List<SummaryUpdater> updaters;
+
+	/** indexes of the members summarized again in the background */
+	private transient Set<Integer> resummarizing;
+
+	private transient ExecutorService executor;
+
+	private boolean locked = false;
+
+	public FederatedModel(Model ... members) {
+		this(Arrays.asList(members), DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param members open models
+	 * @param bufferSize statements buffered per member while merging results
+	 */
+	public FederatedModel(List<? extends Model> members, int bufferSize) {
+		if(members.isEmpty()) {
+			throw new IllegalArgumentException("A federation needs at least one member");
+		}
+		this.members = Collections.unmodifiableList(new ArrayList<Model>(members));
+		this.bufferSize = bufferSize;
+		this.model = this.members;
+	}
+
+	public List<Model> getMembers() {
+		return this.members;
+	}
+
+	protected ModelRuntimeException readOnly() {
+		return new ModelRuntimeException("This model is read-only");
+	}
+
+	@Override
+	public Model open() {
+		if(!isOpen()) {
+			this.executor = ParallelExecution.newExecutor("FederatedModel");
+			this.summaryLock = new Object();
+			this.pending = new ArrayList<List<Statement>>(Collections.<List<Statement>> nCopies(
+			        this.members.size(), null));
+			this.resummarizing = Collections.newSetFromMap(new ConcurrentHashMap<Integer,Boolean>());
+			this.updaters = new ArrayList<SummaryUpdater>();
+			super.open();
+			for(int i = 0; i < this.members.size(); i++) {
+				if(this.members.get(i) instanceof NotifyingModel) {
+					SummaryUpdater updater = new SummaryUpdater(i);
+					((NotifyingModel)this.members.get(i)).addModelChangedListener(updater);
+					this.updaters.add(updater);
+				} else {
+					this.updaters.add(null);
+				}
+			}
+			refresh();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(isOpen()) {
+			this.executor.shutdownNow();
+			for(int i = 0; i < this.members.size(); i++) {
+				if(this.updaters.get(i) != null) {
+					((NotifyingModel)this.members.get(i)).removeModelChangedListener(this.updaters
+					        .get(i));
+				}
+			}
+		}
+		super.close();
+	}
+
+	// //////////////////////////
+	// source selection
+
+	/**
+	 * Recompute the summaries of all members, in parallel. This also forgets
+	 * what has been removed from the members.
+	 */
+	public synchronized void refresh() {
+		assertModel();
+		List<Callable<Summary>> tasks = new ArrayList<Callable<Summary>>();
+		synchronized(this.summaryLock) {
+			for(int i = 0; i < this.members.size(); i++) {
+				if(this.updaters.get(i) != null) {
+					this.pending.set(i, new ArrayList<Statement>());
+				}
+			}
+		}
+		for(final Model member : this.members) {
+			tasks.add(new Callable<Summary>() {
+
+				@Override
+				public Summary call() {
+					return summarize(member);
+				}
+			});
+		}
+		List<Summary> result;
+		try {
+			result = ParallelExecution.invokeAll(this.executor, tasks);
+		} catch(RuntimeException e) {
+			synchronized(this.summaryLock) {
+				Collections.fill(this.pending, null);
+			}
+			throw e;
+		}
+		synchronized(this.summaryLock) {
+			for(int i = 0; i < this.members.size(); i++) {
+				List<Statement> added = this.pending.set(i, null);
+				if(added != null) {
+					for(Statement statement : added) {
+						result.get(i).add(statement);
+					}
+				}
+			}
+			this.summaries = result.toArray(new Summary[this.members.size()]);
+		}
+	}
+
+	private static Summary summarize(Model member) {
+		// taken before reading, so changes made meanwhile make it stale
+		long size = member instanceof NotifyingModel ? -1 : member.size();
+		Set<URI> predicates = new HashSet<URI>();
+		Set<URI> classes = new HashSet<URI>();
+		Set<String> namespaces = new HashSet<String>();
+		ClosableIterator<Statement> it = member.iterator();
+		try {
+			while(it.hasNext()) {
+				Statement statement = it.next();
+				predicates.add(statement.getPredicate());
+				if(RDF.type.equals(statement.getPredicate())
+				        && statement.getObject() instanceof URI) {
+					classes.add((URI)statement.getObject());
+				}
+				if(statement.getSubject() instanceof URI) {
+					namespaces.add(namespace((URI)statement.getSubject()));
+				}
+			}
+		} finally {
+			it.close();
+		}
+		Summary summary = new Summary(namespaces.size(), size);
+		summary.predicates.addAll(predicates);
+		summary.classes.addAll(classes);
+		for(String namespace : namespaces) {
+			summary.subjectNamespaces.add(namespace);
+		}
+		return summary;
+	}
+
+	/**
+	 * @return true if the member does not notify its changes and its size
+	 *         changed since it was summarized. It is then summarized again in
+	 *         the background.
+	 */
+	private boolean isStale(final int index, Summary summary) {
+		if(summary.size < 0 || this.members.get(index).size() == summary.size) {
+			return false;
+		}
+		if(this.resummarizing.add(index)) {
+			try {
+				this.executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							Summary updated = summarize(FederatedModel.this.members.get(index));
+							synchronized(FederatedModel.this.summaryLock) {
+								Summary[] copy = FederatedModel.this.summaries.clone();
+								copy[index] = updated;
+								FederatedModel.this.summaries = copy;
+							}
+						} finally {
+							FederatedModel.this.resummarizing.remove(index);
+						}
+					}
+				});
+			} catch(RejectedExecutionException e) {
+				// closed
+				this.resummarizing.remove(index);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the URI up to the last '#' or '/', or else up to the last ':'
+	 */
+	private static String namespace(URI uri) {
+		String s = uri.toString();
+		int end = Math.max(s.lastIndexOf('#'), s.lastIndexOf('/'));
+		if(end < 0) {
+			end = s.lastIndexOf(':');
+		}
+		return s.substring(0, end + 1);
+	}
+
+	/**
+	 * @return the members which may contain statements matching the pattern
+	 */
+	private List<Model> select(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) {
+		Summary[] current = this.summaries;
+		List<Model> selected = new ArrayList<Model>(this.members.size());
+		for(int i = 0; i < current.length; i++) {
+			if(current[i].mightMatch(subject, predicate, object) || isStale(i, current[i])) {
+				selected.add(this.members.get(i));
+			}
+		}
+		return selected;
+	}
+
+	// //////////////////////////
+	// parallel evaluation
+
+	@Override
+	public ClosableIterator<Statement> findStatements(final ResourceOrVariable subject,
+	        final UriOrVariable predicate, final NodeOrVariable object)
+	        throws ModelRuntimeException {
+		assertModel();
+		List<Model> selected = select(subject, predicate, object);
+		if(selected.isEmpty()) {
+			return new PseudoClosableIterator<Statement>(Collections.<Statement> emptyList()
+			        .iterator());
+		}
+		if(selected.size() == 1) {
+			return selected.get(0).findStatements(subject, predicate, object);
+		}
+		List<Callable<ClosableIterator<Statement>>> sources =
+		        new ArrayList<Callable<ClosableIterator<Statement>>>();
+		for(final Model member : selected) {
+			sources.add(new Callable<ClosableIterator<Statement>>() {
+
+				@Override
+				public ClosableIterator<Statement> call() {
+					return member.findStatements(subject, predicate, object);
+				}
+			});
+		}
+		return new ParallelExecution.MergingIterator(this.executor, sources, this.bufferSize);
+	}
+
+	/**
+	 * The first member to find a statement answers. Lookups of the other
+	 * members which have not started yet are cancelled, running ones are not
+	 * interrupted and their results are ignored.
+	 */
+	@Override
+	public boolean contains(final ResourceOrVariable subject, final UriOrVariable predicate,
+	        final NodeOrVariable object) throws ModelRuntimeException {
+		assertModel();
+		List<Model> selected = select(subject, predicate, object);
+		if(selected.size() <= 1) {
+			return !selected.isEmpty() && selected.get(0).contains(subject, predicate, object);
+		}
+		CompletionService<Boolean> completion = new ExecutorCompletionService<Boolean>(
+		        this.executor);
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		try {
+			for(final Model member : selected) {
+				futures.add(completion.submit(new Callable<Boolean>() {
+
+					@Override
+					public Boolean call() {
+						return member.contains(subject, predicate, object);
+					}
+				}));
+			}
+			for(int i = 0; i < futures.size(); i++) {
+				if(completion.take().get()) {
+					return true;
+				}
+			}
+			return false;
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelRuntimeException(e);
+		} catch(ExecutionException e) {
+			throw ParallelExecution.rethrow(e.getCause());
+		} finally {
+			for(Future<Boolean> future : futures) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	@Override
+	public long countStatements(final TriplePattern pattern) throws ModelRuntimeException {
+		assertModel();
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for(final Model member : select(pattern.getSubject(), pattern.getPredicate(), pattern
+		        .getObject())) {
+			tasks.add(new Callable<Long>() {
+
+				@Override
+				public Long call() {
+					return member.countStatements(pattern);
+				}
+			});
+		}
+		return ParallelExecution.sum(this.executor, tasks);
+	}
+
+	@Override
+	public long size() throws ModelRuntimeException {
+		assertModel();
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for(final Model member : this.members) {
+			tasks.add(new Callable<Long>() {
+
+				@Override
+				public Long call() {
+					return member.size();
+				}
+			});
+		}
+		return ParallelExecution.sum(this.executor, tasks);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		assertModel();
+		for(Model member : this.members) {
+			if(!member.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public ClosableIterator<Statement> iterator() {
+		return findStatements(Variable.ANY, Variable.ANY, Variable.ANY);
+	}
+
+	// //////////////////////////
+	// everything else
+
+	@Override
+	public URI getContextURI() {
+		return null;
+	}
+
+	@Override
+	public BlankNode createBlankNode() {
+		return this.members.get(0).createBlankNode();
+	}
+
+	@Override
+	public BlankNode createBlankNode(String internalID) {
+		return this.members.get(0).createBlankNode(internalID);
+	}
+
+	@Override
+	public boolean isValidURI(String uriString) {
+		return this.members.get(0).isValidURI(uriString);
+	}
+
+	@Override
+	public boolean isIsomorphicWith(Model other) {
+		return ModelCanonicalizer.isIsomorphic(this, other);
+	}
+
+	/**
+	 * Namespaces of earlier members take precedence.
+	 */
+	@Override
+	public String getNamespace(String prefix) {
+		for(Model member : this.members) {
+			String namespace = member.getNamespace(prefix);
+			if(namespace != null) {
+				return namespace;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Namespaces of earlier members take precedence.
+	 */
+	@Override
+	public Map<String,String> getNamespaces() {
+		Map<String,String> namespaces = new LinkedHashMap<String,String>();
+		for(int i = this.members.size() - 1; i >= 0; i--) {
+			namespaces.putAll(this.members.get(i).getNamespaces());
+		}
+		return namespaces;
+	}
+
+	@Override
+	public QueryResultTable sparqlSelect(String queryString) throws MalformedQueryException,
+	        ModelRuntimeException {
+		throw new UnsupportedOperationException("SPARQL is not supported by "
+		        + this.getClass().getName());
+	}
+
+	@Override
+	public ClosableIterable<Statement> sparqlConstruct(String query)
+	        throws ModelRuntimeException, MalformedQueryException {
+		throw new UnsupportedOperationException("SPARQL is not supported by "
+		        + this.getClass().getName());
+	}
+
+	@Override
+	public ClosableIterable<Statement> sparqlDescribe(String query) throws ModelRuntimeException {
+		throw new UnsupportedOperationException("SPARQL is not supported by "
+		        + this.getClass().getName());
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException, ModelRuntimeException {
+		writeTo(out, Syntax.RdfXml);
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException, ModelRuntimeException {
+		writeTo(out, Syntax.RdfXml);
+	}
+
+	/**
+	 * Copies all statements into a new model of the default
+	 * {@link org.ontoware.rdf2go.ModelFactory}, which writes them.
+	 */
+	@Override
+	public void writeTo(Writer out, Syntax syntax) throws IOException, ModelRuntimeException,
+	        SyntaxNotSupportedException {
+		Model copy = copy();
+		try {
+			copy.writeTo(out, syntax);
+		} finally {
+			copy.close();
+		}
+	}
+
+	@Override
+	public void writeTo(OutputStream out, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		Model copy = copy();
+		try {
+			copy.writeTo(out, syntax);
+		} finally {
+			copy.close();
+		}
+	}
+
+	private Model copy() {
+		Model copy = RDF2Go.getModelFactory().createModel();
+		copy.open();
+		ClosableIterator<Statement> it = iterator();
+		try {
+			copy.addAll(it);
+		} finally {
+			it.close();
+		}
+		return copy;
+	}
+
+	@Override
+	public void dump() {
+		ClosableIterator<Statement> it = iterator();
+		try {
+			while(it.hasNext()) {
+				System.out.println(it.next());
+			}
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public synchronized void lock() throws LockException {
+		this.locked = true;
+	}
+
+	@Override
+	public synchronized boolean isLocked() {
+		return this.locked;
+	}
+
+	@Override
+	public synchronized void unlock() {
+		this.locked = false;
+	}
+
+	// //////////////////////////
+	// writes
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeNamespace(String prefix) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
+		throw readOnly();
+	}
+
+}
@@ -0,0 +1,493 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.MerkleTree;
+
+
+/**
+ * Maintains a {@link MerkleTree} fingerprint of the statements of a model
+ * while it is changed through this layer. Two copies of a model can be
+ * compared by their root hash, and synchronised by exchanging only the hashes
+ * of differing tree nodes and the statements of differing buckets:
+ *
+ * <pre>
+ * Diff diff = master.getDiff(replica);
+ * replica.update(diff);
+ * </pre>
+ *
+ * For a remote replica, compare {@link #getMerkleTree()} with the remote
+ * hashes and ship {@link #getBucketStatements(int)} of the differing buckets,
+ * or compute the diff with {@link #getDiff(int, Iterator)} on either side.
+ *
+ * Bulk operations are passed on to the underlying model in one call. Only the
+ * statements which actually change the model are passed on, they are found
+ * with one {@link Model#contains(Statement)} probe each before writing. Changes
+ * made to the underlying model without going through this layer are not seen.
+ * Reading from a stream rebuilds the tree.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class FingerprintingModel extends DelegatingModel {
+
+	private static final long serialVersionUID = -1961394427614263185L;
+
+	public static final int DEFAULT_DEPTH = 10;
+
+	private final MerkleTree tree;
+
+	/** guards the tree together with the underlying model */
+	private final Object lock;
+
+	public FingerprintingModel(Model model) {
+		this(model, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * @param depth the fingerprint has 2^depth buckets. Copies to be compared
+	 *            need the same depth.
+	 */
+	public FingerprintingModel(Model model, int depth) {
+		this(model, new MerkleTree(depth), null);
+		rebuild();
+	}
+
+	/**
+	 * Wrap a model whose statements are already in the given tree, used by
+	 * {@link FingerprintingModelSet}.
+	 * 
+	 * @param lock held while changing the model and the tree, null to use the
+	 *            tree
+	 */
+	FingerprintingModel(Model model, MerkleTree tree, Object lock) {
+		super(model);
+		this.tree = tree;
+		this.lock = lock == null ? tree : lock;
+	}
+
+	public MerkleTree getMerkleTree() {
+		return this.tree;
+	}
+
+	/**
+	 * @return the root hash of the fingerprint, equal for models with equal
+	 *         statements
+	 */
+	public long getFingerprint() {
+		return this.tree.getRootHash();
+	}
+
+	/**
+	 * Recompute the fingerprint from the statements of the underlying model.
+	 */
+	public void rebuild() {
+		synchronized(this.lock) {
+			this.tree.clear();
+			ClosableIterator<Statement> it = getDelegatedModel().iterator();
+			try {
+				while(it.hasNext()) {
+					this.tree.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+		}
+	}
+
+	/**
+	 * @return all statements of the subjects falling into the given bucket
+	 */
+	public List<Statement> getBucketStatements(int bucket) {
+		List<Statement> result = new ArrayList<Statement>();
+		for(Resource subject : this.tree.getSubjects(bucket)) {
+			ClosableIterator<Statement> it = getDelegatedModel().findStatements(subject,
+			        Variable.ANY, Variable.ANY);
+			try {
+				while(it.hasNext()) {
+					result.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param bucket a bucket of this model
+	 * @param replicaStatements the statements of the same bucket in a replica
+	 * @return the changes which turn the bucket of the replica into the bucket
+	 *         of this model
+	 */
+	public Diff getDiff(int bucket, Iterator<? extends Statement> replicaStatements) {
+		Set<Statement> added = new HashSet<Statement>(getBucketStatements(bucket));
+		List<Statement> removed = new ArrayList<Statement>();
+		while(replicaStatements.hasNext()) {
+			Statement statement = replicaStatements.next();
+			if(!added.remove(statement)) {
+				removed.add(statement);
+			}
+		}
+		return new DiffImpl(added.iterator(), removed.iterator());
+	}
+
+	/**
+	 * Only the statements of buckets with differing hashes are compared.
+	 *
+	 * @return the changes which turn the replica into a copy of this model
+	 */
+	public Diff getDiff(FingerprintingModel replica) {
+		DiffImpl diff = new DiffImpl();
+		for(int bucket : this.tree.getDifferingBuckets(replica.getMerkleTree())) {
+			Diff bucketDiff = getDiff(bucket, replica.getBucketStatements(bucket).iterator());
+			diff.addAll(bucketDiff.getAdded().iterator());
+			diff.removeAll(bucketDiff.getRemoved().iterator());
+		}
+		return diff;
+	}
+
+	// /////////////////////////////////
+	// override methods to maintain the fingerprint
+
+	/**
+	 * @return the statements which are not in the underlying model, each once
+	 */
+	private List<Statement> absent(Iterator<? extends Statement> statements) {
+		Set<Statement> candidates = new LinkedHashSet<Statement>();
+		while(statements.hasNext()) {
+			candidates.add(statements.next());
+		}
+		List<Statement> result = new ArrayList<Statement>(candidates.size());
+		for(Statement statement : candidates) {
+			if(!getDelegatedModel().contains(statement)) {
+				result.add(statement);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the statements which are in the underlying model, each once
+	 */
+	private List<Statement> present(Iterator<? extends Statement> statements) {
+		Set<Statement> candidates = new LinkedHashSet<Statement>();
+		while(statements.hasNext()) {
+			candidates.add(statements.next());
+		}
+		List<Statement> result = new ArrayList<Statement>(candidates.size());
+		for(Statement statement : candidates) {
+			if(getDelegatedModel().contains(statement)) {
+				result.add(statement);
+			}
+		}
+		return result;
+	}
+
+	private void fold(List<Statement> removed, List<Statement> added) {
+		for(Statement statement : removed) {
+			this.tree.remove(statement);
+		}
+		for(Statement statement : added) {
+			this.tree.add(statement);
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			List<Statement> added = absent(other);
+			if(!added.isEmpty()) {
+				getDelegatedModel().addAll(added.iterator());
+				fold(new ArrayList<Statement>(0), added);
+			}
+		}
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			this.addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate, getDelegatedModel().createLanguageTagLiteral(
+		        literal, languageTag));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate, getDelegatedModel().createDatatypeLiteral(literal,
+		        datatypeURI));
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			// only effective changes count, the model is a set
+			if(!getDelegatedModel().contains(statement)) {
+				getDelegatedModel().addStatement(statement);
+				this.tree.add(statement);
+			}
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		synchronized(this.lock) {
+			getDelegatedModel().removeAll();
+			this.tree.clear();
+		}
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			List<Statement> removed = present(other);
+			if(!removed.isEmpty()) {
+				getDelegatedModel().removeAll(removed.iterator());
+				fold(removed, new ArrayList<Statement>(0));
+			}
+		}
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate, getDelegatedModel().createLanguageTagLiteral(
+		        literal, languageTag));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate, getDelegatedModel().createDatatypeLiteral(
+		        literal, datatypeURI));
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate,
+		        literal, languageTag);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        URI datatypeURI) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate,
+		        literal, datatypeURI);
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			if(getDelegatedModel().contains(statement)) {
+				getDelegatedModel().removeStatement(statement);
+				this.tree.remove(statement);
+			}
+		}
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			List<Statement> removed = new ArrayList<Statement>();
+			ClosableIterator<Statement> it = getDelegatedModel().findStatements(subject,
+			        predicate, object);
+			try {
+				while(it.hasNext()) {
+					removed.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+			if(!removed.isEmpty()) {
+				getDelegatedModel().removeStatements(subject, predicate, object);
+				fold(removed, new ArrayList<Statement>(0));
+			}
+		}
+	}
+
+	/**
+	 * Passes the effective changes of the diff on in one update.
+	 */
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		synchronized(this.lock) {
+			Set<Statement> added = new LinkedHashSet<Statement>();
+			for(Statement statement : diff.getAdded()) {
+				added.add(statement);
+			}
+			// removing and adding a statement again does not change anything
+			List<Statement> removedCandidates = new ArrayList<Statement>();
+			for(Statement statement : diff.getRemoved()) {
+				if(!added.contains(statement)) {
+					removedCandidates.add(statement);
+				}
+			}
+			List<Statement> removed = present(removedCandidates.iterator());
+			List<Statement> effectivelyAdded = absent(added.iterator());
+			if(!removed.isEmpty() || !effectivelyAdded.isEmpty()) {
+				getDelegatedModel().update(
+				        new DiffImpl(effectivelyAdded.iterator(), removed.iterator()));
+				fold(removed, effectivelyAdded);
+			}
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax, baseURI);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		super.readFrom(r);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		super.readFrom(reader, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax, baseURI);
+		rebuild();
+	}
+
+	// ////////// transactions
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin()) {
+
+			@Override
+			void rebuild() {
+				FingerprintingModel.this.rebuild();
+			}
+		};
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin(isolationLevel)) {
+
+			@Override
+			void rebuild() {
+				FingerprintingModel.this.rebuild();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,498 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.MerkleTree;
+import org.ontoware.rdf2go.vocabulary.RDF;
+
+
+/**
+ * Maintains one {@link MerkleTree} fingerprint per context of a model set,
+ * see {@link FingerprintingModel}. Contexts with equal fingerprints are
+ * skipped when comparing two copies, within the other contexts only the
+ * differing buckets are compared:
+ *
+ * <pre>
+ * Diff diff = master.getDiff(replica);
+ * replica.update(diff);
+ * </pre>
+ *
+ * The models returned by this model set share its fingerprints, so changes
+ * made through them are seen. Bulk operations are passed on to the underlying
+ * model set in one update of the statements which actually change it. Changes made to the underlying model set without
+ * going through this layer are not. Reading from a stream rebuilds all
+ * fingerprints.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class FingerprintingModelSet extends DelegatingModelSet {
+
+	private static final long serialVersionUID = 4135519520402327780L;
+
+	private final int depth;
+
+	/** the default model has the key null */
+	private final Map<URI,MerkleTree> trees = new HashMap<URI,MerkleTree>();
+
+	public FingerprintingModelSet(ModelSet modelSet) {
+		this(modelSet, FingerprintingModel.DEFAULT_DEPTH);
+	}
+
+	/**
+	 * @param depth each fingerprint has 2^depth buckets. Copies to be compared
+	 *            need the same depth.
+	 */
+	public FingerprintingModelSet(ModelSet modelSet, int depth) {
+		super(modelSet);
+		this.depth = depth;
+		rebuild();
+	}
+
+	/**
+	 * Recompute the fingerprints from the statements of the underlying model
+	 * set.
+	 */
+	public synchronized void rebuild() {
+		this.trees.clear();
+		// model by model, as backends differ in the context they report for
+		// statements of the default model
+		List<URI> contextURIs = new ArrayList<URI>();
+		ClosableIterator<URI> uris = getDelegatedModelSet().getModelURIs();
+		while(uris.hasNext()) {
+			contextURIs.add(uris.next());
+		}
+		uris.close();
+		contextURIs.add(null);
+		for(URI contextURI : contextURIs) {
+			getFingerprintingModel(contextURI).rebuild();
+		}
+	}
+
+	/**
+	 * @param contextURI null for the default model
+	 * @return the fingerprint of the context, created empty if there is none
+	 */
+	public synchronized MerkleTree getMerkleTree(URI contextURI) {
+		MerkleTree tree = this.trees.get(contextURI);
+		if(tree == null) {
+			tree = new MerkleTree(this.depth);
+			this.trees.put(contextURI, tree);
+		}
+		return tree;
+	}
+
+	/**
+	 * @return the root hashes of all non-empty contexts, the default model has
+	 *         the key null
+	 */
+	public synchronized Map<URI,Long> getContextFingerprints() {
+		Map<URI,Long> result = new HashMap<URI,Long>();
+		for(Map.Entry<URI,MerkleTree> e : this.trees.entrySet()) {
+			long root = e.getValue().getRootHash();
+			if(root != 0) {
+				result.put(e.getKey(), root);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a hash over all contexts and their fingerprints, equal for model
+	 *         sets with equal statements
+	 */
+	public long getFingerprint() {
+		long result = 0;
+		for(Map.Entry<URI,Long> e : getContextFingerprints().entrySet()) {
+			long contextHash = e.getKey() == null ? 0 : MerkleTree.hash(e.getKey());
+			// a sum, so the order of the contexts does not matter
+			result += (contextHash * 0x100000001B3L) ^ e.getValue();
+		}
+		return result;
+	}
+
+	/**
+	 * @return the contexts whose fingerprints differ between this model set
+	 *         and the replica
+	 */
+	public Set<URI> getDifferingContexts(FingerprintingModelSet replica) {
+		Map<URI,Long> mine = getContextFingerprints();
+		Map<URI,Long> theirs = replica.getContextFingerprints();
+		Set<URI> result = new HashSet<URI>();
+		for(Map.Entry<URI,Long> e : mine.entrySet()) {
+			if(!e.getValue().equals(theirs.get(e.getKey()))) {
+				result.add(e.getKey());
+			}
+		}
+		for(URI contextURI : theirs.keySet()) {
+			if(!mine.containsKey(contextURI)) {
+				result.add(contextURI);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Only the statements of buckets with differing hashes in contexts with
+	 * differing fingerprints are compared.
+	 *
+	 * @return the changes which turn the replica into a copy of this model set
+	 */
+	public Diff getDiff(FingerprintingModelSet replica) {
+		DiffImpl diff = new DiffImpl();
+		for(URI contextURI : getDifferingContexts(replica)) {
+			FingerprintingModel mine = getFingerprintingModel(contextURI);
+			FingerprintingModel theirs = replica.getFingerprintingModel(contextURI);
+			for(int bucket : mine.getMerkleTree().getDifferingBuckets(theirs.getMerkleTree())) {
+				Diff bucketDiff = mine.getDiff(bucket, theirs.getBucketStatements(bucket)
+				        .iterator());
+				diff.addAll(bucketDiff.getAdded().iterator());
+				diff.removeAll(bucketDiff.getRemoved().iterator());
+			}
+		}
+		return diff;
+	}
+
+	private FingerprintingModel getFingerprintingModel(URI contextURI) {
+		Model model = contextURI == null ? getDelegatedModelSet().getDefaultModel()
+		        : getDelegatedModelSet().getModel(contextURI);
+		return new FingerprintingModel(model, getMerkleTree(contextURI), this);
+	}
+
+	// /////////////////////////////////
+	// models share the fingerprints
+
+	@Override
+	public Model getDefaultModel() {
+		return getFingerprintingModel(null);
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		return getFingerprintingModel(contextURI);
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		final ClosableIterator<Model> it = getDelegatedModelSet().getModels();
+		return new ClosableIterator<Model>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Model next() {
+				Model model = it.next();
+				return new FingerprintingModel(model, getMerkleTree(model.getContextURI()),
+				        FingerprintingModelSet.this);
+			}
+
+			@Override
+			public void remove() {
+				it.remove();
+			}
+
+			@Override
+			public void close() {
+				it.close();
+			}
+		};
+	}
+
+	// /////////////////////////////////
+	// override methods to maintain the fingerprints
+
+	@Override
+	public synchronized void addStatement(Statement statement) throws ModelRuntimeException {
+		// only effective changes count
+		if(!getDelegatedModelSet().contains(statement)) {
+			getDelegatedModelSet().addStatement(statement);
+			getMerkleTree(statement.getContext()).add(statement);
+		}
+	}
+
+	@Override
+	public synchronized void removeStatement(Statement statement) throws ModelRuntimeException {
+		if(getDelegatedModelSet().contains(statement)) {
+			getDelegatedModelSet().removeStatement(statement);
+			getMerkleTree(statement.getContext()).remove(statement);
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		apply(new ArrayList<Statement>(0).iterator(), other);
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		apply(other, new ArrayList<Statement>(0).iterator());
+	}
+
+	/**
+	 * Passes the effective changes of the diff on in one update.
+	 */
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		apply(diff.getRemoved().iterator(), diff.getAdded().iterator());
+	}
+
+	/**
+	 * Statements are equal regardless of their context, so they are kept
+	 * apart by context.
+	 */
+	private static Map<URI,Set<Statement>> byContext(Iterator<? extends Statement> statements) {
+		Map<URI,Set<Statement>> result = new LinkedHashMap<URI,Set<Statement>>();
+		while(statements.hasNext()) {
+			Statement statement = statements.next();
+			Set<Statement> context = result.get(statement.getContext());
+			if(context == null) {
+				context = new LinkedHashSet<Statement>();
+				result.put(statement.getContext(), context);
+			}
+			context.add(statement);
+		}
+		return result;
+	}
+
+	private synchronized void apply(Iterator<? extends Statement> removedStatements,
+	        Iterator<? extends Statement> addedStatements) {
+		Map<URI,Set<Statement>> added = byContext(addedStatements);
+		final List<Statement> removed = new ArrayList<Statement>();
+		for(Map.Entry<URI,Set<Statement>> e : byContext(removedStatements).entrySet()) {
+			Set<Statement> addedToContext = added.get(e.getKey());
+			for(Statement statement : e.getValue()) {
+				// removing and adding a statement again does not change anything
+				if((addedToContext == null || !addedToContext.contains(statement))
+				        && getDelegatedModelSet().contains(statement)) {
+					removed.add(statement);
+				}
+			}
+		}
+		final List<Statement> effectivelyAdded = new ArrayList<Statement>();
+		for(Set<Statement> addedToContext : added.values()) {
+			for(Statement statement : addedToContext) {
+				if(!getDelegatedModelSet().contains(statement)) {
+					effectivelyAdded.add(statement);
+				}
+			}
+		}
+		if(removed.isEmpty() && effectivelyAdded.isEmpty()) {
+			return;
+		}
+		// not a DiffImpl, which would merge equal statements of different
+		// contexts
+		getDelegatedModelSet().update(new DiffReader() {
+
+			@Override
+			public Iterable<Statement> getAdded() {
+				return effectivelyAdded;
+			}
+
+			@Override
+			public Iterable<Statement> getRemoved() {
+				return removed;
+			}
+		});
+		for(Statement statement : removed) {
+			getMerkleTree(statement.getContext()).remove(statement);
+		}
+		for(Statement statement : effectivelyAdded) {
+			getMerkleTree(statement.getContext()).add(statement);
+		}
+	}
+
+	@Override
+	public synchronized void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		List<Statement> removed = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(context, subject,
+		        predicate, object);
+		try {
+			while(it.hasNext()) {
+				removed.add(it.next());
+			}
+		} finally {
+			it.close();
+		}
+		if(!removed.isEmpty()) {
+			getDelegatedModelSet().removeStatements(context, subject, predicate, object);
+			for(Statement statement : removed) {
+				getMerkleTree(statement.getContext()).remove(statement);
+			}
+		}
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		getModel(model.getContextURI()).addModel(model);
+		return true;
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		getModel(contextURI).addModel(model);
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = modelSet.findStatements(Variable.ANY, Variable.ANY,
+		        Variable.ANY, Variable.ANY);
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public synchronized boolean removeModel(URI contextURI) {
+		boolean removed = getDelegatedModelSet().removeModel(contextURI);
+		getMerkleTree(contextURI).clear();
+		return removed;
+	}
+
+	@Override
+	public synchronized void removeAll() throws ModelRuntimeException {
+		getDelegatedModelSet().removeAll();
+		this.trees.clear();
+	}
+
+	@Override
+	public Resource addReificationOf(Statement statement, Resource resource) {
+		Diff diff = new DiffImpl();
+		diff.addStatement(createStatement(statement.getContext(), resource, RDF.type,
+		        RDF.Statement));
+		diff.addStatement(createStatement(statement.getContext(), resource, RDF.subject,
+		        statement.getSubject()));
+		diff.addStatement(createStatement(statement.getContext(), resource, RDF.predicate,
+		        statement.getPredicate()));
+		diff.addStatement(createStatement(statement.getContext(), resource, RDF.object,
+		        statement.getObject()));
+		update(diff);
+		return resource;
+	}
+
+	@Override
+	public BlankNode addReificationOf(Statement statement) {
+		return (BlankNode)addReificationOf(statement, createBlankNode());
+	}
+
+	@Override
+	public void deleteReification(Resource reificationResource) {
+		List<Statement> removed = new ArrayList<Statement>();
+		URI[] predicates = { RDF.type, RDF.subject, RDF.predicate, RDF.object };
+		for(URI predicate : predicates) {
+			ClosableIterator<Statement> it = findStatements(Variable.ANY, reificationResource,
+			        predicate, predicate == RDF.type ? RDF.Statement : Variable.ANY);
+			while(it.hasNext()) {
+				removed.add(it.next());
+			}
+			it.close();
+		}
+		removeAll(removed.iterator());
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin()) {
+
+			@Override
+			void rebuild() {
+				FingerprintingModelSet.this.rebuild();
+			}
+		};
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin(isolationLevel)) {
+
+			@Override
+			void rebuild() {
+				FingerprintingModelSet.this.rebuild();
+			}
+		};
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		super.readFrom(in, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		super.readFrom(reader, syntax, baseURI);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException, ModelRuntimeException,
+	        SyntaxNotSupportedException {
+		super.readFrom(in, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		super.readFrom(in, syntax, baseURI);
+		rebuild();
+	}
+
+}
@@ -0,0 +1,609 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Collects small writes of many threads and writes them to the underlying
+ * model in one transaction (group commit). A batch is written as soon as it
+ * contains <code>maxBatchSize</code> operations or its oldest operation is
+ * <code>maxDelayMillis</code> old, whichever comes first.
+ *
+ * The blocking write methods of {@link Model} return once the batch containing
+ * the write has been committed, and throw a {@link ModelRuntimeException} if
+ * it failed. {@link #submit(DiffReader)} does not block and returns a
+ * {@link Future} instead. All other writes (e.g. pattern removal or reading
+ * from a stream) first flush the buffer and are then executed directly on the
+ * underlying model. Read operations always go directly to the underlying
+ * model, so they see buffered writes of other threads only after their batch
+ * has been committed. Unbuffered writes never run concurrently with the
+ * writing of a batch.
+ *
+ * The flusher thread is started by {@link #open()} and stopped by
+ * {@link #close()}. If the underlying model does not support transactions, a
+ * batch is written while holding its lock.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class GroupCommitModel extends DelegatingModel {
+
+	private static final long serialVersionUID = -4624580263458337216L;
+
+	private static final Logger log = LoggerFactory.getLogger(GroupCommitModel.class);
+
+	private static final Callable<Void> NOTHING = new Callable<Void>() {
+
+		@Override
+		public Void call() {
+			return null;
+		}
+	};
+
+	/**
+	 * Completed by the flusher thread once the batch has been written.
+	 */
+	private static class BatchFuture extends FutureTask<Void> {
+
+		public BatchFuture() {
+			super(NOTHING);
+		}
+
+		void succeeded() {
+			set(null);
+		}
+
+		void failed(Throwable t) {
+			setException(t);
+		}
+	}
+
+	private static class Operation {
+
+		final Statement statement;
+
+		final boolean add;
+
+		Operation(Statement statement, boolean add) {
+			this.statement = statement;
+			this.add = add;
+		}
+	}
+
+	private final int maxBatchSize;
+
+	private final long maxDelayMillis;
+
+	private final Object mutex = new Object();
+
+	private List<Operation> pending = new ArrayList<Operation>();
+
+	private BatchFuture pendingFuture = new BatchFuture();
+
+	/** the batch the flusher is writing right now, null if none */
+	private BatchFuture inFlight = null;
+
+	/** held while writing to the underlying model */
+	private final Object writeLock = new Object();
+
+	/** time of the first operation in the pending batch */
+	private long pendingSince;
+
+	private boolean flushRequested = false;
+
+	private boolean closed = false;
+
+	private transient Thread flusher;
+
+	/**
+	 * @param model to write to
+	 * @param maxBatchSize number of operations after which a batch is written,
+	 *            at least 1
+	 * @param maxDelayMillis maximum time an operation is buffered
+	 */
+	public GroupCommitModel(Model model, int maxBatchSize, long maxDelayMillis) {
+		super(model);
+		if(maxBatchSize < 1) {
+			throw new IllegalArgumentException("maxBatchSize must be at least 1");
+		}
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * Opens the underlying model and starts the flusher thread.
+	 */
+	@Override
+	public Model open() {
+		super.open();
+		synchronized(this.mutex) {
+			if(this.flusher == null) {
+				this.closed = false;
+				this.flusher = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						flushLoop();
+					}
+				}, "rdf2go-group-commit");
+				this.flusher.setDaemon(true);
+				this.flusher.start();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Add the removals and additions of the given diff to the buffer without
+	 * waiting for them to be written.
+	 *
+	 * @param diff removals are applied before additions, like in
+	 *            {@link Model#update(DiffReader)}
+	 * @return a future which completes when the batch containing the diff has
+	 *         been committed
+	 */
+	public Future<Void> submit(DiffReader diff) throws ModelRuntimeException {
+		List<Operation> operations = new ArrayList<Operation>();
+		for(Statement statement : diff.getRemoved()) {
+			operations.add(new Operation(statement, false));
+		}
+		for(Statement statement : diff.getAdded()) {
+			operations.add(new Operation(statement, true));
+		}
+		return enqueue(operations);
+	}
+
+	/**
+	 * Write all buffered operations now and wait until they are committed.
+	 */
+	public void flush() throws ModelRuntimeException {
+		Future<Void> future = requestFlush();
+		if(future != null) {
+			await(future);
+		}
+	}
+
+	/**
+	 * @return the future of the last batch that has to be written, null if
+	 *         there is none
+	 */
+	private Future<Void> requestFlush() {
+		synchronized(this.mutex) {
+			if(this.pending.isEmpty()) {
+				return this.inFlight;
+			}
+			this.flushRequested = true;
+			this.mutex.notifyAll();
+			return this.pendingFuture;
+		}
+	}
+
+	/**
+	 * Wait until all buffered operations have been written. Failed batches
+	 * have been reported to their writers already, so they are ignored here.
+	 */
+	private void drain() throws ModelRuntimeException {
+		Future<Void> future = requestFlush();
+		if(future == null) {
+			return;
+		}
+		try {
+			future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelRuntimeException(e);
+		} catch(ExecutionException e) {
+			// reported to the writers of the batch
+		}
+	}
+
+	/**
+	 * @return number of buffered operations which have not been written yet
+	 */
+	public int getPendingCount() {
+		synchronized(this.mutex) {
+			return this.pending.size();
+		}
+	}
+
+	private Future<Void> enqueue(List<Operation> operations) {
+		synchronized(this.mutex) {
+			if(this.closed || this.flusher == null) {
+				throw new ModelRuntimeException("Model is not open");
+			}
+			if(this.pending.isEmpty()) {
+				this.pendingSince = System.currentTimeMillis();
+				this.mutex.notifyAll();
+			}
+			this.pending.addAll(operations);
+			if(this.pending.size() >= this.maxBatchSize) {
+				this.mutex.notifyAll();
+			}
+			return this.pendingFuture;
+		}
+	}
+
+	private void write(Statement statement, boolean add) {
+		List<Operation> operations = new ArrayList<Operation>(1);
+		operations.add(new Operation(statement, add));
+		await(enqueue(operations));
+	}
+
+	private static void await(Future<Void> future) throws ModelRuntimeException {
+		try {
+			future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelRuntimeException(e);
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof ModelRuntimeException) {
+				throw (ModelRuntimeException)cause;
+			}
+			throw new ModelRuntimeException(cause);
+		}
+	}
+
+	private void flushLoop() {
+		while(true) {
+			List<Operation> batch;
+			BatchFuture future;
+			synchronized(this.mutex) {
+				try {
+					while(!isDue()) {
+						if(this.closed && this.pending.isEmpty()) {
+							return;
+						}
+						if(this.pending.isEmpty()) {
+							this.mutex.wait();
+						} else {
+							this.mutex.wait(Math.max(1, this.pendingSince + this.maxDelayMillis
+							        - System.currentTimeMillis()));
+						}
+					}
+				} catch(InterruptedException e) {
+					return;
+				}
+				batch = this.pending;
+				future = this.pendingFuture;
+				this.pending = new ArrayList<Operation>();
+				this.pendingFuture = new BatchFuture();
+				this.inFlight = future;
+				this.flushRequested = false;
+			}
+			try {
+				synchronized(this.writeLock) {
+					writeBatch(batch);
+				}
+				future.succeeded();
+			} catch(Throwable t) {
+				log.warn("Group commit of " + batch.size() + " operations failed", t);
+				future.failed(t);
+			} finally {
+				synchronized(this.mutex) {
+					if(this.inFlight == future) {
+						this.inFlight = null;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isDue() {
+		if(this.pending.isEmpty()) {
+			return false;
+		}
+		return this.flushRequested || this.closed || this.pending.size() >= this.maxBatchSize
+		        || System.currentTimeMillis() - this.pendingSince >= this.maxDelayMillis;
+	}
+
+	private void writeBatch(List<Operation> batch) {
+		Model model = getDelegatedModel();
+		Transaction transaction;
+		try {
+			transaction = model.begin();
+		} catch(UnsupportedOperationException e) {
+			transaction = null;
+		}
+		if(transaction == null) {
+			model.lock();
+			try {
+				apply(model, batch);
+			} finally {
+				model.unlock();
+			}
+		} else {
+			try {
+				apply(model, batch);
+				transaction.commit();
+			} finally {
+				transaction.close();
+			}
+		}
+	}
+
+	/**
+	 * Apply the operations in order, passing runs of additions resp. removals
+	 * on in one call.
+	 */
+	private static void apply(Model model, List<Operation> batch) {
+		List<Statement> run = new ArrayList<Statement>();
+		boolean add = true;
+		for(Operation operation : batch) {
+			if(operation.add != add && !run.isEmpty()) {
+				applyRun(model, run, add);
+				run.clear();
+			}
+			add = operation.add;
+			run.add(operation.statement);
+		}
+		applyRun(model, run, add);
+	}
+
+	private static void applyRun(Model model, List<Statement> run, boolean add) {
+		if(add) {
+			model.addAll(run.iterator());
+		} else {
+			model.removeAll(run.iterator());
+		}
+	}
+
+	/**
+	 * Writes all buffered operations, stops the flusher thread and closes the
+	 * underlying model.
+	 */
+	@Override
+	public void close() {
+		Thread thread;
+		synchronized(this.mutex) {
+			this.closed = true;
+			this.mutex.notifyAll();
+			thread = this.flusher;
+			this.flusher = null;
+		}
+		if(thread != null) {
+			try {
+				thread.join();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		super.close();
+	}
+
+	// buffered writes
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Operation> operations = new ArrayList<Operation>();
+		while(other.hasNext()) {
+			operations.add(new Operation(other.next(), true));
+		}
+		await(enqueue(operations));
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		addAll(model.iterator());
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate,
+		        getDelegatedModel().createLanguageTagLiteral(literal, languageTag));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate,
+		        getDelegatedModel().createDatatypeLiteral(literal, datatypeURI));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		write(statement, true);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Operation> operations = new ArrayList<Operation>();
+		while(other.hasNext()) {
+			operations.add(new Operation(other.next(), false));
+		}
+		await(enqueue(operations));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate,
+		        getDelegatedModel().createLanguageTagLiteral(literal, languageTag));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate,
+		        getDelegatedModel().createDatatypeLiteral(literal, datatypeURI));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		write(statement, false);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        URI datatypeURI) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		await(submit(diff));
+	}
+
+	// unbuffered writes, which have to see all earlier writes
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.removeAll();
+		}
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.removeStatements(subject, predicate, object);
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(in);
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(in, syntax);
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(in, syntax, baseURI);
+		}
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(r);
+		}
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(reader, syntax);
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		drain();
+		synchronized(this.writeLock) {
+			super.readFrom(in, syntax, baseURI);
+		}
+	}
+
+}
@@ -0,0 +1,1117 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.NotifyingModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * A model set in front of a (persistent) store which keeps a complete copy of
+ * some hot contexts in a replica, usually an in-memory model set. Reads bound
+ * to a hot context are answered by the replica, all writes go to the store and
+ * are applied to the replica if they touch a hot context.
+ *
+ * Hot contexts are configured, or promoted automatically once they have been
+ * read often enough, see {@link #setAutoPromotion(long, int, long)}. The
+ * default context is never hot.
+ *
+ * Writes made through this model set are applied to the replica once the
+ * store has made them, a failed bulk write reloads the affected hot contexts.
+ * If the store is a {@link NotifyingModelSet}, its change notifications keep
+ * the replica consistent with writes made by others through the store. As a
+ * store notifies before it writes, a notified change is applied only once the
+ * store shows it, until then the context is read from the store. Writes which
+ * the store does not notify, e.g. reading from a stream, or which failed after
+ * they were notified require a call of {@link #reload()}.
+ *
+ * Reads from the replica return a copy of the matching statements, which is
+ * not affected by later writes.
+ *
+ * Within a transaction started with {@link #begin()}, reads go to the store
+ * and the changes of hot contexts are collected. They are applied to the
+ * replica when the transaction commits, a rollback drops them.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class HotReplicaModelSet extends DelegatingModelSet {
+
+	private static final long serialVersionUID = -3318006927180449815L;
+
+	private final ModelSet replica;
+
+	private final Set<URI> configured = new HashSet<URI>();
+
+	/** configured and promoted contexts, read without locking */
+	private final Set<URI> hot = new CopyOnWriteArraySet<URI>();
+
+	private final Set<URI> promoted = new LinkedHashSet<URI>();
+
+	/** contexts which were too large to be promoted */
+	private final Set<URI> rejected = new HashSet<URI>();
+
+	private final ConcurrentMap<URI,AtomicLong> accessCounts =
+	        new ConcurrentHashMap<URI,AtomicLong>();
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final ModelChangedListener storeListener = new ReplicaListener();
+
+	/**
+	 * hot context -> statement -> true if added, false if removed. Changes
+	 * notified by the store which it has not shown yet, changed while holding
+	 * the write lock.
+	 */
+	private final ConcurrentMap<URI,Map<Statement,Boolean>> unconfirmed =
+	        new ConcurrentHashMap<URI,Map<Statement,Boolean>>();
+
+	private long promotionThreshold = 0;
+
+	private int maxPromoted = 0;
+
+	private long maxContextSize = Long.MAX_VALUE;
+
+	private final AtomicLong replicaReads = new AtomicLong();
+
+	private final AtomicLong storeReads = new AtomicLong();
+
+	/** the active transaction, changed while holding the write lock */
+	private volatile ReplicaTransaction transaction;
+
+	/**
+	 * @param store the model set which holds all data
+	 * @param replica an empty model set to hold the copies of the hot contexts
+	 * @param hotContexts contexts which are always replicated
+	 */
+	public HotReplicaModelSet(ModelSet store, ModelSet replica, URI ... hotContexts) {
+		super(store);
+		this.replica = replica;
+		for(URI contextURI : hotContexts) {
+			this.configured.add(contextURI);
+		}
+	}
+
+	/**
+	 * Loads the hot contexts into the replica.
+	 */
+	@Override
+	public ModelSet open() {
+		super.open();
+		this.replica.open();
+		if(getDelegatedModelSet() instanceof NotifyingModelSet) {
+			((NotifyingModelSet)getDelegatedModelSet())
+			        .addModelSetChangedListener(this.storeListener);
+		}
+		this.lock.writeLock().lock();
+		try {
+			for(URI contextURI : this.configured) {
+				load(contextURI);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(getDelegatedModelSet() instanceof NotifyingModelSet) {
+			((NotifyingModelSet)getDelegatedModelSet())
+			        .removeModelSetChangedListener(this.storeListener);
+		}
+		this.replica.close();
+		super.close();
+	}
+
+	/**
+	 * Promote contexts which are read often. Promoted contexts are replaced by
+	 * more frequently read ones when the maximum is reached.
+	 *
+	 * @param threshold number of reads after which a context is promoted, 0
+	 *            to disable promotion
+	 * @param maxContexts maximal number of promoted contexts, in addition to
+	 *            the configured ones
+	 * @param maxContextSize contexts with more statements are not promoted
+	 */
+	public void setAutoPromotion(long threshold, int maxContexts, long maxContextSize) {
+		this.lock.writeLock().lock();
+		try {
+			this.promotionThreshold = threshold;
+			this.maxPromoted = maxContexts;
+			this.maxContextSize = maxContextSize;
+			this.rejected.clear();
+			while(this.promoted.size() > maxContexts) {
+				demote(this.promoted.iterator().next());
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	public boolean isHot(URI contextURI) {
+		return contextURI != null && this.hot.contains(contextURI);
+	}
+
+	/**
+	 * @return the configured and promoted contexts
+	 */
+	public Set<URI> getHotContexts() {
+		return new HashSet<URI>(this.hot);
+	}
+
+	/**
+	 * @return number of reads answered by the replica
+	 */
+	public long getReplicaReads() {
+		return this.replicaReads.get();
+	}
+
+	/**
+	 * @return number of reads bound to a context which were answered by the
+	 *         store
+	 */
+	public long getStoreReads() {
+		return this.storeReads.get();
+	}
+
+	/**
+	 * Copies all hot contexts from the store again, e.g. after the store has
+	 * been changed without notification. Notified changes which the store has
+	 * not shown yet are dropped.
+	 */
+	public void reload() {
+		this.lock.writeLock().lock();
+		try {
+			if(this.transaction != null) {
+				this.transaction.reloadAll = true;
+				return;
+			}
+			this.unconfirmed.clear();
+			this.replica.removeAll();
+			for(URI contextURI : this.hot) {
+				load(contextURI);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private void reload(URI contextURI) {
+		this.lock.writeLock().lock();
+		try {
+			if(!isHot(contextURI)) {
+				return;
+			}
+			if(this.transaction != null) {
+				this.transaction.reload.add(contextURI);
+				return;
+			}
+			this.replica.removeModel(contextURI);
+			load(contextURI);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/** must hold the write lock */
+	private void load(URI contextURI) {
+		ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(contextURI,
+		        Variable.ANY, Variable.ANY, Variable.ANY);
+		try {
+			this.replica.addAll(it);
+		} finally {
+			it.close();
+		}
+		this.hot.add(contextURI);
+	}
+
+	/** must hold the write lock */
+	private void demote(URI contextURI) {
+		this.promoted.remove(contextURI);
+		this.hot.remove(contextURI);
+		this.unconfirmed.remove(contextURI);
+		this.replica.removeModel(contextURI);
+	}
+
+	/**
+	 * Applies the notified changes of the context which the store shows by
+	 * now.
+	 *
+	 * @return true if no notified change of the context is left
+	 */
+	private boolean confirm(URI contextURI) {
+		if(!this.unconfirmed.containsKey(contextURI)) {
+			return true;
+		}
+		this.lock.writeLock().lock();
+		try {
+			Map<Statement,Boolean> changes = this.unconfirmed.get(contextURI);
+			if(changes == null) {
+				return true;
+			}
+			List<Statement> added = new ArrayList<Statement>();
+			List<Statement> removed = new ArrayList<Statement>();
+			Iterator<Map.Entry<Statement,Boolean>> it = changes.entrySet().iterator();
+			while(it.hasNext()) {
+				Map.Entry<Statement,Boolean> change = it.next();
+				Statement statement = change.getKey();
+				boolean contained = getDelegatedModelSet().containsStatements(contextURI,
+				        statement.getSubject(), statement.getPredicate(), statement.getObject());
+				if(contained == change.getValue()) {
+					(contained ? added : removed).add(statement);
+					it.remove();
+				}
+			}
+			this.replica.update(ModelStatisticsImpl.changes(removed, added));
+			if(changes.isEmpty()) {
+				this.unconfirmed.remove(contextURI);
+				return true;
+			}
+			return false;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Counts a read of the context and promotes it if it became hot.
+	 *
+	 * @return true if the read can be answered by the replica
+	 */
+	private boolean read(UriOrVariable context) {
+		if(!(context instanceof URI)) {
+			return false;
+		}
+		if(this.transaction != null) {
+			// the replica does not see uncommitted changes
+			this.storeReads.incrementAndGet();
+			return false;
+		}
+		URI contextURI = (URI)context;
+		if(isHot(contextURI)) {
+			if(confirm(contextURI)) {
+				this.replicaReads.incrementAndGet();
+				return true;
+			}
+			this.storeReads.incrementAndGet();
+			return false;
+		}
+		if(this.promotionThreshold > 0) {
+			AtomicLong count = this.accessCounts.get(contextURI);
+			if(count == null) {
+				count = new AtomicLong();
+				AtomicLong existing = this.accessCounts.putIfAbsent(contextURI, count);
+				if(existing != null) {
+					count = existing;
+				}
+			}
+			if(count.incrementAndGet() >= this.promotionThreshold && promote(contextURI)) {
+				this.replicaReads.incrementAndGet();
+				return true;
+			}
+		}
+		this.storeReads.incrementAndGet();
+		return false;
+	}
+
+	private boolean promote(URI contextURI) {
+		this.lock.writeLock().lock();
+		try {
+			if(isHot(contextURI)) {
+				return true;
+			}
+			if(this.maxPromoted == 0 || this.rejected.contains(contextURI)) {
+				return false;
+			}
+			if(this.promoted.size() >= this.maxPromoted) {
+				URI coldest = null;
+				long coldestCount = Long.MAX_VALUE;
+				for(URI candidate : this.promoted) {
+					long count = accessCount(candidate);
+					if(count < coldestCount) {
+						coldest = candidate;
+						coldestCount = count;
+					}
+				}
+				if(coldestCount >= accessCount(contextURI)) {
+					return false;
+				}
+				demote(coldest);
+			}
+			long size = getDelegatedModelSet().countStatements(
+			        new QuadPatternImpl(contextURI, Variable.ANY, Variable.ANY, Variable.ANY));
+			if(size > this.maxContextSize) {
+				this.rejected.add(contextURI);
+				return false;
+			}
+			load(contextURI);
+			this.promoted.add(contextURI);
+			return true;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	private long accessCount(URI contextURI) {
+		AtomicLong count = this.accessCounts.get(contextURI);
+		return count == null ? 0 : count.get();
+	}
+
+	/**
+	 * @return the statements in hot contexts
+	 */
+	private List<Statement> hotOnly(Iterable<? extends Statement> statements) {
+		List<Statement> result = new ArrayList<Statement>();
+		for(Statement statement : statements) {
+			if(isHot(statement.getContext())) {
+				result.add(statement);
+			}
+		}
+		return result;
+	}
+
+	private static List<Statement> none() {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * Applies changes of hot contexts to the replica, or records them in the
+	 * active transaction. Must hold the write lock.
+	 */
+	private void replicate(List<Statement> removed, List<Statement> added) {
+		if(removed.isEmpty() && added.isEmpty()) {
+			return;
+		}
+		if(this.transaction != null) {
+			this.transaction.changes.add(ModelStatisticsImpl.changes(removed, added));
+		} else {
+			this.replica.update(ModelStatisticsImpl.changes(removed, added));
+		}
+	}
+
+	/**
+	 * After a failed write the store may have made part of it, so the hot
+	 * contexts it touched are copied again. Must hold the write lock.
+	 */
+	private void resync(List<Statement> statements) {
+		Set<URI> contextURIs = new HashSet<URI>();
+		for(Statement statement : statements) {
+			if(isHot(statement.getContext())) {
+				contextURIs.add(statement.getContext());
+			}
+		}
+		for(URI contextURI : contextURIs) {
+			reload(contextURI);
+		}
+	}
+
+	private static List<Statement> asList(Iterator<? extends Statement> it) {
+		List<Statement> result = new ArrayList<Statement>();
+		while(it.hasNext()) {
+			result.add(it.next());
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy of the matching statements of the replica
+	 */
+	private ClosableIterator<Statement> findInReplica(UriOrVariable contextURI,
+	        ResourceOrVariable subject, UriOrVariable predicate, NodeOrVariable object) {
+		this.lock.readLock().lock();
+		try {
+			ClosableIterator<Statement> it = this.replica.findStatements(contextURI, subject,
+			        predicate, object);
+			try {
+				return new PseudoClosableIterator<Statement>(asList(it).iterator());
+			} finally {
+				it.close();
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private boolean containsInReplica(UriOrVariable contextURI, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) {
+		this.lock.readLock().lock();
+		try {
+			return this.replica.containsStatements(contextURI, subject, predicate, object);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private long countInReplica(QuadPattern pattern) {
+		this.lock.readLock().lock();
+		try {
+			return this.replica.countStatements(pattern);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	// /////////////////////////////////
+	// reads
+
+	@Override
+	public ClosableIterator<Statement> findStatements(QuadPattern pattern)
+	        throws ModelRuntimeException {
+		return findStatements(pattern.getContext(), pattern.getSubject(), pattern.getPredicate(),
+		        pattern.getObject());
+	}
+
+	@Override
+	public ClosableIterator<Statement> findStatements(UriOrVariable contextURI,
+	        ResourceOrVariable subject, UriOrVariable predicate, NodeOrVariable object)
+	        throws ModelRuntimeException {
+		if(read(contextURI)) {
+			return findInReplica(contextURI, subject, predicate, object);
+		}
+		return super.findStatements(contextURI, subject, predicate, object);
+	}
+
+	@Override
+	public boolean containsStatements(UriOrVariable contextURI, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		if(read(contextURI)) {
+			return containsInReplica(contextURI, subject, predicate, object);
+		}
+		return super.containsStatements(contextURI, subject, predicate, object);
+	}
+
+	@Override
+	public long countStatements(QuadPattern pattern) throws ModelRuntimeException {
+		if(read(pattern.getContext())) {
+			return countInReplica(pattern);
+		}
+		return getDelegatedModelSet().countStatements(pattern);
+	}
+
+	@Override
+	public boolean contains(Statement statement) throws ModelRuntimeException {
+		return containsStatements(statement.getContext(), statement.getSubject(), statement
+		        .getPredicate(), statement.getObject());
+	}
+
+	/**
+	 * The model reads from the replica while its context is hot and writes
+	 * through to the store.
+	 */
+	@Override
+	public Model getModel(URI contextURI) {
+		return new ContextModel(super.getModel(contextURI), contextURI);
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		List<Model> models = new ArrayList<Model>();
+		ClosableIterator<Model> it = super.getModels();
+		try {
+			while(it.hasNext()) {
+				Model model = it.next();
+				models.add(new ContextModel(model, model.getContextURI()));
+			}
+		} finally {
+			it.close();
+		}
+		return new PseudoClosableIterator<Model>(models.iterator());
+	}
+
+	// /////////////////////////////////
+	// writes
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			super.addStatement(statement);
+			replicate(none(), hotOnly(Collections.singletonList(statement)));
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			super.removeStatement(statement);
+			replicate(hotOnly(Collections.singletonList(statement)), none());
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		List<Statement> list = asList(statements);
+		this.lock.writeLock().lock();
+		try {
+			try {
+				getDelegatedModelSet().addAll(list.iterator());
+			} catch(RuntimeException e) {
+				resync(list);
+				throw e;
+			}
+			replicate(none(), hotOnly(list));
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		List<Statement> list = asList(statements);
+		this.lock.writeLock().lock();
+		try {
+			try {
+				getDelegatedModelSet().removeAll(list.iterator());
+			} catch(RuntimeException e) {
+				resync(list);
+				throw e;
+			}
+			replicate(hotOnly(list), none());
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeStatements(QuadPattern quadPattern) throws ModelRuntimeException {
+		removeStatements(quadPattern.getContext(), quadPattern.getSubject(), quadPattern
+		        .getPredicate(), quadPattern.getObject());
+	}
+
+	/**
+	 * The replica holds exactly the hot contexts, so the same pattern removes
+	 * the matching statements from it. Within a transaction the affected hot
+	 * contexts are reloaded on commit instead.
+	 */
+	@Override
+	public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			getDelegatedModelSet().removeStatements(context, subject, predicate, object);
+			if(context instanceof Variable || context instanceof URI && isHot((URI)context)) {
+				if(this.transaction == null) {
+					this.replica.removeStatements(context, subject, predicate, object);
+				} else if(context instanceof URI) {
+					this.transaction.reload.add((URI)context);
+				} else {
+					this.transaction.reloadAll = true;
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			try {
+				super.update(diff);
+			} catch(RuntimeException e) {
+				resync(hotOnly(diff.getRemoved()));
+				resync(hotOnly(diff.getAdded()));
+				throw e;
+			}
+			replicate(hotOnly(diff.getRemoved()), hotOnly(diff.getAdded()));
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		this.lock.writeLock().lock();
+		try {
+			boolean result = super.addModel(model);
+			if(isHot(model.getContextURI())) {
+				if(this.transaction == null) {
+					this.replica.addModel(model);
+				} else {
+					this.transaction.reload.add(model.getContextURI());
+				}
+			}
+			return result;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			super.addModel(model, contextURI);
+			if(isHot(contextURI)) {
+				if(this.transaction == null) {
+					this.replica.addModel(model, contextURI);
+				} else {
+					this.transaction.reload.add(contextURI);
+				}
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		super.addModelSet(modelSet);
+		reload();
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		this.lock.writeLock().lock();
+		try {
+			boolean result = super.removeModel(contextURI);
+			if(isHot(contextURI)) {
+				if(this.transaction == null) {
+					this.replica.removeModel(contextURI);
+				} else {
+					this.transaction.reload.add(contextURI);
+				}
+			}
+			return result;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		this.lock.writeLock().lock();
+		try {
+			getDelegatedModelSet().removeAll();
+			if(this.transaction == null) {
+				this.replica.removeAll();
+			} else {
+				this.transaction.reloadAll = true;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		reload();
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax);
+		reload();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax, baseURI);
+		reload();
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		reload();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException, ModelRuntimeException {
+		super.readFrom(in, syntax);
+		reload();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax, baseURI);
+		reload();
+	}
+
+	// ////////// transactions
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return track(super.begin());
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return track(super.begin(isolationLevel));
+	}
+
+	private Transaction track(Transaction transaction) {
+		this.lock.writeLock().lock();
+		try {
+			this.transaction = new ReplicaTransaction(transaction);
+			return this.transaction;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Collects the changes of hot contexts within a transaction and applies
+	 * them to the replica once the store has committed.
+	 */
+	private class ReplicaTransaction implements Transaction {
+
+		private final Transaction transaction;
+
+		/** in the order they were made */
+		final List<DiffReader> changes = new ArrayList<DiffReader>();
+
+		/** contexts changed in ways which are copied from the store on commit */
+		final Set<URI> reload = new HashSet<URI>();
+
+		boolean reloadAll = false;
+
+		ReplicaTransaction(Transaction transaction) {
+			this.transaction = transaction;
+		}
+
+		@Override
+		public IsolationLevel getIsolationLevel() {
+			return this.transaction.getIsolationLevel();
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.transaction.isActive();
+		}
+
+		@Override
+		public void commit() throws ModelRuntimeException {
+			try {
+				this.transaction.commit();
+			} finally {
+				ended(this);
+			}
+			HotReplicaModelSet.this.lock.writeLock().lock();
+			try {
+				if(this.reloadAll) {
+					reload();
+					return;
+				}
+				for(DiffReader diff : this.changes) {
+					HotReplicaModelSet.this.replica.update(diff);
+				}
+				for(URI contextURI : this.reload) {
+					reload(contextURI);
+				}
+			} finally {
+				HotReplicaModelSet.this.lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public void rollback() throws ModelRuntimeException {
+			try {
+				this.transaction.rollback();
+			} finally {
+				ended(this);
+			}
+		}
+
+		@Override
+		public void close() throws ModelRuntimeException {
+			try {
+				this.transaction.close();
+			} finally {
+				ended(this);
+			}
+		}
+	}
+
+	private void ended(ReplicaTransaction ended) {
+		this.lock.writeLock().lock();
+		try {
+			if(this.transaction == ended) {
+				this.transaction = null;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	// /////////////////////////////////
+	// notifications
+
+	/**
+	 * Notes the notified changes of hot contexts, which the store makes after
+	 * notifying them. Changes made through this model set are notified while
+	 * holding the write lock and applied once the store has made them.
+	 */
+	private class ReplicaListener implements ModelChangedListener {
+
+		private void changed(Iterator<? extends Statement> statements, boolean added) {
+			if(HotReplicaModelSet.this.lock.isWriteLockedByCurrentThread()) {
+				return;
+			}
+			HotReplicaModelSet.this.lock.writeLock().lock();
+			try {
+				while(statements.hasNext()) {
+					Statement statement = statements.next();
+					URI contextURI = statement.getContext();
+					if(!isHot(contextURI)) {
+						continue;
+					}
+					Map<Statement,Boolean> changes = HotReplicaModelSet.this.unconfirmed
+					        .get(contextURI);
+					if(changes == null) {
+						changes = new HashMap<Statement,Boolean>();
+						HotReplicaModelSet.this.unconfirmed.put(contextURI, changes);
+					}
+					changes.put(statement, added);
+				}
+			} finally {
+				HotReplicaModelSet.this.lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public void addedStatement(Statement statement) {
+			changed(Collections.singletonList(statement).iterator(), true);
+		}
+
+		@Override
+		public void addedStatements(Iterator<? extends Statement> statements) {
+			changed(statements, true);
+		}
+
+		@Override
+		public void removedStatement(Statement statement) {
+			changed(Collections.singletonList(statement).iterator(), false);
+		}
+
+		@Override
+		public void removedStatements(Iterator<? extends Statement> statements) {
+			changed(statements, false);
+		}
+
+		@Override
+		public void performedUpdate(DiffReader diff) {
+			changed(diff.getRemoved().iterator(), false);
+			changed(diff.getAdded().iterator(), true);
+		}
+	}
+
+	/**
+	 * A model of the store, which reads from the replica while its context is
+	 * hot. Its writes are applied to the replica once the store has made
+	 * them, writes which are not single statements reload the context.
+	 */
+	private class ContextModel extends NotifyingModelLayer {
+
+		private static final long serialVersionUID = -6205536925633411466L;
+
+		private final URI contextURI;
+
+		ContextModel(Model model, URI contextURI) {
+			super(model);
+			this.contextURI = contextURI;
+		}
+
+		private List<Statement> hot(Statement statement) {
+			return hotOnly(Collections.singletonList(new StatementImpl(this.contextURI,
+			        statement.getSubject(), statement.getPredicate(), statement.getObject())));
+		}
+
+		private List<Statement> hot(Iterable<? extends Statement> statements) {
+			List<Statement> result = new ArrayList<Statement>();
+			for(Statement statement : statements) {
+				result.addAll(hot(statement));
+			}
+			return result;
+		}
+
+		/** the other writes of statements end here */
+		@Override
+		public void addStatement(Statement statement) throws ModelRuntimeException {
+			HotReplicaModelSet.this.lock.writeLock().lock();
+			try {
+				super.addStatement(statement);
+				replicate(none(), hot(statement));
+			} finally {
+				HotReplicaModelSet.this.lock.writeLock().unlock();
+			}
+		}
+
+		/** the other removals of statements end here */
+		@Override
+		public void removeStatement(Statement statement) throws ModelRuntimeException {
+			HotReplicaModelSet.this.lock.writeLock().lock();
+			try {
+				super.removeStatement(statement);
+				replicate(hot(statement), none());
+			} finally {
+				HotReplicaModelSet.this.lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+			HotReplicaModelSet.this.lock.writeLock().lock();
+			try {
+				try {
+					super.update(diff);
+				} catch(RuntimeException e) {
+					reload(this.contextURI);
+					throw e;
+				}
+				replicate(hot(diff.getRemoved()), hot(diff.getAdded()));
+			} finally {
+				HotReplicaModelSet.this.lock.writeLock().unlock();
+			}
+		}
+
+		@Override
+		public ClosableIterator<Statement> findStatements(ResourceOrVariable subject,
+		        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+			if(read(this.contextURI)) {
+				return findInReplica(this.contextURI, subject, predicate, object);
+			}
+			return super.findStatements(subject, predicate, object);
+		}
+
+		@Override
+		public ClosableIterator<Statement> findStatements(TriplePattern pattern)
+		        throws ModelRuntimeException {
+			return findStatements(pattern.getSubject(), pattern.getPredicate(), pattern
+			        .getObject());
+		}
+
+		@Override
+		public boolean contains(ResourceOrVariable subject, UriOrVariable predicate,
+		        NodeOrVariable object) throws ModelRuntimeException {
+			if(read(this.contextURI)) {
+				return containsInReplica(this.contextURI, subject, predicate, object);
+			}
+			return super.contains(subject, predicate, object);
+		}
+
+		@Override
+		public ClosableIterator<Statement> iterator() {
+			return findStatements(Variable.ANY, Variable.ANY, Variable.ANY);
+		}
+
+		@Override
+		public long size() throws ModelRuntimeException {
+			if(read(this.contextURI)) {
+				return countInReplica(new QuadPatternImpl(this.contextURI, Variable.ANY,
+				        Variable.ANY, Variable.ANY));
+			}
+			return super.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return size() == 0;
+		}
+
+		@Override
+		public void addModel(Model model) throws ModelRuntimeException {
+			super.addModel(model);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void removeAll() throws ModelRuntimeException {
+			super.removeAll();
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+			super.readFrom(in);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(InputStream reader, Syntax syntax) throws IOException,
+		        ModelRuntimeException {
+			super.readFrom(reader, syntax);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(InputStream reader, Syntax syntax, String baseURI)
+		        throws IOException, ModelRuntimeException {
+			super.readFrom(reader, syntax, baseURI);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+			super.readFrom(r);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException,
+		        IOException {
+			super.readFrom(reader, syntax);
+			reload(this.contextURI);
+		}
+
+		@Override
+		public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+		        ModelRuntimeException {
+			super.readFrom(in, syntax, baseURI);
+			reload(this.contextURI);
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.util.ChangeJournal;
+
+
+/**
+ * Appends the successful changes of a {@link JournalingModel} or
+ * {@link JournalingModelSet}, and of the models of the latter, to a
+ * {@link ChangeJournal}.
+ *
+ * A transaction belongs to the thread which started it: the changes this
+ * thread makes until the transaction ends are collected and appended as one
+ * entry when it commits, a rollback appends nothing. Changes of other threads
+ * are appended directly.
+ *
+ * @author agent
+ * @since 5.1
+ */
+class JournalWriter {
+
+	/**
+	 * Collects the net changes of a transaction and appends them once it has
+	 * been committed.
+	 */
+	private class JournalingTransaction implements Transaction {
+
+		private final Transaction transaction;
+
+		private final Set<Statement> added = new LinkedHashSet<Statement>();
+
+		private final Set<Statement> removed = new LinkedHashSet<Statement>();
+
+		/** set once the transaction ended, possibly in another thread */
+		private volatile boolean ended = false;
+
+		JournalingTransaction(Transaction transaction) {
+			this.transaction = transaction;
+		}
+
+		synchronized void record(Iterable<? extends Statement> removedStatements,
+		        Iterable<? extends Statement> addedStatements) {
+			// the last change of a statement wins
+			for(Statement statement : removedStatements) {
+				this.added.remove(statement);
+				this.removed.add(statement);
+			}
+			for(Statement statement : addedStatements) {
+				this.removed.remove(statement);
+				this.added.add(statement);
+			}
+		}
+
+		@Override
+		public IsolationLevel getIsolationLevel() {
+			return this.transaction.getIsolationLevel();
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.transaction.isActive();
+		}
+
+		@Override
+		public synchronized void commit() throws ModelRuntimeException {
+			try {
+				this.transaction.commit();
+			} finally {
+				ended(this);
+			}
+			if(!this.added.isEmpty() || !this.removed.isEmpty()) {
+				JournalWriter.this.journal.append(new DiffImpl(this.added.iterator(),
+				        this.removed.iterator()));
+			}
+		}
+
+		@Override
+		public void rollback() throws ModelRuntimeException {
+			try {
+				this.transaction.rollback();
+			} finally {
+				ended(this);
+			}
+		}
+
+		@Override
+		public void close() throws ModelRuntimeException {
+			try {
+				this.transaction.close();
+			} finally {
+				ended(this);
+			}
+		}
+	}
+
+	private final ChangeJournal journal;
+
+	private final ThreadLocal<JournalingTransaction> transaction = new ThreadLocal<JournalingTransaction>();
+
+	JournalWriter(ChangeJournal journal) {
+		this.journal = journal;
+	}
+
+	ChangeJournal getJournal() {
+		return this.journal;
+	}
+
+	/**
+	 * The changes of the current thread are collected in the transaction until
+	 * it ends.
+	 */
+	Transaction track(Transaction transaction) {
+		JournalingTransaction tracked = new JournalingTransaction(transaction);
+		this.transaction.set(tracked);
+		return tracked;
+	}
+
+	private void ended(JournalingTransaction ended) {
+		ended.ended = true;
+		if(this.transaction.get() == ended) {
+			this.transaction.remove();
+		}
+	}
+
+	/**
+	 * Append a successful change, or add it to the transaction of the current
+	 * thread.
+	 */
+	void journal(Iterable<? extends Statement> removed, Iterable<? extends Statement> added) {
+		JournalingTransaction current = this.transaction.get();
+		if(current != null && current.ended) {
+			// ended by another thread
+			this.transaction.remove();
+			current = null;
+		}
+		if(current != null) {
+			current.record(removed, added);
+		} else {
+			this.journal.append(new DiffImpl(added.iterator(), removed.iterator()));
+		}
+	}
+
+}
@@ -0,0 +1,384 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.ChangeJournal;
+
+
+/**
+ * Records all writes to a model in a {@link ChangeJournal}. A change is
+ * appended only after the underlying model accepted it, so failed writes are
+ * never journalled. Each write operation becomes one entry, e.g.
+ * {@link #addAll(Iterator)} appends all its statements at once. A transaction
+ * started with {@link #begin()} belongs to the thread which started it: the
+ * changes of this thread are collected and appended as one entry when the
+ * transaction commits, a rollback appends nothing. Changes of other threads
+ * are appended as usual.
+ *
+ * Pattern removals and {@link #removeAll()} look up the matching statements
+ * and remove them in batches of {@link #REMOVE_BATCH_SIZE}, each batch becomes
+ * one entry. Reading from a stream parses into a temporary model first, so
+ * the parsed statements can be journalled. See {@link JournalingModelSet} for
+ * model sets.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class JournalingModel extends DelegatingModel {
+
+	private static final long serialVersionUID = 7141962201893405471L;
+
+	/**
+	 * Number of statements which {@link #removeAll()} and pattern removals
+	 * look up, remove and journal at once.
+	 */
+	public static final int REMOVE_BATCH_SIZE = 1000;
+
+	private final JournalWriter writer;
+
+	/** the context of the journalled statements */
+	private final URI contextURI;
+
+	/**
+	 * @param model to write to
+	 * @param journal to append the changes of the model to. It is not closed
+	 *            together with the model.
+	 */
+	public JournalingModel(Model model, ChangeJournal journal) {
+		this(model, new JournalWriter(journal), null);
+	}
+
+	/**
+	 * A model of a {@link JournalingModelSet}, which appends its changes to
+	 * the journal of the model set.
+	 */
+	JournalingModel(Model model, JournalWriter writer, URI contextURI) {
+		super(model);
+		this.writer = writer;
+		this.contextURI = contextURI;
+	}
+
+	public ChangeJournal getJournal() {
+		return this.writer.getJournal();
+	}
+
+	/**
+	 * Append a successful change, or add it to the transaction of the current
+	 * thread.
+	 */
+	private void journal(Iterable<? extends Statement> removed,
+	        Iterable<? extends Statement> added) {
+		this.writer.journal(inContext(removed), inContext(added));
+	}
+
+	private List<Statement> inContext(Iterable<? extends Statement> statements) {
+		List<Statement> result = new ArrayList<Statement>();
+		for(Statement statement : statements) {
+			result.add(new StatementImpl(this.contextURI, statement.getSubject(), statement
+			        .getPredicate(), statement.getObject()));
+		}
+		return result;
+	}
+
+	private static List<Statement> toList(Iterator<? extends Statement> statements) {
+		List<Statement> list = new ArrayList<Statement>();
+		while(statements.hasNext()) {
+			list.add(statements.next());
+		}
+		return list;
+	}
+
+	private static List<Statement> none() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.writer.track(super.begin());
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.writer.track(super.begin(isolationLevel));
+	}
+
+	// writes
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> added = toList(other);
+		super.addAll(added.iterator());
+		journal(none(), added);
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate,
+		        getDelegatedModel().createLanguageTagLiteral(literal, languageTag));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate,
+		        getDelegatedModel().createDatatypeLiteral(literal, datatypeURI));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		super.addStatement(statement);
+		journal(none(), Collections.singletonList(statement));
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		removeInBatches(Variable.ANY, Variable.ANY, Variable.ANY);
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> removed = toList(other);
+		super.removeAll(removed.iterator());
+		journal(removed, none());
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate,
+		        getDelegatedModel().createLanguageTagLiteral(literal, languageTag));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate,
+		        getDelegatedModel().createDatatypeLiteral(literal, datatypeURI));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		super.removeStatement(statement);
+		journal(Collections.singletonList(statement), none());
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        URI datatypeURI) throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		this.removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		removeInBatches(subject, predicate, object);
+	}
+
+	/**
+	 * Looks up, removes and journals the matching statements in batches, so
+	 * they are never all held in memory.
+	 */
+	private void removeInBatches(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) {
+		List<Statement> batch;
+		do {
+			batch = new ArrayList<Statement>();
+			ClosableIterator<Statement> it = super.findStatements(subject, predicate, object);
+			try {
+				while(batch.size() < REMOVE_BATCH_SIZE && it.hasNext()) {
+					batch.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+			if(!batch.isEmpty()) {
+				super.removeAll(batch.iterator());
+				journal(batch, none());
+			}
+		} while(batch.size() == REMOVE_BATCH_SIZE);
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		super.update(diff);
+		journal(diff.getRemoved(), diff.getAdded());
+	}
+
+	// reading parses into a temporary model first
+
+	private Model createTemporaryModel() {
+		Model parsed = RDF2Go.getModelFactory().createModel();
+		parsed.open();
+		return parsed;
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in, syntax);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(r);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(reader, syntax);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+}
@@ -0,0 +1,358 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.ChangeJournal;
+
+
+/**
+ * Records all writes to a model set in a {@link ChangeJournal}, like
+ * {@link JournalingModel}. The models returned by {@link #getModel(URI)},
+ * {@link #getDefaultModel()} and {@link #getModels()} append their changes to
+ * the same journal, in the context of the model.
+ *
+ * A change is appended only after the underlying model set accepted it. A
+ * transaction started with {@link #begin()} belongs to the thread which
+ * started it, the changes of this thread are appended as one entry when it
+ * commits. Pattern removals, {@link #removeModel(URI)} and
+ * {@link #removeAll()} remove the matching statements in batches of
+ * {@link JournalingModel#REMOVE_BATCH_SIZE}, each batch becomes one entry.
+ * The statements of the default model are journalled with a null context.
+ * Reading from a stream parses into a temporary model set first.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class JournalingModelSet extends DelegatingModelSet {
+
+	private static final long serialVersionUID = -3378916275301862460L;
+
+	private final JournalWriter writer;
+
+	/**
+	 * @param modelset to write to
+	 * @param journal to append the changes of the model set to. It is not
+	 *            closed together with the model set.
+	 */
+	public JournalingModelSet(ModelSet modelset, ChangeJournal journal) {
+		super(modelset);
+		this.writer = new JournalWriter(journal);
+	}
+
+	public ChangeJournal getJournal() {
+		return this.writer.getJournal();
+	}
+
+	private static List<Statement> toList(Iterator<? extends Statement> statements) {
+		List<Statement> list = new ArrayList<Statement>();
+		while(statements.hasNext()) {
+			list.add(statements.next());
+		}
+		return list;
+	}
+
+	private static List<Statement> none() {
+		return Collections.emptyList();
+	}
+
+	private static Statement inContext(URI contextURI, Statement statement) {
+		return new StatementImpl(contextURI, statement.getSubject(), statement.getPredicate(),
+		        statement.getObject());
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.writer.track(super.begin());
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.writer.track(super.begin(isolationLevel));
+	}
+
+	// /////////////////////////////////
+	// writes
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		super.addStatement(statement);
+		this.writer.journal(none(), Collections.singletonList(statement));
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		super.removeStatement(statement);
+		this.writer.journal(Collections.singletonList(statement), none());
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> added = toList(other);
+		getDelegatedModelSet().addAll(added.iterator());
+		this.writer.journal(none(), added);
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> removed = toList(other);
+		getDelegatedModelSet().removeAll(removed.iterator());
+		this.writer.journal(removed, none());
+	}
+
+	@Override
+	public void removeStatements(QuadPattern quadPattern) throws ModelRuntimeException {
+		removeStatements(quadPattern.getContext(), quadPattern.getSubject(), quadPattern
+		        .getPredicate(), quadPattern.getObject());
+	}
+
+	@Override
+	public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		if(context instanceof URI) {
+			removeInBatches((URI)context, subject, predicate, object);
+			return;
+		}
+		removeInBatches(null, subject, predicate, object);
+		for(URI contextURI : getContextURIs()) {
+			removeInBatches(contextURI, subject, predicate, object);
+		}
+	}
+
+	private List<URI> getContextURIs() {
+		List<URI> contextURIs = new ArrayList<URI>();
+		ClosableIterator<URI> it = getDelegatedModelSet().getModelURIs();
+		try {
+			while(it.hasNext()) {
+				contextURIs.add(it.next());
+			}
+		} finally {
+			it.close();
+		}
+		return contextURIs;
+	}
+
+	/**
+	 * Looks up, removes and journals the matching statements of one context
+	 * in batches, so they are never all held in memory.
+	 *
+	 * @param contextURI null for the default model
+	 */
+	private void removeInBatches(URI contextURI, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) {
+		List<Statement> batch;
+		do {
+			batch = new ArrayList<Statement>();
+			// some model sets report the statements of the default model in
+			// another context
+			Model defaultModel = null;
+			ClosableIterator<Statement> it;
+			if(contextURI == null) {
+				defaultModel = getDelegatedModelSet().getDefaultModel();
+				it = defaultModel.findStatements(subject, predicate, object);
+			} else {
+				it = getDelegatedModelSet().findStatements(contextURI, subject, predicate,
+				        object);
+			}
+			try {
+				while(batch.size() < JournalingModel.REMOVE_BATCH_SIZE && it.hasNext()) {
+					batch.add(inContext(contextURI, it.next()));
+				}
+			} finally {
+				it.close();
+				if(defaultModel != null) {
+					defaultModel.close();
+				}
+			}
+			if(!batch.isEmpty()) {
+				getDelegatedModelSet().removeAll(batch.iterator());
+				this.writer.journal(batch, none());
+			}
+		} while(batch.size() == JournalingModel.REMOVE_BATCH_SIZE);
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		super.update(diff);
+		this.writer.journal(diff.getRemoved(), diff.getAdded());
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		addModel(model, model.getContextURI());
+		return true;
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			while(it.hasNext()) {
+				statements.add(inContext(contextURI, it.next()));
+			}
+		} finally {
+			it.close();
+		}
+		addAll(statements.iterator());
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = modelSet.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		removeInBatches(contextURI, Variable.ANY, Variable.ANY, Variable.ANY);
+		return super.removeModel(contextURI);
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		removeStatements(Variable.ANY, Variable.ANY, Variable.ANY, Variable.ANY);
+	}
+
+	// /////////////////////////////////
+	// reading parses into a temporary model set first
+
+	private ModelSet createTemporaryModelSet() {
+		ModelSet parsed = RDF2Go.getModelFactory().createModelSet();
+		parsed.open();
+		return parsed;
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(reader, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	// /////////////////////////////////
+	// models append their changes to the journal of the model set
+
+	@Override
+	public Model getDefaultModel() {
+		return new JournalingModel(super.getDefaultModel(), this.writer, null);
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		return new JournalingModel(super.getModel(contextURI), this.writer, contextURI);
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		List<Model> models = new ArrayList<Model>();
+		ClosableIterator<Model> it = super.getModels();
+		try {
+			while(it.hasNext()) {
+				Model model = it.next();
+				models.add(new JournalingModel(model, this.writer, model.getContextURI()));
+			}
+		} finally {
+			it.close();
+		}
+		return new PseudoClosableIterator<Model>(models.iterator());
+	}
+
+}
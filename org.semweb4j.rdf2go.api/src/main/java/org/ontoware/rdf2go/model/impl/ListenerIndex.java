@@ -0,0 +1,171 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * Registry of listeners and their patterns, used by the notifying layers.
+ * Each pattern is indexed by one of its bound positions (subject, object,
+ * predicate or context, in this order of preference), so finding the listeners
+ * for a statement only looks at patterns which can possibly match. Patterns
+ * without bound positions, and listeners registered without pattern (
+ * <code>null</code>), are checked for every statement.
+ *
+ * Registration copies the index, lookups are lock-free, so it is safe to
+ * register listeners while other threads are writing.
+ *
+ * @param <P> the pattern type
+ * @author agent
+ */
+class ListenerIndex<P extends TriplePattern> {
+
+	private static class Entry<P> {
+
+		final ModelChangedListener listener;
+
+		final P pattern;
+
+		Entry(ModelChangedListener listener, P pattern) {
+			this.listener = listener;
+			this.pattern = pattern;
+		}
+	}
+
+	/** an immutable view of the registered listeners */
+	private static class Index<P extends TriplePattern> {
+
+		final Map<ModelChangedListener,P> listeners;
+
+		final Map<NodeOrVariable,List<Entry<P>>> bySubject = new HashMap<NodeOrVariable,List<Entry<P>>>();
+
+		final Map<NodeOrVariable,List<Entry<P>>> byObject = new HashMap<NodeOrVariable,List<Entry<P>>>();
+
+		final Map<NodeOrVariable,List<Entry<P>>> byPredicate = new HashMap<NodeOrVariable,List<Entry<P>>>();
+
+		final Map<NodeOrVariable,List<Entry<P>>> byContext = new HashMap<NodeOrVariable,List<Entry<P>>>();
+
+		final List<Entry<P>> unbound = new ArrayList<Entry<P>>();
+
+		Index(Map<ModelChangedListener,P> listeners) {
+			this.listeners = Collections.unmodifiableMap(listeners);
+			for(Map.Entry<ModelChangedListener,P> e : listeners.entrySet()) {
+				Entry<P> entry = new Entry<P>(e.getKey(), e.getValue());
+				P pattern = e.getValue();
+				if(pattern == null) {
+					this.unbound.add(entry);
+				} else if(isBound(pattern.getSubject())) {
+					put(this.bySubject, pattern.getSubject(), entry);
+				} else if(isBound(pattern.getObject())) {
+					put(this.byObject, pattern.getObject(), entry);
+				} else if(isBound(pattern.getPredicate())) {
+					put(this.byPredicate, pattern.getPredicate(), entry);
+				} else if(pattern instanceof QuadPattern
+				        && isBound(((QuadPattern)pattern).getContext())) {
+					put(this.byContext, ((QuadPattern)pattern).getContext(), entry);
+				} else {
+					this.unbound.add(entry);
+				}
+			}
+		}
+
+		private static boolean isBound(NodeOrVariable value) {
+			return value != null && !(value instanceof Variable);
+		}
+
+		private static <P> void put(Map<NodeOrVariable,List<Entry<P>>> map, NodeOrVariable key,
+		        Entry<P> entry) {
+			List<Entry<P>> entries = map.get(key);
+			if(entries == null) {
+				entries = new ArrayList<Entry<P>>(1);
+				map.put(key, entries);
+			}
+			entries.add(entry);
+		}
+	}
+
+	private final Map<ModelChangedListener,P> listeners = new LinkedHashMap<ModelChangedListener,P>();
+
+	private volatile Index<P> index = new Index<P>(new LinkedHashMap<ModelChangedListener,P>());
+
+	/**
+	 * Register a listener, replacing its previous pattern.
+	 *
+	 * @param pattern null to receive all statements
+	 */
+	public synchronized void put(ModelChangedListener listener, P pattern) {
+		this.listeners.put(listener, pattern);
+		this.index = new Index<P>(new LinkedHashMap<ModelChangedListener,P>(this.listeners));
+	}
+
+	public synchronized void remove(ModelChangedListener listener) {
+		if(this.listeners.containsKey(listener)) {
+			this.listeners.remove(listener);
+			this.index = new Index<P>(new LinkedHashMap<ModelChangedListener,P>(this.listeners));
+		}
+	}
+
+	public boolean isEmpty() {
+		return this.index.listeners.isEmpty();
+	}
+
+	/**
+	 * @return an unmodifiable snapshot of all listeners and their patterns
+	 */
+	public Map<ModelChangedListener,P> getListeners() {
+		return this.index.listeners;
+	}
+
+	/**
+	 * @return the listeners whose pattern matches the statement, in no
+	 *         particular order
+	 */
+	public List<ModelChangedListener> getMatchingListeners(Statement statement) {
+		Index<P> current = this.index;
+		if(current.listeners.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<ModelChangedListener> result = new ArrayList<ModelChangedListener>();
+		collect(current.bySubject.get(statement.getSubject()), statement, result);
+		collect(current.byObject.get(statement.getObject()), statement, result);
+		collect(current.byPredicate.get(statement.getPredicate()), statement, result);
+		if(statement.getContext() != null) {
+			collect(current.byContext.get(statement.getContext()), statement, result);
+		}
+		collect(current.unbound, statement, result);
+		return result;
+	}
+
+	private static <P extends TriplePattern> void collect(List<Entry<P>> entries,
+	        Statement statement, List<ModelChangedListener> result) {
+		if(entries == null) {
+			return;
+		}
+		for(Entry<P> entry : entries) {
+			if(entry.pattern == null || entry.pattern.matches(statement)) {
+				result.add(entry.listener);
+			}
+		}
+	}
+
+}
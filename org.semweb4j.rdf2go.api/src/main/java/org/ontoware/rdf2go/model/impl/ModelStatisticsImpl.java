@@ -0,0 +1,487 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.ModelStatistics;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.util.HyperLogLog;
+import org.ontoware.rdf2go.vocabulary.RDF;
+
+
+/**
+ * Statistics of a model or model set, computed once and then maintained by
+ * {@link StatisticsModel} or {@link StatisticsModelSet} around their writes.
+ * Before a write they look up which statements it really changes, grouped by
+ * context, subject and predicate, and count these once the write succeeded.
+ * Failed writes are not counted. Statements of a model set must carry their
+ * context.
+ *
+ * Distinct subjects and objects are estimated with {@link HyperLogLog}
+ * sketches, which cannot forget removed nodes. They are upper estimates until
+ * {@link #rebuild()}.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class ModelStatisticsImpl implements ModelStatistics {
+
+	/** precision of the sketches for all subjects and all objects */
+	public static final int PRECISION = 12;
+
+	/** precision of the sketches per predicate */
+	public static final int PREDICATE_PRECISION = 8;
+
+	private static class PredicateStatistics {
+
+		long count = 0;
+
+		final HyperLogLog subjects = new HyperLogLog(PREDICATE_PRECISION);
+
+		final HyperLogLog objects = new HyperLogLog(PREDICATE_PRECISION);
+	}
+
+	private final Model model;
+
+	private final ModelSet modelSet;
+
+	/** the default model of the model set, created on first use */
+	private Model defaultModel;
+
+	private long size = 0;
+
+	private final Map<URI,Long> contextSizes = new HashMap<URI,Long>();
+
+	private final Map<URI,PredicateStatistics> predicates = new HashMap<URI,PredicateStatistics>();
+
+	private final Map<URI,Long> classes = new HashMap<URI,Long>();
+
+	private final HyperLogLog subjects = new HyperLogLog(PRECISION);
+
+	private final HyperLogLog objects = new HyperLogLog(PRECISION);
+
+	/**
+	 * Computes the statistics of the model.
+	 */
+	public ModelStatisticsImpl(Model model) {
+		this.model = model;
+		this.modelSet = null;
+		rebuild();
+	}
+
+	/**
+	 * Computes the statistics of the model set.
+	 */
+	public ModelStatisticsImpl(ModelSet modelSet) {
+		this.model = null;
+		this.modelSet = modelSet;
+		rebuild();
+	}
+
+	/**
+	 * Recompute everything from the statements of the model (set).
+	 */
+	public synchronized void rebuild() {
+		clear();
+		if(this.model != null) {
+			addAllFrom(this.model);
+		} else {
+			// model by model, as backends differ in the context they report for
+			// statements of the default model
+			List<URI> contextURIs = new ArrayList<URI>();
+			ClosableIterator<URI> uris = this.modelSet.getModelURIs();
+			while(uris.hasNext()) {
+				contextURIs.add(uris.next());
+			}
+			uris.close();
+			addAllFrom(getDefaultModel());
+			for(URI contextURI : contextURIs) {
+				addAllFrom(this.modelSet.getModel(contextURI));
+			}
+		}
+	}
+
+	private void addAllFrom(Model source) {
+		ClosableIterator<Statement> it = source.iterator();
+		try {
+			while(it.hasNext()) {
+				add(source.getContextURI(), it.next());
+			}
+		} finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * Forget all statements, e.g. after the model has been emptied.
+	 */
+	public synchronized void clear() {
+		this.size = 0;
+		this.contextSizes.clear();
+		this.predicates.clear();
+		this.classes.clear();
+		this.subjects.clear();
+		this.objects.clear();
+	}
+
+	// //////////////////////////
+	// maintenance
+
+	private URI context(Statement statement) {
+		return this.model != null ? this.model.getContextURI() : statement.getContext();
+	}
+
+	private boolean contains(Statement statement) {
+		if(this.model != null) {
+			return this.model.contains(statement);
+		}
+		// some backends read a null context as any context
+		return statement.getContext() == null ? getDefaultModel().contains(statement)
+		        : this.modelSet.contains(statement);
+	}
+
+	private Model getDefaultModel() {
+		if(this.defaultModel == null) {
+			this.defaultModel = this.modelSet.getDefaultModel();
+		}
+		return this.defaultModel;
+	}
+
+	/** identifies a statement within one write */
+	private List<Object> key(Statement statement) {
+		return Arrays.<Object> asList(context(statement), statement.getSubject(), statement
+		        .getPredicate(), statement.getObject());
+	}
+
+	private void add(URI context, Statement statement) {
+		this.size++;
+		increment(this.contextSizes, context, 1);
+		PredicateStatistics predicate = this.predicates.get(statement.getPredicate());
+		if(predicate == null) {
+			predicate = new PredicateStatistics();
+			this.predicates.put(statement.getPredicate(), predicate);
+		}
+		predicate.count++;
+		predicate.subjects.add(statement.getSubject());
+		predicate.objects.add(statement.getObject());
+		this.subjects.add(statement.getSubject());
+		this.objects.add(statement.getObject());
+		if(RDF.type.equals(statement.getPredicate()) && statement.getObject() instanceof URI) {
+			increment(this.classes, (URI)statement.getObject(), 1);
+		}
+	}
+
+	private void remove(URI context, Statement statement) {
+		this.size--;
+		increment(this.contextSizes, context, -1);
+		PredicateStatistics predicate = this.predicates.get(statement.getPredicate());
+		if(predicate != null && --predicate.count == 0) {
+			this.predicates.remove(statement.getPredicate());
+		}
+		if(RDF.type.equals(statement.getPredicate()) && statement.getObject() instanceof URI) {
+			increment(this.classes, (URI)statement.getObject(), -1);
+		}
+	}
+
+	private static void increment(Map<URI,Long> counts, URI key, long delta) {
+		Long count = counts.get(key);
+		long updated = (count == null ? 0 : count) + delta;
+		if(updated <= 0) {
+			counts.remove(key);
+		} else {
+			counts.put(key, updated);
+		}
+	}
+
+	/**
+	 * Finds the changes a write would make. Removals apply before additions,
+	 * so a statement which is removed and added again only counts if it is
+	 * not there yet.
+	 *
+	 * @return the distinct statements which are removed and added
+	 */
+	synchronized DiffReader getEffectiveChanges(Iterator<? extends Statement> removed,
+	        Iterator<? extends Statement> added) {
+		Map<List<Object>,Statement> removedByKey = byKey(removed);
+		Map<List<Object>,Statement> addedByKey = byKey(added);
+		Set<List<Object>> present = lookUp(removedByKey.values(), addedByKey.values());
+		List<Statement> effectivelyRemoved = new ArrayList<Statement>();
+		for(Map.Entry<List<Object>,Statement> e : removedByKey.entrySet()) {
+			if(present.contains(e.getKey()) && !addedByKey.containsKey(e.getKey())) {
+				effectivelyRemoved.add(e.getValue());
+			}
+		}
+		List<Statement> effectivelyAdded = new ArrayList<Statement>();
+		for(Map.Entry<List<Object>,Statement> e : addedByKey.entrySet()) {
+			if(!present.contains(e.getKey())) {
+				effectivelyAdded.add(e.getValue());
+			}
+		}
+		return changes(effectivelyRemoved, effectivelyAdded);
+	}
+
+	private Map<List<Object>,Statement> byKey(Iterator<? extends Statement> statements) {
+		Map<List<Object>,Statement> result = new LinkedHashMap<List<Object>,Statement>();
+		while(statements.hasNext()) {
+			Statement statement = statements.next();
+			List<Object> key = key(statement);
+			if(!result.containsKey(key)) {
+				result.put(key, statement);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Statements with the same context, subject and predicate are looked up
+	 * with one query, unless the statistics show that the model (set) has no
+	 * statements with the predicate or in the context.
+	 *
+	 * @return the keys of the statements which are in the model (set)
+	 */
+	private Set<List<Object>> lookUp(Collection<Statement> removed, Collection<Statement> added) {
+		Map<List<Object>,List<Statement>> groups = new LinkedHashMap<List<Object>,List<Statement>>();
+		List<Statement> all = new ArrayList<Statement>(removed);
+		all.addAll(added);
+		for(Statement statement : all) {
+			List<Object> group = key(statement).subList(0, 3);
+			List<Statement> statements = groups.get(group);
+			if(statements == null) {
+				statements = new ArrayList<Statement>(1);
+				groups.put(group, statements);
+			}
+			statements.add(statement);
+		}
+		Set<List<Object>> result = new HashSet<List<Object>>();
+		for(List<Statement> statements : groups.values()) {
+			Statement first = statements.get(0);
+			if(!this.predicates.containsKey(first.getPredicate())
+			        || !this.contextSizes.containsKey(context(first))) {
+				// the statistics show there are no such statements
+				continue;
+			}
+			if(statements.size() == 1) {
+				if(contains(statements.get(0))) {
+					result.add(key(statements.get(0)));
+				}
+				continue;
+			}
+			Set<Node> objects = objects(statements.get(0));
+			for(Statement statement : statements) {
+				if(objects.contains(statement.getObject())) {
+					result.add(key(statement));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the objects of all statements with the context, subject and
+	 *         predicate of the given statement
+	 */
+	private Set<Node> objects(Statement statement) {
+		ClosableIterator<Statement> it;
+		if(this.model != null) {
+			it = this.model.findStatements(statement.getSubject(), statement.getPredicate(),
+			        Variable.ANY);
+		} else if(statement.getContext() == null) {
+			it = getDefaultModel().findStatements(statement.getSubject(),
+			        statement.getPredicate(), Variable.ANY);
+		} else {
+			it = this.modelSet.findStatements(statement.getContext(), statement.getSubject(),
+			        statement.getPredicate(), Variable.ANY);
+		}
+		Set<Node> result = new HashSet<Node>();
+		try {
+			while(it.hasNext()) {
+				result.add(it.next().getObject());
+			}
+		} finally {
+			it.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Count changes found with
+	 * {@link #getEffectiveChanges(Iterator, Iterator)}, once they have been
+	 * written.
+	 */
+	synchronized void apply(DiffReader changes) {
+		for(Statement statement : changes.getRemoved()) {
+			remove(context(statement), statement);
+		}
+		for(Statement statement : changes.getAdded()) {
+			add(context(statement), statement);
+		}
+	}
+
+	/**
+	 * @return the changes, unlike a {@link DiffImpl} statements which only
+	 *         differ in their context are kept apart
+	 */
+	static DiffReader changes(final List<Statement> removed, final List<Statement> added) {
+		return new DiffReader() {
+
+			@Override
+			public Iterable<Statement> getAdded() {
+				return added;
+			}
+
+			@Override
+			public Iterable<Statement> getRemoved() {
+				return removed;
+			}
+		};
+	}
+
+	// //////////////////////////
+	// ModelStatistics
+
+	@Override
+	public synchronized long size() {
+		return this.size;
+	}
+
+	@Override
+	public synchronized Set<URI> getContexts() {
+		return new HashSet<URI>(this.contextSizes.keySet());
+	}
+
+	@Override
+	public synchronized long getContextSize(URI contextURI) {
+		Long count = this.contextSizes.get(contextURI);
+		return count == null ? 0 : count;
+	}
+
+	@Override
+	public synchronized Set<URI> getPredicates() {
+		return new HashSet<URI>(this.predicates.keySet());
+	}
+
+	@Override
+	public synchronized long getPredicateCount(URI predicate) {
+		PredicateStatistics statistics = this.predicates.get(predicate);
+		return statistics == null ? 0 : statistics.count;
+	}
+
+	@Override
+	public synchronized long getDistinctSubjects() {
+		return bounded(this.subjects.estimate(), this.size);
+	}
+
+	@Override
+	public synchronized long getDistinctObjects() {
+		return bounded(this.objects.estimate(), this.size);
+	}
+
+	@Override
+	public synchronized long getDistinctSubjects(URI predicate) {
+		PredicateStatistics statistics = this.predicates.get(predicate);
+		return statistics == null ? 0 : bounded(statistics.subjects.estimate(),
+		        statistics.count);
+	}
+
+	@Override
+	public synchronized long getDistinctObjects(URI predicate) {
+		PredicateStatistics statistics = this.predicates.get(predicate);
+		return statistics == null ? 0 : bounded(statistics.objects.estimate(),
+		        statistics.count);
+	}
+
+	/**
+	 * @return the estimate within [1, count], 0 if there are no statements
+	 */
+	private static long bounded(long estimate, long count) {
+		if(count == 0) {
+			return 0;
+		}
+		return Math.max(1, Math.min(estimate, count));
+	}
+
+	@Override
+	public synchronized Set<URI> getClasses() {
+		return new HashSet<URI>(this.classes.keySet());
+	}
+
+	@Override
+	public synchronized long getInstanceCount(URI classURI) {
+		Long count = this.classes.get(classURI);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Exact for patterns without or with only the predicate given, and for
+	 * instances of a class. Otherwise the statements are assumed to be spread
+	 * evenly over the distinct subjects or objects.
+	 */
+	@Override
+	public synchronized long estimate(TriplePattern pattern) {
+		boolean subjectBound = bound(pattern.getSubject());
+		boolean objectBound = bound(pattern.getObject());
+		long count;
+		long subjects;
+		long objects;
+		if(bound(pattern.getPredicate())) {
+			URI predicate = (URI)pattern.getPredicate();
+			if(RDF.type.equals(predicate) && objectBound && !subjectBound
+			        && pattern.getObject() instanceof URI) {
+				return getInstanceCount((URI)pattern.getObject());
+			}
+			count = getPredicateCount(predicate);
+			subjects = getDistinctSubjects(predicate);
+			objects = getDistinctObjects(predicate);
+		} else {
+			count = this.size;
+			subjects = getDistinctSubjects();
+			objects = getDistinctObjects();
+		}
+		if(count == 0) {
+			return 0;
+		}
+		if(subjectBound && objectBound) {
+			return Math.min(divide(count, subjects), divide(count, objects));
+		} else if(subjectBound) {
+			return divide(count, subjects);
+		} else if(objectBound) {
+			return divide(count, objects);
+		}
+		return count;
+	}
+
+	private static boolean bound(NodeOrVariable term) {
+		return !(term instanceof Variable);
+	}
+
+	private static long divide(long count, long distinct) {
+		return Math.max(1, (count + distinct - 1) / Math.max(1, distinct));
+	}
+
+}
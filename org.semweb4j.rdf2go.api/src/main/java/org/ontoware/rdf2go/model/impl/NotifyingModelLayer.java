@@ -12,9 +12,7 @@
 
 package org.ontoware.rdf2go.model.impl;
 
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.DiffReader;
@@ -34,6 +32,11 @@
 /**
  * Adds notifying capabilites to existing models.
  * 
+ * Listeners are notified synchronously on the writing thread. Their patterns
+ * are indexed, so the cost of a write depends on the number of matching
+ * listeners rather than on the number of registered listeners. Slow listeners
+ * can be decoupled from writers with {@link AsyncModelChangedListener}.
+ * 
  * @author voelkel
  * 
  */
@@ -131,11 +134,9 @@ public void addStatement(Resource subject, URI predicate, String literal)
 	 */
 	@Override
 	public void addStatement(Statement statement) throws ModelRuntimeException {
-		for(ModelChangedListener listener : this.modelChangeListener.keySet()) {
-			TriplePattern pattern = this.modelChangeListener.get(listener);
-			if(pattern == null || pattern.matches(statement)) {
-				listener.addedStatement(statement);
-			}
+		for(ModelChangedListener listener : this.modelChangeListener
+		        .getMatchingListeners(statement)) {
+			listener.addedStatement(statement);
 		}
 		getDelegatedModel().addStatement(statement);
 	}
@@ -268,13 +269,37 @@ public void removeStatement(Resource subject, URI predicate, String literal)
 	 */
 	@Override
 	public void removeStatement(Statement statement) throws ModelRuntimeException {
-		for(ModelChangedListener listener : this.modelChangeListener.keySet()) {
-			TriplePattern pattern = this.modelChangeListener.get(listener);
-			if(pattern == null || pattern.matches(statement)) {
+		for(ModelChangedListener listener : this.modelChangeListener
+		        .getMatchingListeners(statement)) {
+			listener.removedStatement(statement);
+		}
+		getDelegatedModel().removeStatement(statement);
+	}
+	
+	/**
+	 * Notify the listeners of statements which a subclass adds to the
+	 * delegated model in one bulk write.
+	 */
+	protected void notifyAdded(Iterable<? extends Statement> statements) {
+		for(Statement statement : statements) {
+			for(ModelChangedListener listener : this.modelChangeListener
+			        .getMatchingListeners(statement)) {
+				listener.addedStatement(statement);
+			}
+		}
+	}
+	
+	/**
+	 * Notify the listeners of statements which a subclass removes from the
+	 * delegated model in one bulk write.
+	 */
+	protected void notifyRemoved(Iterable<? extends Statement> statements) {
+		for(Statement statement : statements) {
+			for(ModelChangedListener listener : this.modelChangeListener
+			        .getMatchingListeners(statement)) {
 				listener.removedStatement(statement);
 			}
 		}
-		getDelegatedModel().removeStatement(statement);
 	}
 	
 	/*
@@ -338,7 +363,7 @@ public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate
 	
 	@Override
 	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
-		for(ModelChangedListener listener : this.modelChangeListener.keySet()) {
+		for(ModelChangedListener listener : this.modelChangeListener.getListeners().keySet()) {
 			listener.performedUpdate(diff);
 		}
 		getDelegatedModel().update(diff);
@@ -347,7 +372,7 @@ public synchronized void update(DiffReader diff) throws ModelRuntimeException {
 	// //////////////////////////////////
 	// implement NotifyingModel
 	
-	private Map<ModelChangedListener,TriplePattern> modelChangeListener = new HashMap<ModelChangedListener,TriplePattern>();
+	private ListenerIndex<TriplePattern> modelChangeListener = new ListenerIndex<TriplePattern>();
 	
 	@Override
     public void addModelChangedListener(ModelChangedListener listener, TriplePattern pattern) {
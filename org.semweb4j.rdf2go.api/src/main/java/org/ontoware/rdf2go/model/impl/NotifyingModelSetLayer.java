@@ -13,7 +13,6 @@
 package org.ontoware.rdf2go.model.impl;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -52,7 +51,7 @@ public NotifyingModelSetLayer(ModelSet modelset) {
 	// //////////////////////////////////
 	// implement NotifyingModelSet
 
-	private Map<ModelChangedListener, QuadPattern> modelsetChangeListener = new HashMap<ModelChangedListener, QuadPattern>();
+	private ListenerIndex<QuadPattern> modelsetChangeListener = new ListenerIndex<QuadPattern>();
 
 	@Override
     public void addModelSetChangedListener(ModelChangedListener listener) {
@@ -78,7 +77,7 @@ public void removeModelSetChangedListener(ModelChangedListener listener) {
 	public boolean addModel(Model model) {
 		// first check for listeners
 		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
+				.getListeners().entrySet()) {
 			// if pattern.context matches model.context
 			if (entry.getValue().getContext() == Variable.ANY
 					|| entry.getValue().getContext().equals(
@@ -98,11 +97,9 @@ public boolean addModel(Model model) {
 	@Override
 	public void addStatement(Statement statement) throws ModelRuntimeException {
 		// inspect
-		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
-			if (entry.getValue().matches(statement)) {
-				entry.getKey().addedStatement(statement);
-			}
+		for (ModelChangedListener listener : this.modelsetChangeListener
+				.getMatchingListeners(statement)) {
+			listener.addedStatement(statement);
 		}
 		// delegate
 		super.addStatement(statement);
@@ -113,7 +110,7 @@ public Model getDefaultModel() {
 		Model model = super.getDefaultModel();
 		NotifyingModelLayer notifyingModel = new NotifyingModelLayer(model);
 		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
+				.getListeners().entrySet()) {
 			// only if listening for (*, x,y,z) changes in default model are
 			// detected
 			if (entry.getValue().getContext() == Variable.ANY) {
@@ -129,7 +126,7 @@ public Model getModel(URI contextURI) {
 		Model model = super.getModel(contextURI);
 		NotifyingModelLayer notifyingModel = new NotifyingModelLayer(model);
 		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
+				.getListeners().entrySet()) {
 			if (entry.getValue().getContext() == Variable.ANY
 					|| entry.getValue().getContext().equals(contextURI)) {
 				notifyingModel.addModelChangedListener(entry.getKey(), entry
@@ -148,7 +145,7 @@ public ClosableIterator<Model> getModels() {
 			Model model = it.next();
 			NotifyingModelLayer notifyingModel = new NotifyingModelLayer(model);
 			for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-					.entrySet()) {
+					.getListeners().entrySet()) {
 				notifyingModel.addModelChangedListener(entry.getKey(), entry
 						.getValue());
 			}
@@ -162,22 +159,46 @@ public ClosableIterator<Model> getModels() {
 	public void removeStatement(Statement statement)
 			throws ModelRuntimeException {
 		// inspect
-		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
-			if (entry.getValue().matches(statement)) {
-				entry.getKey().removedStatement(statement);
-			}
+		for (ModelChangedListener listener : this.modelsetChangeListener
+				.getMatchingListeners(statement)) {
+			listener.removedStatement(statement);
 		}
 		// delegate
 		super.removeStatement(statement);
 	}
 
+	/**
+	 * Notify the listeners of statements which a subclass adds to the
+	 * delegated model set in one bulk write.
+	 */
+	protected void notifyAdded(Iterable<? extends Statement> statements) {
+		for (Statement statement : statements) {
+			for (ModelChangedListener listener : this.modelsetChangeListener
+					.getMatchingListeners(statement)) {
+				listener.addedStatement(statement);
+			}
+		}
+	}
+
+	/**
+	 * Notify the listeners of statements which a subclass removes from the
+	 * delegated model set in one bulk write.
+	 */
+	protected void notifyRemoved(Iterable<? extends Statement> statements) {
+		for (Statement statement : statements) {
+			for (ModelChangedListener listener : this.modelsetChangeListener
+					.getMatchingListeners(statement)) {
+				listener.removedStatement(statement);
+			}
+		}
+	}
+
 	@Override
 	public void update(DiffReader diff) throws ModelRuntimeException {
 		// inspect
-		for (Map.Entry<ModelChangedListener, QuadPattern> entry : this.modelsetChangeListener
-				.entrySet()) {
-			entry.getKey().performedUpdate(diff);
+		for (ModelChangedListener listener : this.modelsetChangeListener
+				.getListeners().keySet()) {
+			listener.performedUpdate(diff);
 		}
 		// delegate
 		super.update(diff);
@@ -0,0 +1,1491 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.ontoware.aifbcommons.collection.ClosableIterable;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.MalformedQueryException;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
+import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.QueryResultTable;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.util.NodeCodec;
+
+
+/**
+ * A model set which keeps named graphs in an (in-memory) hot model set up to a
+ * memory budget and pages the coldest graphs out to compressed files in a
+ * directory. A paged out graph is read back transparently when it is accessed
+ * by {@link #getModel(URI)} or by an operation bound to its context. Operations
+ * over all contexts scan the files one by one. Transactions are not supported.
+ *
+ * The budget is in bytes. The heap used by a graph is estimated from its
+ * statements with {@link #estimateSize(Statement)}, the store itself is not
+ * measured. The default graph is always kept in memory and does not count
+ * towards the budget.
+ *
+ * While graphs are paged out, a query must declare its dataset with FROM or
+ * FROM NAMED, else it is rejected, as it could silently miss the graphs on
+ * disk. The graphs named by the dataset and by GRAPH patterns are paged in
+ * before the query is evaluated, even if they exceed the budget together;
+ * graphs which are not named stay on disk. Writing the model set streams it
+ * graph by graph, which is only possible for syntaxes whose documents can be
+ * concatenated, {@link Syntax#Nquads} and {@link Syntax#Trig}. A snapshot
+ * copies the files of the paged out graphs to a temporary directory and pages
+ * them in from there. Writes through a model returned by {@link #getModel(URI)} are
+ * accounted for at the next write to this model set; such a model should not
+ * be kept while other contexts are written, as its context may be paged out.
+ *
+ * Each graph is stored in its own file with a sequential name, the context
+ * URI is kept in the header of the file. Closing the model set pages out all
+ * resident graphs and writes the default graph to disk as well, so a paging
+ * model set on the same directory finds all statements again.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class PagingModelSet extends DelegatingModelSet {
+
+	private static final long serialVersionUID = 6416937826475018931L;
+
+	public enum EvictionPolicy {
+		/** evict the graph which has not been accessed for the longest time */
+		LRU,
+		/** evict the graph which has been accessed least often */
+		LFU
+	}
+
+	static final String SUFFIX = ".graph.gz";
+
+	/** holds the default graph while the model set is closed */
+	static final String DEFAULT_GRAPH = "default" + SUFFIX;
+
+	/** estimated heap bytes of a statement, without its nodes */
+	static final int STATEMENT_BYTES = 64;
+
+	/** estimated heap bytes of a node, without the characters of its value */
+	static final int NODE_BYTES = 48;
+
+	/** names in the dataset clauses and GRAPH patterns of a query */
+	private static final Pattern GRAPH_NAME = Pattern
+	        .compile("(?i)\\b(FROM(?:\\s+NAMED)?|GRAPH)\\s+(<[^>]*>|(?:[A-Za-z][\\w.-]*)?:[^\\s{}]*)");
+
+	private static final Pattern PREFIX = Pattern
+	        .compile("(?i)\\bPREFIX\\s+([A-Za-z][\\w.-]*)?:\\s*<([^>]*)>");
+
+	private static class Resident {
+
+		/** estimated heap bytes */
+		long size;
+
+		long lastAccess;
+
+		long accessCount;
+
+		/** size unknown, must be counted again */
+		boolean dirty;
+
+		Resident(long size) {
+			this.size = size;
+		}
+	}
+
+	private static class Paged {
+
+		final File file;
+
+		final long size;
+
+		Paged(File file, long size) {
+			this.file = file;
+			this.size = size;
+		}
+	}
+
+	private final File directory;
+
+	private final long memoryBudget;
+
+	private final EvictionPolicy policy;
+
+	/** a snapshot, which deletes its directory when it is closed */
+	private final boolean temporary;
+
+	private final Map<URI,Resident> resident = new HashMap<URI,Resident>();
+
+	private final Map<URI,Paged> paged = new HashMap<URI,Paged>();
+
+	/**
+	 * Blank nodes read from the files by ID, for the lifetime of this model
+	 * set. A blank node shared by several graphs stays the same node when they
+	 * are paged in at different times, also after it has been written again
+	 * under the ID it has in the hot model set.
+	 */
+	private final Map<String,BlankNode> blankNodes = new HashMap<String,BlankNode>();
+
+	private long nextFile;
+
+	private boolean loaded = false;
+
+	private long tick;
+
+	private long hits;
+
+	private long pageIns;
+
+	private long pageOuts;
+
+	private long pageInNanos;
+
+	/**
+	 * @param hot the in-memory model set, which holds the resident graphs
+	 * @param directory where paged out graphs are stored, created if missing
+	 * @param memoryBudget the maximal estimated heap size of the resident
+	 *            named graphs, in bytes
+	 */
+	public PagingModelSet(ModelSet hot, File directory, long memoryBudget, EvictionPolicy policy) {
+		this(hot, directory, memoryBudget, policy, false);
+	}
+
+	private PagingModelSet(ModelSet hot, File directory, long memoryBudget,
+	        EvictionPolicy policy, boolean temporary) {
+		super(hot);
+		if(memoryBudget < 0) {
+			throw new IllegalArgumentException("memoryBudget must not be negative");
+		}
+		directory.mkdirs();
+		if(!directory.isDirectory()) {
+			throw new ModelRuntimeException("Cannot create directory " + directory);
+		}
+		this.directory = directory;
+		this.memoryBudget = memoryBudget;
+		this.policy = policy;
+		this.temporary = temporary;
+		if(hot.isOpen()) {
+			load();
+		}
+	}
+
+	@Override
+	public synchronized ModelSet open() {
+		super.open();
+		if(!this.loaded) {
+			load();
+		}
+		return this;
+	}
+
+	/**
+	 * Pages out all resident graphs and writes the default graph to disk, so
+	 * nothing is lost if the hot model set is held in memory.
+	 */
+	@Override
+	public synchronized void close() {
+		if(this.temporary) {
+			deleteDirectory(this.directory);
+		} else if(isOpen() && this.loaded) {
+			recountDirty();
+			for(Map.Entry<URI,Resident> entry : new ArrayList<Map.Entry<URI,Resident>>(
+			        this.resident.entrySet())) {
+				if(entry.getValue().size > 0) {
+					pageOut(entry.getKey(), entry.getValue());
+				}
+			}
+			saveDefaultGraph();
+		}
+		this.resident.clear();
+		this.paged.clear();
+		this.loaded = false;
+		super.close();
+	}
+
+	// /////////////////////////////////
+	// metrics
+
+	/**
+	 * @return number of accesses to a context which was in memory
+	 */
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	/**
+	 * @return number of accesses to a context which had to be read from disk
+	 */
+	public synchronized long getPageIns() {
+		return this.pageIns;
+	}
+
+	public synchronized long getPageOuts() {
+		return this.pageOuts;
+	}
+
+	/**
+	 * @return the fraction of context accesses which did not need to read
+	 *         from disk, 1 if there were none
+	 */
+	public synchronized double getHitRate() {
+		long accesses = this.hits + this.pageIns;
+		return accesses == 0 ? 1 : (double)this.hits / accesses;
+	}
+
+	/**
+	 * @return average time to read a context from disk, in nanoseconds
+	 */
+	public synchronized long getAveragePageInNanos() {
+		return this.pageIns == 0 ? 0 : this.pageInNanos / this.pageIns;
+	}
+
+	/**
+	 * @return estimated heap bytes of the named graphs held in memory
+	 */
+	public synchronized long getResidentSize() {
+		recountDirty();
+		long size = 0;
+		for(Resident r : this.resident.values()) {
+			size += r.size;
+		}
+		return size;
+	}
+
+	public synchronized boolean isPagedOut(URI contextURI) {
+		return this.paged.containsKey(contextURI);
+	}
+
+	/**
+	 * @return the estimated heap bytes an in-memory store needs for the
+	 *         statement, the characters of its nodes are counted with two
+	 *         bytes each
+	 */
+	public static long estimateSize(Statement statement) {
+		return STATEMENT_BYTES + estimateSize(statement.getSubject())
+		        + estimateSize(statement.getPredicate()) + estimateSize(statement.getObject());
+	}
+
+	private static long estimateSize(Node node) {
+		return NODE_BYTES + 2L * node.toString().length();
+	}
+
+	// /////////////////////////////////
+	// paging
+
+	private void load() {
+		this.loaded = true;
+		File[] files = this.directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				if(file.getName().equals(DEFAULT_GRAPH)) {
+					loadDefaultGraph(file);
+				} else if(file.getName().endsWith(SUFFIX)) {
+					try {
+						DataInputStream in = openFile(file);
+						try {
+							URI contextURI = new URIImpl(NodeCodec.readString(in), false);
+							this.paged.put(contextURI, new Paged(file, in.readLong()));
+						} finally {
+							in.close();
+						}
+					} catch(IOException e) {
+						throw new ModelRuntimeException("Cannot read " + file, e);
+					}
+				}
+			}
+		}
+		ModelSet hot = getDelegatedModelSet();
+		ClosableIterator<URI> it = hot.getModelURIs();
+		List<URI> contextURIs = new ArrayList<URI>();
+		while(it.hasNext()) {
+			contextURIs.add(it.next());
+		}
+		it.close();
+		for(URI contextURI : contextURIs) {
+			Paged p = this.paged.remove(contextURI);
+			if(p != null) {
+				pageIn(contextURI, p);
+			}
+			Resident r = this.resident.get(contextURI);
+			if(r == null) {
+				r = new Resident(0);
+				this.resident.put(contextURI, r);
+			}
+			r.dirty = true;
+		}
+		evictIfNeeded(Collections.<URI>emptySet());
+	}
+
+	/**
+	 * Makes sure the context is in memory and records the access.
+	 *
+	 * @param create whether to start tracking a context which does not exist
+	 *            yet
+	 * @return null for the default context and for unknown contexts which
+	 *         were not created
+	 */
+	private Resident access(URI contextURI, boolean create) {
+		if(contextURI == null) {
+			return null;
+		}
+		Resident r = this.resident.get(contextURI);
+		if(r != null) {
+			this.hits++;
+		} else {
+			Paged p = this.paged.remove(contextURI);
+			if(p != null) {
+				r = pageIn(contextURI, p);
+			} else if(create) {
+				r = new Resident(0);
+				this.resident.put(contextURI, r);
+			} else {
+				return null;
+			}
+		}
+		r.lastAccess = ++this.tick;
+		r.accessCount++;
+		return r;
+	}
+
+	/**
+	 * Accesses a context for reading, a graph which had to be paged in may
+	 * push others out.
+	 */
+	private void read(URI contextURI) {
+		long before = this.pageIns;
+		access(contextURI, false);
+		if(this.pageIns != before) {
+			evictIfNeeded(Collections.singleton(contextURI));
+		}
+	}
+
+	private Resident pageIn(URI contextURI, Paged p) {
+		long start = System.nanoTime();
+		ModelSet hot = getDelegatedModelSet();
+		List<Statement> statements;
+		try {
+			statements = readFile(p.file, contextURI, null);
+		} catch(ModelRuntimeException e) {
+			this.paged.put(contextURI, p);
+			throw e;
+		}
+		hot.addAll(statements.iterator());
+		p.file.delete();
+		Resident r = this.resident.get(contextURI);
+		if(r == null) {
+			long size = 0;
+			for(Statement statement : statements) {
+				size += estimateSize(statement);
+			}
+			r = new Resident(size);
+			this.resident.put(contextURI, r);
+		} else {
+			r.dirty = true;
+		}
+		this.pageIns++;
+		this.pageInNanos += System.nanoTime() - start;
+		return r;
+	}
+
+	private void pageOut(URI contextURI, Resident r) {
+		ModelSet hot = getDelegatedModelSet();
+		List<Statement> statements = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = hot.findStatements(contextURI, Variable.ANY, Variable.ANY,
+		        Variable.ANY);
+		while(it.hasNext()) {
+			statements.add(it.next());
+		}
+		it.close();
+		File file = newFile();
+		writeFile(file, contextURI.toString(), statements);
+		hot.removeModel(contextURI);
+		this.resident.remove(contextURI);
+		this.paged.put(contextURI, new Paged(file, statements.size()));
+		this.pageOuts++;
+	}
+
+	/**
+	 * Contexts are never hashed into file names, a graph gets the next unused
+	 * number and its file is found again by the context in its header.
+	 */
+	private File newFile() {
+		File file;
+		do {
+			file = new File(this.directory, this.nextFile++ + SUFFIX);
+		} while(file.exists());
+		return file;
+	}
+
+	/**
+	 * Writes a temporary file first and renames it, so a file with the suffix
+	 * is always complete.
+	 *
+	 * @param context the context URI, empty for the default graph
+	 */
+	private static void writeFile(File file, String context, List<Statement> statements) {
+		File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			        new GZIPOutputStream(new FileOutputStream(temp))));
+			try {
+				NodeCodec.writeString(out, context);
+				out.writeLong(statements.size());
+				for(Statement statement : statements) {
+					NodeCodec.writeNode(out, statement.getSubject());
+					NodeCodec.writeNode(out, statement.getPredicate());
+					NodeCodec.writeNode(out, statement.getObject());
+				}
+			} finally {
+				out.close();
+			}
+			if(file.exists() && !file.delete() || !temp.renameTo(file)) {
+				throw new IOException("Cannot rename " + temp + " to " + file);
+			}
+		} catch(IOException e) {
+			temp.delete();
+			throw new ModelRuntimeException("Cannot write " + file, e);
+		}
+	}
+
+	/**
+	 * @param contextURI of the statements, null for the default graph
+	 * @param pattern the statements must match, null for all
+	 */
+	private List<Statement> readFile(File file, URI contextURI, QuadPattern pattern) {
+		List<Statement> result = new ArrayList<Statement>();
+		try {
+			DataInputStream in = openFile(file);
+			try {
+				NodeCodec.readString(in);
+				long count = in.readLong();
+				for(long i = 0; i < count; i++) {
+					Node s = readNode(in);
+					Node p = readNode(in);
+					Node o = readNode(in);
+					Statement statement = new StatementImpl(contextURI, (Resource)s, (URI)p, o);
+					if(pattern == null || pattern.matches(statement)) {
+						result.add(statement);
+					}
+				}
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot read " + file, e);
+		}
+		return result;
+	}
+
+	private Node readNode(DataInputStream in) throws IOException {
+		Node node = NodeCodec.readNode(in, this.blankNodes, getDelegatedModelSet());
+		if(node instanceof BlankNode) {
+			// the hot model set writes it under its own ID when it is paged out
+			this.blankNodes.put(((BlankNode)node).getInternalID(), (BlankNode)node);
+		}
+		return node;
+	}
+
+	private static DataInputStream openFile(File file) throws IOException {
+		return new DataInputStream(new BufferedInputStream(new GZIPInputStream(
+		        new FileInputStream(file))));
+	}
+
+	private void saveDefaultGraph() {
+		File file = new File(this.directory, DEFAULT_GRAPH);
+		List<Statement> statements = new ArrayList<Statement>();
+		Model defaultModel = getDelegatedModelSet().getDefaultModel();
+		try {
+			ClosableIterator<Statement> it = defaultModel.iterator();
+			while(it.hasNext()) {
+				statements.add(it.next());
+			}
+			it.close();
+		} finally {
+			defaultModel.close();
+		}
+		if(statements.isEmpty()) {
+			file.delete();
+		} else {
+			writeFile(file, "", statements);
+		}
+	}
+
+	private void loadDefaultGraph(File file) {
+		getDelegatedModelSet().addAll(readFile(file, null, null).iterator());
+		file.delete();
+	}
+
+	private void recountDirty() {
+		for(Map.Entry<URI,Resident> entry : this.resident.entrySet()) {
+			Resident r = entry.getValue();
+			if(r.dirty) {
+				long size = 0;
+				ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(
+				        entry.getKey(), Variable.ANY, Variable.ANY, Variable.ANY);
+				try {
+					while(it.hasNext()) {
+						size += estimateSize(it.next());
+					}
+				} finally {
+					it.close();
+				}
+				r.size = size;
+				r.dirty = false;
+			}
+		}
+	}
+
+	/**
+	 * Pages out graphs by the eviction policy until the resident graphs fit
+	 * into the budget.
+	 *
+	 * @param keep contexts which must stay in memory
+	 */
+	private void evictIfNeeded(Set<URI> keep) {
+		recountDirty();
+		long total = 0;
+		for(Resident r : this.resident.values()) {
+			total += r.size;
+		}
+		while(total > this.memoryBudget) {
+			URI victim = null;
+			Resident victimState = null;
+			for(Map.Entry<URI,Resident> entry : this.resident.entrySet()) {
+				Resident r = entry.getValue();
+				if(keep.contains(entry.getKey()) || r.size == 0) {
+					continue;
+				}
+				if(victimState == null || colder(r, victimState)) {
+					victim = entry.getKey();
+					victimState = r;
+				}
+			}
+			if(victim == null) {
+				return;
+			}
+			total -= victimState.size;
+			pageOut(victim, victimState);
+		}
+	}
+
+	private boolean colder(Resident a, Resident b) {
+		if(this.policy == EvictionPolicy.LFU && a.accessCount != b.accessCount) {
+			return a.accessCount < b.accessCount;
+		}
+		return a.lastAccess < b.lastAccess;
+	}
+
+	/**
+	 * Reads all paged out graphs back into memory, regardless of the budget.
+	 * They are paged out again by the next write.
+	 */
+	public synchronized void pageInAll() {
+		for(URI contextURI : new ArrayList<URI>(this.paged.keySet())) {
+			access(contextURI, false);
+		}
+	}
+
+	private boolean anyPagedMatch(QuadPattern pattern) {
+		ClosableIterator<Statement> it = new PagedIterator(null, pattern);
+		try {
+			return it.hasNext();
+		} finally {
+			it.close();
+		}
+	}
+
+	// /////////////////////////////////
+	// writes
+
+	@Override
+	public synchronized void addStatement(Statement statement) throws ModelRuntimeException {
+		Resident r = access(statement.getContext(), true);
+		ModelSet hot = getDelegatedModelSet();
+		if(r == null) {
+			hot.addStatement(statement);
+			return;
+		}
+		if(!hot.contains(statement)) {
+			hot.addStatement(statement);
+			r.size += estimateSize(statement);
+		}
+		evictIfNeeded(Collections.singleton(statement.getContext()));
+	}
+
+	@Override
+	public synchronized void removeStatement(Statement statement) throws ModelRuntimeException {
+		ModelSet hot = getDelegatedModelSet();
+		if(statement.getContext() == null) {
+			hot.removeStatement(statement);
+			return;
+		}
+		Resident r = access(statement.getContext(), false);
+		if(r != null && hot.contains(statement)) {
+			hot.removeStatement(statement);
+			r.size -= estimateSize(statement);
+		}
+	}
+
+	@Override
+	public synchronized void addAll(Iterator<? extends Statement> statements)
+	        throws ModelRuntimeException {
+		for(Map.Entry<URI,List<Statement>> entry : byContext(statements).entrySet()) {
+			Resident r = access(entry.getKey(), true);
+			getDelegatedModelSet().addAll(entry.getValue().iterator());
+			if(r != null) {
+				r.dirty = true;
+				evictIfNeeded(Collections.singleton(entry.getKey()));
+			}
+		}
+	}
+
+	@Override
+	public synchronized void removeAll(Iterator<? extends Statement> statements)
+	        throws ModelRuntimeException {
+		for(Map.Entry<URI,List<Statement>> entry : byContext(statements).entrySet()) {
+			Resident r = access(entry.getKey(), false);
+			if(r != null || entry.getKey() == null) {
+				getDelegatedModelSet().removeAll(entry.getValue().iterator());
+			}
+			if(r != null) {
+				r.dirty = true;
+			}
+		}
+	}
+
+	private static Map<URI,List<Statement>> byContext(Iterator<? extends Statement> statements) {
+		Map<URI,List<Statement>> result = new LinkedHashMap<URI,List<Statement>>();
+		while(statements.hasNext()) {
+			Statement statement = statements.next();
+			List<Statement> list = result.get(statement.getContext());
+			if(list == null) {
+				list = new ArrayList<Statement>();
+				result.put(statement.getContext(), list);
+			}
+			list.add(statement);
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void removeStatements(QuadPattern quadPattern)
+	        throws ModelRuntimeException {
+		removeStatements(quadPattern.getContext(), quadPattern.getSubject(), quadPattern
+		        .getPredicate(), quadPattern.getObject());
+	}
+
+	@Override
+	public synchronized void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = findStatements(context, subject, predicate, object);
+		while(it.hasNext()) {
+			statements.add(it.next());
+		}
+		it.close();
+		removeAll(statements.iterator());
+	}
+
+	@Override
+	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+		Set<URI> contexts = new LinkedHashSet<URI>();
+		for(Statement statement : diff.getAdded()) {
+			access(statement.getContext(), true);
+			contexts.add(statement.getContext());
+		}
+		for(Statement statement : diff.getRemoved()) {
+			access(statement.getContext(), false);
+			contexts.add(statement.getContext());
+		}
+		getDelegatedModelSet().update(diff);
+		for(URI contextURI : contexts) {
+			Resident r = contextURI == null ? null : this.resident.get(contextURI);
+			if(r != null) {
+				r.dirty = true;
+			}
+		}
+		evictIfNeeded(Collections.<URI>emptySet());
+	}
+
+	@Override
+	public synchronized boolean addModel(Model model) {
+		return addModel(model, model.getContextURI(), true);
+	}
+
+	@Override
+	public synchronized void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		addModel(model, contextURI, false);
+	}
+
+	private boolean addModel(Model model, URI contextURI, boolean own) {
+		Resident r = access(contextURI, true);
+		boolean result = true;
+		if(own) {
+			result = getDelegatedModelSet().addModel(model);
+		} else {
+			getDelegatedModelSet().addModel(model, contextURI);
+		}
+		if(r != null) {
+			r.dirty = true;
+			evictIfNeeded(Collections.singleton(contextURI));
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = modelSet.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public synchronized boolean removeModel(URI contextURI) {
+		Paged p = this.paged.remove(contextURI);
+		if(p != null) {
+			p.file.delete();
+		}
+		this.resident.remove(contextURI);
+		return getDelegatedModelSet().removeModel(contextURI) || p != null;
+	}
+
+	@Override
+	public synchronized void removeAll() throws ModelRuntimeException {
+		getDelegatedModelSet().removeAll();
+		for(Paged p : this.paged.values()) {
+			p.file.delete();
+		}
+		this.paged.clear();
+		this.resident.clear();
+	}
+
+	// /////////////////////////////////
+	// reads
+
+	/**
+	 * The model is read back from disk if it was paged out.
+	 */
+	@Override
+	public synchronized Model getModel(URI contextURI) {
+		Resident r = access(contextURI, true);
+		if(r != null) {
+			r.dirty = true;
+			evictIfNeeded(Collections.singleton(contextURI));
+		}
+		return super.getModel(contextURI);
+	}
+
+	/**
+	 * Each graph is paged in when the iterator reaches it, so graphs returned
+	 * before may be paged out again.
+	 */
+	@Override
+	public synchronized ClosableIterator<Model> getModels() {
+		final ClosableIterator<URI> contextURIs = getModelURIs();
+		return new ClosableIterator<Model>() {
+
+			@Override
+			public boolean hasNext() {
+				return contextURIs.hasNext();
+			}
+
+			@Override
+			public Model next() {
+				return getModel(contextURIs.next());
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void close() {
+				contextURIs.close();
+			}
+		};
+	}
+
+	@Override
+	public synchronized ClosableIterator<URI> getModelURIs() {
+		Set<URI> contextURIs = new LinkedHashSet<URI>();
+		ClosableIterator<URI> it = getDelegatedModelSet().getModelURIs();
+		while(it.hasNext()) {
+			contextURIs.add(it.next());
+		}
+		it.close();
+		contextURIs.addAll(this.paged.keySet());
+		return new PseudoClosableIterator<URI>(contextURIs.iterator());
+	}
+
+	@Override
+	public synchronized boolean containsModel(URI contextURI) {
+		return this.paged.containsKey(contextURI)
+		        || getDelegatedModelSet().containsModel(contextURI);
+	}
+
+	@Override
+	public synchronized ClosableIterator<Statement> findStatements(QuadPattern pattern)
+	        throws ModelRuntimeException {
+		return findStatements(pattern.getContext(), pattern.getSubject(), pattern.getPredicate(),
+		        pattern.getObject());
+	}
+
+	/**
+	 * Bound to a context the graph is paged in, otherwise the paged out graphs
+	 * are scanned on disk.
+	 */
+	@Override
+	public synchronized ClosableIterator<Statement> findStatements(UriOrVariable contextURI,
+	        ResourceOrVariable subject, UriOrVariable predicate, NodeOrVariable object)
+	        throws ModelRuntimeException {
+		if(contextURI instanceof URI) {
+			read((URI)contextURI);
+			return super.findStatements(contextURI, subject, predicate, object);
+		}
+		return new PagedIterator(super.findStatements(contextURI, subject, predicate, object),
+		        new QuadPatternImpl(contextURI, subject, predicate, object));
+	}
+
+	@Override
+	public synchronized boolean containsStatements(UriOrVariable contextURI,
+	        ResourceOrVariable subject, UriOrVariable predicate, NodeOrVariable object)
+	        throws ModelRuntimeException {
+		if(contextURI instanceof URI) {
+			read((URI)contextURI);
+		}
+		return super.containsStatements(contextURI, subject, predicate, object)
+		        || !(contextURI instanceof URI)
+		        && anyPagedMatch(new QuadPatternImpl(contextURI, subject, predicate, object));
+	}
+
+	@Override
+	public synchronized long countStatements(QuadPattern pattern) throws ModelRuntimeException {
+		if(pattern.getContext() instanceof URI) {
+			read((URI)pattern.getContext());
+			return getDelegatedModelSet().countStatements(pattern);
+		}
+		if(pattern.getSubject() instanceof Variable && pattern.getPredicate() instanceof Variable
+		        && pattern.getObject() instanceof Variable) {
+			return getDelegatedModelSet().countStatements(pattern) + pagedSize();
+		}
+		return super.countStatements(pattern);
+	}
+
+	@Override
+	public synchronized ClosableIterator<Statement> iterator() {
+		return findStatements(Variable.ANY, Variable.ANY, Variable.ANY, Variable.ANY);
+	}
+
+	@Override
+	public synchronized long size() throws ModelRuntimeException {
+		return super.size() + pagedSize();
+	}
+
+	private long pagedSize() {
+		long size = 0;
+		for(Paged p : this.paged.values()) {
+			size += p.size;
+		}
+		return size;
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		return this.paged.isEmpty() && super.isEmpty();
+	}
+
+	/**
+	 * Iterates first over the statements in memory, then over the matching
+	 * statements of each paged out graph, which is read when it is reached.
+	 */
+	private class PagedIterator implements ClosableIterator<Statement> {
+
+		private ClosableIterator<Statement> current;
+
+		private final Iterator<Map.Entry<URI,Paged>> files;
+
+		private final QuadPattern pattern;
+
+		private Iterator<Statement> fileStatements;
+
+		private Statement next;
+
+		/**
+		 * @param hot statements in memory, may be null
+		 */
+		PagedIterator(ClosableIterator<Statement> hot, QuadPattern pattern) {
+			this.current = hot;
+			this.pattern = pattern;
+			this.files = new ArrayList<Map.Entry<URI,Paged>>(
+			        PagingModelSet.this.paged.entrySet()).iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(this.next == null) {
+				if(this.current != null) {
+					if(this.current.hasNext()) {
+						this.next = this.current.next();
+						break;
+					}
+					this.current.close();
+					this.current = null;
+				}
+				if(this.fileStatements != null && this.fileStatements.hasNext()) {
+					this.next = this.fileStatements.next();
+				} else if(this.files.hasNext()) {
+					Map.Entry<URI,Paged> entry = this.files.next();
+					this.fileStatements = read(entry.getKey(), entry.getValue().file).iterator();
+				} else {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private List<Statement> read(URI contextURI, File file) {
+			synchronized(PagingModelSet.this) {
+				return readFile(file, contextURI, this.pattern);
+			}
+		}
+
+		@Override
+		public Statement next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Statement result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(
+			        "Statements cannot be removed while iterating over a paging model set");
+		}
+
+		@Override
+		public void close() {
+			if(this.current != null) {
+				this.current.close();
+				this.current = null;
+			}
+			this.fileStatements = null;
+			this.next = null;
+		}
+	}
+
+	// /////////////////////////////////
+	// operations on the whole model set
+
+	/**
+	 * Parses into a temporary model set first, so the statements are added
+	 * context by context within the budget.
+	 */
+	private ModelSet createTemporaryModelSet() {
+		ModelSet parsed = RDF2Go.getModelFactory().createModelSet();
+		parsed.open();
+		return parsed;
+	}
+
+	@Override
+	public synchronized void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public synchronized void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public synchronized void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public synchronized void readFrom(Reader in, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public synchronized void readFrom(InputStream reader, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(reader, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public synchronized void readFrom(Reader in, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	/**
+	 * Checked before anything is written while graphs are paged out.
+	 */
+	private void checkSyntax(Syntax syntax) throws SyntaxNotSupportedException {
+		if(syntax != Syntax.Nquads && syntax != Syntax.Trig) {
+			throw new SyntaxNotSupportedException("While graphs are paged out, a "
+			        + getClass().getSimpleName() + " can only be written as N-Quads or TriG");
+		}
+	}
+
+	/**
+	 * Paged out graphs are written one by one, each from a temporary model
+	 * set which holds only that graph.
+	 *
+	 * @param out an OutputStream or a Writer
+	 */
+	private void writeGraphs(Object out, Syntax syntax) throws IOException {
+		for(Map.Entry<URI,Paged> entry : this.paged.entrySet()) {
+			ModelSet graph = createTemporaryModelSet();
+			try {
+				graph.addAll(readFile(entry.getValue().file, entry.getKey(), null).iterator());
+				if(out instanceof Writer) {
+					graph.writeTo((Writer)out, syntax);
+				} else {
+					graph.writeTo((OutputStream)out, syntax);
+				}
+			} finally {
+				graph.close();
+			}
+		}
+	}
+
+	/**
+	 * @throws SyntaxNotSupportedException while graphs are paged out, as the
+	 *             default syntax TriX cannot be written graph by graph
+	 */
+	@Override
+	public synchronized void writeTo(OutputStream out) throws IOException, ModelRuntimeException {
+		if(!this.paged.isEmpty()) {
+			checkSyntax(Syntax.Trix);
+		}
+		super.writeTo(out);
+	}
+
+	@Override
+	public synchronized void writeTo(OutputStream out, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		if(this.paged.isEmpty()) {
+			super.writeTo(out, syntax);
+			return;
+		}
+		checkSyntax(syntax);
+		super.writeTo(out, syntax);
+		writeGraphs(out, syntax);
+	}
+
+	/**
+	 * @throws SyntaxNotSupportedException while graphs are paged out, as the
+	 *             default syntax TriX cannot be written graph by graph
+	 */
+	@Override
+	public synchronized void writeTo(Writer out) throws IOException, ModelRuntimeException {
+		if(!this.paged.isEmpty()) {
+			checkSyntax(Syntax.Trix);
+		}
+		super.writeTo(out);
+	}
+
+	@Override
+	public synchronized void writeTo(Writer out, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		if(this.paged.isEmpty()) {
+			super.writeTo(out, syntax);
+			return;
+		}
+		checkSyntax(syntax);
+		super.writeTo(out, syntax);
+		writeGraphs(out, syntax);
+	}
+
+	/**
+	 * @return the graphs named by the dataset clauses and GRAPH patterns of a
+	 *         query, null if it has no FROM or FROM NAMED clause
+	 */
+	static Set<URI> getNamedGraphs(String query) throws MalformedQueryException {
+		Map<String,String> prefixes = new HashMap<String,String>();
+		Matcher m = PREFIX.matcher(query);
+		while(m.find()) {
+			prefixes.put(m.group(1) == null ? "" : m.group(1), m.group(2));
+		}
+		Set<URI> result = new LinkedHashSet<URI>();
+		boolean dataset = false;
+		m = GRAPH_NAME.matcher(query);
+		while(m.find()) {
+			dataset |= m.group(1).toUpperCase().startsWith("FROM");
+			String name = m.group(2);
+			if(name.startsWith("<")) {
+				result.add(new URIImpl(name.substring(1, name.length() - 1), false));
+			} else {
+				int colon = name.indexOf(':');
+				String namespace = prefixes.get(name.substring(0, colon));
+				if(namespace == null) {
+					throw new MalformedQueryException("Undeclared prefix in " + name);
+				}
+				result.add(new URIImpl(namespace + name.substring(colon + 1), false));
+			}
+		}
+		return dataset ? result : null;
+	}
+
+	/**
+	 * Pages in the graphs a query names, if graphs are paged out.
+	 *
+	 * @return true if graphs are paged out, the result must then be read
+	 *         before another operation pages the graphs out again
+	 * @throws ModelRuntimeException if graphs are paged out and the query
+	 *             does not declare its dataset
+	 */
+	private boolean prepareQuery(String query) throws MalformedQueryException {
+		if(this.paged.isEmpty()) {
+			return false;
+		}
+		Set<URI> graphs = getNamedGraphs(query);
+		if(graphs == null) {
+			throw new ModelRuntimeException("While graphs are paged out, a query must declare "
+			        + "its dataset with FROM or FROM NAMED: " + query);
+		}
+		for(URI contextURI : graphs) {
+			access(contextURI, false);
+		}
+		evictIfNeeded(graphs);
+		return true;
+	}
+
+	@Override
+	public synchronized boolean sparqlAsk(String query) throws ModelRuntimeException,
+	        MalformedQueryException {
+		prepareQuery(query);
+		return super.sparqlAsk(query);
+	}
+
+	@Override
+	public synchronized ClosableIterable<Statement> sparqlConstruct(String query)
+	        throws ModelRuntimeException, MalformedQueryException {
+		if(prepareQuery(query)) {
+			return new StatementList(super.sparqlConstruct(query));
+		}
+		return super.sparqlConstruct(query);
+	}
+
+	@Override
+	public synchronized ClosableIterable<Statement> sparqlDescribe(String query)
+	        throws ModelRuntimeException {
+		if(prepareQuery(query)) {
+			return new StatementList(super.sparqlDescribe(query));
+		}
+		return super.sparqlDescribe(query);
+	}
+
+	@Override
+	public synchronized QueryResultTable sparqlSelect(String queryString)
+	        throws MalformedQueryException, ModelRuntimeException {
+		if(prepareQuery(queryString)) {
+			return new RowTable(super.sparqlSelect(queryString));
+		}
+		return super.sparqlSelect(queryString);
+	}
+
+	@Override
+	public synchronized ClosableIterable<Statement> queryConstruct(String query,
+	        String querylanguage) throws QueryLanguageNotSupportedException,
+	        MalformedQueryException, ModelRuntimeException {
+		if(prepareQuery(query)) {
+			return new StatementList(super.queryConstruct(query, querylanguage));
+		}
+		return super.queryConstruct(query, querylanguage);
+	}
+
+	@Override
+	public synchronized QueryResultTable querySelect(String query, String querylanguage)
+	        throws QueryLanguageNotSupportedException, MalformedQueryException,
+	        ModelRuntimeException {
+		if(prepareQuery(query)) {
+			return new RowTable(super.querySelect(query, querylanguage));
+		}
+		return super.querySelect(query, querylanguage);
+	}
+
+	/**
+	 * While graphs are paged out, the snapshot is a read-only paging model set
+	 * over a copy of the resident graphs and copies of the files of the paged
+	 * out graphs in a temporary directory, which is deleted when the snapshot
+	 * is closed. Only the resident graphs are copied on the heap.
+	 */
+	@Override
+	public synchronized ModelSet snapshot() throws ModelRuntimeException {
+		if(this.paged.isEmpty()) {
+			return super.snapshot();
+		}
+		File snapshotDirectory;
+		try {
+			snapshotDirectory = File.createTempFile("snapshot", "", this.directory.getParentFile());
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot create a snapshot directory", e);
+		}
+		snapshotDirectory.delete();
+		snapshotDirectory.mkdirs();
+		ModelSet hot = createTemporaryModelSet();
+		try {
+			for(Paged p : this.paged.values()) {
+				copyFile(p.file, new File(snapshotDirectory, p.file.getName()));
+			}
+			// the default model is copied with a null context, however the
+			// model set reports it in the other contexts
+			Model defaultModel = getDelegatedModelSet().getDefaultModel();
+			try {
+				ClosableIterator<Statement> it = defaultModel.iterator();
+				try {
+					while(it.hasNext()) {
+						Statement s = it.next();
+						hot.addStatement(null, s.getSubject(), s.getPredicate(), s.getObject());
+					}
+				} finally {
+					it.close();
+				}
+			} finally {
+				defaultModel.close();
+			}
+			List<URI> contextURIs = new ArrayList<URI>();
+			ClosableIterator<URI> uris = getDelegatedModelSet().getModelURIs();
+			try {
+				while(uris.hasNext()) {
+					contextURIs.add(uris.next());
+				}
+			} finally {
+				uris.close();
+			}
+			for(URI contextURI : contextURIs) {
+				ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(contextURI,
+				        Variable.ANY, Variable.ANY, Variable.ANY);
+				try {
+					hot.addAll(it);
+				} finally {
+					it.close();
+				}
+			}
+		} catch(RuntimeException e) {
+			hot.close();
+			deleteDirectory(snapshotDirectory);
+			throw e;
+		}
+		return new ReadOnlyModelSet(new PagingModelSet(hot, snapshotDirectory,
+		        this.memoryBudget, this.policy, true));
+	}
+
+	private static void copyFile(File from, File to) {
+		try {
+			InputStream in = new FileInputStream(from);
+			try {
+				OutputStream out = new FileOutputStream(to);
+				try {
+					byte[] buffer = new byte[8192];
+					int read;
+					while((read = in.read(buffer)) > 0) {
+						out.write(buffer, 0, read);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot copy " + from, e);
+		}
+	}
+
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	/**
+	 * The statements of a query result, read before the graphs it was
+	 * evaluated on can be paged out again.
+	 */
+	private static class StatementList implements ClosableIterable<Statement> {
+
+		private static final long serialVersionUID = -2209843613402576011L;
+
+		private final List<Statement> statements = new ArrayList<Statement>();
+
+		StatementList(ClosableIterable<Statement> result) {
+			ClosableIterator<Statement> it = result.iterator();
+			try {
+				while(it.hasNext()) {
+					this.statements.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+		}
+
+		@Override
+		public ClosableIterator<Statement> iterator() {
+			return new PseudoClosableIterator<Statement>(this.statements.iterator());
+		}
+	}
+
+	/**
+	 * The rows of a query result, read before the graphs it was evaluated on
+	 * can be paged out again.
+	 */
+	private static class RowTable implements QueryResultTable {
+
+		private static final long serialVersionUID = 4871100623948021337L;
+
+		private final List<String> variables;
+
+		private final List<QueryRow> rows = new ArrayList<QueryRow>();
+
+		RowTable(QueryResultTable result) {
+			this.variables = new ArrayList<String>(result.getVariables());
+			ClosableIterator<QueryRow> it = result.iterator();
+			try {
+				while(it.hasNext()) {
+					QueryRow row = it.next();
+					QueryRowImpl copy = new QueryRowImpl();
+					for(String variable : this.variables) {
+						Node value = row.getValue(variable);
+						if(value != null) {
+							copy.put(variable, value);
+						}
+					}
+					this.rows.add(copy);
+				}
+			} finally {
+				it.close();
+			}
+		}
+
+		@Override
+		public List<String> getVariables() {
+			return this.variables;
+		}
+
+		@Override
+		public ClosableIterator<QueryRow> iterator() {
+			return new PseudoClosableIterator<QueryRow>(this.rows.iterator());
+		}
+	}
+
+	/**
+	 * Not supported, a rollback could not undo the paging.
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + getClass().getName());
+	}
+
+	/**
+	 * Not supported, a rollback could not undo the paging.
+	 */
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		throw new UnsupportedOperationException("Transactions are not supported by "
+		        + getClass().getName());
+	}
+
+}
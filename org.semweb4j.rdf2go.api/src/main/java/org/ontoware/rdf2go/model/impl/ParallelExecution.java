@@ -0,0 +1,261 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Statement;
+
+
+/**
+ * Runs the same operation on several models or model sets in parallel, for
+ * {@link FederatedModel} and {@link ShardedModelSet}.
+ *
+ * @author agent
+ */
+class ParallelExecution {
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private ParallelExecution() {
+		// static helper
+	}
+
+	/**
+	 * @return a pool of daemon threads, which must be shut down by the owner
+	 */
+	static ExecutorService newExecutor(final String name) {
+		return Executors.newCachedThreadPool(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * A single task is run in the calling thread.
+	 *
+	 * @return the results of the tasks, in order
+	 */
+	static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if(tasks.size() == 1) {
+			try {
+				results.add(tasks.get(0).call());
+			} catch(RuntimeException e) {
+				throw e;
+			} catch(Exception e) {
+				throw new ModelRuntimeException(e);
+			}
+			return results;
+		}
+		try {
+			for(Future<T> future : executor.invokeAll(tasks)) {
+				results.add(future.get());
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModelRuntimeException(e);
+		} catch(ExecutionException e) {
+			throw rethrow(e.getCause());
+		}
+		return results;
+	}
+
+	/**
+	 * @return the sum of the results
+	 */
+	static long sum(ExecutorService executor, List<Callable<Long>> tasks) {
+		long sum = 0;
+		for(long result : invokeAll(executor, tasks)) {
+			sum += result;
+		}
+		return sum;
+	}
+
+	static RuntimeException rethrow(Throwable cause) {
+		if(cause instanceof RuntimeException) {
+			return (RuntimeException)cause;
+		}
+		if(cause instanceof Error) {
+			throw (Error)cause;
+		}
+		return new ModelRuntimeException(cause);
+	}
+
+	/** marks the end of the results of one source */
+	private static final Object DONE = new Object();
+
+	/** wraps a failure of one source */
+	private static class Failure {
+
+		final Throwable cause;
+
+		Failure(Throwable cause) {
+			this.cause = cause;
+		}
+	}
+
+	/**
+	 * Each source fills a shared bounded queue from its own thread, the
+	 * statements are returned in the order they arrive. Closing stops the
+	 * sources which are still running. They are not interrupted, as an
+	 * interrupt in the middle of backend I/O can leave the backend unusable;
+	 * instead each source stops before reading its next statement and closes
+	 * its iterator.
+	 */
+	static class MergingIterator implements ClosableIterator<Statement> {
+
+		/** how long a source waits for space in the queue before checking again */
+		private static final long POLL_MILLIS = 100;
+
+		private final BlockingQueue<Object> queue;
+
+		private volatile boolean closed = false;
+
+		private final List<Future<?>> producers = new ArrayList<Future<?>>();
+
+		private int running;
+
+		private Statement next;
+
+		/**
+		 * @param sources each opens the iterator of one source
+		 * @param bufferSize statements buffered per source
+		 */
+		MergingIterator(ExecutorService executor,
+		        List<Callable<ClosableIterator<Statement>>> sources, int bufferSize) {
+			this.queue = new ArrayBlockingQueue<Object>(Math.max(1, sources.size() * bufferSize));
+			this.running = sources.size();
+			for(final Callable<ClosableIterator<Statement>> source : sources) {
+				this.producers.add(executor.submit(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							if(MergingIterator.this.closed) {
+								return;
+							}
+							ClosableIterator<Statement> it = source.call();
+							try {
+								while(!MergingIterator.this.closed && it.hasNext()) {
+									if(!put(it.next())) {
+										return;
+									}
+								}
+							} finally {
+								it.close();
+							}
+							put(DONE);
+						} catch(InterruptedException e) {
+							// the pool has been shut down
+							Thread.currentThread().interrupt();
+						} catch(Throwable t) {
+							try {
+								put(new Failure(t));
+							} catch(InterruptedException e) {
+								Thread.currentThread().interrupt();
+							}
+						}
+					}
+				}));
+			}
+		}
+
+		/**
+		 * @return false if the iterator has been closed while waiting for
+		 *         space in the queue
+		 */
+		boolean put(Object element) throws InterruptedException {
+			while(!this.closed) {
+				if(this.queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(this.next != null) {
+				return true;
+			}
+			try {
+				while(this.running > 0) {
+					Object element = this.queue.take();
+					if(element == DONE) {
+						this.running--;
+					} else if(element instanceof Failure) {
+						close();
+						throw rethrow(((Failure)element).cause);
+					} else {
+						this.next = (Statement)element;
+						return true;
+					}
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				close();
+				throw new ModelRuntimeException(e);
+			}
+			return false;
+		}
+
+		@Override
+		public Statement next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Statement result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException(
+			        "Statements from several sources cannot be removed while iterating");
+		}
+
+		/**
+		 * Sources which have not started yet are cancelled, running ones stop
+		 * on their own.
+		 */
+		@Override
+		public void close() {
+			this.running = 0;
+			this.closed = true;
+			for(Future<?> producer : this.producers) {
+				producer.cancel(false);
+			}
+			// frees sources waiting for space, they see the flag next
+			this.queue.clear();
+		}
+	}
+
+}
@@ -0,0 +1,548 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.FindableModel;
+import org.ontoware.rdf2go.model.ModelStatistics;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * Evaluates a basic graph pattern, i.e. a list of triple patterns sharing
+ * named {@link Variable}s, with {@link FindableModel#findStatements(TriplePattern)}
+ * calls only.
+ *
+ * The patterns are ordered greedily: first the pattern with the fewest
+ * estimated matches, then always the pattern with the fewest estimated
+ * matches among those sharing a variable with the patterns before, so cross
+ * products come last. Each pattern is then joined to the rows so far
+ * <ul>
+ * <li>by index nested loop, i.e. one findStatements call per row with the
+ * bound variables filled in, or</li>
+ * <li>by hash join, i.e. one findStatements call for the pattern whose
+ * matches are kept in a hash table keyed by the shared variables. This is
+ * used for patterns with few matches compared to the number of rows, so there
+ * is no lookup per row.</li>
+ * </ul>
+ * Rows are produced lazily, one at a time.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class PatternJoinEngine {
+
+	/**
+	 * Counted estimates stop at this many matches, and only patterns with
+	 * fewer estimated matches are put into a hash table.
+	 */
+	public static final int ESTIMATE_LIMIT = 1000;
+
+	/**
+	 * Cost of a findStatements call, in statements read. A hash join is used
+	 * if reading all matches of a pattern costs less than one call per row.
+	 */
+	public static final int LOOKUP_COST = 10;
+
+	private final FindableModel model;
+
+	private final ModelStatistics statistics;
+
+	/**
+	 * Estimates by counting up to {@link #ESTIMATE_LIMIT} matches.
+	 */
+	public PatternJoinEngine(FindableModel model) {
+		this(model, null);
+	}
+
+	/**
+	 * @param statistics of the model for the estimates, or null to count
+	 *            matches
+	 */
+	public PatternJoinEngine(FindableModel model, ModelStatistics statistics) {
+		this.model = model;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * @param patterns a basic graph pattern. Named variables are bound,
+	 *            {@link Variable#ANY} matches anything without binding.
+	 * @return one row per solution, binding the named variables. No patterns
+	 *         have one empty solution.
+	 */
+	public ClosableIterator<QueryRow> evaluate(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException {
+		List<Step> plan = plan(patterns);
+		if(plan == null) {
+			return new RowIterator(new EmptyRows());
+		}
+		ClosableIterator<QueryRowImpl> rows = new SingleRow();
+		for(Step step : plan) {
+			rows = step.hashJoin ? new HashJoin(rows, step) : new NestedLoopJoin(rows, step);
+		}
+		return new RowIterator(rows);
+	}
+
+	/**
+	 * @return the estimate of the statistics, if any, or the number of
+	 *         statements matching the pattern up to {@link #ESTIMATE_LIMIT}.
+	 *         Named variables match anything.
+	 */
+	protected long estimate(TriplePattern pattern) throws ModelRuntimeException {
+		if(this.statistics != null) {
+			return this.statistics.estimate(pattern);
+		}
+		ClosableIterator<Statement> it = this.model.findStatements(pattern);
+		try {
+			long count = 0;
+			while(count < ESTIMATE_LIMIT && it.hasNext()) {
+				it.next();
+				count++;
+			}
+			return count;
+		} finally {
+			it.close();
+		}
+	}
+
+	// //////////////////////////
+	// planning
+
+	private static class Step {
+
+		final TriplePattern pattern;
+
+		/** variables of the pattern bound by the steps before */
+		final List<String> joinVariables;
+
+		final boolean hashJoin;
+
+		Step(TriplePattern pattern, List<String> joinVariables, boolean hashJoin) {
+			this.pattern = pattern;
+			this.joinVariables = joinVariables;
+			this.hashJoin = hashJoin;
+		}
+	}
+
+	/**
+	 * @return the steps, or null if a pattern has no match at all
+	 */
+	List<Step> plan(List<? extends TriplePattern> patterns) throws ModelRuntimeException {
+		List<TriplePattern> remaining = new ArrayList<TriplePattern>(patterns);
+		List<Long> estimates = new ArrayList<Long>();
+		for(TriplePattern pattern : remaining) {
+			long estimate = estimate(pattern);
+			if(estimate == 0) {
+				return null;
+			}
+			estimates.add(estimate);
+		}
+		List<Step> steps = new ArrayList<Step>();
+		Set<String> bound = new HashSet<String>();
+		long rows = 1;
+		while(!remaining.isEmpty()) {
+			int next = -1;
+			boolean nextConnected = false;
+			for(int i = 0; i < remaining.size(); i++) {
+				boolean connected = !Collections.disjoint(variables(remaining.get(i)), bound);
+				if(next == -1 || (connected && !nextConnected)
+				        || (connected == nextConnected && estimates.get(i) < estimates.get(next))) {
+					next = i;
+					nextConnected = connected;
+				}
+			}
+			TriplePattern pattern = remaining.remove(next);
+			long estimate = estimates.remove(next);
+			List<String> variables = variables(pattern);
+			List<String> joinVariables = new ArrayList<String>();
+			for(String variable : variables) {
+				if(bound.contains(variable)) {
+					joinVariables.add(variable);
+				}
+			}
+			boolean hashJoin = !steps.isEmpty() && estimate < ESTIMATE_LIMIT
+			        && (joinVariables.isEmpty() || estimate / LOOKUP_COST < rows);
+			steps.add(new Step(pattern, joinVariables, hashJoin));
+			bound.addAll(variables);
+			if(joinVariables.isEmpty()) {
+				rows = rows > Long.MAX_VALUE / estimate ? Long.MAX_VALUE : rows * estimate;
+			} else {
+				rows = Math.max(rows, estimate);
+			}
+		}
+		return steps;
+	}
+
+	/**
+	 * @return the distinct names of the named variables in the pattern
+	 */
+	private static List<String> variables(TriplePattern pattern) {
+		List<String> variables = new ArrayList<String>(3);
+		for(NodeOrVariable term : terms(pattern)) {
+			String name = name(term);
+			if(name != null && !variables.contains(name)) {
+				variables.add(name);
+			}
+		}
+		return variables;
+	}
+
+	private static List<NodeOrVariable> terms(TriplePattern pattern) {
+		return Arrays.<NodeOrVariable> asList(pattern.getSubject(), pattern.getPredicate(),
+		        pattern.getObject());
+	}
+
+	private static String name(NodeOrVariable term) {
+		return term instanceof Variable ? ((Variable)term).getName() : null;
+	}
+
+	// //////////////////////////
+	// binding
+
+	/**
+	 * @return row extended with the bindings of the statement for the
+	 *         pattern, or null if they contradict the row or each other
+	 */
+	static QueryRowImpl bind(TriplePattern pattern, Statement statement, QueryRowImpl row) {
+		QueryRowImpl result = new QueryRowImpl();
+		if(row != null) {
+			result.putAll(row);
+		}
+		if(bind(result, pattern.getSubject(), statement.getSubject())
+		        && bind(result, pattern.getPredicate(), statement.getPredicate())
+		        && bind(result, pattern.getObject(), statement.getObject())) {
+			return result;
+		}
+		return null;
+	}
+
+	private static boolean bind(QueryRowImpl row, NodeOrVariable term, Node value) {
+		String name = name(term);
+		if(name == null) {
+			return true;
+		}
+		Node existing = row.get(name);
+		if(existing == null) {
+			row.put(name, value);
+			return true;
+		}
+		return existing.equals(value);
+	}
+
+	/**
+	 * @return the pattern with the variables bound in row replaced, or null if
+	 *         a binding cannot appear at its position
+	 */
+	static TriplePattern substitute(TriplePattern pattern, QueryRowImpl row) {
+		NodeOrVariable subject = substitute(pattern.getSubject(), row);
+		NodeOrVariable predicate = substitute(pattern.getPredicate(), row);
+		NodeOrVariable object = substitute(pattern.getObject(), row);
+		if(!(subject instanceof ResourceOrVariable) || !(predicate instanceof UriOrVariable)) {
+			return null;
+		}
+		if(subject instanceof Node && !(subject instanceof Resource)) {
+			return null;
+		}
+		if(predicate instanceof Node && !(predicate instanceof URI)) {
+			return null;
+		}
+		return new TriplePatternImpl((ResourceOrVariable)subject, (UriOrVariable)predicate,
+		        object);
+	}
+
+	private static NodeOrVariable substitute(NodeOrVariable term, QueryRowImpl row) {
+		String name = name(term);
+		if(name != null && row.containsKey(name)) {
+			return row.get(name);
+		}
+		return term;
+	}
+
+	// //////////////////////////
+	// operators
+
+	private static class SingleRow implements ClosableIterator<QueryRowImpl> {
+
+		private boolean done = false;
+
+		@Override
+		public boolean hasNext() {
+			return !this.done;
+		}
+
+		@Override
+		public QueryRowImpl next() {
+			if(this.done) {
+				throw new NoSuchElementException();
+			}
+			this.done = true;
+			return new QueryRowImpl();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.done = true;
+		}
+	}
+
+	private static class EmptyRows implements ClosableIterator<QueryRowImpl> {
+
+		@Override
+		public boolean hasNext() {
+			return false;
+		}
+
+		@Override
+		public QueryRowImpl next() {
+			throw new NoSuchElementException();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+	}
+
+	/**
+	 * Prefetches one row of the subclass.
+	 */
+	private abstract static class JoinIterator implements ClosableIterator<QueryRowImpl> {
+
+		protected final ClosableIterator<QueryRowImpl> left;
+
+		protected final Step step;
+
+		private QueryRowImpl next = null;
+
+		private boolean closed = false;
+
+		JoinIterator(ClosableIterator<QueryRowImpl> left, Step step) {
+			this.left = left;
+			this.step = step;
+		}
+
+		/**
+		 * @return the next row or null at the end
+		 */
+		protected abstract QueryRowImpl fetch();
+
+		@Override
+		public boolean hasNext() {
+			if(this.next == null && !this.closed) {
+				this.next = fetch();
+				if(this.next == null) {
+					close();
+				}
+			}
+			return this.next != null;
+		}
+
+		@Override
+		public QueryRowImpl next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			QueryRowImpl row = this.next;
+			this.next = null;
+			return row;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+			this.next = null;
+			this.left.close();
+		}
+	}
+
+	private class NestedLoopJoin extends JoinIterator {
+
+		private QueryRowImpl row = null;
+
+		private ClosableIterator<Statement> matches = null;
+
+		NestedLoopJoin(ClosableIterator<QueryRowImpl> left, Step step) {
+			super(left, step);
+		}
+
+		@Override
+		protected QueryRowImpl fetch() {
+			while(true) {
+				if(this.matches != null) {
+					while(this.matches.hasNext()) {
+						QueryRowImpl result = bind(this.step.pattern, this.matches.next(),
+						        this.row);
+						if(result != null) {
+							return result;
+						}
+					}
+					this.matches.close();
+					this.matches = null;
+				}
+				if(!this.left.hasNext()) {
+					return null;
+				}
+				this.row = this.left.next();
+				TriplePattern lookup = substitute(this.step.pattern, this.row);
+				if(lookup != null) {
+					this.matches = PatternJoinEngine.this.model.findStatements(lookup);
+				}
+			}
+		}
+
+		@Override
+		public void close() {
+			if(this.matches != null) {
+				this.matches.close();
+				this.matches = null;
+			}
+			super.close();
+		}
+	}
+
+	private class HashJoin extends JoinIterator {
+
+		/** matches of the pattern by the values of the join variables */
+		private Map<List<Node>,List<QueryRowImpl>> table = null;
+
+		private QueryRowImpl row = null;
+
+		private Iterator<QueryRowImpl> candidates = null;
+
+		HashJoin(ClosableIterator<QueryRowImpl> left, Step step) {
+			super(left, step);
+		}
+
+		private void build() {
+			this.table = new HashMap<List<Node>,List<QueryRowImpl>>();
+			ClosableIterator<Statement> it = PatternJoinEngine.this.model
+			        .findStatements(this.step.pattern);
+			try {
+				while(it.hasNext()) {
+					QueryRowImpl match = bind(this.step.pattern, it.next(), null);
+					if(match != null) {
+						List<Node> key = key(match);
+						List<QueryRowImpl> bucket = this.table.get(key);
+						if(bucket == null) {
+							bucket = new ArrayList<QueryRowImpl>(1);
+							this.table.put(key, bucket);
+						}
+						bucket.add(match);
+					}
+				}
+			} finally {
+				it.close();
+			}
+		}
+
+		private List<Node> key(QueryRowImpl row) {
+			List<Node> key = new ArrayList<Node>(this.step.joinVariables.size());
+			for(String variable : this.step.joinVariables) {
+				key.add(row.get(variable));
+			}
+			return key;
+		}
+
+		@Override
+		protected QueryRowImpl fetch() {
+			while(true) {
+				if(this.candidates != null && this.candidates.hasNext()) {
+					QueryRowImpl result = new QueryRowImpl();
+					result.putAll(this.row);
+					result.putAll(this.candidates.next());
+					return result;
+				}
+				if(!this.left.hasNext()) {
+					return null;
+				}
+				if(this.table == null) {
+					// only read the pattern if there is a row to join with
+					build();
+				}
+				this.row = this.left.next();
+				List<QueryRowImpl> bucket = this.table.get(key(this.row));
+				this.candidates = bucket == null ? null : bucket.iterator();
+			}
+		}
+
+		@Override
+		public void close() {
+			this.table = null;
+			this.candidates = null;
+			super.close();
+		}
+	}
+
+	private static class RowIterator implements ClosableIterator<QueryRow> {
+
+		private final ClosableIterator<QueryRowImpl> rows;
+
+		RowIterator(ClosableIterator<QueryRowImpl> rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.rows.hasNext();
+		}
+
+		@Override
+		public QueryRow next() {
+			return this.rows.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.rows.close();
+		}
+	}
+
+}
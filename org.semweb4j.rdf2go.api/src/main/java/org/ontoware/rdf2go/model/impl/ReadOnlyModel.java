@@ -0,0 +1,237 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+
+
+/**
+ * A read-only view on a model. All read operations are delegated, all write
+ * operations throw a {@link ModelRuntimeException}. This is used to wrap the
+ * models returned by {@link Model#snapshot()}.
+ *
+ * Closing this model closes the underlying model.
+ *
+ * @author agent
+ */
+public class ReadOnlyModel extends DelegatingModel {
+
+	private static final long serialVersionUID = 5386411291623473912L;
+
+	public ReadOnlyModel(Model model) {
+		super(model);
+	}
+
+	protected ModelRuntimeException readOnly() {
+		return new ModelRuntimeException("This model is read-only");
+	}
+
+	@Override
+	public Model open() {
+		getDelegatedModel().open();
+		return this;
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        URI datatypeURI) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeNamespace(String prefix) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
+		throw readOnly();
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+}
@@ -0,0 +1,266 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Iterator;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+
+
+/**
+ * A read-only view on a ModelSet. All read operations are delegated, all write
+ * operations throw a {@link ModelRuntimeException}. Models obtained from this
+ * ModelSet are wrapped as {@link ReadOnlyModel}. This is used to wrap the
+ * ModelSets returned by {@link ModelSet#snapshot()}.
+ *
+ * Closing this ModelSet closes the underlying ModelSet.
+ *
+ * @author agent
+ */
+public class ReadOnlyModelSet extends DelegatingModelSet {
+
+	private static final long serialVersionUID = -3109728447365283107L;
+
+	public ReadOnlyModelSet(ModelSet baseModelSet) {
+		super(baseModelSet);
+	}
+
+	protected ModelRuntimeException readOnly() {
+		return new ModelRuntimeException("This ModelSet is read-only");
+	}
+
+	@Override
+	public Model getDefaultModel() {
+		return new ReadOnlyModel(super.getDefaultModel());
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		return new ReadOnlyModel(super.getModel(contextURI));
+	}
+
+	/**
+	 * Iterates over the underlying ModelSet, which includes the default graph
+	 * unlike the union of its models.
+	 */
+	@Override
+	public ClosableIterator<Statement> iterator() {
+		final ClosableIterator<Statement> it = this.baseModelSet.iterator();
+		return new ClosableIterator<Statement>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Statement next() {
+				return it.next();
+			}
+
+			@Override
+			public void remove() {
+				throw readOnly();
+			}
+
+			@Override
+			public void close() {
+				it.close();
+			}
+		};
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		final ClosableIterator<Model> it = super.getModels();
+		return new ClosableIterator<Model>() {
+
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+
+			@Override
+			public Model next() {
+				return new ReadOnlyModel(it.next());
+			}
+
+			@Override
+			public void remove() {
+				throw readOnly();
+			}
+
+			@Override
+			public void close() {
+				it.close();
+			}
+		};
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		throw readOnly();
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addStatement(URI context, Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatement(URI context, Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> statement) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatements(QuadPattern quadPattern) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		throw readOnly();
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException, ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public Resource addReificationOf(Statement statement, Resource resource) {
+		throw readOnly();
+	}
+
+	@Override
+	public BlankNode addReificationOf(Statement statement) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteReification(Resource reificationResource) {
+		throw readOnly();
+	}
+
+	@Override
+	public void removeNamespace(String prefix) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
+		throw readOnly();
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		throw readOnly();
+	}
+
+}
@@ -0,0 +1,64 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Transaction;
+
+
+/**
+ * Wraps the transaction of a model whose derived data follows the changes of
+ * a transaction as they are made, so it has to be recomputed when they are
+ * discarded.
+ *
+ * @author agent
+ * @since 5.1
+ */
+abstract class RebuildOnRollback implements Transaction {
+
+	private final Transaction transaction;
+
+	RebuildOnRollback(Transaction transaction) {
+		this.transaction = transaction;
+	}
+
+	abstract void rebuild();
+
+	@Override
+	public IsolationLevel getIsolationLevel() {
+		return this.transaction.getIsolationLevel();
+	}
+
+	@Override
+	public boolean isActive() {
+		return this.transaction.isActive();
+	}
+
+	@Override
+	public void commit() throws ModelRuntimeException {
+		this.transaction.commit();
+	}
+
+	@Override
+	public void rollback() throws ModelRuntimeException {
+		this.transaction.rollback();
+		rebuild();
+	}
+
+	@Override
+	public void close() throws ModelRuntimeException {
+		boolean active = this.transaction.isActive();
+		this.transaction.close();
+		if(active) {
+			rebuild();
+		}
+	}
+}
@@ -0,0 +1,972 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.ModelValueFactory;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.util.NodeCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The revisions of a {@link VersionedModel} or {@link VersionedModelSet}: the
+ * net changes of each revision, and every n-th revision a checkpoint with the
+ * complete state at that revision, the first state being the first
+ * checkpoint. The state at a revision is computed from the nearest checkpoint
+ * at or before it by applying the changes of the revisions after that.
+ * Revisions are found by their time in a sorted index.
+ *
+ * Changes are collected per thread between {@link #begin()} and
+ * {@link #end(boolean)}; nested calls become one revision. The changes noted
+ * by a write are kept only if it succeeded, those of nested writes which
+ * succeeded are kept in any case, as they have changed the model. A
+ * transaction collects the changes of the thread which started it and records
+ * them when it commits. Revision 0 is the state the history was created with.
+ *
+ * A history kept in a directory appends each revision to a log and writes
+ * each checkpoint to a file of its own. Only the number, time and log offset
+ * of the revisions are kept on the heap, states and changes are read again
+ * when they are needed. The history finds them again when it is created
+ * anew, changes made to the model while the history was not open become one
+ * revision. A history in memory keeps its checkpoints on the heap, so the
+ * interval bounds the number of complete copies.
+ *
+ * @author agent
+ */
+class RevisionHistory {
+
+	private static final Logger log = LoggerFactory.getLogger(RevisionHistory.class);
+
+	static final String BASE = "history.base";
+
+	static final String LOG = "history.log";
+
+	/** followed by the revision */
+	static final String CHECKPOINT = "history.checkpoint.";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	/**
+	 * A statement together with its context, statements alone are equal
+	 * regardless of their context.
+	 */
+	static final class Quad {
+
+		final Statement statement;
+
+		Quad(Statement statement) {
+			this.statement = statement;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Quad)) {
+				return false;
+			}
+			Statement other = ((Quad)o).statement;
+			URI context = this.statement.getContext();
+			return this.statement.equals(other)
+			        && (context == null ? other.getContext() == null : context.equals(other
+			                .getContext()));
+		}
+
+		@Override
+		public int hashCode() {
+			URI context = this.statement.getContext();
+			return this.statement.hashCode() * 31 + (context == null ? 0 : context.hashCode());
+		}
+	}
+
+	/**
+	 * Net changes, the last change of a quad wins.
+	 */
+	private static class Changes {
+
+		final Set<Quad> added = new HashSet<Quad>();
+
+		final Set<Quad> removed = new HashSet<Quad>();
+
+		void added(Quad quad) {
+			if(!this.removed.remove(quad)) {
+				this.added.add(quad);
+			}
+		}
+
+		void removed(Quad quad) {
+			if(!this.added.remove(quad)) {
+				this.removed.add(quad);
+			}
+		}
+
+		void addAll(Changes later) {
+			for(Quad quad : later.removed) {
+				removed(quad);
+			}
+			for(Quad quad : later.added) {
+				added(quad);
+			}
+		}
+
+		boolean isEmpty() {
+			return this.added.isEmpty() && this.removed.isEmpty();
+		}
+
+		void applyTo(Set<Quad> state) {
+			state.removeAll(this.removed);
+			state.addAll(this.added);
+		}
+	}
+
+	private static class Revision {
+
+		final long number;
+
+		final long timestamp;
+
+		/** null if the changes are kept in the log */
+		final Changes changes;
+
+		/** of the record in the log */
+		final long offset;
+
+		Revision(long number, long timestamp, Changes changes, long offset) {
+			this.number = number;
+			this.timestamp = timestamp;
+			this.changes = changes;
+			this.offset = offset;
+		}
+	}
+
+	/** the changes of one write, or of a transaction */
+	private static class Frame {
+
+		/** noted by the write itself, kept only if it succeeds */
+		final Changes own = new Changes();
+
+		/** of nested writes which succeeded */
+		final Changes done = new Changes();
+
+		final boolean transaction;
+
+		Frame(boolean transaction) {
+			this.transaction = transaction;
+		}
+	}
+
+	/** the open frames of one thread, innermost last */
+	private static class Pending {
+
+		final LinkedList<Frame> frames = new LinkedList<Frame>();
+	}
+
+	private final int checkpointInterval;
+
+	/** may be null for a history in memory */
+	private final File directory;
+
+	private final ModelValueFactory factory;
+
+	/** blank nodes by the ID they are stored with */
+	private final Map<String,BlankNode> blankNodes = new HashMap<String,BlankNode>();
+
+	private DataOutputStream logOut;
+
+	/** reads the changes of the revisions back from the log */
+	private RandomAccessFile logIn;
+
+	private long logLength;
+
+	/** revisions after the first one, in order */
+	private final List<Revision> revisions = new ArrayList<Revision>();
+
+	/** time -> the last revision made at that time */
+	private final NavigableMap<Long,Long> revisionsByTime = new TreeMap<Long,Long>();
+
+	/**
+	 * revision -> complete state, including the first revision. The states of
+	 * a history in a directory are null here and kept in files.
+	 */
+	private final TreeMap<Long,Set<Quad>> checkpoints = new TreeMap<Long,Set<Quad>>();
+
+	private long firstRevision = 0;
+
+	private long firstTimestamp;
+
+	private long head = 0;
+
+	private final ThreadLocal<Pending> pending = new ThreadLocal<Pending>();
+
+	private ScheduledExecutorService compactor;
+
+	/**
+	 * A history in memory.
+	 *
+	 * @param initial the state of revision 0
+	 * @param checkpointInterval number of revisions between two checkpoints
+	 */
+	RevisionHistory(Iterator<? extends Statement> initial, int checkpointInterval) {
+		this(initial, checkpointInterval, null, null);
+	}
+
+	/**
+	 * @param initial the current state, revision 0 of a new history
+	 * @param directory where the history is kept, null to keep it in memory
+	 * @param factory creates the blank nodes read from the directory
+	 */
+	RevisionHistory(Iterator<? extends Statement> initial, int checkpointInterval,
+	        File directory, ModelValueFactory factory) {
+		if(checkpointInterval < 1) {
+			throw new IllegalArgumentException("checkpointInterval must be positive");
+		}
+		this.checkpointInterval = checkpointInterval;
+		this.directory = directory;
+		this.factory = factory;
+		Set<Quad> state = new HashSet<Quad>();
+		while(initial.hasNext()) {
+			Quad quad = new Quad(initial.next());
+			state.add(quad);
+			remember(quad.statement.getSubject());
+			remember(quad.statement.getObject());
+		}
+		this.firstTimestamp = System.currentTimeMillis();
+		if(directory == null) {
+			this.checkpoints.put(this.firstRevision, state);
+			return;
+		}
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new ModelRuntimeException("Cannot create directory " + directory);
+		}
+		try {
+			if(new File(directory, BASE).exists()) {
+				load();
+			} else {
+				writeBase(state);
+				new File(directory, LOG).delete();
+				deleteCheckpointFiles(Long.MAX_VALUE);
+				this.checkpoints.put(this.firstRevision, null);
+			}
+			this.logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+			        new File(directory, LOG), true)));
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot open the history in " + directory, e);
+		}
+		// changes made while the history was closed
+		Set<Quad> recorded = state(this.head);
+		Changes changes = new Changes();
+		for(Quad quad : recorded) {
+			if(!state.contains(quad)) {
+				changes.removed.add(quad);
+			}
+		}
+		for(Quad quad : state) {
+			if(!recorded.contains(quad)) {
+				changes.added.add(quad);
+			}
+		}
+		record(changes);
+	}
+
+	/**
+	 * Blank nodes of the current state keep their identity if the model
+	 * stores them with the same ID.
+	 */
+	private void remember(Node node) {
+		if(node instanceof BlankNode) {
+			this.blankNodes.put(((BlankNode)node).getInternalID(), (BlankNode)node);
+		}
+	}
+
+	/**
+	 * Stops the compaction and closes the log, the history cannot be changed
+	 * any more.
+	 */
+	synchronized void close() {
+		cancelCompaction();
+		if(this.logOut != null) {
+			try {
+				this.logOut.close();
+			} catch(IOException e) {
+				log.warn("Could not close the history log", e);
+			}
+			this.logOut = null;
+		}
+		closeLogIn();
+	}
+
+	// /////////////////////////////////
+	// collecting changes
+
+	private Pending pending() {
+		Pending p = this.pending.get();
+		if(p == null) {
+			p = new Pending();
+			this.pending.set(p);
+		}
+		return p;
+	}
+
+	void begin() {
+		pending().frames.addLast(new Frame(false));
+	}
+
+	/**
+	 * Ends the innermost {@link #begin()} of this thread, the outermost one
+	 * records the kept changes as a revision.
+	 */
+	void end(boolean success) {
+		end(pending(), success);
+	}
+
+	private void end(Pending p, boolean success) {
+		Frame frame = p.frames.pollLast();
+		if(frame == null) {
+			return;
+		}
+		Changes kept = null;
+		if(success) {
+			kept = frame.done;
+			kept.addAll(frame.own);
+		} else if(!frame.transaction) {
+			kept = frame.done;
+		}
+		if(p.frames.isEmpty()) {
+			if(this.pending.get() == p) {
+				this.pending.remove();
+			}
+			if(kept != null) {
+				record(kept);
+			}
+		} else if(kept != null) {
+			p.frames.getLast().done.addAll(kept);
+		}
+	}
+
+	/**
+	 * Only statements which were not in the model before may be added.
+	 */
+	void added(Statement statement) {
+		Pending p = this.pending.get();
+		if(p == null || p.frames.isEmpty()) {
+			Changes changes = new Changes();
+			changes.added(new Quad(statement));
+			record(changes);
+		} else {
+			p.frames.getLast().own.added(new Quad(statement));
+		}
+	}
+
+	/**
+	 * Only statements which were in the model before may be removed.
+	 */
+	void removed(Statement statement) {
+		Pending p = this.pending.get();
+		if(p == null || p.frames.isEmpty()) {
+			Changes changes = new Changes();
+			changes.removed(new Quad(statement));
+			record(changes);
+		} else {
+			p.frames.getLast().own.removed(new Quad(statement));
+		}
+	}
+
+	/**
+	 * The changes made by this thread during the transaction become one
+	 * revision when it is committed.
+	 */
+	Transaction track(Transaction transaction) {
+		Pending p = pending();
+		p.frames.addLast(new Frame(true));
+		return new TrackedTransaction(transaction, p);
+	}
+
+	private class TrackedTransaction implements Transaction {
+
+		private final Transaction transaction;
+
+		private final Pending changes;
+
+		TrackedTransaction(Transaction transaction, Pending changes) {
+			this.transaction = transaction;
+			this.changes = changes;
+		}
+
+		@Override
+		public IsolationLevel getIsolationLevel() {
+			return this.transaction.getIsolationLevel();
+		}
+
+		@Override
+		public boolean isActive() {
+			return this.transaction.isActive();
+		}
+
+		@Override
+		public void commit() throws ModelRuntimeException {
+			boolean success = false;
+			try {
+				this.transaction.commit();
+				success = true;
+			} finally {
+				endAll(success);
+			}
+		}
+
+		@Override
+		public void rollback() throws ModelRuntimeException {
+			try {
+				this.transaction.rollback();
+			} finally {
+				endAll(false);
+			}
+		}
+
+		@Override
+		public void close() throws ModelRuntimeException {
+			try {
+				this.transaction.close();
+			} finally {
+				endAll(false);
+			}
+		}
+
+		private void endAll(boolean success) {
+			while(!this.changes.frames.isEmpty()) {
+				end(this.changes, success);
+			}
+		}
+	}
+
+	// /////////////////////////////////
+	// revisions
+
+	private synchronized void record(Changes changes) {
+		if(changes.isEmpty()) {
+			return;
+		}
+		long number = this.head + 1;
+		// kept in order for the index, even if the clock is set back
+		long timestamp = Math.max(System.currentTimeMillis(), this.revisions.isEmpty()
+		        ? this.firstTimestamp : this.revisions.get(this.revisions.size() - 1).timestamp);
+		Revision revision;
+		if(this.logOut != null) {
+			try {
+				revision = new Revision(number, timestamp, null, this.logLength);
+				this.logLength += append(number, timestamp, changes);
+			} catch(IOException e) {
+				throw new ModelRuntimeException("Cannot write the history in " + this.directory, e);
+			}
+		} else {
+			revision = new Revision(number, timestamp, changes, -1);
+		}
+		this.head = number;
+		this.revisions.add(revision);
+		this.revisionsByTime.put(timestamp, number);
+		if(this.head - this.checkpoints.lastKey() >= this.checkpointInterval) {
+			checkpoint(this.head);
+		}
+	}
+
+	private void checkpoint(long revision) {
+		Set<Quad> state = state(revision);
+		if(this.directory == null) {
+			this.checkpoints.put(revision, state);
+			return;
+		}
+		try {
+			writeCheckpoint(revision, state);
+			this.checkpoints.put(revision, null);
+		} catch(IOException e) {
+			// the revision is recorded, reading it only takes longer
+			log.warn("Could not write the checkpoint of revision " + revision, e);
+		}
+	}
+
+	synchronized long getRevision() {
+		return this.head;
+	}
+
+	/**
+	 * @return the oldest revision which can still be read
+	 */
+	synchronized long getFirstRevision() {
+		return this.firstRevision;
+	}
+
+	synchronized long getTimestamp(long revision) {
+		checkRevision(revision);
+		if(revision == this.firstRevision) {
+			return this.firstTimestamp;
+		}
+		return find(revision).timestamp;
+	}
+
+	/**
+	 * @return the last revision made at or before the given time
+	 */
+	synchronized long getRevisionAt(long timestamp) {
+		if(timestamp < this.firstTimestamp) {
+			throw new IllegalArgumentException("No revision at " + timestamp
+			        + " is kept, the first one is from " + this.firstTimestamp);
+		}
+		Map.Entry<Long,Long> entry = this.revisionsByTime.floorEntry(timestamp);
+		return entry == null ? this.firstRevision : Math.max(entry.getValue(),
+		        this.firstRevision);
+	}
+
+	/**
+	 * @return the statements at the given revision
+	 */
+	synchronized List<Statement> getStatements(long revision) {
+		checkRevision(revision);
+		List<Statement> statements = new ArrayList<Statement>();
+		for(Quad quad : state(revision)) {
+			statements.add(quad.statement);
+		}
+		return statements;
+	}
+
+	/**
+	 * @return the changes made by the given revision
+	 */
+	synchronized Diff getChanges(long revision) {
+		checkRevision(revision);
+		if(revision == this.firstRevision) {
+			return new DiffImpl();
+		}
+		Changes changes = changes(find(revision));
+		return new DiffImpl(statements(changes.added), statements(changes.removed));
+	}
+
+	private static Iterator<Statement> statements(Set<Quad> quads) {
+		List<Statement> statements = new ArrayList<Statement>();
+		for(Quad quad : quads) {
+			statements.add(quad.statement);
+		}
+		return statements.iterator();
+	}
+
+	private void checkRevision(long revision) {
+		if(revision < this.firstRevision || revision > this.head) {
+			throw new IllegalArgumentException("Revision " + revision + " is not kept, only "
+			        + this.firstRevision + " to " + this.head);
+		}
+	}
+
+	private Revision find(long revision) {
+		// revisions are numbered without gaps
+		return this.revisions.get((int)(revision - this.firstRevision - 1));
+	}
+
+	private Changes changes(Revision revision) {
+		if(revision.changes != null) {
+			return revision.changes;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+			        readRecord(revision.offset)));
+			// number and timestamp
+			in.readLong();
+			in.readLong();
+			Changes changes = new Changes();
+			changes.removed.addAll(readQuads(in));
+			changes.added.addAll(readQuads(in));
+			return changes;
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot read the history in " + this.directory, e);
+		}
+	}
+
+	/**
+	 * Starts from the nearest checkpoint at or before the revision and
+	 * applies the revisions after it.
+	 */
+	private Set<Quad> state(long revision) {
+		Map.Entry<Long,Set<Quad>> checkpoint = this.checkpoints.floorEntry(revision);
+		Set<Quad> state;
+		if(checkpoint.getValue() != null) {
+			state = new HashSet<Quad>(checkpoint.getValue());
+		} else {
+			try {
+				state = readCheckpoint(checkpoint.getKey());
+			} catch(IOException e) {
+				throw new ModelRuntimeException("Cannot read the history in " + this.directory, e);
+			}
+		}
+		for(long i = checkpoint.getKey() + 1; i <= revision; i++) {
+			changes(find(i)).applyTo(state);
+		}
+		return state;
+	}
+
+	/**
+	 * Forgets the revisions before the given one, whose state becomes the
+	 * first state.
+	 *
+	 * @return number of revisions removed
+	 */
+	synchronized int compact(long revision) {
+		if(revision <= this.firstRevision) {
+			return 0;
+		}
+		checkRevision(revision);
+		Set<Quad> state = state(revision);
+		long timestamp = find(revision).timestamp;
+		int removed = (int)(revision - this.firstRevision);
+		this.revisions.subList(0, removed).clear();
+		this.firstRevision = revision;
+		this.firstTimestamp = timestamp;
+		this.revisionsByTime.headMap(timestamp).clear();
+		this.checkpoints.headMap(revision, true).clear();
+		if(this.logOut == null) {
+			// in memory, or closed
+			this.checkpoints.put(revision, state);
+			return removed;
+		}
+		this.checkpoints.put(revision, null);
+		try {
+			writeBase(state);
+			rewriteLog();
+		} catch(IOException e) {
+			throw new ModelRuntimeException("Cannot write the history in " + this.directory, e);
+		}
+		deleteCheckpointFiles(revision);
+		return removed;
+	}
+
+	/**
+	 * Regularly compacts the revisions which are older than the retention
+	 * time, in a background thread.
+	 */
+	synchronized void scheduleCompaction(final long retentionMillis, long periodMillis) {
+		cancelCompaction();
+		this.compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "revision-compaction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.compactor.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					long horizon = System.currentTimeMillis() - retentionMillis;
+					synchronized(RevisionHistory.this) {
+						if(horizon >= RevisionHistory.this.firstTimestamp) {
+							compact(getRevisionAt(horizon));
+						}
+					}
+				} catch(RuntimeException e) {
+					log.warn("Could not compact revisions", e);
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	synchronized void cancelCompaction() {
+		if(this.compactor != null) {
+			this.compactor.shutdownNow();
+			this.compactor = null;
+		}
+	}
+
+	// /////////////////////////////////
+	// storage: the first state in BASE, each revision as a length-prefixed
+	// record in LOG, the state of each further checkpoint in CHECKPOINT
+	// followed by its revision
+
+	/**
+	 * Reads the number and time of the revisions, their changes and the
+	 * states stay on disk.
+	 */
+	private void load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+		        new File(this.directory, BASE))));
+		try {
+			this.firstRevision = in.readLong();
+			this.firstTimestamp = in.readLong();
+		} finally {
+			in.close();
+		}
+		this.head = this.firstRevision;
+		this.checkpoints.put(this.firstRevision, null);
+		File logFile = new File(this.directory, LOG);
+		long valid = 0;
+		if(logFile.exists()) {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+			try {
+				while(true) {
+					int length;
+					long number;
+					long timestamp;
+					try {
+						length = in.readInt();
+						number = in.readLong();
+						timestamp = in.readLong();
+					} catch(EOFException e) {
+						break;
+					}
+					if(in.skipBytes(length - 16) < length - 16) {
+						break;
+					}
+					if(number == this.head + 1) {
+						this.revisions.add(new Revision(number, timestamp, null, valid));
+						this.revisionsByTime.put(timestamp, number);
+						this.head = number;
+					}
+					valid += 4 + length;
+				}
+			} finally {
+				in.close();
+			}
+			if(valid < logFile.length()) {
+				// an incompletely written revision, e.g. after a crash
+				RandomAccessFile file = new RandomAccessFile(logFile, "rw");
+				try {
+					file.setLength(valid);
+				} finally {
+					file.close();
+				}
+			}
+		}
+		this.logLength = valid;
+		File[] files = this.directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				long revision = checkpointRevision(file);
+				if(revision > this.firstRevision && revision <= this.head) {
+					this.checkpoints.put(revision, null);
+				} else if(revision >= 0) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the revision of a checkpoint file, -1 for other files
+	 */
+	private static long checkpointRevision(File file) {
+		String name = file.getName();
+		if(!name.startsWith(CHECKPOINT) || name.endsWith(TMP_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(name.substring(CHECKPOINT.length()));
+		} catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Deletes the checkpoint files up to the given revision.
+	 */
+	private void deleteCheckpointFiles(long upTo) {
+		File[] files = this.directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				long revision = checkpointRevision(file);
+				if(revision >= 0 && revision <= upTo) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the length of the record
+	 */
+	private long append(long number, long timestamp, Changes changes) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeLong(number);
+		out.writeLong(timestamp);
+		writeQuads(out, changes.removed);
+		writeQuads(out, changes.added);
+		out.close();
+		this.logOut.writeInt(bytes.size());
+		bytes.writeTo(this.logOut);
+		this.logOut.flush();
+		return 4 + bytes.size();
+	}
+
+	private byte[] readRecord(long offset) throws IOException {
+		if(this.logIn == null) {
+			this.logIn = new RandomAccessFile(new File(this.directory, LOG), "r");
+		}
+		this.logIn.seek(offset);
+		byte[] record = new byte[this.logIn.readInt()];
+		this.logIn.readFully(record);
+		return record;
+	}
+
+	private void closeLogIn() {
+		if(this.logIn != null) {
+			try {
+				this.logIn.close();
+			} catch(IOException e) {
+				log.warn("Could not close the history log", e);
+			}
+			this.logIn = null;
+		}
+	}
+
+	private void writeBase(Set<Quad> state) throws IOException {
+		File file = new File(this.directory, BASE);
+		File temp = new File(this.directory, BASE + TMP_SUFFIX);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		        new FileOutputStream(temp)));
+		try {
+			out.writeLong(this.firstRevision);
+			out.writeLong(this.firstTimestamp);
+			writeQuads(out, state);
+		} finally {
+			out.close();
+		}
+		replace(temp, file);
+	}
+
+	private void writeCheckpoint(long revision, Set<Quad> state) throws IOException {
+		File file = new File(this.directory, CHECKPOINT + revision);
+		File temp = new File(this.directory, CHECKPOINT + revision + TMP_SUFFIX);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		        new FileOutputStream(temp)));
+		try {
+			writeQuads(out, state);
+		} finally {
+			out.close();
+		}
+		replace(temp, file);
+	}
+
+	private Set<Quad> readCheckpoint(long revision) throws IOException {
+		boolean first = revision == this.firstRevision;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+		        new File(this.directory, first ? BASE : CHECKPOINT + revision))));
+		try {
+			if(first) {
+				// revision and timestamp
+				in.readLong();
+				in.readLong();
+			}
+			return readQuads(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Copies the records of the kept revisions from the current log.
+	 */
+	private void rewriteLog() throws IOException {
+		this.logOut.close();
+		File file = new File(this.directory, LOG);
+		File temp = new File(this.directory, LOG + TMP_SUFFIX);
+		List<Revision> moved = new ArrayList<Revision>(this.revisions.size());
+		long length = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+		        new FileOutputStream(temp)));
+		try {
+			for(Revision revision : this.revisions) {
+				byte[] record = readRecord(revision.offset);
+				out.writeInt(record.length);
+				out.write(record);
+				moved.add(new Revision(revision.number, revision.timestamp, null, length));
+				length += 4 + record.length;
+			}
+		} finally {
+			out.close();
+			closeLogIn();
+		}
+		replace(temp, file);
+		this.revisions.clear();
+		this.revisions.addAll(moved);
+		this.logLength = length;
+		this.logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file,
+		        true)));
+	}
+
+	private static void replace(File temp, File file) throws IOException {
+		if(file.exists() && !file.delete() || !temp.renameTo(file)) {
+			throw new IOException("Cannot rename " + temp + " to " + file);
+		}
+	}
+
+	private static void writeQuads(DataOutput out, Set<Quad> quads) throws IOException {
+		out.writeInt(quads.size());
+		for(Quad quad : quads) {
+			URI context = quad.statement.getContext();
+			out.writeBoolean(context != null);
+			if(context != null) {
+				NodeCodec.writeString(out, context.toString());
+			}
+			NodeCodec.writeNode(out, quad.statement.getSubject());
+			NodeCodec.writeNode(out, quad.statement.getPredicate());
+			NodeCodec.writeNode(out, quad.statement.getObject());
+		}
+	}
+
+	private Set<Quad> readQuads(DataInput in) throws IOException {
+		int count = in.readInt();
+		Set<Quad> quads = new HashSet<Quad>();
+		for(int i = 0; i < count; i++) {
+			URI context = in.readBoolean() ? new URIImpl(NodeCodec.readString(in), false) : null;
+			Node subject = NodeCodec.readNode(in, this.blankNodes, this.factory);
+			Node predicate = NodeCodec.readNode(in, this.blankNodes, this.factory);
+			Node object = NodeCodec.readNode(in, this.blankNodes, this.factory);
+			quads.add(new Quad(new StatementImpl(context, (Resource)subject, (URI)predicate,
+			        object)));
+		}
+		return quads;
+	}
+
+}
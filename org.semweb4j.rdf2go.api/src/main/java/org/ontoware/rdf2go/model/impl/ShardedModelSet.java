@@ -0,0 +1,949 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.ontoware.aifbcommons.collection.ClosableIterable;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.MalformedQueryException;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
+import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.QueryResultTable;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
+import org.ontoware.rdf2go.util.MerkleTree;
+
+
+/**
+ * A model set which distributes its models over several model sets, the
+ * shards, e.g. one native store per directory. Each context is kept in one
+ * shard, chosen by consistent hashing of the context URI onto a ring of
+ * positions derived from the ids of the shards; the default model is kept in
+ * the first shard. Give the shards ids which do not change between sessions,
+ * shards given without ids are identified by their position.
+ *
+ * Writes of many statements are grouped by shard and run in parallel, one
+ * thread per shard. Lookups with a context go to its shard only, lookups
+ * without are sent to all shards in parallel and their results are merged as
+ * they arrive. When a shard is added with {@link #addShard(String, ModelSet)},
+ * the contexts which now belong to it are moved there, right away if this
+ * model set is open, otherwise when it is opened. All of them are copied
+ * before any is removed from its old shard, so a failed move leaves the
+ * shards as they were.
+ *
+ * Statements are parsed and serialised by a temporary model set of the
+ * default {@link org.ontoware.rdf2go.ModelFactory}. SPARQL and transactions
+ * are not supported, as they would span several stores.
+ *
+ * The shards are opened and closed with this model set.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class ShardedModelSet extends AbstractModelSetImpl {
+
+	private static final long serialVersionUID = -2203456498311384276L;
+
+	/** points per shard on the hash ring, more points spread contexts more evenly */
+	public static final int VIRTUAL_NODES = 64;
+
+	/** statements buffered per write before they are sent to the shards */
+	public static final int BATCH_SIZE = 10000;
+
+	/** statements buffered per shard while merging lookups */
+	public static final int BUFFER_SIZE = 1000;
+
+	private final List<ModelSet> shards = new ArrayList<ModelSet>();
+
+	/** the ids of the shards, in the same order */
+	private final List<String> ids = new ArrayList<String>();
+
+	/** hash ring: position to shard index */
+	private final TreeMap<Long,Integer> ring = new TreeMap<Long,Integer>();
+
+	/** rebalancing excludes all other operations */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private transient ExecutorService executor;
+
+	private boolean open = false;
+
+	/** shards have been added while closed, contexts are moved on opening */
+	private boolean unbalanced = false;
+
+	/**
+	 * @param shards identified by their position, which has to be the same
+	 *            whenever the shards are used
+	 */
+	public ShardedModelSet(ModelSet ... shards) {
+		this(Arrays.asList(shards));
+	}
+
+	/**
+	 * @param shards identified by their position, which has to be the same
+	 *            whenever the shards are used
+	 */
+	public ShardedModelSet(List<? extends ModelSet> shards) {
+		if(shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+		for(ModelSet shard : shards) {
+			addToRing(String.valueOf(this.shards.size()), shard);
+		}
+	}
+
+	/**
+	 * @param shards by their ids, in a map with a defined order, e.g. a
+	 *            {@link java.util.LinkedHashMap}. The first one holds the
+	 *            default model.
+	 */
+	public ShardedModelSet(Map<String,? extends ModelSet> shards) {
+		if(shards.isEmpty()) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+		for(Map.Entry<String,? extends ModelSet> entry : shards.entrySet()) {
+			addToRing(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void addToRing(String id, ModelSet shard) {
+		if(this.ids.contains(id)) {
+			throw new IllegalArgumentException("There is already a shard " + id);
+		}
+		int index = this.shards.size();
+		this.shards.add(shard);
+		this.ids.add(id);
+		for(int i = 0; i < VIRTUAL_NODES; i++) {
+			this.ring.put(MerkleTree.mix(MerkleTree.hash(new PlainLiteralImpl("shard " + id + " "
+			        + i))), index);
+		}
+	}
+
+	/**
+	 * Takes the last shard off the ring again.
+	 */
+	private void removeLastFromRing() {
+		int index = this.shards.size() - 1;
+		this.ring.values().removeAll(Collections.singleton(index));
+		this.shards.remove(index);
+		this.ids.remove(index);
+	}
+
+	/**
+	 * @return the shards, the first one holds the default model
+	 */
+	public List<ModelSet> getShards() {
+		this.lock.readLock().lock();
+		try {
+			return new ArrayList<ModelSet>(this.shards);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param contextURI null for the default model
+	 * @return the index of the shard holding the context
+	 */
+	public int getShardIndex(URI contextURI) {
+		this.lock.readLock().lock();
+		try {
+			return shardIndex(contextURI);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	private int shardIndex(URI contextURI) {
+		if(contextURI == null) {
+			return 0;
+		}
+		Map.Entry<Long,Integer> entry = this.ring.ceilingEntry(MerkleTree.mix(MerkleTree
+		        .hash(contextURI)));
+		if(entry == null) {
+			entry = this.ring.firstEntry();
+		}
+		return entry.getValue();
+	}
+
+	private ModelSet shard(URI contextURI) {
+		return this.shards.get(shardIndex(contextURI));
+	}
+
+	/**
+	 * Adds a shard identified by its position.
+	 *
+	 * @see #addShard(String, ModelSet)
+	 */
+	public int addShard(ModelSet shard) {
+		this.lock.writeLock().lock();
+		try {
+			return addShard(String.valueOf(this.shards.size()), shard);
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a shard and moves the contexts which now belong to it. All other
+	 * operations wait until this is done. If this model set is closed, the
+	 * contexts are moved when it is opened.
+	 *
+	 * @param id which identifies the shard whenever it is used
+	 * @param shard an empty model set, opened if this model set is open
+	 * @return the number of contexts moved to the new shard, 0 if this model
+	 *         set is closed
+	 * @throws ModelRuntimeException if the contexts could not be moved, the
+	 *             shard has not been added then
+	 */
+	public int addShard(String id, ModelSet shard) {
+		this.lock.writeLock().lock();
+		try {
+			if(this.open && !shard.isOpen()) {
+				shard.open();
+			}
+			addToRing(id, shard);
+			if(!this.open) {
+				this.unbalanced = true;
+				return 0;
+			}
+			try {
+				return rebalance();
+			} catch(RuntimeException e) {
+				removeLastFromRing();
+				throw e;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Moves all contexts which are not in the shard they belong to. All of
+	 * them are copied first and only then removed from their old shards. If
+	 * a copy fails, the copies made so far are removed again. Called with the
+	 * write lock held and all shards open.
+	 *
+	 * @return the number of contexts moved
+	 */
+	private int rebalance() {
+		List<URI> contextURIs = new ArrayList<URI>();
+		List<Integer> sources = new ArrayList<Integer>();
+		for(int i = 0; i < this.shards.size(); i++) {
+			for(URI contextURI : modelURIs(this.shards.get(i))) {
+				if(shardIndex(contextURI) != i) {
+					contextURIs.add(contextURI);
+					sources.add(i);
+				}
+			}
+		}
+		int copied = 0;
+		try {
+			for(; copied < contextURIs.size(); copied++) {
+				URI contextURI = contextURIs.get(copied);
+				Model model = this.shards.get(sources.get(copied)).getModel(contextURI);
+				try {
+					shard(contextURI).addModel(model);
+				} finally {
+					model.close();
+				}
+			}
+		} catch(RuntimeException e) {
+			// including the one which failed half-way
+			for(int i = 0; i <= copied && i < contextURIs.size(); i++) {
+				try {
+					shard(contextURIs.get(i)).removeModel(contextURIs.get(i));
+				} catch(RuntimeException ignored) {
+					// the failed copy is reported
+				}
+			}
+			throw e;
+		}
+		for(int i = 0; i < contextURIs.size(); i++) {
+			this.shards.get(sources.get(i)).removeModel(contextURIs.get(i));
+		}
+		this.unbalanced = false;
+		return contextURIs.size();
+	}
+
+	private static List<URI> modelURIs(ModelSet modelSet) {
+		List<URI> uris = new ArrayList<URI>();
+		ClosableIterator<URI> it = modelSet.getModelURIs();
+		try {
+			while(it.hasNext()) {
+				uris.add(it.next());
+			}
+		} finally {
+			it.close();
+		}
+		return uris;
+	}
+
+	// //////////////////////////
+	// parallel execution
+
+	/** an operation on one shard */
+	private interface ShardTask<T> {
+
+		T run(ModelSet shard);
+	}
+
+	/**
+	 * Runs the task on all shards in parallel.
+	 *
+	 * @return the results in the order of the shards
+	 */
+	private <T> List<T> onAllShards(final ShardTask<T> task) {
+		List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+		for(final ModelSet shard : this.shards) {
+			tasks.add(new Callable<T>() {
+
+				@Override
+				public T call() {
+					return task.run(shard);
+				}
+			});
+		}
+		return ParallelExecution.invokeAll(this.executor, tasks);
+	}
+
+	private long sumOfAllShards(final ShardTask<Long> task) {
+		long sum = 0;
+		for(long result : onAllShards(task)) {
+			sum += result;
+		}
+		return sum;
+	}
+
+	/**
+	 * Groups the statements by shard and adds or removes them, in batches of
+	 * {@link #BATCH_SIZE}. Each batch is written to the shards in parallel.
+	 */
+	private void write(Iterator<? extends Statement> statements, final boolean add) {
+		List<List<Statement>> batches = newBatches();
+		int buffered = 0;
+		while(statements.hasNext()) {
+			Statement statement = statements.next();
+			batches.get(shardIndex(statement.getContext())).add(statement);
+			if(++buffered == BATCH_SIZE) {
+				write(batches, add);
+				batches = newBatches();
+				buffered = 0;
+			}
+		}
+		if(buffered > 0) {
+			write(batches, add);
+		}
+	}
+
+	private List<List<Statement>> newBatches() {
+		List<List<Statement>> batches = new ArrayList<List<Statement>>(this.shards.size());
+		for(int i = 0; i < this.shards.size(); i++) {
+			batches.add(new ArrayList<Statement>());
+		}
+		return batches;
+	}
+
+	private void write(List<List<Statement>> batches, final boolean add) {
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(int i = 0; i < batches.size(); i++) {
+			final ModelSet shard = this.shards.get(i);
+			final List<Statement> batch = batches.get(i);
+			if(!batch.isEmpty()) {
+				tasks.add(new Callable<Void>() {
+
+					@Override
+					public Void call() {
+						if(add) {
+							shard.addAll(batch.iterator());
+						} else {
+							shard.removeAll(batch.iterator());
+						}
+						return null;
+					}
+				});
+			}
+		}
+		ParallelExecution.invokeAll(this.executor, tasks);
+	}
+
+	// //////////////////////////
+	// life cycle
+
+	@Override
+	public ModelSet open() {
+		this.lock.writeLock().lock();
+		try {
+			if(!this.open) {
+				this.executor = ParallelExecution.newExecutor("ShardedModelSet");
+				for(ModelSet shard : this.shards) {
+					if(!shard.isOpen()) {
+						shard.open();
+					}
+				}
+				if(this.unbalanced) {
+					try {
+						rebalance();
+					} catch(RuntimeException e) {
+						// stays closed, the shards are as they were
+						this.executor.shutdownNow();
+						throw e;
+					}
+				}
+				this.open = true;
+			}
+			return this;
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		this.lock.writeLock().lock();
+		try {
+			if(this.open) {
+				for(ModelSet shard : this.shards) {
+					shard.close();
+				}
+				this.executor.shutdownNow();
+				this.open = false;
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return this.open;
+	}
+
+	@Override
+	public Object getUnderlyingModelSetImplementation() {
+		return getShards();
+	}
+
+	@Override
+	@Deprecated
+	public void commit() {
+		for(ModelSet shard : getShards()) {
+			shard.commit();
+		}
+	}
+
+	@Override
+	@Deprecated
+	public void setAutocommit(boolean autocommit) {
+		for(ModelSet shard : getShards()) {
+			shard.setAutocommit(autocommit);
+		}
+	}
+
+	// //////////////////////////
+	// writes
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			shard(statement.getContext()).addStatement(statement);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			shard(statement.getContext()).removeStatement(statement);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			write(statements, true);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			write(statements, false);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The removals are written before the additions. Each shard applies its
+	 * part on its own.
+	 */
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		if(this.isLocked()) {
+			throw new ModelRuntimeException("ModelSet is locked, cannot perform an update.");
+		}
+		this.lock.readLock().lock();
+		try {
+			write(diff.getRemoved().iterator(), false);
+			write(diff.getAdded().iterator(), true);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeStatements(final UriOrVariable context, final ResourceOrVariable subject,
+	        final UriOrVariable predicate, final NodeOrVariable object)
+	        throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			if(context instanceof URI) {
+				shard((URI)context).removeStatements(context, subject, predicate, object);
+			} else {
+				onAllShards(new ShardTask<Void>() {
+
+					@Override
+					public Void run(ModelSet shard) {
+						shard.removeStatements(context, subject, predicate, object);
+						return null;
+					}
+				});
+			}
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			onAllShards(new ShardTask<Void>() {
+
+				@Override
+				public Void run(ModelSet shard) {
+					shard.removeAll();
+					return null;
+				}
+			});
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		this.lock.readLock().lock();
+		try {
+			return shard(model.getContextURI()).addModel(model);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) {
+		this.lock.readLock().lock();
+		try {
+			shard(contextURI).addModel(model, contextURI);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) {
+		ClosableIterator<Statement> it = modelSet.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		this.lock.readLock().lock();
+		try {
+			return shard(contextURI).removeModel(contextURI);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	// //////////////////////////
+	// reads
+
+	@Override
+	public QuadPattern createQuadPattern(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) {
+		return new QuadPatternImpl(context, subject, predicate, object);
+	}
+
+	@Override
+	public ClosableIterator<Statement> findStatements(final QuadPattern pattern)
+	        throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			if(pattern.getContext() instanceof URI) {
+				return shard((URI)pattern.getContext()).findStatements(pattern);
+			}
+			if(this.shards.size() == 1) {
+				return this.shards.get(0).findStatements(pattern);
+			}
+			List<Callable<ClosableIterator<Statement>>> sources =
+			        new ArrayList<Callable<ClosableIterator<Statement>>>();
+			for(final ModelSet shard : this.shards) {
+				sources.add(new Callable<ClosableIterator<Statement>>() {
+
+					@Override
+					public ClosableIterator<Statement> call() {
+						return shard.findStatements(pattern);
+					}
+				});
+			}
+			return new ParallelExecution.MergingIterator(this.executor, sources, BUFFER_SIZE);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ClosableIterator<Statement> iterator() {
+		return findStatements(new QuadPatternImpl(Variable.ANY, Variable.ANY, Variable.ANY,
+		        Variable.ANY));
+	}
+
+	@Override
+	public long countStatements(final QuadPattern pattern) throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			if(pattern.getContext() instanceof URI) {
+				return shard((URI)pattern.getContext()).countStatements(pattern);
+			}
+			return sumOfAllShards(new ShardTask<Long>() {
+
+				@Override
+				public Long run(ModelSet shard) {
+					return shard.countStatements(pattern);
+				}
+			});
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public long size() throws ModelRuntimeException {
+		this.lock.readLock().lock();
+		try {
+			return sumOfAllShards(new ShardTask<Long>() {
+
+				@Override
+				public Long run(ModelSet shard) {
+					return shard.size();
+				}
+			});
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		for(ModelSet shard : getShards()) {
+			if(!shard.isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean containsModel(URI contextURI) {
+		this.lock.readLock().lock();
+		try {
+			return shard(contextURI).containsModel(contextURI);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Model getDefaultModel() {
+		this.lock.readLock().lock();
+		try {
+			return this.shards.get(0).getDefaultModel();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		this.lock.readLock().lock();
+		try {
+			return shard(contextURI).getModel(contextURI);
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		List<Model> models = new ArrayList<Model>();
+		for(ModelSet shard : getShards()) {
+			ClosableIterator<Model> it = shard.getModels();
+			try {
+				while(it.hasNext()) {
+					models.add(it.next());
+				}
+			} finally {
+				it.close();
+			}
+		}
+		return new PseudoClosableIterator<Model>(models.iterator());
+	}
+
+	@Override
+	public ClosableIterator<URI> getModelURIs() {
+		List<URI> uris = new ArrayList<URI>();
+		for(ModelSet shard : getShards()) {
+			uris.addAll(modelURIs(shard));
+		}
+		return new PseudoClosableIterator<URI>(uris.iterator());
+	}
+
+	// //////////////////////////
+	// namespaces are kept in all shards
+
+	@Override
+	public String getNamespace(String prefix) {
+		return getShards().get(0).getNamespace(prefix);
+	}
+
+	@Override
+	public Map<String,String> getNamespaces() {
+		return getShards().get(0).getNamespaces();
+	}
+
+	@Override
+	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
+		for(ModelSet shard : getShards()) {
+			shard.setNamespace(prefix, namespaceURI);
+		}
+	}
+
+	@Override
+	public void removeNamespace(String prefix) {
+		for(ModelSet shard : getShards()) {
+			shard.removeNamespace(prefix);
+		}
+	}
+
+	// //////////////////////////
+	// IO through a temporary model set
+
+	private ModelSet createTemporaryModelSet() {
+		ModelSet modelSet = RDF2Go.getModelFactory().createModelSet();
+		modelSet.open();
+		return modelSet;
+	}
+
+	private ModelSet copy() {
+		ModelSet copy = createTemporaryModelSet();
+		ClosableIterator<Statement> it = iterator();
+		try {
+			copy.addAll(it);
+		} finally {
+			it.close();
+		}
+		return copy;
+	}
+
+	private void addAllAndClose(ModelSet read) {
+		try {
+			addModelSet(read);
+		} finally {
+			read.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in, syntax);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in, syntax, baseURI);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException, ModelRuntimeException,
+	        SyntaxNotSupportedException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in, syntax);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet read = createTemporaryModelSet();
+		read.readFrom(in, syntax, baseURI);
+		addAllAndClose(read);
+	}
+
+	@Override
+	public void writeTo(OutputStream out) throws IOException, ModelRuntimeException {
+		ModelSet copy = copy();
+		try {
+			copy.writeTo(out);
+		} finally {
+			copy.close();
+		}
+	}
+
+	@Override
+	public void writeTo(OutputStream out, Syntax syntax) throws IOException,
+	        ModelRuntimeException, SyntaxNotSupportedException {
+		ModelSet copy = copy();
+		try {
+			copy.writeTo(out, syntax);
+		} finally {
+			copy.close();
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out) throws IOException, ModelRuntimeException {
+		ModelSet copy = copy();
+		try {
+			copy.writeTo(out);
+		} finally {
+			copy.close();
+		}
+	}
+
+	@Override
+	public void writeTo(Writer out, Syntax syntax) throws IOException, ModelRuntimeException,
+	        SyntaxNotSupportedException {
+		ModelSet copy = copy();
+		try {
+			copy.writeTo(out, syntax);
+		} finally {
+			copy.close();
+		}
+	}
+
+	// //////////////////////////
+	// queries
+
+	private UnsupportedOperationException queriesNotSupported() {
+		return new UnsupportedOperationException("Queries are not supported by "
+		        + this.getClass().getName());
+	}
+
+	@Override
+	public QueryResultTable sparqlSelect(String queryString) throws MalformedQueryException,
+	        ModelRuntimeException {
+		throw queriesNotSupported();
+	}
+
+	@Override
+	public ClosableIterable<Statement> sparqlConstruct(String query)
+	        throws ModelRuntimeException, MalformedQueryException {
+		throw queriesNotSupported();
+	}
+
+	@Override
+	public ClosableIterable<Statement> sparqlDescribe(String query) throws ModelRuntimeException {
+		throw queriesNotSupported();
+	}
+
+	@Override
+	public boolean sparqlAsk(String query) throws ModelRuntimeException, MalformedQueryException {
+		throw queriesNotSupported();
+	}
+
+	@Override
+	public QueryResultTable querySelect(String query, String querylanguage)
+	        throws QueryLanguageNotSupportedException, MalformedQueryException,
+	        ModelRuntimeException {
+		throw queriesNotSupported();
+	}
+
+	@Override
+	public ClosableIterable<Statement> queryConstruct(String query, String querylanguage)
+	        throws QueryLanguageNotSupportedException, MalformedQueryException,
+	        ModelRuntimeException {
+		throw queriesNotSupported();
+	}
+
+}
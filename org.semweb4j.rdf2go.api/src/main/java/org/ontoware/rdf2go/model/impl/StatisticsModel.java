@@ -0,0 +1,349 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelStatistics;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.vocabulary.RDF;
+
+
+/**
+ * A notifying model which maintains {@link ModelStatistics} of its statements.
+ * {@link #size()} and counting by predicate or class take constant time, and
+ * {@link #findBindings(List)} orders joins by the statistics.
+ *
+ * Writes are counted once they succeeded. Before a write, the statements it
+ * really changes are looked up with one query per subject and predicate, and
+ * not at all for predicates the model does not have yet. Writes of many
+ * statements are sent to the underlying model in one bulk call. Writes which
+ * cannot be counted, i.e. reading from streams, rolled back transactions
+ * and bulk writes which failed half-way, recompute the statistics.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class StatisticsModel extends NotifyingModelLayer {
+
+	private static final long serialVersionUID = -4125309263370561932L;
+
+	private final ModelStatisticsImpl statistics;
+
+	public StatisticsModel(Model model) {
+		this(model, new ModelStatisticsImpl(model));
+	}
+
+	/**
+	 * Counts the writes in the given statistics, used by
+	 * {@link StatisticsModelSet}.
+	 */
+	StatisticsModel(Model model, ModelStatisticsImpl statistics) {
+		super(model);
+		this.statistics = statistics;
+	}
+
+	public ModelStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Recompute the statistics, e.g. after the underlying model has been
+	 * changed directly.
+	 */
+	public void rebuild() {
+		this.statistics.rebuild();
+	}
+
+	@Override
+	public long size() throws ModelRuntimeException {
+		return this.statistics.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.statistics.size() == 0;
+	}
+
+	/**
+	 * Answered from the statistics if only the predicate or rdf:type and a
+	 * class are given.
+	 */
+	@Override
+	public long countStatements(TriplePattern pattern) throws ModelRuntimeException {
+		boolean subjectBound = !(pattern.getSubject() instanceof Variable);
+		boolean predicateBound = !(pattern.getPredicate() instanceof Variable);
+		boolean objectBound = !(pattern.getObject() instanceof Variable);
+		if(!subjectBound && !objectBound) {
+			return predicateBound ? this.statistics.getPredicateCount((URI)pattern
+			        .getPredicate()) : this.statistics.size();
+		}
+		if(!subjectBound && RDF.type.equals(pattern.getPredicate())
+		        && pattern.getObject() instanceof URI) {
+			return this.statistics.getInstanceCount((URI)pattern.getObject());
+		}
+		return super.countStatements(pattern);
+	}
+
+	@Override
+	public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException {
+		return new PatternJoinEngine(this, this.statistics).evaluate(patterns);
+	}
+
+	// /////////////////////////////////
+	// writes are counted once they succeeded
+
+	/**
+	 * @return the statement as it is counted
+	 */
+	Statement counted(Statement statement) {
+		return statement;
+	}
+
+	private List<Statement> counted(Iterable<? extends Statement> statements) {
+		List<Statement> result = new ArrayList<Statement>();
+		for(Statement statement : statements) {
+			result.add(counted(statement));
+		}
+		return result;
+	}
+
+	private static List<Statement> toList(Iterator<? extends Statement> statements) {
+		List<Statement> result = new ArrayList<Statement>();
+		while(statements.hasNext()) {
+			result.add(statements.next());
+		}
+		return result;
+	}
+
+	private static Iterator<Statement> none() {
+		return Collections.<Statement> emptyList().iterator();
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), Collections
+			        .singletonList(counted(statement)).iterator());
+			super.addStatement(statement);
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(Collections.singletonList(
+			        counted(statement)).iterator(), none());
+			super.removeStatement(statement);
+			this.statistics.apply(changes);
+		}
+	}
+
+	/** written in one bulk call */
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		List<Statement> counted = new ArrayList<Statement>();
+		while(other.hasNext()) {
+			Statement statement = other.next();
+			statements.add(statement);
+			counted.add(counted(statement));
+		}
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), counted.iterator());
+			notifyAdded(statements);
+			try {
+				getDelegatedModel().addAll(statements.iterator());
+			} catch(ModelRuntimeException e) {
+				// some statements may have been written
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	/** written in one bulk call */
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		List<Statement> counted = new ArrayList<Statement>();
+		while(other.hasNext()) {
+			Statement statement = other.next();
+			statements.add(statement);
+			counted.add(counted(statement));
+		}
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(counted.iterator(), none());
+			notifyRemoved(statements);
+			try {
+				getDelegatedModel().removeAll(statements.iterator());
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			// all matches are there, so they need not be looked up
+			List<Statement> matches;
+			ClosableIterator<Statement> it = getDelegatedModel().findStatements(subject,
+			        predicate, object);
+			try {
+				matches = toList(it);
+			} finally {
+				it.close();
+			}
+			notifyRemoved(matches);
+			try {
+				getDelegatedModel().removeAll(matches.iterator());
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(ModelStatisticsImpl.changes(counted(matches),
+			        new ArrayList<Statement>(0)));
+		}
+	}
+
+	@Override
+	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(counted(diff.getRemoved())
+			        .iterator(), counted(diff.getAdded()).iterator());
+			try {
+				super.update(diff);
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	/**
+	 * Called after all statements have been removed.
+	 */
+	void cleared() {
+		this.statistics.clear();
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			this.addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			super.removeAll();
+			cleared();
+		}
+	}
+
+	// /////////////////////////////////
+	// writes which cannot be counted
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax, baseURI);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		super.readFrom(r);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException, IOException {
+		super.readFrom(reader, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax, baseURI);
+		rebuild();
+	}
+
+	// ////////// transactions
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin()) {
+
+			@Override
+			void rebuild() {
+				StatisticsModel.this.rebuild();
+			}
+		};
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin(isolationLevel)) {
+
+			@Override
+			void rebuild() {
+				StatisticsModel.this.rebuild();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,427 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.ModelStatistics;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * A notifying model set which maintains {@link ModelStatistics} of its
+ * statements. {@link #size()} and counting the statements of one model or one
+ * predicate take constant time.
+ *
+ * The models returned by {@link #getModel(URI)}, {@link #getDefaultModel()}
+ * and {@link #getModels()} update the same statistics. Writes are counted once
+ * they succeeded, see {@link StatisticsModel}. Writes which cannot be counted,
+ * i.e. reading from streams, copying whole model sets, rolled back transactions
+ * and bulk writes which failed half-way, recompute the statistics.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class StatisticsModelSet extends NotifyingModelSetLayer {
+
+	private final ModelStatisticsImpl statistics;
+
+	public StatisticsModelSet(ModelSet modelset) {
+		super(modelset);
+		this.statistics = new ModelStatisticsImpl(modelset);
+	}
+
+	public ModelStatistics getStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * Recompute the statistics, e.g. after the underlying model set has been
+	 * changed directly.
+	 */
+	public void rebuild() {
+		this.statistics.rebuild();
+	}
+
+	@Override
+	public long size() throws ModelRuntimeException {
+		return this.statistics.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return this.statistics.size() == 0;
+	}
+
+	/**
+	 * Answered from the statistics if only the context or only the predicate
+	 * is given.
+	 */
+	@Override
+	public long countStatements(QuadPattern pattern) throws ModelRuntimeException {
+		boolean contextBound = !(pattern.getContext() instanceof Variable);
+		boolean subjectBound = !(pattern.getSubject() instanceof Variable);
+		boolean predicateBound = !(pattern.getPredicate() instanceof Variable);
+		boolean objectBound = !(pattern.getObject() instanceof Variable);
+		if(!subjectBound && !objectBound) {
+			if(!contextBound) {
+				return predicateBound ? this.statistics.getPredicateCount((URI)pattern
+				        .getPredicate()) : this.statistics.size();
+			}
+			if(!predicateBound) {
+				return this.statistics.getContextSize((URI)pattern.getContext());
+			}
+		}
+		return super.countStatements(pattern);
+	}
+
+	// /////////////////////////////////
+	// writes are counted once they succeeded
+
+	private static List<Statement> toList(Iterator<? extends Statement> statements) {
+		List<Statement> result = new ArrayList<Statement>();
+		while(statements.hasNext()) {
+			result.add(statements.next());
+		}
+		return result;
+	}
+
+	private static Iterator<Statement> none() {
+		return Collections.<Statement> emptyList().iterator();
+	}
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), Collections
+			        .singletonList(statement).iterator());
+			super.addStatement(statement);
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(Collections.singletonList(
+			        statement).iterator(), none());
+			super.removeStatement(statement);
+			this.statistics.apply(changes);
+		}
+	}
+
+	/** written in one bulk call */
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> statements = toList(other);
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), statements
+			        .iterator());
+			notifyAdded(statements);
+			try {
+				getDelegatedModelSet().addAll(statements.iterator());
+			} catch(ModelRuntimeException e) {
+				// some statements may have been written
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	/** written in one bulk call */
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		List<Statement> statements = toList(other);
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(statements.iterator(),
+			        none());
+			notifyRemoved(statements);
+			try {
+				getDelegatedModelSet().removeAll(statements.iterator());
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			// all matches are there, so they need not be looked up
+			List<Statement> matches;
+			ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(context,
+			        subject, predicate, object);
+			try {
+				matches = toList(it);
+			} finally {
+				it.close();
+			}
+			notifyRemoved(matches);
+			try {
+				getDelegatedModelSet().removeAll(matches.iterator());
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(ModelStatisticsImpl.changes(matches,
+			        new ArrayList<Statement>(0)));
+		}
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(diff.getRemoved()
+			        .iterator(), diff.getAdded().iterator());
+			try {
+				super.update(diff);
+			} catch(ModelRuntimeException e) {
+				rebuild();
+				throw e;
+			}
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), inContext(model
+			        .iterator(), model.getContextURI()));
+			boolean result = super.addModel(model);
+			this.statistics.apply(changes);
+			return result;
+		}
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			DiffReader changes = this.statistics.getEffectiveChanges(none(), inContext(model
+			        .iterator(), contextURI));
+			super.addModel(model, contextURI);
+			this.statistics.apply(changes);
+		}
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		synchronized(this.statistics) {
+			List<Statement> removed = toList(inContext(getDelegatedModelSet().findStatements(
+			        contextURI, Variable.ANY, Variable.ANY, Variable.ANY), contextURI));
+			boolean result = super.removeModel(contextURI);
+			this.statistics.apply(ModelStatisticsImpl.changes(removed,
+			        new ArrayList<Statement>(0)));
+			return result;
+		}
+	}
+
+	/**
+	 * @return the statements, all in the given context. The iterator is closed.
+	 */
+	private static Iterator<Statement> inContext(ClosableIterator<Statement> it, URI contextURI) {
+		List<Statement> statements = new ArrayList<Statement>();
+		try {
+			while(it.hasNext()) {
+				Statement statement = it.next();
+				statements.add(new StatementImpl(contextURI, statement.getSubject(), statement
+				        .getPredicate(), statement.getObject()));
+			}
+		} finally {
+			it.close();
+		}
+		return statements.iterator();
+	}
+
+	// /////////////////////////////////
+	// writes which cannot be counted
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		super.addModelSet(modelSet);
+		rebuild();
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		synchronized(this.statistics) {
+			getDelegatedModelSet().removeAll();
+			this.statistics.clear();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(reader, syntax, baseURI);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		super.readFrom(in);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException, ModelRuntimeException {
+		super.readFrom(in, syntax);
+		rebuild();
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		super.readFrom(in, syntax, baseURI);
+		rebuild();
+	}
+
+	// ////////// transactions
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin()) {
+
+			@Override
+			void rebuild() {
+				StatisticsModelSet.this.rebuild();
+			}
+		};
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return new RebuildOnRollback(super.begin(isolationLevel)) {
+
+			@Override
+			void rebuild() {
+				StatisticsModelSet.this.rebuild();
+			}
+		};
+	}
+
+	// /////////////////////////////////
+	// models update the statistics of the model set
+
+	@Override
+	public Model getDefaultModel() {
+		return new ContextModel(super.getDefaultModel(), null);
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		return new ContextModel(super.getModel(contextURI), contextURI);
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		List<Model> models = new ArrayList<Model>();
+		ClosableIterator<Model> it = super.getModels();
+		try {
+			while(it.hasNext()) {
+				Model model = it.next();
+				models.add(new ContextModel(model, model.getContextURI()));
+			}
+		} finally {
+			it.close();
+		}
+		return new PseudoClosableIterator<Model>(models.iterator());
+	}
+
+	/**
+	 * A model of this model set, its writes are counted in the statistics of
+	 * the model set, in the context of the model.
+	 */
+	private class ContextModel extends StatisticsModel {
+
+		private static final long serialVersionUID = 2745418593725683817L;
+
+		private final URI contextURI;
+
+		ContextModel(Model model, URI contextURI) {
+			super(model, StatisticsModelSet.this.statistics);
+			this.contextURI = contextURI;
+		}
+
+		@Override
+		Statement counted(Statement statement) {
+			return new StatementImpl(this.contextURI, statement.getSubject(), statement
+			        .getPredicate(), statement.getObject());
+		}
+
+		@Override
+		void cleared() {
+			rebuild();
+		}
+
+		// the statistics are the ones of the whole model set
+
+		@Override
+		public long size() throws ModelRuntimeException {
+			return getDelegatedModel().size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return getDelegatedModel().isEmpty();
+		}
+
+		@Override
+		public long countStatements(TriplePattern pattern) throws ModelRuntimeException {
+			return getDelegatedModel().countStatements(pattern);
+		}
+
+		@Override
+		public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+		        throws ModelRuntimeException {
+			return getDelegatedModel().findBindings(patterns);
+		}
+	}
+
+}
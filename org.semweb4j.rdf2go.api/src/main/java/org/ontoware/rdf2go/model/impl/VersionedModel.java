@@ -0,0 +1,478 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+
+
+/**
+ * A model which records every change as a numbered revision, so earlier
+ * states can be read with {@link #asOf(long)}. A revision holds the net
+ * changes of one write operation, or of one transaction when it is committed.
+ * Every n-th revision the complete state is kept as a checkpoint, earlier
+ * states are computed from the nearest checkpoint before them. Old revisions
+ * can be dropped with {@link #compact(long)}, also regularly in the background.
+ *
+ * A write is recorded only once it succeeded. Within a transaction, the
+ * changes of the thread which started it are recorded when it commits. The
+ * history can be kept in a directory, so it is found again when the model is
+ * opened the next time. Reading from a stream parses into a temporary model
+ * first and adds its statements.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class VersionedModel extends NotifyingModelLayer {
+
+	private static final long serialVersionUID = 4089362931525067427L;
+
+	private final int checkpointInterval;
+
+	/** where the history is kept, null to keep it in memory */
+	private final File directory;
+
+	/** the context of the statements recorded in the history */
+	private final URI contextURI;
+
+	private RevisionHistory history;
+
+	/**
+	 * @param checkpointInterval number of revisions between two complete
+	 *            copies of the model
+	 */
+	public VersionedModel(Model model, int checkpointInterval) {
+		this(model, checkpointInterval, null);
+	}
+
+	/**
+	 * @param checkpointInterval number of revisions between two checkpoints
+	 * @param directory where the history is kept, the revisions recorded
+	 *            there before are read again. Changes made to the model in
+	 *            between become one revision.
+	 */
+	public VersionedModel(Model model, int checkpointInterval, File directory) {
+		super(model);
+		this.checkpointInterval = checkpointInterval;
+		this.directory = directory;
+		this.contextURI = null;
+		addModelChangedListener(new Recorder());
+		if(model.isOpen()) {
+			createHistory();
+		}
+	}
+
+	/**
+	 * A model of a {@link VersionedModelSet}, which records its changes in
+	 * the history of the model set.
+	 */
+	VersionedModel(Model model, RevisionHistory history, URI contextURI) {
+		super(model);
+		this.checkpointInterval = 0;
+		this.directory = null;
+		this.contextURI = contextURI;
+		this.history = history;
+		addModelChangedListener(new Recorder());
+	}
+
+	@Override
+	public Model open() {
+		super.open();
+		if(this.history == null) {
+			createHistory();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(this.history != null && this.checkpointInterval > 0) {
+			this.history.close();
+			if(this.directory != null) {
+				// read again from the directory when the model is opened
+				this.history = null;
+			}
+		}
+		super.close();
+	}
+
+	private void createHistory() {
+		ClosableIterator<Statement> it = getDelegatedModel().iterator();
+		try {
+			this.history = new RevisionHistory(inContext(it).iterator(),
+			        this.checkpointInterval, this.directory, getDelegatedModel());
+		} finally {
+			it.close();
+		}
+	}
+
+	private Statement inContext(Statement statement) {
+		return new StatementImpl(this.contextURI, statement.getSubject(), statement
+		        .getPredicate(), statement.getObject());
+	}
+
+	private Set<Statement> inContext(Iterator<? extends Statement> it) {
+		Set<Statement> statements = new HashSet<Statement>();
+		while(it.hasNext()) {
+			statements.add(inContext(it.next()));
+		}
+		return statements;
+	}
+
+	private boolean containsStatement(Statement statement) {
+		return getDelegatedModel().contains(statement.getSubject(), statement.getPredicate(),
+		        statement.getObject());
+	}
+
+	// /////////////////////////////////
+	// revisions
+
+	/**
+	 * @return the current revision, 0 before the first change
+	 */
+	public long getRevision() {
+		return this.history.getRevision();
+	}
+
+	/**
+	 * @return the oldest revision which has not been compacted
+	 */
+	public long getFirstRevision() {
+		return this.history.getFirstRevision();
+	}
+
+	/**
+	 * @return the time the revision was made, in milliseconds
+	 */
+	public long getTimestamp(long revision) {
+		return this.history.getTimestamp(revision);
+	}
+
+	/**
+	 * @return the last revision made at or before the given time
+	 * @throws IllegalArgumentException if that revision has been compacted
+	 */
+	public long getRevisionAt(long timestamp) {
+		return this.history.getRevisionAt(timestamp);
+	}
+
+	/**
+	 * @return the changes made by the given revision
+	 */
+	public Diff getChanges(long revision) {
+		return this.history.getChanges(revision);
+	}
+
+	/**
+	 * @return a read-only copy of the model at the given revision, which
+	 *         should be closed after use
+	 * @throws IllegalArgumentException if the revision does not exist or has
+	 *             been compacted
+	 */
+	public Model asOf(long revision) {
+		Model copy = RDF2Go.getModelFactory().createModel();
+		copy.open();
+		for(Statement statement : this.history.getStatements(revision)) {
+			if(this.contextURI == null ? statement.getContext() == null : this.contextURI
+			        .equals(statement.getContext())) {
+				copy.addStatement(statement.getSubject(), statement.getPredicate(), statement
+				        .getObject());
+			}
+		}
+		return new ReadOnlyModel(copy);
+	}
+
+	/**
+	 * Forget the revisions before the given one, which becomes the first
+	 * revision that can be read.
+	 *
+	 * @return number of revisions removed
+	 */
+	public int compact(long revision) {
+		return this.history.compact(revision);
+	}
+
+	/**
+	 * Regularly compact the revisions older than the retention time in a
+	 * background thread, until the model is closed.
+	 */
+	public void scheduleCompaction(long retentionMillis, long periodMillis) {
+		this.history.scheduleCompaction(retentionMillis, periodMillis);
+	}
+
+	// /////////////////////////////////
+	// each write becomes one revision, recorded once it succeeded
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.addStatement(statement);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.removeStatement(statement);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.addAll(other);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.removeAll(other);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeStatements(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.removeStatements(subject, predicate, object);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.update(diff);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			ClosableIterator<Statement> it = getDelegatedModel().iterator();
+			try {
+				while(it.hasNext()) {
+					this.history.removed(inContext(it.next()));
+				}
+			} finally {
+				it.close();
+			}
+			super.removeAll();
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.history.track(super.begin());
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.history.track(super.begin(isolationLevel));
+	}
+
+	// /////////////////////////////////
+	// reading parses into a temporary model first
+
+	private Model createTemporaryModel() {
+		Model parsed = RDF2Go.getModelFactory().createModel();
+		parsed.open();
+		return parsed;
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(reader, syntax);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(reader, syntax, baseURI);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(r);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException,
+	        IOException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(reader, syntax);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		Model parsed = createTemporaryModel();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModel(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	/**
+	 * Records the notified changes which actually change the model, it is
+	 * notified before the change is made. The write which notifies it
+	 * decides whether they are kept.
+	 */
+	private class Recorder implements ModelChangedListener {
+
+		@Override
+		public void addedStatement(Statement statement) {
+			if(!containsStatement(statement)) {
+				VersionedModel.this.history.added(inContext(statement));
+			}
+		}
+
+		@Override
+		public void addedStatements(Iterator<? extends Statement> statements) {
+			while(statements.hasNext()) {
+				addedStatement(statements.next());
+			}
+		}
+
+		@Override
+		public void removedStatement(Statement statement) {
+			if(containsStatement(statement)) {
+				VersionedModel.this.history.removed(inContext(statement));
+			}
+		}
+
+		@Override
+		public void removedStatements(Iterator<? extends Statement> statements) {
+			while(statements.hasNext()) {
+				removedStatement(statements.next());
+			}
+		}
+
+		/** removals are applied before additions */
+		@Override
+		public void performedUpdate(DiffReader diff) {
+			Set<Statement> removed = new HashSet<Statement>();
+			for(Statement statement : diff.getRemoved()) {
+				if(containsStatement(statement) && removed.add(inContext(statement))) {
+					VersionedModel.this.history.removed(inContext(statement));
+				}
+			}
+			for(Statement statement : diff.getAdded()) {
+				if(!containsStatement(statement) || removed.contains(inContext(statement))) {
+					VersionedModel.this.history.added(inContext(statement));
+				}
+			}
+		}
+	}
+
+}
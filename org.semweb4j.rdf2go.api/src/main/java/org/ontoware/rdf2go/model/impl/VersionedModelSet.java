@@ -0,0 +1,537 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * A model set which records every change as a numbered revision, like
+ * {@link VersionedModel}. The models returned by {@link #getModel(URI)},
+ * {@link #getDefaultModel()} and {@link #getModels()} record their changes in
+ * the same history.
+ *
+ * A write is recorded only once it succeeded. Within a transaction, the
+ * changes of the thread which started it are recorded when it commits. The
+ * history can be kept in a directory, so it is found again when the model set
+ * is opened the next time. Reading from a stream parses into a temporary
+ * model set first and adds its statements.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class VersionedModelSet extends NotifyingModelSetLayer {
+
+	private static final long serialVersionUID = -1795326116380727316L;
+
+	private final int checkpointInterval;
+
+	/** where the history is kept, null to keep it in memory */
+	private final File directory;
+
+	private RevisionHistory history;
+
+	/**
+	 * @param checkpointInterval number of revisions between two complete
+	 *            copies of the model set
+	 */
+	public VersionedModelSet(ModelSet modelset, int checkpointInterval) {
+		this(modelset, checkpointInterval, null);
+	}
+
+	/**
+	 * @param checkpointInterval number of revisions between two checkpoints
+	 * @param directory where the history is kept, the revisions recorded
+	 *            there before are read again. Changes made to the model set in
+	 *            between become one revision.
+	 */
+	public VersionedModelSet(ModelSet modelset, int checkpointInterval, File directory) {
+		super(modelset);
+		this.checkpointInterval = checkpointInterval;
+		this.directory = directory;
+		if(modelset.isOpen()) {
+			createHistory();
+		}
+	}
+
+	@Override
+	public ModelSet open() {
+		super.open();
+		if(this.history == null) {
+			createHistory();
+		}
+		return this;
+	}
+
+	@Override
+	public void close() {
+		if(this.history != null) {
+			this.history.close();
+			if(this.directory != null) {
+				// read again from the directory when the model set is opened
+				this.history = null;
+			}
+		}
+		super.close();
+	}
+
+	private void createHistory() {
+		this.history = new RevisionHistory(currentStatements().iterator(),
+		        this.checkpointInterval, this.directory, getDelegatedModelSet());
+	}
+
+	/**
+	 * The statements of the default model are recorded with a null context,
+	 * regardless how the model set reports them in the other contexts.
+	 */
+	private List<Statement> currentStatements() {
+		List<Statement> statements = new ArrayList<Statement>();
+		Model defaultModel = getDelegatedModelSet().getDefaultModel();
+		try {
+			addAll(statements, null, defaultModel.iterator());
+		} finally {
+			defaultModel.close();
+		}
+		List<URI> contextURIs = new ArrayList<URI>();
+		ClosableIterator<URI> it = getDelegatedModelSet().getModelURIs();
+		try {
+			while(it.hasNext()) {
+				contextURIs.add(it.next());
+			}
+		} finally {
+			it.close();
+		}
+		for(URI contextURI : contextURIs) {
+			addAll(statements, contextURI, getDelegatedModelSet().findStatements(contextURI,
+			        Variable.ANY, Variable.ANY, Variable.ANY));
+		}
+		return statements;
+	}
+
+	private static void addAll(List<Statement> statements, URI contextURI,
+	        ClosableIterator<Statement> it) {
+		try {
+			while(it.hasNext()) {
+				statements.add(inContext(contextURI, it.next()));
+			}
+		} finally {
+			it.close();
+		}
+	}
+
+	private static Statement inContext(Statement statement) {
+		return inContext(statement.getContext(), statement);
+	}
+
+	private static Statement inContext(URI contextURI, Statement statement) {
+		return new StatementImpl(contextURI, statement.getSubject(), statement.getPredicate(),
+		        statement.getObject());
+	}
+
+	private boolean containsStatement(Statement statement) {
+		if(statement.getContext() == null) {
+			// some model sets look into all contexts for a null context
+			Model defaultModel = getDelegatedModelSet().getDefaultModel();
+			try {
+				return defaultModel.contains(statement.getSubject(), statement.getPredicate(),
+				        statement.getObject());
+			} finally {
+				defaultModel.close();
+			}
+		}
+		return getDelegatedModelSet().containsStatements(statement.getContext(),
+		        statement.getSubject(), statement.getPredicate(), statement.getObject());
+	}
+
+	// /////////////////////////////////
+	// revisions
+
+	/**
+	 * @return the current revision, 0 before the first change
+	 */
+	public long getRevision() {
+		return this.history.getRevision();
+	}
+
+	/**
+	 * @return the oldest revision which has not been compacted
+	 */
+	public long getFirstRevision() {
+		return this.history.getFirstRevision();
+	}
+
+	/**
+	 * @return the time the revision was made, in milliseconds
+	 */
+	public long getTimestamp(long revision) {
+		return this.history.getTimestamp(revision);
+	}
+
+	/**
+	 * @return the last revision made at or before the given time
+	 * @throws IllegalArgumentException if that revision has been compacted
+	 */
+	public long getRevisionAt(long timestamp) {
+		return this.history.getRevisionAt(timestamp);
+	}
+
+	/**
+	 * @return the changes made by the given revision
+	 */
+	public Diff getChanges(long revision) {
+		return this.history.getChanges(revision);
+	}
+
+	/**
+	 * @return a read-only copy of the model set at the given revision, which
+	 *         should be closed after use
+	 * @throws IllegalArgumentException if the revision does not exist or has
+	 *             been compacted
+	 */
+	public ModelSet asOf(long revision) {
+		ModelSet copy = RDF2Go.getModelFactory().createModelSet();
+		copy.open();
+		copy.addAll(this.history.getStatements(revision).iterator());
+		return new ReadOnlyModelSet(copy);
+	}
+
+	/**
+	 * Forget the revisions before the given one, which becomes the first
+	 * revision that can be read.
+	 *
+	 * @return number of revisions removed
+	 */
+	public int compact(long revision) {
+		return this.history.compact(revision);
+	}
+
+	/**
+	 * Regularly compact the revisions older than the retention time in a
+	 * background thread, until the model set is closed.
+	 */
+	public void scheduleCompaction(long retentionMillis, long periodMillis) {
+		this.history.scheduleCompaction(retentionMillis, periodMillis);
+	}
+
+	// /////////////////////////////////
+	// writes
+
+	@Override
+	public void addStatement(Statement statement) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			if(!containsStatement(statement)) {
+				this.history.added(inContext(statement));
+			}
+			super.addStatement(statement);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeStatement(Statement statement) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			if(containsStatement(statement)) {
+				this.history.removed(inContext(statement));
+			}
+			super.removeStatement(statement);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void addAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.addAll(statements);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeAll(Iterator<? extends Statement> statements) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			super.removeAll(statements);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeStatements(QuadPattern quadPattern) throws ModelRuntimeException {
+		removeStatements(quadPattern.getContext(), quadPattern.getSubject(), quadPattern
+		        .getPredicate(), quadPattern.getObject());
+	}
+
+	@Override
+	public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = findStatements(context, subject, predicate, object);
+		try {
+			while(it.hasNext()) {
+				statements.add(it.next());
+			}
+		} finally {
+			it.close();
+		}
+		removeAll(statements.iterator());
+	}
+
+	/** removals are applied before additions */
+	@Override
+	public void update(DiffReader diff) throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			Set<RevisionHistory.Quad> removedQuads = new HashSet<RevisionHistory.Quad>();
+			for(Statement statement : diff.getRemoved()) {
+				if(containsStatement(statement)
+				        && removedQuads.add(new RevisionHistory.Quad(inContext(statement)))) {
+					this.history.removed(inContext(statement));
+				}
+			}
+			for(Statement statement : diff.getAdded()) {
+				if(!containsStatement(statement)
+				        || removedQuads.contains(new RevisionHistory.Quad(inContext(statement)))) {
+					this.history.added(inContext(statement));
+				}
+			}
+			super.update(diff);
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public boolean addModel(Model model) {
+		addModel(model, model.getContextURI());
+		return true;
+	}
+
+	@Override
+	public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
+		List<Statement> statements = new ArrayList<Statement>();
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			while(it.hasNext()) {
+				statements.add(inContext(contextURI, it.next()));
+			}
+		} finally {
+			it.close();
+		}
+		addAll(statements.iterator());
+	}
+
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = modelSet.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public boolean removeModel(URI contextURI) {
+		boolean success = false;
+		this.history.begin();
+		try {
+			ClosableIterator<Statement> it = getDelegatedModelSet().findStatements(contextURI,
+			        Variable.ANY, Variable.ANY, Variable.ANY);
+			try {
+				while(it.hasNext()) {
+					this.history.removed(inContext(contextURI, it.next()));
+				}
+			} finally {
+				it.close();
+			}
+			boolean result = super.removeModel(contextURI);
+			success = true;
+			return result;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public void removeAll() throws ModelRuntimeException {
+		boolean success = false;
+		this.history.begin();
+		try {
+			for(Statement statement : currentStatements()) {
+				this.history.removed(statement);
+			}
+			getDelegatedModelSet().removeAll();
+			success = true;
+		} finally {
+			this.history.end(success);
+		}
+	}
+
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return this.history.track(super.begin());
+	}
+
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		return this.history.track(super.begin(isolationLevel));
+	}
+
+	// /////////////////////////////////
+	// reading parses into a temporary model set first
+
+	private ModelSet createTemporaryModelSet() {
+		ModelSet parsed = RDF2Go.getModelFactory().createModelSet();
+		parsed.open();
+		return parsed;
+	}
+
+	@Override
+	public void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(InputStream reader, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(reader, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in) throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	@Override
+	public void readFrom(Reader in, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		ModelSet parsed = createTemporaryModelSet();
+		try {
+			parsed.readFrom(in, syntax, baseURI);
+			addModelSet(parsed);
+		} finally {
+			parsed.close();
+		}
+	}
+
+	// /////////////////////////////////
+	// models record their changes in the history of the model set
+
+	@Override
+	public Model getDefaultModel() {
+		return new VersionedModel(super.getDefaultModel(), this.history, null);
+	}
+
+	@Override
+	public Model getModel(URI contextURI) {
+		return new VersionedModel(super.getModel(contextURI), this.history, contextURI);
+	}
+
+	@Override
+	public ClosableIterator<Model> getModels() {
+		List<Model> models = new ArrayList<Model>();
+		ClosableIterator<Model> it = super.getModels();
+		try {
+			while(it.hasNext()) {
+				Model model = it.next();
+				models.add(new VersionedModel(model, this.history, model.getContextURI()));
+			}
+		} finally {
+			it.close();
+		}
+		return new PseudoClosableIterator<Model>(models.iterator());
+	}
+
+}
@@ -15,8 +15,14 @@
 
 
 /**
- * This variable models wild-cards in triple pattern queries. Only onw instance
- * of this class if allowed: ANY. This allows type-safe methods.
+ * This variable models wild-cards in triple pattern queries. {@link #ANY} is
+ * the anonymous wild-card. Named variables, see {@link #Variable(String)},
+ * are wild-cards as well, but also bind the same value in all triple patterns
+ * of a basic graph pattern, see
+ * {@link org.ontoware.rdf2go.model.FindableModel#findBindings(java.util.List)}.
+ * 
+ * All variables are equal to each other, so methods matching patterns treat
+ * named variables like {@link #ANY}.
  * 
  * @author voelkel
  */
@@ -24,11 +30,33 @@ public class Variable implements ResourceOrVariable, UriOrVariable, NodeOrVariab
 	
 	private static final long serialVersionUID = -2390360108847553396L;
 	
+	private final String name;
+	
 	private Variable() {
+		this.name = null;
+	}
+	
+	/**
+	 * @param name of the variable, without leading question mark
+	 * @since 5.1
+	 */
+	public Variable(String name) {
+		if(name == null) {
+			throw new IllegalArgumentException("name must not be null, use Variable.ANY");
+		}
+		this.name = name;
 	}
 	
 	public static final Variable ANY = new Variable();
 	
+	/**
+	 * @return the name of the variable, null for {@link #ANY}
+	 * @since 5.1
+	 */
+	public String getName() {
+		return this.name;
+	}
+	
 	public Resource asResource() throws ClassCastException {
 		throw new ClassCastException("A Variable cannot be seen as this");
 	}
@@ -78,13 +106,16 @@ public int compareTo(Node other) {
 	}
 	
 	public String toSPARQL() {
-		throw new RuntimeException("Variable (Singleton) can not be used for SPARQL queries");
+		if(this.name == null) {
+			throw new RuntimeException("Variable.ANY can not be used for SPARQL queries");
+		}
+		return "?" + this.name;
 	}
 	
-	/* Always returns '*' */
+	/* Returns '*' for ANY and '?name' for named variables */
 	@Override
 	public String toString() {
-		return "*";
+		return this.name == null ? "*" : "?" + this.name;
 	}
 	
 }
@@ -0,0 +1,83 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.util.Arrays;
+
+
+/**
+ * A set of strings which may answer "maybe" for strings never added, but
+ * never "no" for strings added. The size is chosen from the expected number
+ * of strings and the acceptable rate of false positives.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class BloomFilter {
+
+	private final long[] bits;
+
+	private final int size;
+
+	private final int hashes;
+
+	/**
+	 * @param expectedInsertions number of strings which will be added
+	 * @param falsePositiveRate e.g. 0.01 for one false "maybe" in a hundred
+	 */
+	public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+		if(falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		int n = Math.max(1, expectedInsertions);
+		double ln2 = Math.log(2);
+		this.size = (int)Math.max(64, Math.min(Integer.MAX_VALUE - 63, Math.ceil(-n
+		        * Math.log(falsePositiveRate) / (ln2 * ln2))));
+		this.hashes = Math.max(1, (int)Math.round((double)this.size / n * ln2));
+		this.bits = new long[(this.size + 63) / 64];
+	}
+
+	public void add(String value) {
+		long h = hash(value);
+		for(int i = 0; i < this.hashes; i++) {
+			int bit = bit(h, i);
+			this.bits[bit >>> 6] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * @return false if the value has certainly not been added
+	 */
+	public boolean mightContain(String value) {
+		long h = hash(value);
+		for(int i = 0; i < this.hashes; i++) {
+			int bit = bit(h, i);
+			if((this.bits[bit >>> 6] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void clear() {
+		Arrays.fill(this.bits, 0L);
+	}
+
+	private static long hash(String value) {
+		return MerkleTree.mix(MerkleTree.fnv(0xcbf29ce484222325L, value));
+	}
+
+	/** double hashing: the i-th bit is derived from both halves of h */
+	private int bit(long h, int i) {
+		int combined = (int)h + i * (int)(h >>> 32);
+		return (combined & Integer.MAX_VALUE) % this.size;
+	}
+
+}
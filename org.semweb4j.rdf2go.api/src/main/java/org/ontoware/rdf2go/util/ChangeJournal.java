@@ -0,0 +1,902 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.ModelValueFactory;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.DiffImpl;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.PlainLiteral;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An append-only, on-disk log of change sets. Every change set gets a
+ * monotonically increasing sequence number, so consumers (e.g. search indexes
+ * or caches) can remember the last sequence number they have seen and later
+ * catch up with {@link #read(long, ModelValueFactory)} instead of re-scanning
+ * the whole model.
+ *
+ * Wrap a model in a {@link org.ontoware.rdf2go.model.impl.JournalingModel}, or
+ * a model set in a {@link org.ontoware.rdf2go.model.impl.JournalingModelSet},
+ * to journal its changes once they have been written successfully, or call
+ * {@link #append(DiffReader)} directly.
+ *
+ * The journal is stored as segment files in a directory. A segment is named
+ * after the sequence number of its first entry and is closed once it exceeds
+ * the configured size. Closed segments can be removed with
+ * {@link #applyRetention(long, long)} or merged with {@link #compact(long)}.
+ * Compaction replaces a range of entries with one entry holding the net
+ * effect of the range, using the sequence number of the last entry of the
+ * range. Since for every statement only the last change is kept, applying the
+ * compacted entry to a consumer which has seen any prefix of the range brings
+ * it to the same state. The compacted entry is written to a new generation of
+ * the first segment of the range. Segment files which are still read by an
+ * open iterator returned by {@link #read(long, ModelValueFactory)} are
+ * deleted only once the last such iterator is closed.
+ *
+ * Every entry carries a checksum. An incompletely written entry at the end
+ * of the journal (e.g. after a crash) is discarded when the journal is
+ * opened.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class ChangeJournal implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(ChangeJournal.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String SUFFIX = ".journal";
+
+	private static final String TMP_SUFFIX = ".tmp";
+
+	private static final byte NULL = 'N';
+
+	private static final byte URI_NODE = 'U';
+
+	private static final byte BLANK_NODE = 'B';
+
+	private static final byte PLAIN_LITERAL = 'P';
+
+	private static final byte LANGUAGE_LITERAL = 'L';
+
+	private static final byte DATATYPE_LITERAL = 'D';
+
+	/**
+	 * One change set of the journal.
+	 */
+	public static class Entry {
+
+		private final long sequenceNumber;
+
+		private final long timestamp;
+
+		private final Diff diff;
+
+		public Entry(long sequenceNumber, long timestamp, Diff diff) {
+			this.sequenceNumber = sequenceNumber;
+			this.timestamp = timestamp;
+			this.diff = diff;
+		}
+
+		public long getSequenceNumber() {
+			return this.sequenceNumber;
+		}
+
+		/**
+		 * @return time of the append in milliseconds since the epoch
+		 */
+		public long getTimestamp() {
+			return this.timestamp;
+		}
+
+		public Diff getDiff() {
+			return this.diff;
+		}
+	}
+
+	/**
+	 * An entry as stored, statements are kept in their encoded form.
+	 */
+	private static class RawEntry {
+
+		long sequenceNumber;
+
+		long timestamp;
+
+		List<byte[]> removed = new ArrayList<byte[]>();
+
+		List<byte[]> added = new ArrayList<byte[]>();
+	}
+
+	private final File directory;
+
+	private final long maxSegmentBytes;
+
+	private final boolean sync;
+
+	/** first sequence number of a segment -> segment file */
+	private final TreeMap<Long,File> segments = new TreeMap<Long,File>();
+
+	private RandomAccessFile current;
+
+	private long lastSequenceNumber;
+
+	private boolean closed = false;
+
+	/** segment file -> number of open iterators which may read it */
+	private final Map<File,Integer> readers = new HashMap<File,Integer>();
+
+	/** segment files to delete once no iterator reads them any more */
+	private final Set<File> retired = new HashSet<File>();
+
+	/**
+	 * Open or create a journal.
+	 *
+	 * @param directory where the segment files are stored, created if
+	 *            necessary
+	 * @param maxSegmentBytes size after which a new segment is started
+	 * @param sync if true, each append is forced to disk before it returns
+	 */
+	public ChangeJournal(File directory, long maxSegmentBytes, boolean sync)
+	        throws ModelRuntimeException {
+		this.directory = directory;
+		this.maxSegmentBytes = maxSegmentBytes;
+		this.sync = sync;
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new ModelRuntimeException("Cannot create journal directory " + directory);
+		}
+		try {
+			recover();
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	private void recover() throws IOException {
+		// an interrupted compaction, the compacted segments are still complete
+		for(File tmp : list(TMP_SUFFIX)) {
+			delete(tmp);
+		}
+		// of several generations of a segment only the newest is valid
+		for(File segment : list(SUFFIX)) {
+			long first = firstSequenceNumber(segment);
+			File other = this.segments.get(first);
+			if(other != null && generation(other) > generation(segment)) {
+				delete(segment);
+			} else {
+				if(other != null) {
+					delete(other);
+				}
+				this.segments.put(first, segment);
+			}
+		}
+		// a compaction which crashed before deleting the merged segments
+		for(Long first : new ArrayList<Long>(this.segments.keySet())) {
+			File segment = this.segments.get(first);
+			if(segment == null || generation(segment) == 0) {
+				continue;
+			}
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+			        new FileInputStream(segment)));
+			RawEntry merged;
+			try {
+				merged = readEntry(in);
+			} finally {
+				in.close();
+			}
+			if(merged == null) {
+				continue;
+			}
+			Long next = this.segments.higherKey(first);
+			while(next != null && next <= merged.sequenceNumber) {
+				delete(this.segments.remove(next));
+				next = this.segments.higherKey(first);
+			}
+		}
+		this.lastSequenceNumber = 0;
+		if(this.segments.isEmpty()) {
+			openSegment(1);
+			return;
+		}
+		// scan the newest segment, find the last complete entry and cut off
+		// anything after it
+		File last = this.segments.lastEntry().getValue();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(
+		        last)));
+		long validLength = 0;
+		try {
+			RawEntry entry;
+			while((entry = readEntry(in)) != null) {
+				this.lastSequenceNumber = entry.sequenceNumber;
+				validLength += encodedLength(entry);
+			}
+		} finally {
+			in.close();
+		}
+		if(this.lastSequenceNumber == 0) {
+			// an empty newest segment still determines the next number
+			this.lastSequenceNumber = this.segments.lastKey() - 1;
+		}
+		this.current = new RandomAccessFile(last, "rw");
+		if(this.current.length() != validLength) {
+			log.warn("Discarding " + (this.current.length() - validLength)
+			        + " bytes of incomplete journal entries in " + last);
+			this.current.setLength(validLength);
+		}
+		this.current.seek(validLength);
+	}
+
+	private File[] list(final String suffix) {
+		File[] files = this.directory.listFiles(new FilenameFilter() {
+
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(suffix);
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	private void openSegment(long firstSequenceNumber) throws IOException {
+		File file = new File(this.directory, segmentName(firstSequenceNumber, 0));
+		this.segments.put(firstSequenceNumber, file);
+		this.current = new RandomAccessFile(file, "rw");
+		this.current.seek(this.current.length());
+	}
+
+	/**
+	 * @param generation 0 for a segment which has been appended to, increased
+	 *            by each compaction
+	 */
+	private static String segmentName(long firstSequenceNumber, int generation) {
+		String name = String.format("%020d", firstSequenceNumber);
+		if(generation > 0) {
+			name += "." + generation;
+		}
+		return name + SUFFIX;
+	}
+
+	private static long firstSequenceNumber(File segment) {
+		String name = segment.getName();
+		int end = name.indexOf('.');
+		return Long.parseLong(name.substring(0, end));
+	}
+
+	private static int generation(File segment) {
+		String name = segment.getName();
+		String[] parts = name.substring(0, name.length() - SUFFIX.length()).split("\\.");
+		return parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+	}
+
+	/**
+	 * @return the sequence number of the newest entry, 0 if the journal is
+	 *         empty
+	 */
+	public synchronized long getLastSequenceNumber() {
+		return this.lastSequenceNumber;
+	}
+
+	/**
+	 * @return the lowest sequence number which may still be in the journal.
+	 *         Consumers which have not seen all entries before this number
+	 *         have to re-scan the model.
+	 */
+	public synchronized long getFirstSequenceNumber() {
+		return this.segments.firstKey();
+	}
+
+	/**
+	 * Append a change set.
+	 *
+	 * @return the sequence number of the new entry
+	 */
+	public synchronized long append(DiffReader diff) throws ModelRuntimeException {
+		return append(diff.getRemoved(), diff.getAdded());
+	}
+
+	private synchronized long append(Iterable<? extends Statement> removed,
+	        Iterable<? extends Statement> added) throws ModelRuntimeException {
+		RawEntry entry = new RawEntry();
+		entry.sequenceNumber = this.lastSequenceNumber + 1;
+		entry.timestamp = System.currentTimeMillis();
+		for(Statement statement : removed) {
+			entry.removed.add(encode(statement));
+		}
+		for(Statement statement : added) {
+			entry.added.add(encode(statement));
+		}
+		try {
+			writeEntry(entry);
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+		return entry.sequenceNumber;
+	}
+
+	private void writeEntry(RawEntry entry) throws IOException {
+		if(this.closed) {
+			throw new ModelRuntimeException("Journal is closed");
+		}
+		byte[] bytes = toBytes(entry);
+		long start = this.current.getFilePointer();
+		try {
+			this.current.write(bytes);
+			if(this.sync) {
+				this.current.getChannel().force(false);
+			}
+		} catch(IOException e) {
+			// do not leave a partial entry behind
+			this.current.setLength(start);
+			this.current.seek(start);
+			throw e;
+		}
+		this.lastSequenceNumber = entry.sequenceNumber;
+		notifyAll();
+		if(this.current.length() >= this.maxSegmentBytes) {
+			this.current.close();
+			openSegment(this.lastSequenceNumber + 1);
+		}
+	}
+
+	/**
+	 * Wait until an entry with the given sequence number has been appended.
+	 *
+	 * @return true if the entry exists, false on timeout
+	 */
+	public synchronized boolean awaitSequenceNumber(long sequenceNumber, long timeoutMillis)
+	        throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while(this.lastSequenceNumber < sequenceNumber && !this.closed) {
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0) {
+				return false;
+			}
+			wait(remaining);
+		}
+		return this.lastSequenceNumber >= sequenceNumber;
+	}
+
+	/**
+	 * Read all entries with a sequence number of at least
+	 * <code>fromSequenceNumber</code>, in order. The iterator sees the entries
+	 * which existed when it was created; to tail the journal, remember the
+	 * last sequence number and call this method again, e.g. after
+	 * {@link #awaitSequenceNumber(long, long)}.
+	 *
+	 * If <code>fromSequenceNumber</code> is lower than
+	 * {@link #getFirstSequenceNumber()}, the first entry returned has a higher
+	 * sequence number than requested, and the consumer has missed changes.
+	 *
+	 * @param factory used to create the nodes of the returned statements,
+	 *            typically the model the changes will be applied to
+	 */
+	public synchronized ClosableIterator<Entry> read(long fromSequenceNumber,
+	        ModelValueFactory factory) throws ModelRuntimeException {
+		Long start = this.segments.floorKey(fromSequenceNumber);
+		List<File> files = new ArrayList<File>((start == null ? this.segments : this.segments
+		        .tailMap(start)).values());
+		for(File file : files) {
+			Integer count = this.readers.get(file);
+			this.readers.put(file, count == null ? 1 : count + 1);
+		}
+		return new EntryIterator(files, fromSequenceNumber, this.lastSequenceNumber, factory);
+	}
+
+	/**
+	 * Called once by each iterator when it is closed.
+	 */
+	private synchronized void release(List<File> files) {
+		for(File file : files) {
+			Integer count = this.readers.get(file);
+			if(count == null || count <= 1) {
+				this.readers.remove(file);
+				if(this.retired.remove(file)) {
+					try {
+						delete(file);
+					} catch(IOException e) {
+						log.warn("Could not delete journal segment", e);
+					}
+				}
+			} else {
+				this.readers.put(file, count - 1);
+			}
+		}
+	}
+
+	/**
+	 * Delete a segment which is no longer part of the journal, or defer this
+	 * until no iterator reads it any more.
+	 */
+	private void retire(File segment) throws IOException {
+		if(this.readers.containsKey(segment)) {
+			this.retired.add(segment);
+		} else {
+			delete(segment);
+		}
+	}
+
+	/**
+	 * Delete closed segments of which all entries are older than the limits.
+	 * The segment currently written to is never deleted.
+	 *
+	 * @param maxEntries keep at least the newest maxEntries entries, use
+	 *            Long.MAX_VALUE for no limit
+	 * @param maxAgeMillis keep segments which were written to in this time,
+	 *            use Long.MAX_VALUE for no limit
+	 * @return number of deleted segments
+	 */
+	public synchronized int applyRetention(long maxEntries, long maxAgeMillis)
+	        throws ModelRuntimeException {
+		int deleted = 0;
+		long now = System.currentTimeMillis();
+		while(this.segments.size() > 1) {
+			Map.Entry<Long,File> oldest = this.segments.firstEntry();
+			long lastInSegment = this.segments.higherKey(oldest.getKey()) - 1;
+			boolean tooMany = this.lastSequenceNumber - lastInSegment >= maxEntries;
+			boolean tooOld = now - oldest.getValue().lastModified() > maxAgeMillis;
+			if(!tooMany && !tooOld) {
+				break;
+			}
+			try {
+				retire(oldest.getValue());
+			} catch(IOException e) {
+				throw new ModelRuntimeException(e);
+			}
+			this.segments.remove(oldest.getKey());
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Replace all entries in closed segments with a sequence number up to
+	 * <code>upToSequenceNumber</code> by a single entry with their net
+	 * effect. Only whole segments are compacted, so entries in a segment
+	 * which also contains later entries are kept as they are.
+	 *
+	 * @return the number of entries which were merged
+	 */
+	public synchronized int compact(long upToSequenceNumber) throws ModelRuntimeException {
+		List<Long> firsts = new ArrayList<Long>();
+		for(Long first : this.segments.keySet()) {
+			Long next = this.segments.higherKey(first);
+			if(next == null || next - 1 > upToSequenceNumber) {
+				break;
+			}
+			firsts.add(first);
+		}
+		if(firsts.isEmpty()) {
+			return 0;
+		}
+		try {
+			// net effect: the last change of a statement wins
+			Map<ByteBuffer,Boolean> net = new LinkedHashMap<ByteBuffer,Boolean>();
+			RawEntry merged = new RawEntry();
+			int count = 0;
+			for(Long first : firsts) {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(
+				        new FileInputStream(this.segments.get(first))));
+				try {
+					RawEntry entry;
+					while((entry = readEntry(in)) != null) {
+						if(entry.sequenceNumber <= merged.sequenceNumber) {
+							continue;
+						}
+						for(byte[] statement : entry.removed) {
+							ByteBuffer key = ByteBuffer.wrap(statement);
+							net.remove(key);
+							net.put(key, Boolean.FALSE);
+						}
+						for(byte[] statement : entry.added) {
+							ByteBuffer key = ByteBuffer.wrap(statement);
+							net.remove(key);
+							net.put(key, Boolean.TRUE);
+						}
+						merged.sequenceNumber = entry.sequenceNumber;
+						merged.timestamp = entry.timestamp;
+						count++;
+					}
+				} finally {
+					in.close();
+				}
+			}
+			if(count <= 1) {
+				return 0;
+			}
+			for(Map.Entry<ByteBuffer,Boolean> e : net.entrySet()) {
+				(e.getValue() ? merged.added : merged.removed).add(e.getKey().array());
+			}
+			// write the next generation of the first segment to a temporary
+			// file first. The merged segments are only deleted once it is
+			// complete, recover() cleans up if we crash in between
+			File first = this.segments.get(firsts.get(0));
+			File target = new File(this.directory, segmentName(firsts.get(0),
+			        generation(first) + 1));
+			File tmp = new File(this.directory, target.getName() + TMP_SUFFIX);
+			FileOutputStream fos = new FileOutputStream(tmp);
+			try {
+				fos.write(toBytes(merged));
+				fos.getChannel().force(false);
+			} finally {
+				fos.close();
+			}
+			if(!tmp.renameTo(target)) {
+				throw new IOException("Cannot rename " + tmp + " to " + target);
+			}
+			this.segments.put(firsts.get(0), target);
+			retire(first);
+			for(Long other : firsts.subList(1, firsts.size())) {
+				retire(this.segments.remove(other));
+			}
+			return count;
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	private static void delete(File file) throws IOException {
+		if(file.exists() && !file.delete()) {
+			throw new IOException("Cannot delete " + file);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws ModelRuntimeException {
+		if(this.closed) {
+			return;
+		}
+		this.closed = true;
+		notifyAll();
+		try {
+			this.current.getChannel().force(false);
+			this.current.close();
+			// iterators must not be used after the journal has been closed
+			for(File segment : this.retired) {
+				delete(segment);
+			}
+			this.retired.clear();
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	// //////////////////////////
+	// encoding
+
+	/*
+	 * An entry is stored as: int length of the body, body, int CRC32 of the
+	 * body. The body is: long sequence number, long timestamp, int number of
+	 * removed statements, int number of added statements, the removed and
+	 * then the added statements. Each statement is stored as int length and
+	 * the encoded context, subject, predicate and object.
+	 */
+
+	private static byte[] toBytes(RawEntry entry) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(body);
+		out.writeLong(entry.sequenceNumber);
+		out.writeLong(entry.timestamp);
+		out.writeInt(entry.removed.size());
+		out.writeInt(entry.added.size());
+		for(byte[] statement : entry.removed) {
+			out.writeInt(statement.length);
+			out.write(statement);
+		}
+		for(byte[] statement : entry.added) {
+			out.writeInt(statement.length);
+			out.write(statement);
+		}
+		out.flush();
+		byte[] bytes = body.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		ByteArrayOutputStream record = new ByteArrayOutputStream(bytes.length + 8);
+		DataOutputStream recordOut = new DataOutputStream(new BufferedOutputStream(record));
+		recordOut.writeInt(bytes.length);
+		recordOut.write(bytes);
+		recordOut.writeInt((int)crc.getValue());
+		recordOut.flush();
+		return record.toByteArray();
+	}
+
+	private static long encodedLength(RawEntry entry) {
+		long length = 4 + 8 + 8 + 4 + 4 + 4;
+		for(byte[] statement : entry.removed) {
+			length += 4 + statement.length;
+		}
+		for(byte[] statement : entry.added) {
+			length += 4 + statement.length;
+		}
+		return length;
+	}
+
+	/**
+	 * @return the next entry or null at the end of the stream or at an
+	 *         incomplete or corrupt entry
+	 */
+	private static RawEntry readEntry(DataInputStream in) throws IOException {
+		byte[] bytes;
+		int checksum;
+		try {
+			int length = in.readInt();
+			if(length < 0 || length > in.available()) {
+				// incomplete or garbage
+				return null;
+			}
+			bytes = new byte[length];
+			in.readFully(bytes);
+			checksum = in.readInt();
+		} catch(EOFException e) {
+			return null;
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		if((int)crc.getValue() != checksum) {
+			return null;
+		}
+		DataInputStream body = new DataInputStream(new ByteArrayInputStream(bytes));
+		RawEntry entry = new RawEntry();
+		entry.sequenceNumber = body.readLong();
+		entry.timestamp = body.readLong();
+		int removed = body.readInt();
+		int added = body.readInt();
+		for(int i = 0; i < removed; i++) {
+			entry.removed.add(readBytes(body));
+		}
+		for(int i = 0; i < added; i++) {
+			entry.added.add(readBytes(body));
+		}
+		return entry;
+	}
+
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	private static byte[] encode(Statement statement) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeNode(out, statement.getContext());
+			writeNode(out, statement.getSubject());
+			writeNode(out, statement.getPredicate());
+			writeNode(out, statement.getObject());
+			out.flush();
+			return bytes.toByteArray();
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	private static void writeNode(DataOutputStream out, Node node) throws IOException {
+		if(node == null) {
+			out.writeByte(NULL);
+		} else if(node instanceof URI) {
+			out.writeByte(URI_NODE);
+			writeString(out, node.toString());
+		} else if(node instanceof BlankNode) {
+			out.writeByte(BLANK_NODE);
+			writeString(out, node.toString());
+		} else if(node instanceof DatatypeLiteral) {
+			out.writeByte(DATATYPE_LITERAL);
+			writeString(out, ((DatatypeLiteral)node).getValue());
+			writeString(out, ((DatatypeLiteral)node).getDatatype().toString());
+		} else if(node instanceof LanguageTagLiteral) {
+			out.writeByte(LANGUAGE_LITERAL);
+			writeString(out, ((LanguageTagLiteral)node).getValue());
+			writeString(out, ((LanguageTagLiteral)node).getLanguageTag());
+		} else if(node instanceof PlainLiteral) {
+			out.writeByte(PLAIN_LITERAL);
+			writeString(out, ((PlainLiteral)node).getValue());
+		} else {
+			throw new ModelRuntimeException("Cannot store node of " + node.getClass());
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static Statement decode(byte[] bytes, ModelValueFactory factory) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+			URI context = (URI)readNode(in, factory);
+			Resource subject = (Resource)readNode(in, factory);
+			URI predicate = (URI)readNode(in, factory);
+			Node object = readNode(in, factory);
+			return new StatementImpl(context, subject, predicate, object);
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	private static Node readNode(DataInputStream in, ModelValueFactory factory)
+	        throws IOException {
+		byte type = in.readByte();
+		switch(type) {
+		case NULL:
+			return null;
+		case URI_NODE:
+			return factory.createURI(readString(in));
+		case BLANK_NODE:
+			return factory.createBlankNode(readString(in));
+		case DATATYPE_LITERAL:
+			String value = readString(in);
+			return factory.createDatatypeLiteral(value, factory.createURI(readString(in)));
+		case LANGUAGE_LITERAL:
+			String label = readString(in);
+			return factory.createLanguageTagLiteral(label, readString(in));
+		case PLAIN_LITERAL:
+			return factory.createPlainLiteral(readString(in));
+		default:
+			throw new IOException("Unknown node type " + type);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return new String(readBytes(in), UTF8);
+	}
+
+	/**
+	 * Reads entries from a fixed list of segment files, which are not deleted
+	 * before the iterator is closed.
+	 */
+	private class EntryIterator implements ClosableIterator<Entry> {
+
+		private final List<File> segmentFiles;
+
+		private final Iterator<File> files;
+
+		private boolean released = false;
+
+		private final long lastSequenceNumber;
+
+		private final ModelValueFactory factory;
+
+		private DataInputStream in;
+
+		/** the next sequence number to deliver */
+		private long nextSequenceNumber;
+
+		private Entry next;
+
+		EntryIterator(List<File> files, long from, long lastSequenceNumber,
+		        ModelValueFactory factory) {
+			this.segmentFiles = files;
+			this.files = files.iterator();
+			this.nextSequenceNumber = from;
+			this.lastSequenceNumber = lastSequenceNumber;
+			this.factory = factory;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(this.next == null) {
+				this.next = fetch();
+			}
+			return this.next != null;
+		}
+
+		@Override
+		public Entry next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			Entry result = this.next;
+			this.next = null;
+			return result;
+		}
+
+		private Entry fetch() {
+			try {
+				while(this.nextSequenceNumber <= this.lastSequenceNumber) {
+					if(this.in == null) {
+						if(!this.files.hasNext()) {
+							return null;
+						}
+						this.in = new DataInputStream(new BufferedInputStream(
+						        new FileInputStream(this.files.next())));
+					}
+					RawEntry raw = readEntry(this.in);
+					if(raw == null) {
+						this.in.close();
+						this.in = null;
+					} else if(raw.sequenceNumber >= this.nextSequenceNumber
+					        && raw.sequenceNumber <= this.lastSequenceNumber) {
+						this.nextSequenceNumber = raw.sequenceNumber + 1;
+						List<Statement> removed = new ArrayList<Statement>(raw.removed.size());
+						for(byte[] statement : raw.removed) {
+							removed.add(decode(statement, this.factory));
+						}
+						List<Statement> added = new ArrayList<Statement>(raw.added.size());
+						for(byte[] statement : raw.added) {
+							added.add(decode(statement, this.factory));
+						}
+						return new Entry(raw.sequenceNumber, raw.timestamp, new DiffImpl(
+						        added.iterator(), removed.iterator()));
+					}
+				}
+				close();
+				return null;
+			} catch(IOException e) {
+				close();
+				throw new ModelRuntimeException(e);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("The journal is append-only");
+		}
+
+		@Override
+		public void close() {
+			if(this.in != null) {
+				try {
+					this.in.close();
+				} catch(IOException e) {
+					log.warn("Could not close journal segment", e);
+				}
+				this.in = null;
+			}
+			if(!this.released) {
+				this.released = true;
+				release(this.segmentFiles);
+			}
+		}
+	}
+
+}
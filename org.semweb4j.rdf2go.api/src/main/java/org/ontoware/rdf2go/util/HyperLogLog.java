@@ -0,0 +1,124 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.util.Arrays;
+
+import org.ontoware.rdf2go.model.node.Node;
+
+
+/**
+ * Estimates the number of distinct nodes added to it in 2^precision bytes.
+ * The standard error is about 1.04 / sqrt(2^precision), e.g. 3% for
+ * precision 10. Nodes cannot be removed, so after removals the estimate is
+ * an upper bound until the sketch is cleared and filled again.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class HyperLogLog {
+
+	public static final int MIN_PRECISION = 4;
+
+	public static final int MAX_PRECISION = 16;
+
+	private final int precision;
+
+	private final byte[] registers;
+
+	/**
+	 * @param precision between {@link #MIN_PRECISION} and
+	 *            {@link #MAX_PRECISION}
+	 */
+	public HyperLogLog(int precision) {
+		if(precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be between " + MIN_PRECISION
+			        + " and " + MAX_PRECISION);
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	public int getPrecision() {
+		return this.precision;
+	}
+
+	public void add(Node node) {
+		add(MerkleTree.hash(node));
+	}
+
+	/**
+	 * @param hash a 64 bit hash, does not need to be well distributed
+	 */
+	public void add(long hash) {
+		long h = MerkleTree.mix(hash);
+		int register = (int)(h >>> (64 - this.precision));
+		// the marker bit limits the rank if all remaining bits are 0
+		long rest = (h << this.precision) | (1L << (this.precision - 1));
+		byte rank = (byte)(Long.numberOfLeadingZeros(rest) + 1);
+		if(rank > this.registers[register]) {
+			this.registers[register] = rank;
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values added
+	 */
+	public long estimate() {
+		int m = this.registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for(byte rank : this.registers) {
+			sum += 1.0 / (1L << rank);
+			if(rank == 0) {
+				zeros++;
+			}
+		}
+		double estimate = alpha(m) * m * m / sum;
+		if(estimate <= 2.5 * m && zeros > 0) {
+			// linear counting is more accurate for small cardinalities
+			estimate = m * Math.log((double)m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	private static double alpha(int m) {
+		switch(m) {
+		case 16:
+			return 0.673;
+		case 32:
+			return 0.697;
+		case 64:
+			return 0.709;
+		default:
+			return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	/**
+	 * Afterwards this estimates the distinct values added to either sketch.
+	 */
+	public void merge(HyperLogLog other) {
+		if(other.precision != this.precision) {
+			throw new IllegalArgumentException("Sketches have different precisions: "
+			        + this.precision + " and " + other.precision);
+		}
+		for(int i = 0; i < this.registers.length; i++) {
+			if(other.registers[i] > this.registers[i]) {
+				this.registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	public void clear() {
+		Arrays.fill(this.registers, (byte)0);
+	}
+
+}
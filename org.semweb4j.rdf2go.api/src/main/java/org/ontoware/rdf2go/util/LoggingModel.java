@@ -18,6 +18,7 @@
 import java.io.Writer;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.ontoware.aifbcommons.collection.ClosableIterable;
@@ -29,10 +30,13 @@
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
+import org.ontoware.rdf2go.model.QueryRow;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.TriplePattern;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
@@ -265,6 +269,13 @@ public ClosableIterator<Statement> findStatements(TriplePattern pattern)
 		return this.model.findStatements(pattern);
 	}
 	
+	@Override
+	public ClosableIterator<QueryRow> findBindings(List<? extends TriplePattern> patterns)
+	        throws ModelRuntimeException {
+		log.debug("findBindings " + patterns);
+		return this.model.findBindings(patterns);
+	}
+	
 	@Override
 	public Collection<Resource> getAllReificationsOf(Statement statement) {
 		log.debug("getAllReificationsOf");
@@ -325,6 +336,24 @@ public boolean isIsomorphicWith(Model other) {
 		return this.model.isIsomorphicWith(other);
 	}
 	
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		log.debug("snapshot");
+		return this.model.snapshot();
+	}
+	
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		log.debug("begin");
+		return this.model.begin();
+	}
+	
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		log.debug("begin " + isolationLevel);
+		return this.model.begin(isolationLevel);
+	}
+	
 	@Override
 	public boolean isLocked() {
 		log.debug("isLocked");
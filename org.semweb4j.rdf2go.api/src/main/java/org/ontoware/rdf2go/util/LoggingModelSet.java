@@ -28,12 +28,14 @@
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
@@ -289,6 +291,24 @@ public Object getUnderlyingModelSetImplementation() {
 		return this.modelset.getUnderlyingModelSetImplementation();
 	}
 	
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		log.debug("snapshot");
+		return this.modelset.snapshot();
+	}
+	
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		log.debug("begin");
+		return this.modelset.begin();
+	}
+	
+	@Override
+	public Transaction begin(IsolationLevel isolationLevel) throws ModelRuntimeException {
+		log.debug("begin " + isolationLevel);
+		return this.modelset.begin(isolationLevel);
+	}
+	
 	@Override
 	public boolean hasReifications(Statement stmt) {
 		log.debug("hasReifications");
@@ -0,0 +1,271 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.PlainLiteral;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+
+
+/**
+ * An order-independent hash tree over a set of statements. Statements are
+ * put into 2^depth buckets by the hash of their subject. The hash of a bucket
+ * is the sum of the hashes of its statements, so it can be maintained
+ * incrementally with {@link #add(Statement)} and {@link #remove(Statement)}.
+ * Inner nodes combine the hashes of their two children.
+ *
+ * Two trees of the same depth can find their differing buckets by comparing
+ * node hashes from the root down, see
+ * {@link #getDifferingBuckets(MerkleTreeHashes)}. This needs a number of hash
+ * comparisons proportional to the number of differing buckets, not to the
+ * number of statements.
+ *
+ * The hashes only depend on the values of the nodes, so trees of different
+ * RDF2Go implementations are comparable. Blank nodes are hashed by their
+ * internal id, which differs between stores, so statements with blank nodes
+ * only compare equal between copies sharing the blank node ids.
+ *
+ * The caller has to make sure that only statements which are not yet
+ * contained are added, and only contained statements are removed.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class MerkleTree implements MerkleTreeHashes {
+
+	public static final int MAX_DEPTH = 24;
+
+	private final int depth;
+
+	private final int bucketCount;
+
+	/** heap layout, index 0 is unused */
+	private final long[] tree;
+
+	/** number of statements per subject, per bucket */
+	private final Map<Resource,Integer>[] subjects;
+
+	private long size = 0;
+
+	/**
+	 * @param depth the tree has 2^depth buckets, between 0 and
+	 *            {@link #MAX_DEPTH}
+	 */
+	@SuppressWarnings("unchecked")
+	public MerkleTree(int depth) {
+		if(depth < 0 || depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("depth must be between 0 and " + MAX_DEPTH);
+		}
+		this.depth = depth;
+		this.bucketCount = 1 << depth;
+		this.tree = new long[2 * this.bucketCount];
+		this.subjects = new Map[this.bucketCount];
+	}
+
+	public int getDepth() {
+		return this.depth;
+	}
+
+	@Override
+	public int getBucketCount() {
+		return this.bucketCount;
+	}
+
+	@Override
+	public synchronized long getHash(int node) {
+		return this.tree[node];
+	}
+
+	public long getRootHash() {
+		return getHash(1);
+	}
+
+	/**
+	 * @return number of statements in the tree
+	 */
+	public synchronized long size() {
+		return this.size;
+	}
+
+	public int getBucket(Resource subject) {
+		if(this.depth == 0) {
+			return 0;
+		}
+		return (int)(mix(hash(subject)) >>> (64 - this.depth));
+	}
+
+	public synchronized void add(Statement statement) {
+		int bucket = getBucket(statement.getSubject());
+		Map<Resource,Integer> bucketSubjects = this.subjects[bucket];
+		if(bucketSubjects == null) {
+			bucketSubjects = new HashMap<Resource,Integer>();
+			this.subjects[bucket] = bucketSubjects;
+		}
+		Integer count = bucketSubjects.get(statement.getSubject());
+		bucketSubjects.put(statement.getSubject(), count == null ? 1 : count + 1);
+		this.size++;
+		update(bucket, hash(statement));
+	}
+
+	public synchronized void remove(Statement statement) {
+		int bucket = getBucket(statement.getSubject());
+		Map<Resource,Integer> bucketSubjects = this.subjects[bucket];
+		Integer count = bucketSubjects == null ? null : bucketSubjects.get(statement
+		        .getSubject());
+		if(count == null) {
+			throw new IllegalStateException("Statement is not in the tree: " + statement);
+		}
+		if(count == 1) {
+			bucketSubjects.remove(statement.getSubject());
+		} else {
+			bucketSubjects.put(statement.getSubject(), count - 1);
+		}
+		this.size--;
+		update(bucket, -hash(statement));
+	}
+
+	public synchronized void clear() {
+		for(int i = 0; i < this.tree.length; i++) {
+			this.tree[i] = 0;
+		}
+		for(int i = 0; i < this.subjects.length; i++) {
+			this.subjects[i] = null;
+		}
+		this.size = 0;
+	}
+
+	private void update(int bucket, long delta) {
+		int node = this.bucketCount + bucket;
+		this.tree[node] += delta;
+		while(node > 1) {
+			node >>>= 1;
+			this.tree[node] = combine(this.tree[2 * node], this.tree[2 * node + 1]);
+		}
+	}
+
+	private static long combine(long left, long right) {
+		if(left == 0 && right == 0) {
+			// keeps empty trees at hash 0, whatever their depth
+			return 0;
+		}
+		return mix(left * 0x9E3779B97F4A7C15L + right);
+	}
+
+	/**
+	 * @return the subjects with statements in the given bucket
+	 */
+	public synchronized Set<Resource> getSubjects(int bucket) {
+		Map<Resource,Integer> bucketSubjects = this.subjects[bucket];
+		return bucketSubjects == null ? new HashSet<Resource>() : new HashSet<Resource>(
+		        bucketSubjects.keySet());
+	}
+
+	/**
+	 * Compare this tree with another one of the same depth, top down.
+	 *
+	 * @return the buckets which differ, in ascending order
+	 */
+	public List<Integer> getDifferingBuckets(MerkleTreeHashes other) {
+		if(other.getBucketCount() != this.bucketCount) {
+			throw new IllegalArgumentException("Trees have different bucket counts: "
+			        + this.bucketCount + " and " + other.getBucketCount());
+		}
+		List<Integer> buckets = new ArrayList<Integer>();
+		collectDifferences(other, 1, buckets);
+		return buckets;
+	}
+
+	private void collectDifferences(MerkleTreeHashes other, int node, List<Integer> buckets) {
+		if(getHash(node) == other.getHash(node)) {
+			return;
+		}
+		if(node >= this.bucketCount) {
+			buckets.add(node - this.bucketCount);
+		} else {
+			collectDifferences(other, 2 * node, buckets);
+			collectDifferences(other, 2 * node + 1, buckets);
+		}
+	}
+
+	// //////////////////////////
+	// hashing
+
+	/**
+	 * @return a hash of subject, predicate and object which is stable across
+	 *         implementations and JVMs. The context is not included.
+	 */
+	public static long hash(Statement statement) {
+		long h = hash(statement.getSubject());
+		h = h * 0x100000001B3L + hash(statement.getPredicate());
+		h = h * 0x100000001B3L + hash(statement.getObject());
+		return mix(h);
+	}
+
+	/**
+	 * @return a 64 bit FNV-1a hash of the kind and the value(s) of the node
+	 */
+	public static long hash(Node node) {
+		if(node instanceof URI) {
+			return fnv(fnv(0xcbf29ce484222325L, 'U'), node.toString());
+		} else if(node instanceof BlankNode) {
+			return fnv(fnv(0xcbf29ce484222325L, 'B'), ((BlankNode)node).getInternalID());
+		} else if(node instanceof DatatypeLiteral) {
+			DatatypeLiteral literal = (DatatypeLiteral)node;
+			return fnv(fnv(fnv(0xcbf29ce484222325L, 'D'), literal.getValue()), literal
+			        .getDatatype().toString());
+		} else if(node instanceof LanguageTagLiteral) {
+			LanguageTagLiteral literal = (LanguageTagLiteral)node;
+			return fnv(fnv(fnv(0xcbf29ce484222325L, 'L'), literal.getValue()), literal
+			        .getLanguageTag().toLowerCase());
+		} else if(node instanceof PlainLiteral) {
+			return fnv(fnv(0xcbf29ce484222325L, 'P'), ((PlainLiteral)node).getValue());
+		}
+		throw new IllegalArgumentException("Cannot hash " + node);
+	}
+
+	static long fnv(long h, String s) {
+		for(int i = 0; i < s.length(); i++) {
+			h = fnv(h, s.charAt(i));
+		}
+		// terminator, so ("ab","c") and ("a","bc") differ
+		return fnv(h, '\u0000');
+	}
+
+	private static long fnv(long h, char c) {
+		h ^= c & 0xff;
+		h *= 0x100000001B3L;
+		h ^= c >>> 8;
+		h *= 0x100000001B3L;
+		return h;
+	}
+
+	/** the finalizer of MurmurHash3, spreads the bits of h */
+	public static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
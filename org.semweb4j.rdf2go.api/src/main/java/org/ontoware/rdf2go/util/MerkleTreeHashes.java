@@ -0,0 +1,33 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+/**
+ * Read access to the node hashes of a {@link MerkleTree}, which might be
+ * remote. Implement this to fetch hashes on demand from a replica.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public interface MerkleTreeHashes {
+
+	/**
+	 * @return number of buckets, a power of two
+	 */
+	int getBucketCount();
+
+	/**
+	 * @param node index in a heap layout: the root is 1, the children of node
+	 *            i are 2i and 2i+1, bucket b is node bucketCount + b
+	 * @return the hash of the node
+	 */
+	long getHash(int node);
+
+}
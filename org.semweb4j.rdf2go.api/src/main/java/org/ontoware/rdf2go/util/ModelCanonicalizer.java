@@ -0,0 +1,476 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.PlainLiteral;
+import org.ontoware.rdf2go.model.node.URI;
+
+
+/**
+ * Computes a canonical form of a set of statements, in which blank nodes are
+ * labelled by the structure of the graph instead of by their internal ids.
+ * Two graphs are isomorphic if and only if their canonical forms are equal,
+ * so the canonical form gives a content hash that is stable across RDF2Go
+ * implementations, and an isomorphism check that does not depend on the
+ * blank node ids of the backends.
+ *
+ * The blank nodes are labelled by colour refinement: each blank node starts
+ * with the same colour, in each round its colour is combined with the
+ * predicates, literals, URIs and colours of its neighbours, until the number
+ * of colours does not increase anymore. Each round is linear in the number of
+ * statements; typical data needs a few rounds. Blank nodes which cannot be
+ * told apart are either interchangeable (same neighbours), then they are
+ * labelled in any order, or one of them is given a unique colour and the
+ * refinement continues, trying each of them and keeping the smallest result.
+ * The latter is only needed for highly regular blank node structures.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class ModelCanonicalizer {
+
+	private static final long SEED = 0x9E3779B97F4A7C15L;
+
+	private static final long PRIME = 0x100000001B3L;
+
+	/** blank node index of the subject of each statement, or -1 */
+	private final int[] subjects;
+
+	/** blank node index of the object of each statement, or -1 */
+	private final int[] objects;
+
+	private final String[] subjectTerms;
+
+	private final String[] predicateTerms;
+
+	private final String[] objectTerms;
+
+	private final long[] subjectHashes;
+
+	private final long[] predicateHashes;
+
+	private final long[] objectHashes;
+
+	/** internal ids of the blank nodes, by index */
+	private final List<String> blankNodes = new ArrayList<String>();
+
+	/** statements of each blank node, built on first use */
+	private List<Integer>[] incidences;
+
+	/** the neighbours of each blank node, built on first use */
+	private List<String>[] neighbourhoods;
+
+	private ModelCanonicalizer(List<Statement> statements) {
+		int n = statements.size();
+		this.subjects = new int[n];
+		this.objects = new int[n];
+		this.subjectTerms = new String[n];
+		this.predicateTerms = new String[n];
+		this.objectTerms = new String[n];
+		this.subjectHashes = new long[n];
+		this.predicateHashes = new long[n];
+		this.objectHashes = new long[n];
+		Map<String,Integer> index = new HashMap<String,Integer>();
+		for(int i = 0; i < n; i++) {
+			Statement statement = statements.get(i);
+			this.subjects[i] = blankNodeIndex(statement.getSubject(), index);
+			this.objects[i] = blankNodeIndex(statement.getObject(), index);
+			this.subjectTerms[i] = this.subjects[i] < 0 ? encode(statement.getSubject()) : null;
+			this.predicateTerms[i] = encode(statement.getPredicate());
+			this.objectTerms[i] = this.objects[i] < 0 ? encode(statement.getObject()) : null;
+			this.subjectHashes[i] = hash(this.subjectTerms[i]);
+			this.predicateHashes[i] = hash(this.predicateTerms[i]);
+			this.objectHashes[i] = hash(this.objectTerms[i]);
+		}
+	}
+
+	private int blankNodeIndex(Node node, Map<String,Integer> index) {
+		if(!(node instanceof BlankNode)) {
+			return -1;
+		}
+		String id = ((BlankNode)node).getInternalID();
+		Integer i = index.get(id);
+		if(i == null) {
+			i = this.blankNodes.size();
+			index.put(id, i);
+			this.blankNodes.add(id);
+		}
+		return i;
+	}
+
+	// //////////////////////////
+	// public API
+
+	/**
+	 * @param statements are consumed
+	 * @return the statements in N-Triples syntax, sorted, with blank nodes
+	 *         labelled canonically
+	 */
+	public static List<String> canonicalize(Iterator<? extends Statement> statements) {
+		List<Statement> list = new ArrayList<Statement>();
+		while(statements.hasNext()) {
+			list.add(statements.next());
+		}
+		return new ModelCanonicalizer(list).canonicalize();
+	}
+
+	/**
+	 * @return the canonical form of the statements of the model
+	 */
+	public static List<String> canonicalize(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			return canonicalize(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	/**
+	 * @return a SHA-256 hash, as hex string, of the canonical form of the
+	 *         model. Isomorphic models have the same hash.
+	 */
+	public static String hash(Model model) throws ModelRuntimeException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new ModelRuntimeException(e);
+		}
+		for(String line : canonicalize(model)) {
+			digest.update(line.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)'\n');
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Works for models of any implementation.
+	 *
+	 * @return true if the models are isomorphic
+	 */
+	public static boolean isIsomorphic(Model a, Model b) throws ModelRuntimeException {
+		if(a.size() != b.size()) {
+			return false;
+		}
+		return canonicalize(a).equals(canonicalize(b));
+	}
+
+	// //////////////////////////
+	// labelling
+
+	private List<String> canonicalize() {
+		return search(new long[this.blankNodes.size()]);
+	}
+
+	private List<String> search(long[] colours) {
+		long[] current = refine(colours);
+		while(true) {
+			Map<Long,List<Integer>> cells = getNonSingletonCells(current);
+			if(cells.isEmpty()) {
+				return serialize(current);
+			}
+			// interchangeable blank nodes can be labelled in any order
+			boolean individualised = false;
+			List<Integer> branchCell = null;
+			long branchColour = 0;
+			for(Map.Entry<Long,List<Integer>> cell : cells.entrySet()) {
+				if(isInterchangeable(cell.getValue())) {
+					int i = 1;
+					for(int node : cell.getValue()) {
+						current[node] = mix(current[node] + i * SEED);
+						i++;
+					}
+					individualised = true;
+				} else if(branchCell == null
+				        || cell.getValue().size() < branchCell.size()
+				        || (cell.getValue().size() == branchCell.size() && cell.getKey() < branchColour)) {
+					branchCell = cell.getValue();
+					branchColour = cell.getKey();
+				}
+			}
+			if(individualised) {
+				current = refine(current);
+				continue;
+			}
+			// try each of the blank nodes which can not be told apart
+			List<String> best = null;
+			for(int node : representatives(branchCell)) {
+				long[] branch = current.clone();
+				branch[node] = mix(branch[node] + SEED);
+				List<String> result = search(branch);
+				if(best == null || compare(result, best) < 0) {
+					best = result;
+				}
+			}
+			return best;
+		}
+	}
+
+	private long[] refine(long[] colours) {
+		long[] current = colours;
+		int distinct = countDistinct(current);
+		while(true) {
+			long[] sums = new long[current.length];
+			for(int i = 0; i < this.subjects.length; i++) {
+				int s = this.subjects[i];
+				int o = this.objects[i];
+				if(s >= 0) {
+					long object = o >= 0 ? current[o] : this.objectHashes[i];
+					sums[s] += mix(1 + this.predicateHashes[i] * PRIME + object);
+				}
+				if(o >= 0) {
+					long subject = s >= 0 ? current[s] : this.subjectHashes[i];
+					sums[o] += mix(2 + this.predicateHashes[i] * PRIME + subject);
+				}
+			}
+			long[] next = new long[current.length];
+			for(int b = 0; b < next.length; b++) {
+				next[b] = mix(current[b] * PRIME + sums[b]);
+			}
+			int nextDistinct = countDistinct(next);
+			current = next;
+			if(nextDistinct <= distinct) {
+				return current;
+			}
+			distinct = nextDistinct;
+		}
+	}
+
+	private static int countDistinct(long[] colours) {
+		Set<Long> set = new HashSet<Long>();
+		for(long colour : colours) {
+			set.add(colour);
+		}
+		return set.size();
+	}
+
+	private static Map<Long,List<Integer>> getNonSingletonCells(long[] colours) {
+		Map<Long,List<Integer>> cells = new LinkedHashMap<Long,List<Integer>>();
+		for(int b = 0; b < colours.length; b++) {
+			List<Integer> cell = cells.get(colours[b]);
+			if(cell == null) {
+				cell = new ArrayList<Integer>(1);
+				cells.put(colours[b], cell);
+			}
+			cell.add(b);
+		}
+		Iterator<List<Integer>> it = cells.values().iterator();
+		while(it.hasNext()) {
+			if(it.next().size() == 1) {
+				it.remove();
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @return true if all blank nodes in the cell have the same neighbours,
+	 *         so any permutation of them is an automorphism
+	 */
+	private boolean isInterchangeable(List<Integer> cell) {
+		List<String> first = getNeighbourhood(cell.get(0));
+		for(int i = 1; i < cell.size(); i++) {
+			if(!first.equals(getNeighbourhood(cell.get(i)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return one blank node of each group of interchangeable blank nodes
+	 */
+	private List<Integer> representatives(List<Integer> cell) {
+		Map<List<String>,Integer> groups = new LinkedHashMap<List<String>,Integer>();
+		for(int node : cell) {
+			List<String> neighbourhood = getNeighbourhood(node);
+			if(!groups.containsKey(neighbourhood)) {
+				groups.put(neighbourhood, node);
+			}
+		}
+		return new ArrayList<Integer>(groups.values());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> getNeighbourhood(int node) {
+		if(this.neighbourhoods == null) {
+			this.incidences = new List[this.blankNodes.size()];
+			for(int i = 0; i < this.subjects.length; i++) {
+				addIncidence(this.subjects[i], i);
+				if(this.objects[i] != this.subjects[i]) {
+					addIncidence(this.objects[i], i);
+				}
+			}
+			this.neighbourhoods = new List[this.blankNodes.size()];
+		}
+		if(this.neighbourhoods[node] == null) {
+			List<String> neighbourhood = new ArrayList<String>();
+			List<Integer> incidence = this.incidences[node];
+			for(int i : incidence == null ? Collections.<Integer> emptyList() : incidence) {
+				if(this.subjects[i] == node) {
+					neighbourhood.add("s " + this.predicateTerms[i] + " "
+					        + neighbour(this.objects[i], this.objectTerms[i], node));
+				}
+				if(this.objects[i] == node) {
+					neighbourhood.add("o " + this.predicateTerms[i] + " "
+					        + neighbour(this.subjects[i], this.subjectTerms[i], node));
+				}
+			}
+			Collections.sort(neighbourhood);
+			this.neighbourhoods[node] = neighbourhood;
+		}
+		return this.neighbourhoods[node];
+	}
+
+	private void addIncidence(int node, int statement) {
+		if(node < 0) {
+			return;
+		}
+		if(this.incidences[node] == null) {
+			this.incidences[node] = new ArrayList<Integer>(2);
+		}
+		this.incidences[node].add(statement);
+	}
+
+	private String neighbour(int blankNode, String term, int self) {
+		if(blankNode < 0) {
+			return term;
+		}
+		return blankNode == self ? "_:self" : "_:" + this.blankNodes.get(blankNode);
+	}
+
+	private List<String> serialize(long[] colours) {
+		List<String> lines = new ArrayList<String>(this.subjects.length);
+		for(int i = 0; i < this.subjects.length; i++) {
+			lines.add(term(this.subjects[i], this.subjectTerms[i], colours) + " "
+			        + this.predicateTerms[i] + " "
+			        + term(this.objects[i], this.objectTerms[i], colours) + " .");
+		}
+		Collections.sort(lines);
+		return lines;
+	}
+
+	private static String term(int blankNode, String term, long[] colours) {
+		if(blankNode < 0) {
+			return term;
+		}
+		String hex = Long.toHexString(colours[blankNode]);
+		return "_:c" + "0000000000000000".substring(hex.length()) + hex;
+	}
+
+	private static int compare(List<String> a, List<String> b) {
+		for(int i = 0; i < a.size() && i < b.size(); i++) {
+			int c = a.get(i).compareTo(b.get(i));
+			if(c != 0) {
+				return c;
+			}
+		}
+		return a.size() - b.size();
+	}
+
+	// //////////////////////////
+	// terms
+
+	/**
+	 * @return the N-Triples form of a URI or literal
+	 */
+	private static String encode(Node node) {
+		if(node instanceof URI) {
+			return "<" + node.toString() + ">";
+		} else if(node instanceof DatatypeLiteral) {
+			DatatypeLiteral literal = (DatatypeLiteral)node;
+			return quote(literal.getValue()) + "^^<" + literal.getDatatype() + ">";
+		} else if(node instanceof LanguageTagLiteral) {
+			LanguageTagLiteral literal = (LanguageTagLiteral)node;
+			return quote(literal.getValue()) + "@" + literal.getLanguageTag().toLowerCase();
+		} else if(node instanceof PlainLiteral) {
+			return quote(((PlainLiteral)node).getValue());
+		}
+		throw new IllegalArgumentException("Cannot encode " + node);
+	}
+
+	private static String quote(String value) {
+		StringBuilder result = new StringBuilder(value.length() + 2);
+		result.append('"');
+		for(int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch(c) {
+			case '"':
+				result.append("\\\"");
+				break;
+			case '\\':
+				result.append("\\\\");
+				break;
+			case '\n':
+				result.append("\\n");
+				break;
+			case '\r':
+				result.append("\\r");
+				break;
+			case '\t':
+				result.append("\\t");
+				break;
+			default:
+				result.append(c);
+			}
+		}
+		return result.append('"').toString();
+	}
+
+	private static long hash(String term) {
+		if(term == null) {
+			return 0;
+		}
+		long h = 0xcbf29ce484222325L;
+		for(int i = 0; i < term.length(); i++) {
+			h ^= term.charAt(i);
+			h *= PRIME;
+		}
+		return mix(h);
+	}
+
+	/** the finalizer of MurmurHash3 */
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+}
@@ -18,9 +18,11 @@
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -37,6 +39,7 @@
 import org.ontoware.rdf2go.model.node.Resource;
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.util.StatementSetAlgebra.Operation;
 
 
 /**
@@ -106,51 +109,67 @@ public static void copy(ModelSet source, ModelSet target) throws ModelRuntimeExc
 	}
 	
 	/**
-	 * If the two models come from different implementations, copying blank
-	 * nodes needs special care
+	 * Number of statements converted and added at once by
+	 * {@link #copy(Model, Model)} when copying between implementations.
+	 */
+	public static final int COPY_CHUNK_SIZE = 10000;
+	
+	/**
+	 * Models of the same implementation are copied with
+	 * {@link Model#addModel(Model)}, which implementations override with
+	 * their native bulk transfer. Otherwise statements are converted and added
+	 * in chunks of {@link #COPY_CHUNK_SIZE}, so neither side has to buffer the
+	 * whole model. Blank nodes are mapped to new blank nodes of the target.
 	 * 
 	 * @param source copy from where
 	 * @param target copy where to
 	 */
 	public static void copy(Model source, Model target) {
-		if(source.getUnderlyingModelImplementation().equals(
+		if(source.getUnderlyingModelImplementation().getClass().equals(
 		        target.getUnderlyingModelImplementation().getClass())) {
-			// same implementation, use easy copy
-			ClosableIterator<Statement> it = source.iterator();
-			target.addAll(it);
-			it.close();
+			// same implementation, use native copy
+			target.addModel(source);
 		} else {
 			Map<String,BlankNode> bnodeSourceId2bnodeTarget = new HashMap<String,BlankNode>();
+			List<Statement> chunk = new ArrayList<Statement>();
 			ClosableIterator<Statement> it = source.iterator();
-			while(it.hasNext()) {
-				Statement stmt = it.next();
-				boolean blankSubject = stmt.getSubject() instanceof BlankNode;
-				boolean blankObject = stmt.getObject() instanceof BlankNode;
-				
-				if(blankSubject || blankObject) {
-					Resource s;
-					if(blankSubject) {
-						s = transform(stmt.getSubject().asBlankNode(), bnodeSourceId2bnodeTarget,
-						        target);
-					} else {
-						s = stmt.getSubject();
-					}
+			try {
+				while(it.hasNext()) {
+					Statement stmt = it.next();
+					boolean blankSubject = stmt.getSubject() instanceof BlankNode;
+					boolean blankObject = stmt.getObject() instanceof BlankNode;
 					
-					Node o;
-					// use mapping from node-IDs in impl-source to blank nodes
-					// in impl-target
-					if(blankObject) {
-						o = transform(stmt.getObject().asBlankNode(), bnodeSourceId2bnodeTarget,
-						        target);
+					if(blankSubject || blankObject) {
+						Resource s;
+						if(blankSubject) {
+							s = transform(stmt.getSubject().asBlankNode(),
+							        bnodeSourceId2bnodeTarget, target);
+						} else {
+							s = stmt.getSubject();
+						}
+						
+						Node o;
+						// use mapping from node-IDs in impl-source to blank
+						// nodes in impl-target
+						if(blankObject) {
+							o = transform(stmt.getObject().asBlankNode(),
+							        bnodeSourceId2bnodeTarget, target);
+						} else {
+							o = stmt.getObject();
+						}
+						chunk.add(target.createStatement(s, stmt.getPredicate(), o));
 					} else {
-						o = stmt.getObject();
+						chunk.add(stmt);
+					}
+					if(chunk.size() == COPY_CHUNK_SIZE) {
+						target.addAll(chunk.iterator());
+						chunk.clear();
 					}
-					target.addStatement(s, stmt.getPredicate(), o);
-				} else {
-					target.addStatement(stmt);
 				}
+			} finally {
+				it.close();
 			}
-			it.close();
+			target.addAll(chunk.iterator());
 		}
 		
 	}
@@ -193,6 +212,8 @@ public static void removeFrom(ModelSet source, ModelSet target) throws ModelRunt
 	}
 	
 	/**
+	 * Computed by sort-merge, see {@link StatementSetAlgebra}.
+	 * 
 	 * @param a a Model
 	 * @param b a model
 	 * @param result should be empty before calling this method
@@ -200,15 +221,13 @@ public static void removeFrom(ModelSet source, ModelSet target) throws ModelRunt
 	 * @throws ModelRuntimeException from underlying IO errors, if any.
 	 */
 	public static Model intersection(Model a, Model b, Model result) throws ModelRuntimeException {
-		for(Statement s : a) {
-			if(b.contains(s)) {
-				result.addStatement(s);
-			}
-		}
+		new StatementSetAlgebra().applyTo(Operation.INTERSECTION, a, b, result);
 		return result;
 	}
 	
 	/**
+	 * Computed by sort-merge, see {@link StatementSetAlgebra}.
+	 * 
 	 * @param a a Model
 	 * @param b a Model
 	 * @param result should be empty before calling this method
@@ -216,16 +235,13 @@ public static Model intersection(Model a, Model b, Model result) throws ModelRun
 	 * @throws ModelRuntimeException from underlying IO errors, if any.
 	 */
 	public static Model union(Model a, Model b, Model result) throws ModelRuntimeException {
-		ClosableIterator<Statement> it = a.iterator();
-		result.addAll(it);
-		it.close();
-		it = b.iterator();
-		result.addAll(it);
-		it.close();
+		new StatementSetAlgebra().applyTo(Operation.UNION, a, b, result);
 		return result;
 	}
 	
 	/**
+	 * Computed by sort-merge, see {@link StatementSetAlgebra}.
+	 * 
 	 * @param a a Model
 	 * @param b a Model
 	 * @param result the resulting Model, should be empty before calling this
@@ -234,12 +250,7 @@ public static Model union(Model a, Model b, Model result) throws ModelRuntimeExc
 	 * @throws ModelRuntimeException from underlying IO errors, if any.
 	 */
 	public static Model complement(Model a, Model b, Model result) throws ModelRuntimeException {
-		ClosableIterator<Statement> it = a.iterator();
-		result.addAll(it);
-		it.close();
-		it = b.iterator();
-		result.removeAll(it);
-		it.close();
+		new StatementSetAlgebra().applyTo(Operation.DIFFERENCE, a, b, result);
 		return result;
 	}
 	
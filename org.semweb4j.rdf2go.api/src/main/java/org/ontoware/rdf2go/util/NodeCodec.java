@@ -0,0 +1,126 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.ModelValueFactory;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.DatatypeLiteral;
+import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.PlainLiteral;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.DatatypeLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.LanguageTagLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+/**
+ * A compact binary encoding of nodes: one byte for the kind of node,
+ * followed by its value(s) as length-prefixed UTF-8. Blank nodes are written
+ * as their internal IDs.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class NodeCodec {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte URI_NODE = 'U';
+
+	private static final byte BLANK_NODE = 'B';
+
+	private static final byte PLAIN_LITERAL = 'P';
+
+	private static final byte LANGUAGE_LITERAL = 'L';
+
+	private static final byte DATATYPE_LITERAL = 'D';
+
+	private NodeCodec() {
+		// static helper
+	}
+
+	public static void writeNode(DataOutput out, Node node) throws IOException {
+		if(node instanceof URI) {
+			out.writeByte(URI_NODE);
+			writeString(out, node.toString());
+		} else if(node instanceof BlankNode) {
+			out.writeByte(BLANK_NODE);
+			writeString(out, ((BlankNode)node).getInternalID());
+		} else if(node instanceof DatatypeLiteral) {
+			out.writeByte(DATATYPE_LITERAL);
+			writeString(out, ((DatatypeLiteral)node).getValue());
+			writeString(out, ((DatatypeLiteral)node).getDatatype().toString());
+		} else if(node instanceof LanguageTagLiteral) {
+			out.writeByte(LANGUAGE_LITERAL);
+			writeString(out, ((LanguageTagLiteral)node).getValue());
+			writeString(out, ((LanguageTagLiteral)node).getLanguageTag());
+		} else if(node instanceof PlainLiteral) {
+			out.writeByte(PLAIN_LITERAL);
+			writeString(out, ((PlainLiteral)node).getValue());
+		} else {
+			throw new ModelRuntimeException("Cannot encode node of " + node.getClass());
+		}
+	}
+
+	/**
+	 * @param blankNodes blank nodes by internal ID, written ones are looked up
+	 *            here
+	 * @param factory creates blank nodes which are not in blankNodes yet and
+	 *            adds them, may be null if all blank nodes are known
+	 */
+	public static Node readNode(DataInput in, Map<String,BlankNode> blankNodes,
+	        ModelValueFactory factory) throws IOException {
+		byte type = in.readByte();
+		switch(type) {
+		case URI_NODE:
+			return new URIImpl(readString(in), false);
+		case BLANK_NODE:
+			String id = readString(in);
+			BlankNode blankNode = blankNodes.get(id);
+			if(blankNode == null && factory != null) {
+				blankNode = factory.createBlankNode();
+				blankNodes.put(id, blankNode);
+			}
+			return blankNode;
+		case DATATYPE_LITERAL:
+			String value = readString(in);
+			return new DatatypeLiteralImpl(value, new URIImpl(readString(in), false));
+		case LANGUAGE_LITERAL:
+			String label = readString(in);
+			return new LanguageTagLiteralImpl(label, readString(in));
+		case PLAIN_LITERAL:
+			return new PlainLiteralImpl(readString(in));
+		default:
+			throw new IOException("Unknown node type " + type);
+		}
+	}
+
+	public static void writeString(DataOutput out, String s) throws IOException {
+		byte[] bytes = s.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
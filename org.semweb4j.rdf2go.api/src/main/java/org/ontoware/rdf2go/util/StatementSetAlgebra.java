@@ -0,0 +1,965 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.ModelValueFactory;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+
+
+/**
+ * Set operations on statement streams by sort-merge instead of one
+ * {@link Model#contains(Statement)} per statement.
+ *
+ * Both inputs are read once and each statement is encoded into a compact
+ * byte key of subject, predicate and object; the context is ignored. The keys
+ * are sorted in memory up to the memory budget, larger inputs are written to
+ * temporary files as sorted runs and merged. The sorted, duplicate-free key
+ * streams of both sides are then merge-joined.
+ *
+ * With more than one partition, the statements are distributed by the hash of
+ * their subject and the partitions are sorted and joined in parallel. The
+ * result is then sorted within each partition only.
+ *
+ * Blank nodes are kept as the objects of the input in memory and returned as
+ * they are, so the result can be added to a model which shares the blank nodes
+ * of the inputs. The number of kept blank nodes is bounded by a quarter of the
+ * memory budget, the keys get the rest. Blank nodes beyond the bound are
+ * recreated from their internal id by a {@link ModelValueFactory}, which gives
+ * equal blank nodes for the stores shipped with RDF2Go.
+ *
+ * @author agent
+ * @since 5.1
+ */
+public class StatementSetAlgebra {
+
+	public enum Operation {
+		/** statements in a or b */
+		UNION,
+		/** statements in a and b */
+		INTERSECTION,
+		/** statements in a, but not in b */
+		DIFFERENCE,
+		/** statements in exactly one of a and b */
+		SYMMETRIC_DIFFERENCE
+	}
+
+	public static final long DEFAULT_MEMORY_BUDGET = 32 * 1024 * 1024;
+
+	/** estimated size of a buffered key besides its bytes */
+	private static final int KEY_OVERHEAD = 32;
+
+	/** estimated size of a kept blank node, including its table entry */
+	private static final int BLANK_NODE_SIZE = 128;
+
+	private static final Comparator<byte[]> KEY_ORDER = new Comparator<byte[]>() {
+		@Override
+		public int compare(byte[] a, byte[] b) {
+			return compareKeys(a, b);
+		}
+	};
+
+	private final long memoryBudget;
+
+	private final int partitions;
+
+	private final File tempDirectory;
+
+	/**
+	 * Sequential, with {@link #DEFAULT_MEMORY_BUDGET} and the default temporary
+	 * directory.
+	 */
+	public StatementSetAlgebra() {
+		this(DEFAULT_MEMORY_BUDGET, 1, null);
+	}
+
+	/**
+	 * @param memoryBudget approximate number of bytes of keys and blank nodes
+	 *            kept in memory, shared by all partitions
+	 * @param partitions number of subject-hash partitions processed in
+	 *            parallel, 1 for sequential processing
+	 * @param tempDirectory where sorted runs are spilled, null for the default
+	 *            temporary directory
+	 */
+	public StatementSetAlgebra(long memoryBudget, int partitions, File tempDirectory) {
+		if(memoryBudget <= 0) {
+			throw new IllegalArgumentException("memoryBudget must be positive");
+		}
+		if(partitions < 1) {
+			throw new IllegalArgumentException("partitions must be at least 1");
+		}
+		this.memoryBudget = memoryBudget;
+		this.partitions = partitions;
+		this.tempDirectory = tempDirectory;
+	}
+
+	/**
+	 * Reads both inputs completely and returns the result as a stream. The
+	 * result has no duplicates and statements without context. Close the
+	 * iterator if it is not read to the end, so temporary files are deleted.
+	 *
+	 * @throws ModelRuntimeException if the inputs have more blank nodes than
+	 *             can be kept, use
+	 *             {@link #apply(Operation, Iterator, Iterator, ModelValueFactory)}
+	 *             for such inputs
+	 */
+	public ClosableIterator<Statement> apply(Operation operation,
+	        Iterator<? extends Statement> a, Iterator<? extends Statement> b)
+	        throws ModelRuntimeException {
+		return apply(operation, a, b, null);
+	}
+
+	/**
+	 * Like {@link #apply(Operation, Iterator, Iterator)}, blank nodes which are
+	 * not kept in memory are recreated from their internal id.
+	 *
+	 * @param factory to recreate blank nodes beyond the bound, null to fail on
+	 *            such inputs
+	 */
+	public ClosableIterator<Statement> apply(Operation operation,
+	        Iterator<? extends Statement> a, Iterator<? extends Statement> b,
+	        ModelValueFactory factory) throws ModelRuntimeException {
+		Join join = new Join(factory);
+		boolean done = false;
+		try {
+			join.distribute(a, join.left);
+			join.distribute(b, join.right);
+			ClosableIterator<Statement> result = join.result(operation);
+			done = true;
+			return result;
+		} finally {
+			if(!done) {
+				join.delete();
+			}
+		}
+	}
+
+	/**
+	 * Like {@link #apply(Operation, Iterator, Iterator)} on the statements of
+	 * two models. The models are read one after the other, blank nodes beyond
+	 * the bound are recreated by model a.
+	 */
+	public ClosableIterator<Statement> apply(Operation operation, Model a, Model b)
+	        throws ModelRuntimeException {
+		ClosableIterator<Statement> itA = a.iterator();
+		try {
+			ClosableIterator<Statement> itB = b.iterator();
+			try {
+				return apply(operation, itA, itB, a);
+			} finally {
+				itB.close();
+			}
+		} finally {
+			itA.close();
+		}
+	}
+
+	/**
+	 * Adds the result of the operation to target in chunks of
+	 * {@link ModelUtils#COPY_CHUNK_SIZE} statements.
+	 *
+	 * @return the number of statements in the result
+	 */
+	public long applyTo(Operation operation, Model a, Model b, Model target)
+	        throws ModelRuntimeException {
+		ClosableIterator<Statement> result = apply(operation, a, b);
+		try {
+			long count = 0;
+			List<Statement> chunk = new ArrayList<Statement>();
+			while(result.hasNext()) {
+				chunk.add(result.next());
+				count++;
+				if(chunk.size() == ModelUtils.COPY_CHUNK_SIZE) {
+					target.addAll(chunk.iterator());
+					chunk.clear();
+				}
+			}
+			if(!chunk.isEmpty()) {
+				target.addAll(chunk.iterator());
+			}
+			return count;
+		} finally {
+			result.close();
+		}
+	}
+
+	/**
+	 * The sorters of both sides of one operation.
+	 */
+	private class Join {
+
+		final BlankNodeTable blankNodes;
+
+		/**
+		 * one budget each for a, b and the result of every partition, from
+		 * three quarters of the memory budget
+		 */
+		final long budget = Math.max(1, StatementSetAlgebra.this.memoryBudget
+		        / (4 * StatementSetAlgebra.this.partitions));
+
+		Join(ModelValueFactory factory) {
+			this.blankNodes = new BlankNodeTable((int)Math.min(Integer.MAX_VALUE, Math.max(1,
+			        StatementSetAlgebra.this.memoryBudget / (4 * BLANK_NODE_SIZE))), factory);
+		}
+
+		final KeySorter[] left = newSorters();
+
+		final KeySorter[] right = newSorters();
+
+		private KeySorter[] newSorters() {
+			KeySorter[] sorters = new KeySorter[StatementSetAlgebra.this.partitions];
+			for(int i = 0; i < sorters.length; i++) {
+				sorters[i] = new KeySorter(this.budget, StatementSetAlgebra.this.tempDirectory);
+			}
+			return sorters;
+		}
+
+		void distribute(Iterator<? extends Statement> statements, KeySorter[] sorters) {
+			while(statements.hasNext()) {
+				Statement statement = statements.next();
+				int partition = 0;
+				if(sorters.length > 1) {
+					long h = MerkleTree.hash(statement.getSubject());
+					partition = (int)((h ^ (h >>> 32)) & 0x7fffffff) % sorters.length;
+				}
+				sorters[partition].add(encode(statement, this.blankNodes));
+			}
+		}
+
+		ClosableIterator<Statement> result(Operation operation) {
+			if(this.left.length == 1) {
+				return new DecodingIterator(new MergeIterator(operation, this.left[0].iterator(),
+				        this.right[0].iterator()), this.blankNodes);
+			}
+			return new PartitionedResult(operation, this.left, this.right, this.budget,
+			        StatementSetAlgebra.this.tempDirectory, this.blankNodes);
+		}
+
+		void delete() {
+			for(int i = 0; i < this.left.length; i++) {
+				this.left[i].delete();
+				this.right[i].delete();
+			}
+		}
+	}
+
+	// //////////////////////////
+	// keys
+
+	static int compareKeys(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for(int i = 0; i < length; i++) {
+			int c = (a[i] & 0xff) - (b[i] & 0xff);
+			if(c != 0) {
+				return c;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	private static byte[] encode(Statement statement, BlankNodeTable blankNodes) {
+		try {
+			blankNodes.remember(statement.getSubject());
+			blankNodes.remember(statement.getObject());
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			NodeCodec.writeNode(out, statement.getSubject());
+			NodeCodec.writeNode(out, statement.getPredicate());
+			NodeCodec.writeNode(out, statement.getObject());
+			out.flush();
+			return bytes.toByteArray();
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	/**
+	 * Blank nodes are decoded to the instances which were encoded, up to a
+	 * bound. Beyond it, they are recreated from their internal id by the
+	 * factory. Filled while reading the inputs, only read afterwards.
+	 */
+	private static class BlankNodeTable extends HashMap<String,BlankNode> {
+
+		private static final long serialVersionUID = 2990431574734318626L;
+
+		private final int bound;
+
+		private final ModelValueFactory factory;
+
+		BlankNodeTable(int bound, ModelValueFactory factory) {
+			this.bound = bound;
+			this.factory = factory;
+		}
+
+		void remember(Node node) {
+			if(!(node instanceof BlankNode)) {
+				return;
+			}
+			String id = ((BlankNode)node).getInternalID();
+			if(size() < this.bound) {
+				if(!containsKey(id)) {
+					put(id, (BlankNode)node);
+				}
+			} else if(this.factory == null && !containsKey(id)) {
+				throw new ModelRuntimeException("More than " + this.bound
+				        + " blank nodes, a factory is needed to recreate them");
+			}
+		}
+
+		@Override
+		public BlankNode get(Object id) {
+			BlankNode blankNode = super.get(id);
+			if(blankNode == null && this.factory != null) {
+				return this.factory.createBlankNode((String)id);
+			}
+			return blankNode;
+		}
+	}
+
+	private static Statement decode(byte[] key, Map<String,BlankNode> blankNodes) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(key));
+			Resource subject = (Resource)NodeCodec.readNode(in, blankNodes, null);
+			URI predicate = (URI)NodeCodec.readNode(in, blankNodes, null);
+			Node object = NodeCodec.readNode(in, blankNodes, null);
+			return new StatementImpl(null, subject, predicate, object);
+		} catch(IOException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	// //////////////////////////
+	// sorting
+
+	/**
+	 * Collects keys and returns them sorted and without duplicates. Keys beyond
+	 * the budget are sorted and written to a temporary file.
+	 */
+	private static class KeySorter {
+
+		private final long budget;
+
+		private final File tempDirectory;
+
+		private List<byte[]> buffer = new ArrayList<byte[]>();
+
+		private long bufferSize = 0;
+
+		private final List<File> runs = new ArrayList<File>();
+
+		private final List<Integer> runSizes = new ArrayList<Integer>();
+
+		KeySorter(long budget, File tempDirectory) {
+			this.budget = budget;
+			this.tempDirectory = tempDirectory;
+		}
+
+		void add(byte[] key) {
+			this.buffer.add(key);
+			this.bufferSize += key.length + KEY_OVERHEAD;
+			if(this.bufferSize > this.budget) {
+				spill();
+			}
+		}
+
+		private void spill() {
+			Collections.sort(this.buffer, KEY_ORDER);
+			DataOutputStream out = null;
+			try {
+				File run = File.createTempFile("rdf2go-set", ".run", this.tempDirectory);
+				run.deleteOnExit();
+				this.runs.add(run);
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+				int count = 0;
+				byte[] last = null;
+				for(byte[] key : this.buffer) {
+					if(last == null || compareKeys(last, key) != 0) {
+						out.writeInt(key.length);
+						out.write(key);
+						count++;
+						last = key;
+					}
+				}
+				this.runSizes.add(count);
+			} catch(IOException e) {
+				throw new ModelRuntimeException(e);
+			} finally {
+				if(out != null) {
+					try {
+						out.close();
+					} catch(IOException e) {
+						throw new ModelRuntimeException(e);
+					}
+				}
+			}
+			this.buffer = new ArrayList<byte[]>();
+			this.bufferSize = 0;
+		}
+
+		/**
+		 * Can be called once. The iterator deletes the runs when it is closed.
+		 */
+		ClosableIterator<byte[]> iterator() {
+			Collections.sort(this.buffer, KEY_ORDER);
+			List<ClosableIterator<byte[]>> sources = new ArrayList<ClosableIterator<byte[]>>();
+			sources.add(new BufferIterator(this.buffer));
+			this.buffer = null;
+			try {
+				for(int i = 0; i < this.runs.size(); i++) {
+					sources.add(new RunIterator(this.runs.get(i), this.runSizes.get(i)));
+				}
+			} catch(IOException e) {
+				for(ClosableIterator<byte[]> source : sources) {
+					source.close();
+				}
+				delete();
+				throw new ModelRuntimeException(e);
+			}
+			return sources.size() == 1 ? new DistinctIterator(sources.get(0))
+			        : new RunMerger(sources);
+		}
+
+		void delete() {
+			this.buffer = null;
+			for(File run : this.runs) {
+				run.delete();
+			}
+		}
+	}
+
+	private static class BufferIterator implements ClosableIterator<byte[]> {
+
+		private final Iterator<byte[]> keys;
+
+		BufferIterator(List<byte[]> keys) {
+			this.keys = keys.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.keys.hasNext();
+		}
+
+		@Override
+		public byte[] next() {
+			return this.keys.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			// nothing to release
+		}
+	}
+
+	/**
+	 * Reads a sorted run and deletes its file when closed or exhausted.
+	 */
+	private static class RunIterator implements ClosableIterator<byte[]> {
+
+		private final File file;
+
+		private final DataInputStream in;
+
+		private int remaining;
+
+		RunIterator(File file, int size) throws IOException {
+			this.file = file;
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			this.remaining = size;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(this.remaining == 0) {
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public byte[] next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			try {
+				byte[] key = new byte[this.in.readInt()];
+				this.in.readFully(key);
+				this.remaining--;
+				return key;
+			} catch(IOException e) {
+				close();
+				throw new ModelRuntimeException(e);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.remaining = 0;
+			try {
+				this.in.close();
+			} catch(IOException e) {
+				// the file is deleted anyway
+			}
+			this.file.delete();
+		}
+	}
+
+	/**
+	 * Skips duplicates of a sorted stream.
+	 */
+	private static class DistinctIterator implements ClosableIterator<byte[]> {
+
+		private final ClosableIterator<byte[]> keys;
+
+		private byte[] next;
+
+		DistinctIterator(ClosableIterator<byte[]> keys) {
+			this.keys = keys;
+			this.next = keys.hasNext() ? keys.next() : null;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.next != null;
+		}
+
+		@Override
+		public byte[] next() {
+			if(this.next == null) {
+				throw new NoSuchElementException();
+			}
+			byte[] key = this.next;
+			this.next = null;
+			while(this.keys.hasNext()) {
+				byte[] candidate = this.keys.next();
+				if(compareKeys(key, candidate) != 0) {
+					this.next = candidate;
+					break;
+				}
+			}
+			return key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.next = null;
+			this.keys.close();
+		}
+	}
+
+	/**
+	 * k-way merge of sorted runs, without duplicates.
+	 */
+	private static class RunMerger implements ClosableIterator<byte[]> {
+
+		private static class Head {
+
+			byte[] key;
+
+			final ClosableIterator<byte[]> source;
+
+			Head(byte[] key, ClosableIterator<byte[]> source) {
+				this.key = key;
+				this.source = source;
+			}
+		}
+
+		private final List<ClosableIterator<byte[]>> sources;
+
+		private final PriorityQueue<Head> heads;
+
+		private byte[] last = null;
+
+		RunMerger(List<ClosableIterator<byte[]>> sources) {
+			this.sources = sources;
+			this.heads = new PriorityQueue<Head>(sources.size(), new Comparator<Head>() {
+				@Override
+				public int compare(Head a, Head b) {
+					return compareKeys(a.key, b.key);
+				}
+			});
+			for(ClosableIterator<byte[]> source : sources) {
+				if(source.hasNext()) {
+					this.heads.add(new Head(source.next(), source));
+				}
+			}
+			skipDuplicates();
+		}
+
+		private void skipDuplicates() {
+			while(this.last != null && !this.heads.isEmpty()
+			        && compareKeys(this.heads.peek().key, this.last) == 0) {
+				advance();
+			}
+		}
+
+		private byte[] advance() {
+			Head head = this.heads.poll();
+			byte[] key = head.key;
+			if(head.source.hasNext()) {
+				head.key = head.source.next();
+				this.heads.add(head);
+			}
+			return key;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return !this.heads.isEmpty();
+		}
+
+		@Override
+		public byte[] next() {
+			if(this.heads.isEmpty()) {
+				throw new NoSuchElementException();
+			}
+			this.last = advance();
+			skipDuplicates();
+			return this.last;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.heads.clear();
+			for(ClosableIterator<byte[]> source : this.sources) {
+				source.close();
+			}
+		}
+	}
+
+	// //////////////////////////
+	// joining
+
+	/**
+	 * Merge join of two sorted, duplicate-free key streams.
+	 */
+	private static class MergeIterator implements ClosableIterator<byte[]> {
+
+		private final Operation operation;
+
+		private final ClosableIterator<byte[]> a;
+
+		private final ClosableIterator<byte[]> b;
+
+		private byte[] headA;
+
+		private byte[] headB;
+
+		private byte[] next;
+
+		MergeIterator(Operation operation, ClosableIterator<byte[]> a, ClosableIterator<byte[]> b) {
+			this.operation = operation;
+			this.a = a;
+			this.b = b;
+			this.headA = a.hasNext() ? a.next() : null;
+			this.headB = b.hasNext() ? b.next() : null;
+			this.next = fetch();
+		}
+
+		private byte[] fetch() {
+			boolean emitsB = this.operation == Operation.UNION
+			        || this.operation == Operation.SYMMETRIC_DIFFERENCE;
+			while(true) {
+				if(this.headA == null && (this.headB == null || !emitsB)) {
+					return null;
+				}
+				if(this.headB == null && this.operation == Operation.INTERSECTION) {
+					return null;
+				}
+				int c;
+				if(this.headA == null) {
+					c = 1;
+				} else if(this.headB == null) {
+					c = -1;
+				} else {
+					c = compareKeys(this.headA, this.headB);
+				}
+				byte[] key;
+				boolean emit;
+				if(c < 0) {
+					// only in a
+					key = this.headA;
+					this.headA = this.a.hasNext() ? this.a.next() : null;
+					emit = this.operation != Operation.INTERSECTION;
+				} else if(c > 0) {
+					// only in b
+					key = this.headB;
+					this.headB = this.b.hasNext() ? this.b.next() : null;
+					emit = emitsB;
+				} else {
+					// in both
+					key = this.headA;
+					this.headA = this.a.hasNext() ? this.a.next() : null;
+					this.headB = this.b.hasNext() ? this.b.next() : null;
+					emit = this.operation == Operation.UNION
+					        || this.operation == Operation.INTERSECTION;
+				}
+				if(emit) {
+					return key;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(this.next == null) {
+				close();
+				return false;
+			}
+			return true;
+		}
+
+		@Override
+		public byte[] next() {
+			if(this.next == null) {
+				throw new NoSuchElementException();
+			}
+			byte[] key = this.next;
+			this.next = fetch();
+			return key;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.headA = null;
+			this.headB = null;
+			this.next = null;
+			this.a.close();
+			this.b.close();
+		}
+	}
+
+	private static class DecodingIterator implements ClosableIterator<Statement> {
+
+		private final ClosableIterator<byte[]> keys;
+
+		private final Map<String,BlankNode> blankNodes;
+
+		DecodingIterator(ClosableIterator<byte[]> keys, Map<String,BlankNode> blankNodes) {
+			this.keys = keys;
+			this.blankNodes = blankNodes;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.keys.hasNext();
+		}
+
+		@Override
+		public Statement next() {
+			return decode(this.keys.next(), this.blankNodes);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void close() {
+			this.keys.close();
+		}
+	}
+
+	/**
+	 * Joins the partitions in parallel, each into its own sorter, and returns
+	 * their results one partition after the other.
+	 */
+	private static class PartitionedResult implements ClosableIterator<Statement> {
+
+		private final List<Future<KeySorter>> partitions = new ArrayList<Future<KeySorter>>();
+
+		/** results of finished partitions, guarded by this */
+		private final KeySorter[] finished;
+
+		private final Map<String,BlankNode> blankNodes;
+
+		private int current = -1;
+
+		private ClosableIterator<byte[]> keys = null;
+
+		private volatile boolean closed = false;
+
+		PartitionedResult(final Operation operation, final KeySorter[] left,
+		        final KeySorter[] right, final long budget, final File tempDirectory,
+		        Map<String,BlankNode> blankNodes) {
+			this.blankNodes = blankNodes;
+			this.finished = new KeySorter[left.length];
+			int threads = Math.min(left.length, Runtime.getRuntime().availableProcessors());
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				for(int i = 0; i < left.length; i++) {
+					final int partition = i;
+					this.partitions.add(executor.submit(new Callable<KeySorter>() {
+						@Override
+						public KeySorter call() {
+							return join(partition, operation, left[partition], right[partition],
+							        new KeySorter(budget, tempDirectory));
+						}
+					}));
+				}
+			} finally {
+				// lets the submitted partitions finish
+				executor.shutdown();
+			}
+		}
+
+		KeySorter join(int partition, Operation operation, KeySorter left, KeySorter right,
+		        KeySorter result) {
+			MergeIterator merged = null;
+			try {
+				merged = new MergeIterator(operation, left.iterator(), right.iterator());
+				while(!this.closed && merged.hasNext()) {
+					result.add(merged.next());
+				}
+			} catch(RuntimeException e) {
+				result.delete();
+				throw e;
+			} finally {
+				if(merged != null) {
+					merged.close();
+				}
+				left.delete();
+				right.delete();
+			}
+			synchronized(this) {
+				if(this.closed) {
+					result.delete();
+				} else {
+					this.finished[partition] = result;
+				}
+			}
+			return result;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while(this.keys == null || !this.keys.hasNext()) {
+				if(this.closed || this.current + 1 >= this.partitions.size()) {
+					return false;
+				}
+				this.current++;
+				KeySorter result = get(this.partitions.get(this.current));
+				synchronized(this) {
+					this.finished[this.current] = null;
+				}
+				this.keys = result.iterator();
+			}
+			return true;
+		}
+
+		private KeySorter get(Future<KeySorter> partition) {
+			try {
+				return partition.get();
+			} catch(InterruptedException e) {
+				close();
+				Thread.currentThread().interrupt();
+				throw new ModelRuntimeException(e);
+			} catch(ExecutionException e) {
+				close();
+				throw new ModelRuntimeException(e.getCause());
+			}
+		}
+
+		@Override
+		public Statement next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return decode(this.keys.next(), this.blankNodes);
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Running partitions stop early and delete their files themselves.
+		 */
+		@Override
+		public void close() {
+			synchronized(this) {
+				if(this.closed) {
+					return;
+				}
+				this.closed = true;
+				for(int i = 0; i < this.finished.length; i++) {
+					if(this.finished[i] != null) {
+						this.finished[i].delete();
+						this.finished[i] = null;
+					}
+				}
+			}
+			if(this.keys != null) {
+				this.keys.close();
+			}
+		}
+	}
+
+}
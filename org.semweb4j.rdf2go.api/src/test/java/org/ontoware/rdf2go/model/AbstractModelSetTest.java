@@ -15,6 +15,7 @@
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -22,9 +23,14 @@
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -35,9 +41,22 @@
 import org.ontoware.rdf2go.ModelFactory;
 import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.impl.DelegatingModelSet;
 import org.ontoware.rdf2go.model.impl.DiffImpl;
+import org.ontoware.rdf2go.model.impl.FingerprintingModelSet;
+import org.ontoware.rdf2go.model.impl.HotReplicaModelSet;
+import org.ontoware.rdf2go.model.impl.JournalingModel;
+import org.ontoware.rdf2go.model.impl.JournalingModelSet;
+import org.ontoware.rdf2go.model.impl.ModelStatisticsImpl;
+import org.ontoware.rdf2go.model.impl.NotifyingModelSetLayer;
+import org.ontoware.rdf2go.model.impl.PagingModelSet;
 import org.ontoware.rdf2go.model.impl.QuadPatternImpl;
+import org.ontoware.rdf2go.model.impl.ShardedModelSet;
 import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.impl.StatisticsModelSet;
+import org.ontoware.rdf2go.model.impl.TriplePatternImpl;
+import org.ontoware.rdf2go.model.impl.VersionedModelSet;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
@@ -47,6 +66,7 @@
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdf2go.testdata.TestData;
+import org.ontoware.rdf2go.util.ChangeJournal;
 import org.ontoware.rdf2go.util.Iterators;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.ontoware.rdf2go.vocabulary.RDFS;
@@ -1196,4 +1216,719 @@ public void testUpdate() {
 		
 		this.modelset.update(diff);
 	}
+	
+	@Test
+	public void testSnapshot() throws Exception {
+		this.modelset.addStatement(graphuri1, a, b, c);
+		this.modelset.addStatement(null, b, c, a);
+		ModelSet snapshot = this.modelset.snapshot();
+		try {
+			assertTrue(snapshot.isOpen());
+			this.modelset.addStatement(graphuri2, a, b, c);
+			this.modelset.removeStatement(graphuri1, a, b, c);
+			assertEquals(2, snapshot.size());
+			assertTrue(snapshot.containsStatements(graphuri1, a, b, c));
+			assertFalse(snapshot.containsStatements(graphuri2, a, b, c));
+			// iterating includes the default graph
+			assertEquals(2, asArrayListAndClose(snapshot.iterator()).size());
+			
+			Model model = snapshot.getModel(graphuri1);
+			assertEquals(1, model.size());
+			try {
+				model.addStatement(a, b, "no");
+				fail("a model of a snapshot must be read-only");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			try {
+				snapshot.addStatement(graphuri2, a, c, b);
+				fail("a snapshot must be read-only");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+		} finally {
+			snapshot.close();
+		}
+		assertEquals(2, this.modelset.size());
+		assertTrue(this.modelset.containsStatements(graphuri2, a, b, c));
+	}
+	
+	@Test
+	public void testTransaction() throws Exception {
+		this.modelset.addStatement(graphuri1, a, b, c);
+		Transaction tx = this.modelset.begin();
+		try {
+			this.modelset.addStatement(graphuri2, a, b, c);
+			this.modelset.addStatement(null, a, b, c);
+			this.modelset.removeStatement(graphuri1, a, b, c);
+			assertTrue(this.modelset.containsStatements(graphuri2, a, b, c));
+			assertFalse(this.modelset.containsStatements(graphuri1, a, b, c));
+			tx.rollback();
+		} finally {
+			tx.close();
+		}
+		assertFalse(tx.isActive());
+		assertEquals(1, this.modelset.size());
+		assertTrue(this.modelset.containsStatements(graphuri1, a, b, c));
+		
+		tx = this.modelset.begin(IsolationLevel.SERIALIZABLE);
+		try {
+			this.modelset.addStatement(graphuri2, a, b, c);
+			this.modelset.removeStatements(graphuri1, Variable.ANY, Variable.ANY, Variable.ANY);
+			tx.commit();
+		} finally {
+			tx.close();
+		}
+		assertEquals(1, this.modelset.size());
+		assertTrue(this.modelset.containsStatements(graphuri2, a, b, c));
+		
+		// closing an active transaction rolls back
+		tx = this.modelset.begin();
+		this.modelset.removeAll();
+		tx.close();
+		assertEquals(1, this.modelset.size());
+		
+		tx = this.modelset.begin();
+		try {
+			this.modelset.begin();
+			fail("transactions must not be nested");
+		} catch(ModelRuntimeException e) {
+			// expected
+		} finally {
+			tx.close();
+		}
+	}
+	
+	@Test
+	public void testStatistics() {
+		URI person = new URIImpl("urn:test:Person");
+		StatisticsModelSet statisticsModelSet = new StatisticsModelSet(this.modelset);
+		statisticsModelSet.addStatement(graphuri1, a, RDF.type, person);
+		statisticsModelSet.addStatement(graphuri1, b, RDF.type, person);
+		statisticsModelSet.addStatement(graphuri2, a, RDF.type, person);
+		statisticsModelSet.addStatement(null, a, b, c);
+		// no changes
+		statisticsModelSet.addStatement(graphuri1, a, RDF.type, person);
+		statisticsModelSet.removeStatement(graphuri2, c, b, a);
+		
+		ModelStatistics statistics = statisticsModelSet.getStatistics();
+		assertEquals(4, statisticsModelSet.size());
+		assertEquals(2, statistics.getContextSize(graphuri1));
+		assertEquals(1, statistics.getContextSize(graphuri2));
+		assertEquals(1, statistics.getContextSize(null));
+		assertEquals(3, statistics.getPredicateCount(RDF.type));
+		assertEquals(3, statistics.getInstanceCount(person));
+		assertEquals(2, statistics.getDistinctSubjects(RDF.type));
+		assertEquals(1, statistics.estimate(new TriplePatternImpl(Variable.ANY, b, Variable.ANY)));
+		assertEquals(2, statisticsModelSet.countStatements(new QuadPatternImpl(graphuri1,
+		        Variable.ANY, Variable.ANY, Variable.ANY)));
+		
+		// changes through a model of the set
+		Model model = statisticsModelSet.getModel(graphuri2);
+		model.addStatement(c, b, a);
+		model.removeStatement(a, RDF.type, person);
+		model.close();
+		assertEquals(1, statistics.getContextSize(graphuri2));
+		assertEquals(2, statistics.getInstanceCount(person));
+		assertEquals(2, statistics.getPredicateCount(b));
+		
+		statisticsModelSet.removeModel(graphuri1);
+		assertEquals(2, statisticsModelSet.size());
+		assertEquals(0, statistics.getContextSize(graphuri1));
+		assertEquals(this.modelset.size(), statisticsModelSet.size());
+		assertEquals(2, new ModelStatisticsImpl(this.modelset).size());
+		
+		statisticsModelSet.removeAll();
+		assertTrue(statisticsModelSet.isEmpty());
+		assertEquals(0, statistics.getPredicateCount(b));
+	}
+	
+	@Test
+	public void testShardedModelSet() {
+		ModelSet shard1 = getModelFactory().createModelSet();
+		ModelSet shard2 = getModelFactory().createModelSet();
+		ShardedModelSet sharded = new ShardedModelSet(shard1, shard2);
+		sharded.open();
+		try {
+			List<Statement> statements = new ArrayList<Statement>();
+			for(int i = 0; i < 20; i++) {
+				URI context = new URIImpl("urn:test:graph" + i);
+				statements.add(new StatementImpl(context, a, b, new URIImpl("urn:test:o" + i)));
+				statements.add(new StatementImpl(context, c, b, a));
+			}
+			sharded.addAll(statements.iterator());
+			sharded.addStatement(null, a, b, c);
+			assertEquals(41, sharded.size());
+			assertFalse(shard1.isEmpty());
+			assertFalse(shard2.isEmpty());
+			assertEquals(20, asArrayListAndClose(sharded.getModelURIs()).size());
+			assertEquals(2, sharded.countStatements(new QuadPatternImpl(new URIImpl(
+			        "urn:test:graph7"), Variable.ANY, Variable.ANY, Variable.ANY)));
+			assertEquals(20, sharded.countStatements(new QuadPatternImpl(Variable.ANY, c, b, a)));
+			assertEquals(21, asArrayListAndClose(sharded.findStatements(Variable.ANY, a, b,
+			        Variable.ANY)).size());
+			assertTrue(sharded.containsStatements(Variable.ANY, a, b, new URIImpl("urn:test:o3")));
+			
+			// contexts move to a new shard
+			ModelSet shard3 = getModelFactory().createModelSet();
+			int moved = sharded.addShard(shard3);
+			assertTrue(moved > 0);
+			assertEquals(41, sharded.size());
+			assertEquals(2 * moved, shard3.size());
+			for(int i = 0; i < 20; i++) {
+				URI context = new URIImpl("urn:test:graph" + i);
+				assertTrue(sharded.containsModel(context));
+				assertEquals(sharded.getShardIndex(context) == 2, shard3.containsModel(context));
+			}
+			
+			sharded.removeStatements(Variable.ANY, c, Variable.ANY, Variable.ANY);
+			assertEquals(21, sharded.size());
+			sharded.removeModel(new URIImpl("urn:test:graph7"));
+			assertEquals(20, sharded.size());
+			assertTrue(sharded.containsStatements(null, a, b, c));
+		} finally {
+			sharded.close();
+		}
+		assertFalse(shard1.isOpen());
+	}
+	
+	@Test
+	public void testShardedModelSetFailedRebalance() {
+		Map<String,ModelSet> shards = new LinkedHashMap<String,ModelSet>();
+		shards.put("east", getModelFactory().createModelSet());
+		shards.put("west", getModelFactory().createModelSet());
+		ShardedModelSet sharded = new ShardedModelSet(shards);
+		// contexts are routed by the ids of the shards, not by their order
+		Map<String,ModelSet> reordered = new LinkedHashMap<String,ModelSet>();
+		reordered.put("west", shards.get("west"));
+		reordered.put("east", shards.get("east"));
+		ShardedModelSet same = new ShardedModelSet(reordered);
+		for(int i = 0; i < 20; i++) {
+			URI context = new URIImpl("urn:test:graph" + i);
+			assertEquals(1 - sharded.getShardIndex(context), same.getShardIndex(context));
+		}
+		
+		sharded.open();
+		try {
+			for(int i = 0; i < 20; i++) {
+				sharded.addStatement(new URIImpl("urn:test:graph" + i), a, b, c);
+			}
+			// the second context copied to the new shard fails
+			final ModelSet target = getModelFactory().createModelSet();
+			ModelSet failing = new DelegatingModelSet(target) {
+				
+				private static final long serialVersionUID = 1L;
+				
+				private int copies = 0;
+				
+				@Override
+				public boolean addModel(Model model) {
+					if(++this.copies == 2) {
+						target.addStatement(model.getContextURI(), a, b, c);
+						throw new ModelRuntimeException("copy failed");
+					}
+					return super.addModel(model);
+				}
+			};
+			try {
+				sharded.addShard("north", failing);
+				fail("the copy failed");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertEquals(2, sharded.getShards().size());
+			assertTrue(target.isEmpty());
+			target.close();
+			assertEquals(20, sharded.size());
+			for(int i = 0; i < 20; i++) {
+				assertTrue(sharded.containsStatements(new URIImpl("urn:test:graph" + i), a, b, c));
+			}
+			
+			int moved = sharded.addShard("north", getModelFactory().createModelSet());
+			assertTrue(moved > 1);
+			assertEquals(20, sharded.size());
+			assertEquals(moved, sharded.getShards().get(2).size());
+		} finally {
+			sharded.close();
+		}
+	}
+	
+	/** statements with their context, which statements do not compare */
+	private static Set<String> quads(ModelSet modelSet) {
+		Set<String> result = new HashSet<String>();
+		for(Statement statement : asArrayListAndClose(modelSet.iterator())) {
+			result.add(statement.getContext() + " " + statement.getSubject() + " "
+			        + statement.getPredicate() + " " + statement.getObject());
+		}
+		return result;
+	}
+	
+	@Test
+	public void testPagingModelSet() throws IOException {
+		File directory = File.createTempFile("paging", "");
+		directory.delete();
+		URI[] graphs = new URI[4];
+		for(int i = 0; i < graphs.length; i++) {
+			graphs[i] = new URIImpl("urn:test:graph" + i);
+		}
+		// room for two of the first graphs
+		long budget = 2 * (PagingModelSet.estimateSize(new StatementImpl(null, a, b, new URIImpl(
+		        "urn:test:o0"))) + PagingModelSet.estimateSize(new StatementImpl(null, c, b, a)));
+		PagingModelSet paging = new PagingModelSet(getModelFactory().createModelSet(), directory,
+		        budget, PagingModelSet.EvictionPolicy.LRU);
+		paging.open();
+		List<Statement> statements = new ArrayList<Statement>();
+		for(int i = 0; i < 3; i++) {
+			statements.add(new StatementImpl(graphs[i], a, b, new URIImpl("urn:test:o" + i)));
+			statements.add(new StatementImpl(graphs[i], c, b, a));
+		}
+		paging.addAll(statements.iterator());
+		paging.addStatement(null, a, b, c);
+		
+		// the least recently used graph is on disk, but still visible
+		assertTrue(paging.isPagedOut(graphs[0]));
+		assertEquals(budget, paging.getResidentSize());
+		assertEquals(7, paging.size());
+		assertTrue(paging.containsModel(graphs[0]));
+		assertEquals(3, asArrayListAndClose(paging.getModelURIs()).size());
+		assertEquals(3, paging.countStatements(new QuadPatternImpl(Variable.ANY, c, b, a)));
+		assertEquals(4, asArrayListAndClose(paging.findStatements(Variable.ANY, a, b,
+		        Variable.ANY)).size());
+		
+		// accessing a context pages it in and another one out
+		assertEquals(2, paging.countStatements(new QuadPatternImpl(graphs[0], Variable.ANY,
+		        Variable.ANY, Variable.ANY)));
+		assertFalse(paging.isPagedOut(graphs[0]));
+		assertTrue(paging.isPagedOut(graphs[1]));
+		Model model = paging.getModel(graphs[1]);
+		assertEquals(2, model.size());
+		model.close();
+		assertTrue(paging.isPagedOut(graphs[2]));
+		assertTrue(paging.containsStatements(graphs[1], a, b, Variable.ANY));
+		assertEquals(2, paging.getPageIns());
+		assertEquals(3, paging.getPageOuts());
+		assertEquals(1.0 / 3, paging.getHitRate(), 0.001);
+		
+		assertTrue(paging.removeModel(graphs[2]));
+		assertFalse(paging.containsModel(graphs[2]));
+		assertEquals(5, paging.size());
+		
+		// paged out and resident graphs survive closing
+		paging.addStatement(graphs[3], a, b, c);
+		paging.addStatement(graphs[3], c, b, a);
+		assertTrue(paging.isPagedOut(graphs[0]));
+		assertFalse(paging.isPagedOut(graphs[3]));
+		Set<String> before = quads(paging);
+		paging.close();
+		paging = new PagingModelSet(getModelFactory().createModelSet(), directory, budget,
+		        PagingModelSet.EvictionPolicy.LRU);
+		paging.open();
+		try {
+			assertEquals(before.size(), paging.size());
+			assertEquals(before, quads(paging));
+			
+			// queries page in only the graphs they name
+			assertTrue(paging.isPagedOut(graphs[0]));
+			assertTrue(paging.sparqlAsk("ASK FROM NAMED <" + graphs[0] + "> { GRAPH <"
+			        + graphs[0] + "> { ?s ?p ?o } }"));
+			assertFalse(paging.isPagedOut(graphs[0]));
+			assertTrue(paging.isPagedOut(graphs[1]));
+			assertEquals(2, asArrayListAndClose(paging.sparqlSelect(
+			        "PREFIX t: <urn:test:> SELECT ?s FROM NAMED t:graph1 "
+			                + "WHERE { GRAPH t:graph1 { ?s ?p ?o } }").iterator()).size());
+			assertFalse(paging.isPagedOut(graphs[1]));
+			assertTrue(paging.isPagedOut(graphs[3]));
+			assertEquals(2, paging.getPageIns());
+			try {
+				paging.sparqlSelect("SELECT ?g WHERE { GRAPH ?g { ?s ?p <" + a + "> } }");
+				fail("a query without a dataset could miss the paged out graphs");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			
+			// writing streams the graphs one by one
+			StringWriter nquads = new StringWriter();
+			paging.writeTo(nquads, Syntax.Nquads);
+			assertTrue(paging.isPagedOut(graphs[3]));
+			ModelSet written = getModelFactory().createModelSet();
+			written.open();
+			written.readFrom(new StringReader(nquads.toString()), Syntax.Nquads);
+			assertEquals(before, quads(written));
+			written.close();
+			try {
+				paging.writeTo(new StringWriter());
+				fail("TriX cannot be written graph by graph");
+			} catch(SyntaxNotSupportedException e) {
+				// expected
+			}
+			
+			// a snapshot pages in from copies of the files
+			ModelSet snapshot = paging.snapshot();
+			try {
+				paging.addStatement(graphs[3], b, b, b);
+				assertEquals(before, quads(snapshot));
+			} finally {
+				snapshot.close();
+			}
+			paging.removeStatement(graphs[3], b, b, b);
+			
+			assertTrue(paging.containsStatements(graphs[0], c, b, a));
+			assertTrue(paging.containsStatements(graphs[3], a, b, c));
+			assertTrue(paging.getDefaultModel().contains(a, b, c));
+			paging.removeAll();
+			assertTrue(paging.isEmpty());
+			assertEquals(0, directory.list().length);
+		} finally {
+			paging.close();
+			directory.delete();
+		}
+	}
+	
+	@Test
+	public void testNotifyingModelSetAddModel() {
+		NotifyingModelSetLayer notifying = new NotifyingModelSetLayer(this.modelset);
+		final List<Statement> first = new ArrayList<Statement>();
+		final List<Statement> any = new ArrayList<Statement>();
+		notifying.addModelSetChangedListener(new AbstractModelChangeListener() {
+
+			@Override
+			public void addedStatement(Statement statement) {
+				first.add(statement);
+			}
+		}, new QuadPatternImpl(graphuri1, Variable.ANY, Variable.ANY, Variable.ANY));
+		notifying.addModelSetChangedListener(new AbstractModelChangeListener() {
+
+			@Override
+			public void addedStatement(Statement statement) {
+				any.add(statement);
+			}
+		}, new QuadPatternImpl(Variable.ANY, a, Variable.ANY, Variable.ANY));
+
+		Model model = getModelFactory().createModel(graphuri2);
+		model.open();
+		model.addStatement(a, b, c);
+		model.addStatement(b, b, c);
+		// only listeners for the context of the model are notified
+		notifying.addModel(model);
+		model.close();
+		assertTrue(first.isEmpty());
+		assertEquals(1, any.size());
+
+		model = getModelFactory().createModel(graphuri1);
+		model.open();
+		model.addStatement(a, b, c);
+		notifying.addModel(model);
+		model.close();
+		assertEquals(1, first.size());
+		assertEquals(2, any.size());
+		assertEquals(3, this.modelset.size());
+	}
+
+	@Test
+	public void testHotReplicaModelSet() {
+		NotifyingModelSetLayer store = new NotifyingModelSetLayer(getModelFactory()
+		        .createModelSet());
+		store.open();
+		store.addStatement(graphuri1, a, b, c);
+		store.addStatement(graphuri2, a, b, c);
+		ModelSet replica = getModelFactory().createModelSet();
+		HotReplicaModelSet cached = new HotReplicaModelSet(store, replica, graphuri1);
+		cached.open();
+		try {
+			assertTrue(replica.containsStatements(graphuri1, a, b, c));
+			assertFalse(replica.containsModel(graphuri2));
+			assertTrue(cached.containsStatements(graphuri1, a, b, c));
+			assertTrue(cached.containsStatements(graphuri2, a, b, c));
+			assertEquals(1, cached.getReplicaReads());
+			assertEquals(1, cached.getStoreReads());
+			
+			// writes go to both
+			cached.addStatement(graphuri1, c, b, a);
+			assertTrue(store.containsStatements(graphuri1, c, b, a));
+			assertTrue(replica.containsStatements(graphuri1, c, b, a));
+			Model model = cached.getModel(graphuri1);
+			model.addStatement(b, b, b);
+			assertEquals(3, model.size());
+			model.close();
+			assertTrue(replica.containsStatements(graphuri1, b, b, b));
+			assertTrue(store.containsStatements(graphuri1, b, b, b));
+			
+			// writes of others are notified by the store, and applied once it
+			// shows them
+			store.removeStatement(graphuri1, b, b, b);
+			assertFalse(cached.containsStatements(graphuri1, b, b, b));
+			assertFalse(replica.containsStatements(graphuri1, b, b, b));
+			
+			// frequently read contexts are promoted
+			cached.setAutoPromotion(2, 1, 100);
+			cached.containsStatements(graphuri2, a, b, c);
+			assertFalse(cached.isHot(graphuri2));
+			assertEquals(1, cached.countStatements(new QuadPatternImpl(graphuri2, Variable.ANY,
+			        Variable.ANY, Variable.ANY)));
+			assertTrue(cached.isHot(graphuri2));
+			assertTrue(replica.containsStatements(graphuri2, a, b, c));
+			
+			cached.removeStatements(Variable.ANY, a, Variable.ANY, Variable.ANY);
+			assertFalse(replica.containsStatements(Variable.ANY, a, Variable.ANY, Variable.ANY));
+			assertEquals(1, store.size());
+			assertEquals(1, replica.size());
+		} finally {
+			cached.close();
+		}
+		assertFalse(replica.isOpen());
+	}
+	
+	@Test
+	public void testHotReplicaModelSetFailedWrite() {
+		NotifyingModelSetLayer store = new NotifyingModelSetLayer(new DelegatingModelSet(
+		        getModelFactory().createModelSet()) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void addStatement(Statement statement) throws ModelRuntimeException {
+				if(statement.getSubject().equals(c)) {
+					throw new ModelRuntimeException("rejected");
+				}
+				super.addStatement(statement);
+			}
+		});
+		store.open();
+		store.addStatement(graphuri1, a, b, c);
+		ModelSet replica = getModelFactory().createModelSet();
+		HotReplicaModelSet cached = new HotReplicaModelSet(store, replica, graphuri1);
+		cached.open();
+		try {
+			// a failed write does not reach the replica
+			try {
+				cached.addStatement(graphuri1, c, b, a);
+				fail("the store rejects subject c");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertFalse(replica.containsStatements(graphuri1, c, b, a));
+			
+			// nor does a failed write of others, which the store notified before
+			try {
+				store.addStatement(graphuri1, c, c, c);
+				fail("the store rejects subject c");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertFalse(replica.containsStatements(graphuri1, c, c, c));
+			long storeReads = cached.getStoreReads();
+			assertFalse(cached.containsStatements(graphuri1, c, c, c));
+			assertEquals(storeReads + 1, cached.getStoreReads());
+			store.addStatement(graphuri1, b, b, b);
+			assertTrue(cached.containsStatements(graphuri1, b, b, b));
+			assertTrue(replica.containsStatements(graphuri1, b, b, b));
+			cached.reload();
+			long replicaReads = cached.getReplicaReads();
+			assertFalse(cached.containsStatements(graphuri1, c, c, c));
+			assertEquals(replicaReads + 1, cached.getReplicaReads());
+			
+			// the statements read from the replica are a copy
+			ClosableIterator<Statement> it = cached.findStatements(graphuri1, Variable.ANY,
+			        Variable.ANY, Variable.ANY);
+			cached.addStatement(graphuri1, b, c, b);
+			assertEquals(2, asArrayListAndClose(it).size());
+			assertEquals(3, cached.countStatements(new QuadPatternImpl(graphuri1, Variable.ANY,
+			        Variable.ANY, Variable.ANY)));
+		} finally {
+			cached.close();
+		}
+	}
+	
+	@Test
+	public void testHotReplicaModelSetTransaction() {
+		ModelSet replica = getModelFactory().createModelSet();
+		HotReplicaModelSet cached = new HotReplicaModelSet(this.modelset, replica, graphuri1);
+		cached.open();
+		try {
+			// a rollback leaves the replica as it was
+			Transaction tx = cached.begin();
+			try {
+				cached.addStatement(graphuri1, a, b, c);
+				assertFalse(replica.containsStatements(graphuri1, a, b, c));
+				assertTrue(cached.containsStatements(graphuri1, a, b, c));
+				tx.rollback();
+			} finally {
+				tx.close();
+			}
+			assertFalse(replica.containsStatements(graphuri1, a, b, c));
+			assertFalse(cached.containsStatements(graphuri1, a, b, c));
+			
+			// a commit applies the changes
+			tx = cached.begin();
+			try {
+				cached.addStatement(graphuri1, a, b, c);
+				cached.addStatement(graphuri1, c, b, a);
+				cached.removeStatement(graphuri1, c, b, a);
+				cached.addStatement(graphuri2, a, b, c);
+				tx.commit();
+			} finally {
+				tx.close();
+			}
+			assertTrue(replica.containsStatements(graphuri1, a, b, c));
+			assertFalse(replica.containsStatements(graphuri1, c, b, a));
+			assertFalse(replica.containsModel(graphuri2));
+			
+			// closing an active transaction rolls back
+			tx = cached.begin();
+			cached.removeStatements(Variable.ANY, Variable.ANY, Variable.ANY, Variable.ANY);
+			tx.close();
+			assertTrue(replica.containsStatements(graphuri1, a, b, c));
+			assertTrue(cached.containsStatements(graphuri1, a, b, c));
+			assertEquals(2, this.modelset.size());
+		} finally {
+			cached.close();
+		}
+	}
+	
+	@Test
+	public void testVersionedModelSet() {
+		VersionedModelSet versioned = new VersionedModelSet(this.modelset, 10);
+		versioned.open();
+		versioned.addStatement(graphuri1, a, b, c);
+		versioned.addStatement(graphuri2, a, b, c);
+		versioned.addStatement(null, c, b, a);
+		Model model = versioned.getModel(graphuri1);
+		model.addStatement(b, b, b);
+		model.close();
+		assertEquals(4, versioned.getRevision());
+		versioned.removeModel(graphuri1);
+		assertEquals(5, versioned.getRevision());
+		
+		ModelSet before = versioned.asOf(4);
+		assertEquals(4, before.size());
+		assertTrue(before.containsStatements(graphuri1, b, b, b));
+		assertTrue(before.containsStatements(graphuri2, a, b, c));
+		before.close();
+		ModelSet after = versioned.asOf(5);
+		assertEquals(2, after.size());
+		assertFalse(after.containsModel(graphuri1));
+		after.close();
+		ModelSet first = versioned.asOf(1);
+		assertEquals(1, first.size());
+		first.close();
+	}
+	
+	/**
+	 * @return a new model set with all changes of the journal applied
+	 */
+	private ModelSet replay(ChangeJournal journal) {
+		ModelSet replayed = getModelFactory().createModelSet();
+		replayed.open();
+		ClosableIterator<ChangeJournal.Entry> it = journal.read(1, replayed);
+		try {
+			while(it.hasNext()) {
+				replayed.update(it.next().getDiff());
+			}
+		} finally {
+			it.close();
+		}
+		return replayed;
+	}
+	
+	@Test
+	public void testJournalingModelSet() throws IOException {
+		File directory = File.createTempFile("journal", "");
+		directory.delete();
+		ChangeJournal journal = new ChangeJournal(directory, 1024 * 1024, false);
+		JournalingModelSet journaling = new JournalingModelSet(this.modelset, journal);
+		try {
+			journaling.addStatement(graphuri1, a, b, c);
+			journaling.addStatement(null, c, b, a);
+			Model model = journaling.getModel(graphuri2);
+			model.addStatement(b, b, b);
+			model.close();
+			assertEquals(3, journal.getLastSequenceNumber());
+			journaling.removeModel(graphuri1);
+			assertEquals(4, journal.getLastSequenceNumber());
+			List<Statement> statements = new ArrayList<Statement>();
+			for(int i = 0; i <= JournalingModel.REMOVE_BATCH_SIZE; i++) {
+				statements.add(new StatementImpl(graphuri1, a, b, new URIImpl("urn:test:o" + i)));
+			}
+			journaling.addAll(statements.iterator());
+			assertEquals(5, journal.getLastSequenceNumber());
+			
+			// the journal reproduces the model set
+			ModelSet replayed = replay(journal);
+			assertEquals(quads(this.modelset), quads(replayed));
+			replayed.close();
+			
+			// one batch for the default model, two for graphuri1 and one for
+			// graphuri2
+			journaling.removeAll();
+			assertTrue(journaling.isEmpty());
+			assertEquals(9, journal.getLastSequenceNumber());
+			replayed = replay(journal);
+			assertTrue(replayed.isEmpty());
+			replayed.close();
+		} finally {
+			journal.close();
+			for(File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	public void testFingerprintingModelSetBulkWrites() {
+		FingerprintingModelSet fingerprinting = new FingerprintingModelSet(this.modelset, 4);
+		Statement abc1 = new StatementImpl(graphuri1, a, b, c);
+		Statement bbc1 = new StatementImpl(graphuri1, b, b, c);
+		Statement abc2 = new StatementImpl(graphuri2, a, b, c);
+		fingerprinting.addAll(Arrays.asList(abc1, bbc1, abc2, abc1).iterator());
+		assertEquals(3, this.modelset.size());
+		assertEquals(new FingerprintingModelSet(this.modelset, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+
+		Statement cbc2 = new StatementImpl(graphuri2, c, b, c);
+		fingerprinting.update(new DiffImpl(Arrays.asList(cbc2, bbc1).iterator(), Arrays.asList(
+		        abc2, bbc1).iterator()));
+		assertFalse(this.modelset.contains(abc2));
+		assertTrue(this.modelset.contains(bbc1));
+		assertTrue(this.modelset.contains(cbc2));
+		assertEquals(new FingerprintingModelSet(this.modelset, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+
+		// changes through the models and pattern removals are seen
+		Model model = fingerprinting.getModel(graphuri2);
+		model.addStatement(b, b, b);
+		model.removeAll(Arrays.asList(cbc2).iterator());
+		fingerprinting.removeStatements(graphuri1, a, Variable.ANY, Variable.ANY);
+		assertEquals(2, this.modelset.size());
+		assertEquals(new FingerprintingModelSet(this.modelset, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+		assertEquals(1, fingerprinting.getMerkleTree(graphuri1).size());
+		assertEquals(1, fingerprinting.getMerkleTree(graphuri2).size());
+	}
+
+	@Test
+	public void testShardedModelSetAddShardWhileClosed() {
+		ModelSet shard1 = getModelFactory().createModelSet();
+		shard1.open();
+		for(int i = 0; i < 20; i++) {
+			shard1.addStatement(new URIImpl("urn:test:graph" + i), a, b, c);
+		}
+		ShardedModelSet sharded = new ShardedModelSet(shard1);
+		ModelSet shard2 = getModelFactory().createModelSet();
+		assertEquals(0, sharded.addShard(shard2));
+		sharded.open();
+		try {
+			assertEquals(20, sharded.size());
+			assertFalse(shard2.isEmpty());
+			for(int i = 0; i < 20; i++) {
+				URI context = new URIImpl("urn:test:graph" + i);
+				boolean inShard2 = sharded.getShardIndex(context) == 1;
+				assertEquals(inShard2, shard2.containsModel(context));
+				assertEquals(!inShard2, shard1.containsModel(context));
+				assertTrue(sharded.containsStatements(context, a, b, c));
+			}
+		} finally {
+			sharded.close();
+		}
+	}
 }
@@ -8,6 +8,7 @@
  */
 package org.ontoware.rdf2go.model;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -24,6 +25,11 @@
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -39,19 +45,37 @@
 import org.ontoware.rdf2go.exception.MalformedQueryException;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.ReasoningNotSupportedException;
+import org.ontoware.rdf2go.model.impl.AbstractTransaction;
+import org.ontoware.rdf2go.model.impl.DelegatingModel;
 import org.ontoware.rdf2go.model.impl.DiffImpl;
+import org.ontoware.rdf2go.model.impl.FederatedModel;
+import org.ontoware.rdf2go.model.impl.FingerprintingModel;
+import org.ontoware.rdf2go.model.impl.GroupCommitModel;
+import org.ontoware.rdf2go.model.impl.JournalingModel;
+import org.ontoware.rdf2go.model.impl.NotifyingModelLayer;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.impl.StatisticsModel;
 import org.ontoware.rdf2go.model.impl.TriplePatternImpl;
+import org.ontoware.rdf2go.model.impl.VersionedModel;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.LanguageTagLiteral;
 import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.PlainLiteral;
 import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
 import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdf2go.testdata.TestData;
+import org.ontoware.rdf2go.util.ChangeJournal;
 import org.ontoware.rdf2go.util.Iterators;
+import org.ontoware.rdf2go.util.ModelUtils;
+import org.ontoware.rdf2go.util.ModelCanonicalizer;
+import org.ontoware.rdf2go.util.StatementSetAlgebra;
+import org.ontoware.rdf2go.util.StatementSetAlgebra.Operation;
 import org.ontoware.rdf2go.vocabulary.RDF;
 import org.ontoware.rdf2go.vocabulary.RDFS;
 import org.slf4j.Logger;
@@ -1438,7 +1462,1219 @@ public void testWriteTo() throws Exception {
 		m1.close();
 	}
 	
+	@Test
+	public void testIsIsomorphicWithBlankNodes() {
+		Model model2 = getModelFactory().createModel();
+		model2.open();
+		for(Model m : new Model[] { this.model, model2 }) {
+			// a cycle of three blank nodes, which can only be told apart by
+			// trying, and interchangeable blank nodes
+			BlankNode x = m.createBlankNode();
+			BlankNode y = m.createBlankNode();
+			BlankNode z = m.createBlankNode();
+			m.addStatement(x, b, y);
+			m.addStatement(y, b, z);
+			m.addStatement(z, b, x);
+			for(int i = 0; i < 5; i++) {
+				BlankNode leaf = m.createBlankNode();
+				m.addStatement(a, c, leaf);
+				m.addStatement(leaf, RDF.type, b);
+			}
+			m.addStatement(x, c, "label");
+		}
+		assertTrue(this.model.isIsomorphicWith(model2));
+		assertTrue(model2.isIsomorphicWith(this.model));
+		assertEquals(ModelCanonicalizer.hash(this.model), ModelCanonicalizer.hash(model2));
+		
+		// same size, but the label moves from the cycle to a new blank node
+		model2.removeStatements(Variable.ANY, c, model2.createPlainLiteral("label"));
+		model2.addStatement(model2.createBlankNode(), c, "label");
+		assertFalse(this.model.isIsomorphicWith(model2));
+		assertFalse(ModelCanonicalizer.hash(this.model).equals(ModelCanonicalizer.hash(model2)));
+		model2.close();
+	}
+	
+	@Test
+	public void testFindBindings() {
+		URI knows = new URIImpl("urn:test:knows");
+		URI person = new URIImpl("urn:test:Person");
+		for(int i = 0; i < 50; i++) {
+			URI p = new URIImpl("urn:test:p" + i);
+			this.model.addStatement(p, RDF.type, person);
+			this.model.addStatement(p, knows, new URIImpl("urn:test:p" + ((i + 1) % 50)));
+			this.model.addStatement(p, RDFS.label, "person " + i);
+		}
+		this.model.addStatement(a, b, a);
+		Variable x = new Variable("x");
+		Variable y = new Variable("y");
+		Variable label = new Variable("label");
+		
+		// many rows joined with a small pattern
+		ClosableIterator<QueryRow> it = this.model.findBindings(Arrays.asList(
+		        new TriplePatternImpl(x, RDF.type, person), new TriplePatternImpl(x, knows, y),
+		        new TriplePatternImpl(y, RDFS.label, label)));
+		int count = 0;
+		while(it.hasNext()) {
+			QueryRow row = it.next();
+			String n = row.getValue("x").toString().substring("urn:test:p".length());
+			assertEquals("person " + ((Integer.parseInt(n) + 1) % 50), row
+			        .getLiteralValue("label"));
+			count++;
+		}
+		it.close();
+		assertEquals(50, count);
+		
+		// one row looked up in a larger pattern
+		it = this.model.findBindings(Arrays.asList(new TriplePatternImpl(x, knows, y),
+		        new TriplePatternImpl(x, RDFS.label, this.model.createPlainLiteral("person 7"))));
+		assertTrue(it.hasNext());
+		assertEquals(new URIImpl("urn:test:p8"), it.next().getValue("y"));
+		assertFalse(it.hasNext());
+		it.close();
+		
+		// a variable repeated within a pattern
+		it = this.model.findBindings(Arrays.asList(new TriplePatternImpl(x, Variable.ANY, x)));
+		assertTrue(it.hasNext());
+		assertEquals(a, it.next().getValue("x"));
+		assertFalse(it.hasNext());
+		it.close();
+		
+		it = this.model.findBindings(Arrays.asList(new TriplePatternImpl(x, knows, y),
+		        new TriplePatternImpl(y, RDF.type, RDFS.Class)));
+		assertFalse(it.hasNext());
+		it.close();
+	}
+	
+	@Test
+	public void testStatementSetAlgebra() {
+		Model model2 = getModelFactory().createModel();
+		model2.open();
+		BlankNode blank = this.model.createBlankNode();
+		this.model.addStatement(blank, b, "in a");
+		for(int i = 0; i < 300; i++) {
+			URI subject = new URIImpl("urn:test:s" + i);
+			if(i % 3 != 0) {
+				this.model.addStatement(subject, b, "v" + i);
+			}
+			if(i % 2 == 0) {
+				model2.addStatement(subject, b, "v" + i);
+			}
+		}
+		// a tiny budget forces sorted runs on disk
+		for(StatementSetAlgebra algebra : new StatementSetAlgebra[] {
+		        new StatementSetAlgebra(), new StatementSetAlgebra(4096, 1, null),
+		        new StatementSetAlgebra(4096, 3, null) }) {
+			Model result = getModelFactory().createModel();
+			result.open();
+			assertEquals(251, algebra.applyTo(Operation.UNION, this.model, model2, result));
+			assertEquals(251, result.size());
+			assertTrue(result.contains(blank, b, "in a"));
+			result.removeAll();
+			assertEquals(100, algebra.applyTo(Operation.INTERSECTION, this.model, model2, result));
+			assertTrue(result.contains(new URIImpl("urn:test:s2"), b, "v2"));
+			assertFalse(result.contains(new URIImpl("urn:test:s1"), b, "v1"));
+			result.removeAll();
+			assertEquals(101, algebra.applyTo(Operation.DIFFERENCE, this.model, model2, result));
+			assertTrue(result.contains(new URIImpl("urn:test:s1"), b, "v1"));
+			assertTrue(result.contains(blank, b, "in a"));
+			result.removeAll();
+			assertEquals(151, algebra.applyTo(Operation.SYMMETRIC_DIFFERENCE, this.model, model2,
+			        result));
+			assertTrue(result.contains(new URIImpl("urn:test:s0"), b, "v0"));
+			result.close();
+		}
+		
+		// more blank nodes than the 8 kept by this budget
+		List<BlankNode> blanks = new ArrayList<BlankNode>();
+		for(int i = 0; i < 20; i++) {
+			BlankNode node = this.model.createBlankNode();
+			this.model.addStatement(node, c, "blank" + i);
+			blanks.add(node);
+		}
+		StatementSetAlgebra small = new StatementSetAlgebra(4096, 1, null);
+		Model result = getModelFactory().createModel();
+		result.open();
+		assertEquals(121, small.applyTo(Operation.DIFFERENCE, this.model, model2, result));
+		for(int i = 0; i < 20; i++) {
+			assertTrue(result.contains(blanks.get(i), c, "blank" + i));
+		}
+		result.close();
+		ClosableIterator<Statement> itA = this.model.iterator();
+		ClosableIterator<Statement> itB = model2.iterator();
+		try {
+			small.apply(Operation.UNION, itA, itB);
+			fail("too many blank nodes without a factory");
+		} catch(ModelRuntimeException e) {
+			// expected
+		} finally {
+			itA.close();
+			itB.close();
+		}
+		model2.close();
+	}
+	
+	@Test
+	public void testFederatedModel() {
+		Model model2 = getModelFactory().createModel();
+		model2.open();
+		URI knows = new URIImpl("urn:test:knows");
+		URI person = new URIImpl("urn:test:Person");
+		URI agent = new URIImpl("urn:other:Agent");
+		URI x = new URIImpl("urn:other:x");
+		for(int i = 0; i < 10; i++) {
+			URI p = new URIImpl("urn:test:people/p" + i);
+			this.model.addStatement(p, RDF.type, person);
+			this.model.addStatement(p, knows, i < 9 ? new URIImpl("urn:test:people/p" + (i + 1))
+			        : x);
+		}
+		model2.addStatement(x, RDF.type, agent);
+		model2.addStatement(x, knows, new URIImpl("urn:other:y"));
+		Model model3 = getModelFactory().createModel();
+		model3.open();
+		NotifyingModelLayer notifying = new NotifyingModelLayer(model3);
+		
+		FederatedModel federation = new FederatedModel(this.model, model2, notifying);
+		federation.open();
+		try {
+			assertEquals(this.model.size() + model2.size(), federation.size());
+			assertEquals(10, federation.countStatements(new TriplePatternImpl(Variable.ANY,
+			        RDF.type, person)));
+			assertEquals(1, federation.countStatements(new TriplePatternImpl(Variable.ANY,
+			        RDF.type, agent)));
+			assertTrue(federation.contains(x, knows, Variable.ANY));
+			assertFalse(federation.contains(x, RDF.type, person));
+			assertFalse(federation.contains(Variable.ANY, RDFS.label, Variable.ANY));
+			ClosableIterator<Statement> statements = federation.findStatements(Variable.ANY,
+			        knows, Variable.ANY);
+			assertEquals(11, Iterators.count(statements));
+			statements.close();
+			
+			// joins across members
+			Variable s = new Variable("s");
+			Variable o = new Variable("o");
+			ClosableIterator<QueryRow> it = federation.findBindings(Arrays.asList(
+			        new TriplePatternImpl(s, knows, o), new TriplePatternImpl(o, RDF.type, agent)));
+			assertTrue(it.hasNext());
+			assertEquals(new URIImpl("urn:test:people/p9"), it.next().getValue("s"));
+			assertFalse(it.hasNext());
+			it.close();
+			
+			try {
+				federation.addStatement(x, RDF.type, person);
+				fail("federated models are read-only");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			
+			// summaries follow the writes to the members
+			URI z = new URIImpl("urn:third:z");
+			notifying.addStatement(z, RDFS.label, "z");
+			assertTrue(federation.contains(z, RDFS.label, Variable.ANY));
+			notifying.addAll(Arrays.asList(new StatementImpl(null, z, RDF.type, person))
+			        .iterator());
+			assertEquals(11, federation.countStatements(new TriplePatternImpl(Variable.ANY,
+			        RDF.type, person)));
+			// a member which does not notify is asked once its size changed
+			model2.addStatement(x, RDFS.comment, "x");
+			assertTrue(federation.contains(x, RDFS.comment, Variable.ANY));
+			model2.addStatement(x, RDF.type, person);
+			assertEquals(12, federation.countStatements(new TriplePatternImpl(Variable.ANY,
+			        RDF.type, person)));
+			federation.refresh();
+			assertTrue(federation.contains(x, RDFS.comment, Variable.ANY));
+			assertFalse(federation.contains(z, RDFS.comment, Variable.ANY));
+		} finally {
+			federation.close();
+			model2.close();
+			model3.close();
+		}
+	}
+	
+	@Test
+	public void testSnapshot() throws Exception {
+		this.model.addStatement(a, b, c);
+		Model snapshot = this.model.snapshot();
+		try {
+			assertTrue(snapshot.isOpen());
+			this.model.addStatement(a, b, "later");
+			this.model.removeStatement(a, b, c);
+			assertEquals(1, snapshot.size());
+			assertTrue(snapshot.contains(a, b, c));
+			assertFalse(snapshot.contains(a, b, "later"));
+			try {
+				snapshot.addStatement(a, c, b);
+				fail("a snapshot must be read-only");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertEquals(1, snapshot.size());
+		} finally {
+			snapshot.close();
+		}
+		assertEquals(1, this.model.size());
+		assertTrue(this.model.contains(a, b, "later"));
+	}
+	
+	@Test
+	public void testTransaction() throws Exception {
+		this.model.addStatement(a, b, c);
+		Transaction tx = this.model.begin();
+		try {
+			assertTrue(tx.isActive());
+			this.model.addStatement(a, b, "added");
+			this.model.removeStatement(a, b, c);
+			assertTrue(this.model.contains(a, b, "added"));
+			assertFalse(this.model.contains(a, b, c));
+			tx.rollback();
+		} finally {
+			tx.close();
+		}
+		assertFalse(tx.isActive());
+		assertEquals(1, this.model.size());
+		assertTrue(this.model.contains(a, b, c));
+		
+		tx = this.model.begin(IsolationLevel.SERIALIZABLE);
+		try {
+			this.model.addStatement(a, b, "added");
+			this.model.removeStatement(a, b, c);
+			tx.commit();
+		} finally {
+			tx.close();
+		}
+		assertEquals(1, this.model.size());
+		assertTrue(this.model.contains(a, b, "added"));
+		
+		// closing an active transaction rolls back
+		tx = this.model.begin();
+		this.model.removeAll();
+		tx.close();
+		assertEquals(1, this.model.size());
+		
+		tx = this.model.begin();
+		try {
+			this.model.begin();
+			fail("transactions must not be nested");
+		} catch(ModelRuntimeException e) {
+			// expected
+		} finally {
+			tx.close();
+		}
+	}
+	
 	public void testDump() {
 		this.model.dump();
 	}
+	
+	@Test
+	public void testVersionedModel() throws InterruptedException {
+		VersionedModel versioned = new VersionedModel(getModelFactory().createModel(), 2);
+		versioned.open();
+		try {
+			// revision 0 and 1 get different timestamps
+			Thread.sleep(2);
+			versioned.addStatement(a, b, c);
+			// no change, no revision
+			versioned.addStatement(a, b, c);
+			assertEquals(1, versioned.getRevision());
+			List<Statement> statements = new ArrayList<Statement>();
+			statements.add(new StatementImpl(null, b, b, b));
+			statements.add(new StatementImpl(null, c, c, c));
+			versioned.addAll(statements.iterator());
+			versioned.removeStatement(a, b, c);
+			assertEquals(3, versioned.getRevision());
+			assertEquals(3, versioned.getRevisionAt(System.currentTimeMillis()));
+			assertEquals(0, versioned.getRevisionAt(versioned.getTimestamp(0)));
+			assertTrue(versioned.getRevisionAt(versioned.getTimestamp(1)) >= 1);
+			assertTrue(versioned.getChanges(3).getRemoved().iterator().hasNext());
+			
+			Model model = versioned.asOf(0);
+			assertTrue(model.isEmpty());
+			model.close();
+			model = versioned.asOf(2);
+			assertEquals(3, model.size());
+			model.close();
+			model = versioned.asOf(3);
+			assertEquals(2, model.size());
+			assertFalse(model.contains(a, b, c));
+			model.close();
+			
+			assertEquals(2, versioned.compact(2));
+			assertEquals(2, versioned.getFirstRevision());
+			try {
+				versioned.asOf(1);
+				fail("revision 1 has been compacted");
+			} catch(IllegalArgumentException e) {
+				// expected
+			}
+			model = versioned.asOf(2);
+			assertTrue(model.contains(a, b, c));
+			model.close();
+		} finally {
+			versioned.close();
+		}
+	}
+	
+	@Test
+	public void testVersionedModelHistory() throws IOException {
+		File directory = Files.createTempDirectory("history").toFile();
+		Model model = new DelegatingModel(getModelFactory().createModel()) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void addStatement(Statement statement) throws ModelRuntimeException {
+				if(statement.getSubject().equals(c)) {
+					throw new ModelRuntimeException("rejected");
+				}
+				super.addStatement(statement);
+			}
+		};
+		VersionedModel versioned = new VersionedModel(model, 1, directory);
+		versioned.open();
+		try {
+			versioned.addStatement(a, b, c);
+			// a failed write is not recorded
+			try {
+				versioned.addStatement(c, b, a);
+				fail("the delegate rejects subject c");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertEquals(1, versioned.getRevision());
+			// only the statements which have been added before the failure
+			List<Statement> statements = new ArrayList<Statement>();
+			statements.add(new StatementImpl(null, b, b, b));
+			statements.add(new StatementImpl(null, c, c, c));
+			try {
+				versioned.addAll(statements.iterator());
+				fail("the delegate rejects subject c");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertEquals(2, versioned.getRevision());
+			Model revision = versioned.asOf(2);
+			assertEquals(2, revision.size());
+			assertTrue(revision.contains(b, b, b));
+			revision.close();
+			versioned.removeStatement(a, b, c);
+			// the checkpoints are kept on disk
+			assertTrue(new File(directory, "history.checkpoint.2").exists());
+			assertTrue(new File(directory, "history.checkpoint.3").exists());
+			
+			// reopening restores the revisions
+			versioned.close();
+			versioned = new VersionedModel(model, 1, directory);
+			versioned.open();
+			assertEquals(3, versioned.getRevision());
+			revision = versioned.asOf(1);
+			assertEquals(1, revision.size());
+			assertTrue(revision.contains(a, b, c));
+			revision.close();
+			assertFalse(versioned.getChanges(3).getAdded().iterator().hasNext());
+			
+			assertEquals(2, versioned.compact(2));
+			assertFalse(new File(directory, "history.checkpoint.2").exists());
+			assertTrue(new File(directory, "history.checkpoint.3").exists());
+			versioned.close();
+			versioned = new VersionedModel(model, 1, directory);
+			versioned.open();
+			assertEquals(2, versioned.getFirstRevision());
+			assertEquals(3, versioned.getRevision());
+			revision = versioned.asOf(2);
+			assertTrue(revision.contains(a, b, c));
+			revision.close();
+			revision = versioned.asOf(3);
+			assertFalse(revision.contains(a, b, c));
+			assertTrue(revision.contains(b, b, b));
+			revision.close();
+		} finally {
+			versioned.close();
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testCopyModel() {
+		Model source = getModelFactory().createModel();
+		source.open();
+		List<Statement> statements = new ArrayList<Statement>();
+		for(int i = 0; i <= ModelUtils.COPY_CHUNK_SIZE; i++) {
+			statements.add(new StatementImpl(null, new URIImpl("urn:test:s" + i), b, c));
+		}
+		source.addAll(statements.iterator());
+		BlankNode blank = source.createBlankNode();
+		source.addStatement(blank, a, c);
+		
+		// the same implementation copies natively
+		final List<Model> natively = new ArrayList<Model>();
+		Model target = new DelegatingModel(getModelFactory().createModel()) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void addModel(Model model) throws ModelRuntimeException {
+				natively.add(model);
+				super.addModel(model);
+			}
+		};
+		target.open();
+		
+		// another implementation is added in chunks
+		final List<Integer> chunks = new ArrayList<Integer>();
+		Model other = new DelegatingModel(getModelFactory().createModel()) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public Object getUnderlyingModelImplementation() {
+				return this;
+			}
+			
+			@Override
+			public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+				List<Statement> chunk = new ArrayList<Statement>();
+				while(other.hasNext()) {
+					chunk.add(other.next());
+				}
+				chunks.add(chunk.size());
+				super.addAll(chunk.iterator());
+			}
+		};
+		other.open();
+		try {
+			ModelUtils.copy(source, target);
+			assertEquals(1, natively.size());
+			assertEquals(source.size(), target.size());
+			assertTrue(target.contains(Variable.ANY, a, c));
+			
+			ModelUtils.copy(source, other);
+			assertEquals(Arrays.asList(ModelUtils.COPY_CHUNK_SIZE, 2), chunks);
+			assertEquals(source.size(), other.size());
+			// blank nodes become blank nodes of the target
+			ClosableIterator<Statement> it = other.findStatements(Variable.ANY, a, c);
+			try {
+				assertTrue(it.next().getSubject() instanceof BlankNode);
+				assertFalse(it.hasNext());
+			} finally {
+				it.close();
+			}
+		} finally {
+			source.close();
+			target.close();
+			other.close();
+		}
+	}
+	
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+	
+	private static DiffReader changeOf(Statement removed, Statement added) {
+		List<Statement> removedList = new ArrayList<Statement>();
+		List<Statement> addedList = new ArrayList<Statement>();
+		if(removed != null) {
+			removedList.add(removed);
+		}
+		if(added != null) {
+			addedList.add(added);
+		}
+		return new DiffImpl(addedList.iterator(), removedList.iterator());
+	}
+	
+	/**
+	 * Applies all entries from the given sequence number on.
+	 * 
+	 * @return the sequence numbers of the applied entries
+	 */
+	private static List<Long> replay(ChangeJournal journal, long from, Model model) {
+		List<Long> sequenceNumbers = new ArrayList<Long>();
+		ClosableIterator<ChangeJournal.Entry> it = journal.read(from, model);
+		try {
+			while(it.hasNext()) {
+				ChangeJournal.Entry entry = it.next();
+				sequenceNumbers.add(entry.getSequenceNumber());
+				model.update(entry.getDiff());
+			}
+		} finally {
+			it.close();
+		}
+		return sequenceNumbers;
+	}
+	
+	@Test
+	public void testChangeJournal() throws Exception {
+		File directory = Files.createTempDirectory("journal").toFile();
+		// every entry gets its own segment
+		ChangeJournal journal = new ChangeJournal(directory, 1, false);
+		try {
+			assertEquals(0, journal.getLastSequenceNumber());
+			for(int i = 1; i <= 5; i++) {
+				assertEquals(i, journal.append(changeOf(null, new StatementImpl(null, a, b,
+				        this.model.createPlainLiteral("" + i)))));
+			}
+			assertEquals(6, journal.append(changeOf(new StatementImpl(null, a, b, this.model
+			        .createPlainLiteral("1")), null)));
+			assertEquals(6, journal.getLastSequenceNumber());
+			assertTrue(journal.awaitSequenceNumber(6, 0));
+			assertFalse(journal.awaitSequenceNumber(7, 10));
+			
+			// tailing from a position
+			Model tail = getModelFactory().createModel();
+			tail.open();
+			assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), replay(journal, 1, tail));
+			assertEquals(4, tail.size());
+			assertFalse(tail.contains(a, b, "1"));
+			Model partial = getModelFactory().createModel();
+			partial.open();
+			assertEquals(Arrays.asList(4L, 5L, 6L), replay(journal, 4, partial));
+			assertEquals(2, partial.size());
+			partial.close();
+			
+			// a reader which is open during compaction and retention
+			ClosableIterator<ChangeJournal.Entry> reader = journal.read(1, this.model);
+			assertEquals(1, reader.next().getSequenceNumber());
+			
+			// compaction does not change the result of a replay
+			assertEquals(5, journal.compact(5));
+			assertEquals(1, journal.getFirstSequenceNumber());
+			Model compacted = getModelFactory().createModel();
+			compacted.open();
+			assertEquals(Arrays.asList(5L, 6L), replay(journal, 1, compacted));
+			assertTrue(ModelCanonicalizer.isIsomorphic(tail, compacted));
+			// as well as for consumers which have seen a prefix of the range
+			Model prefix = getModelFactory().createModel();
+			prefix.open();
+			prefix.addStatement(a, b, "1");
+			prefix.addStatement(a, b, "2");
+			assertEquals(Arrays.asList(5L, 6L), replay(journal, 3, prefix));
+			assertTrue(ModelCanonicalizer.isIsomorphic(tail, prefix));
+			prefix.close();
+			compacted.close();
+			
+			// retention keeps at least the newest entry
+			assertEquals(1, journal.applyRetention(1, Long.MAX_VALUE));
+			assertEquals(6, journal.getFirstSequenceNumber());
+			
+			// the open reader still sees the entries as they were
+			List<Long> rest = new ArrayList<Long>();
+			while(reader.hasNext()) {
+				rest.add(reader.next().getSequenceNumber());
+			}
+			reader.close();
+			assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L), rest);
+			// now the compacted and retained segments are gone
+			assertEquals(2, directory.list().length);
+			
+			// reopening
+			journal.close();
+			journal = new ChangeJournal(directory, 1, false);
+			assertEquals(6, journal.getLastSequenceNumber());
+			assertEquals(6, journal.getFirstSequenceNumber());
+			assertEquals(7, journal.append(changeOf(null, new StatementImpl(null, c, b, a))));
+			assertEquals(Arrays.asList(6L, 7L), replay(journal, 1, tail));
+			tail.close();
+		} finally {
+			journal.close();
+			deleteDirectory(directory);
+		}
+	}
+	
+	@Test
+	public void testJournalingModel() throws Exception {
+		File directory = Files.createTempDirectory("journal").toFile();
+		ChangeJournal journal = new ChangeJournal(directory, 1024 * 1024, true);
+		final URI failing = this.model.createURI("test://test/failing");
+		JournalingModel journaling = new JournalingModel(new DelegatingModel(getModelFactory()
+		        .createModel()) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void addStatement(Statement statement) {
+				if(statement.getObject().equals(failing)) {
+					throw new ModelRuntimeException("write failed");
+				}
+				super.addStatement(statement);
+			}
+		}, journal);
+		journaling.open();
+		try {
+			journaling.addStatement(a, b, c);
+			assertEquals(1, journal.getLastSequenceNumber());
+			journaling.addAll(Arrays.asList(new StatementImpl(null, b, b, c),
+			        new StatementImpl(null, c, b, c)).iterator());
+			assertEquals(2, journal.getLastSequenceNumber());
+			
+			// failed writes are not journalled
+			try {
+				journaling.addStatement(a, b, failing);
+				fail("the write failed");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertEquals(2, journal.getLastSequenceNumber());
+			
+			// a transaction becomes one entry with its net effect
+			Transaction tx = journaling.begin();
+			try {
+				journaling.addStatement(a, a, a);
+				journaling.removeStatement(a, a, a);
+				journaling.removeStatements(b, Variable.ANY, Variable.ANY);
+				journaling.addStatement(c, c, c);
+				assertEquals(2, journal.getLastSequenceNumber());
+				tx.commit();
+			} finally {
+				tx.close();
+			}
+			assertEquals(3, journal.getLastSequenceNumber());
+			tx = journaling.begin();
+			try {
+				journaling.addStatement(b, b, b);
+				tx.rollback();
+			} finally {
+				tx.close();
+			}
+			assertEquals(3, journal.getLastSequenceNumber());
+			
+			journaling.readFrom(new StringReader("<test://test/a> <test://test/b> <test://test/d> .\n"),
+			        Syntax.Ntriples);
+			assertEquals(4, journal.getLastSequenceNumber());
+			
+			// the journal reproduces the model
+			Model replayed = getModelFactory().createModel();
+			replayed.open();
+			replay(journal, 1, replayed);
+			assertTrue(ModelCanonicalizer.isIsomorphic(journaling, replayed));
+			assertEquals(4, replayed.size());
+			replayed.close();
+			
+			// removals are journalled in batches
+			List<Statement> statements = new ArrayList<Statement>();
+			for(int i = 0; i <= JournalingModel.REMOVE_BATCH_SIZE; i++) {
+				statements.add(new StatementImpl(null, c, a, this.model.createPlainLiteral("" + i)));
+			}
+			journaling.addAll(statements.iterator());
+			assertEquals(5, journal.getLastSequenceNumber());
+			journaling.removeAll();
+			assertTrue(journaling.isEmpty());
+			assertEquals(7, journal.getLastSequenceNumber());
+			replayed = getModelFactory().createModel();
+			replayed.open();
+			replay(journal, 1, replayed);
+			assertTrue(replayed.isEmpty());
+			replayed.close();
+			
+			// a transaction collects only the changes of the thread which
+			// began it
+			final JournalingModel shared = new JournalingModel(new DelegatingModel(
+			        getModelFactory().createModel()) {
+				
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				public Transaction begin() {
+					return new AbstractTransaction(IsolationLevel.NONE) {
+						
+						@Override
+						protected void doCommit() {
+							// written directly
+						}
+						
+						@Override
+						protected void doRollback() {
+							// not tested
+						}
+					};
+				}
+			}, journal);
+			shared.open();
+			tx = shared.begin();
+			try {
+				shared.addStatement(a, b, c);
+				Thread other = new Thread() {
+					
+					@Override
+					public void run() {
+						shared.addStatement(b, b, c);
+					}
+				};
+				other.start();
+				other.join();
+				assertEquals(8, journal.getLastSequenceNumber());
+				tx.commit();
+			} finally {
+				tx.close();
+			}
+			assertEquals(9, journal.getLastSequenceNumber());
+			shared.addStatement(c, b, c);
+			assertEquals(10, journal.getLastSequenceNumber());
+			shared.close();
+		} finally {
+			journaling.close();
+			journal.close();
+			deleteDirectory(directory);
+		}
+	}
+	
+	/**
+	 * Counts the batches written by a {@link GroupCommitModel}, and lets them
+	 * wait for {@link #release} resp. fail.
+	 */
+	private static class BatchRecordingModel extends DelegatingModel {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final AtomicInteger batches = new AtomicInteger();
+		
+		final CountDownLatch entered = new CountDownLatch(1);
+		
+		final CountDownLatch release = new CountDownLatch(1);
+		
+		volatile boolean fail = false;
+		
+		BatchRecordingModel(Model model) {
+			super(model);
+		}
+		
+		@Override
+		public void addAll(Iterator<? extends Statement> other) {
+			this.batches.incrementAndGet();
+			this.entered.countDown();
+			try {
+				this.release.await();
+			} catch(InterruptedException e) {
+				throw new ModelRuntimeException(e);
+			}
+			if(this.fail) {
+				throw new ModelRuntimeException("batch failed");
+			}
+			super.addAll(other);
+		}
+	}
+	
+	private static DiffReader additionOf(Statement statement) {
+		return new DiffImpl(Arrays.asList(statement).iterator(),
+		        new ArrayList<Statement>().iterator());
+	}
+	
+	@Test
+	public void testGroupCommitBatchesByCount() throws Exception {
+		BatchRecordingModel recording = new BatchRecordingModel(getModelFactory().createModel());
+		recording.release.countDown();
+		GroupCommitModel group = new GroupCommitModel(recording, 3, 60000);
+		group.open();
+		try {
+			Future<Void> first = group.submit(additionOf(new StatementImpl(null, a, b, c)));
+			group.submit(additionOf(new StatementImpl(null, b, b, c)));
+			assertEquals(2, group.getPendingCount());
+			Future<Void> third = group.submit(additionOf(new StatementImpl(null, c, b, c)));
+			third.get(10, TimeUnit.SECONDS);
+			assertTrue(first.isDone());
+			assertEquals(1, recording.batches.get());
+			assertEquals(3, recording.size());
+		} finally {
+			group.close();
+		}
+	}
+	
+	@Test
+	public void testGroupCommitBatchesByTime() throws Exception {
+		BatchRecordingModel recording = new BatchRecordingModel(getModelFactory().createModel());
+		recording.release.countDown();
+		GroupCommitModel group = new GroupCommitModel(recording, 1000, 50);
+		group.open();
+		try {
+			long start = System.currentTimeMillis();
+			Future<Void> first = group.submit(additionOf(new StatementImpl(null, a, b, c)));
+			Future<Void> second = group.submit(additionOf(new StatementImpl(null, b, b, c)));
+			first.get(10, TimeUnit.SECONDS);
+			assertTrue(second.isDone());
+			assertTrue(System.currentTimeMillis() - start >= 50);
+			assertEquals(1, recording.batches.get());
+			assertEquals(0, group.getPendingCount());
+		} finally {
+			group.close();
+		}
+	}
+	
+	@Test
+	public void testGroupCommitBlocksUntilDurable() {
+		BatchRecordingModel recording = new BatchRecordingModel(getModelFactory().createModel());
+		recording.release.countDown();
+		GroupCommitModel group = new GroupCommitModel(recording, 1000, 20);
+		group.open();
+		try {
+			group.addStatement(a, b, c);
+			assertTrue(recording.contains(a, b, c));
+			group.removeStatement(a, b, c);
+			assertFalse(recording.contains(a, b, c));
+			assertEquals(0, group.getPendingCount());
+		} finally {
+			group.close();
+		}
+	}
+	
+	@Test
+	public void testGroupCommitWaitsForBatchInFlight() throws Exception {
+		final BatchRecordingModel recording = new BatchRecordingModel(getModelFactory()
+		        .createModel());
+		final GroupCommitModel group = new GroupCommitModel(recording, 1, 60000);
+		group.open();
+		Future<Void> batch = group.submit(additionOf(new StatementImpl(null, a, b, c)));
+		assertTrue(recording.entered.await(10, TimeUnit.SECONDS));
+		assertEquals(0, group.getPendingCount());
+		
+		Thread flushing = new Thread() {
+			
+			@Override
+			public void run() {
+				group.flush();
+			}
+		};
+		Thread removing = new Thread() {
+			
+			@Override
+			public void run() {
+				group.removeAll();
+			}
+		};
+		Thread closing = new Thread() {
+			
+			@Override
+			public void run() {
+				group.close();
+			}
+		};
+		flushing.start();
+		removing.start();
+		flushing.join(200);
+		removing.join(200);
+		assertTrue("flush() must wait for the batch in flight", flushing.isAlive());
+		assertTrue("removeAll() must wait for the batch in flight", removing.isAlive());
+		
+		recording.release.countDown();
+		flushing.join(10000);
+		removing.join(10000);
+		assertFalse(flushing.isAlive());
+		assertFalse(removing.isAlive());
+		assertTrue(batch.isDone());
+		// the batch has been written before everything was removed
+		assertEquals(0, recording.size());
+		
+		batch = group.submit(additionOf(new StatementImpl(null, a, b, c)));
+		closing.start();
+		closing.join(10000);
+		assertFalse(closing.isAlive());
+		assertTrue("close() must write the pending batch", batch.isDone());
+		batch.get();
+		assertFalse(group.isOpen());
+	}
+	
+	@Test
+	public void testGroupCommitFailure() throws Exception {
+		BatchRecordingModel recording = new BatchRecordingModel(getModelFactory().createModel());
+		recording.fail = true;
+		recording.release.countDown();
+		GroupCommitModel group = new GroupCommitModel(recording, 2, 100);
+		group.open();
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			futures.add(group.submit(additionOf(new StatementImpl(null, a, b, c))));
+			futures.add(group.submit(additionOf(new StatementImpl(null, b, b, c))));
+			for(Future<Void> future : futures) {
+				try {
+					future.get(10, TimeUnit.SECONDS);
+					fail("the batch failed");
+				} catch(ExecutionException e) {
+					assertTrue(e.getCause() instanceof ModelRuntimeException);
+				}
+			}
+			try {
+				group.addAll(Arrays.asList(new StatementImpl(null, a, b, c),
+				        new StatementImpl(null, b, b, c)).iterator());
+				fail("the batch failed");
+			} catch(ModelRuntimeException e) {
+				// expected
+			}
+			assertTrue(recording.isEmpty());
+			
+			recording.fail = false;
+			group.addStatement(a, b, c);
+			group.addStatement(b, b, c);
+			assertEquals(2, recording.size());
+		} finally {
+			group.close();
+		}
+	}
+	
+	/**
+	 * Counts the write calls reaching the underlying model.
+	 */
+	private static class WriteCountingModel extends DelegatingModel {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final AtomicInteger singleWrites = new AtomicInteger();
+		
+		final AtomicInteger bulkWrites = new AtomicInteger();
+		
+		WriteCountingModel(Model model) {
+			super(model);
+		}
+		
+		@Override
+		public void addStatement(Statement statement) throws ModelRuntimeException {
+			this.singleWrites.incrementAndGet();
+			super.addStatement(statement);
+		}
+		
+		@Override
+		public void removeStatement(Statement statement) throws ModelRuntimeException {
+			this.singleWrites.incrementAndGet();
+			super.removeStatement(statement);
+		}
+		
+		@Override
+		public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+			this.bulkWrites.incrementAndGet();
+			super.addAll(other);
+		}
+		
+		@Override
+		public void removeAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+			this.bulkWrites.incrementAndGet();
+			super.removeAll(other);
+		}
+		
+		@Override
+		public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+			this.bulkWrites.incrementAndGet();
+			super.update(diff);
+		}
+	}
+	
+	@Test
+	public void testFingerprintingModelBulkWrites() {
+		Model model = getModelFactory().createModel();
+		model.open();
+		WriteCountingModel counting = new WriteCountingModel(model);
+		FingerprintingModel fingerprinting = new FingerprintingModel(counting, 4);
+		Statement abc = new StatementImpl(null, a, b, c);
+		Statement bbc = new StatementImpl(null, b, b, c);
+		Statement cbc = new StatementImpl(null, c, b, c);
+		
+		fingerprinting.addAll(Arrays.asList(abc, bbc, abc, cbc).iterator());
+		assertEquals(1, counting.bulkWrites.get());
+		assertEquals(0, counting.singleWrites.get());
+		assertEquals(3, model.size());
+		assertEquals(3, fingerprinting.getMerkleTree().size());
+		assertEquals(new FingerprintingModel(model, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+		
+		// nothing changes, nothing is written
+		long fingerprint = fingerprinting.getFingerprint();
+		fingerprinting.addAll(Arrays.asList(abc, bbc).iterator());
+		fingerprinting.removeAll(Arrays.asList(new StatementImpl(null, a, a, a)).iterator());
+		assertEquals(1, counting.bulkWrites.get());
+		assertEquals(fingerprint, fingerprinting.getFingerprint());
+		
+		// one update, statements removed and added again are no change
+		Statement acc = new StatementImpl(null, a, c, c);
+		fingerprinting.update(new DiffImpl(Arrays.asList(acc, bbc).iterator(), Arrays.asList(
+		        abc, bbc, new StatementImpl(null, a, a, a)).iterator()));
+		assertEquals(2, counting.bulkWrites.get());
+		assertEquals(0, counting.singleWrites.get());
+		assertFalse(model.contains(abc));
+		assertTrue(model.contains(acc));
+		assertTrue(model.contains(bbc));
+		assertEquals(3, fingerprinting.getMerkleTree().size());
+		assertEquals(new FingerprintingModel(model, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+		
+		fingerprinting.removeStatements(a, Variable.ANY, Variable.ANY);
+		assertEquals(0, counting.singleWrites.get());
+		assertEquals(2, model.size());
+		assertEquals(new FingerprintingModel(model, 4).getFingerprint(),
+		        fingerprinting.getFingerprint());
+		
+		Model replicaModel = getModelFactory().createModel();
+		replicaModel.open();
+		replicaModel.addStatement(a, a, a);
+		replicaModel.addStatement(bbc);
+		FingerprintingModel replica = new FingerprintingModel(replicaModel, 4);
+		replica.update(fingerprinting.getDiff(replica));
+		assertEquals(fingerprinting.getFingerprint(), replica.getFingerprint());
+		assertEquals(2, replicaModel.size());
+		assertTrue(replicaModel.contains(cbc));
+		
+		replicaModel.close();
+		model.close();
+	}
+	
+	@Test
+	public void testStatisticsModel() {
+		Model model = getModelFactory().createModel();
+		model.open();
+		final boolean[] fail = { false };
+		final int[] bulkWrites = { 0 };
+		Model failing = new DelegatingModel(model) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			public void addStatement(Statement statement) throws ModelRuntimeException {
+				if(fail[0]) {
+					throw new ModelRuntimeException("write failed");
+				}
+				super.addStatement(statement);
+			}
+			
+			@Override
+			public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeException {
+				bulkWrites[0]++;
+				while(other.hasNext()) {
+					addStatement(other.next());
+				}
+			}
+		};
+		StatisticsModel statisticsModel = new StatisticsModel(failing);
+		ModelStatistics statistics = statisticsModel.getStatistics();
+		URI person = new URIImpl("urn:test:Person");
+		final List<Statement> notified = new ArrayList<Statement>();
+		ModelChangedListener listener = new AbstractModelChangeListener() {
+			
+			@Override
+			public void addedStatement(Statement statement) {
+				notified.add(statement);
+			}
+		};
+		statisticsModel.addModelChangedListener(listener);
+		
+		// written in one bulk call, listeners see every statement
+		statisticsModel.addAll(Arrays.asList(new StatementImpl(null, a, RDF.type, person),
+		        new StatementImpl(null, b, RDF.type, person),
+		        new StatementImpl(null, a, RDF.type, person), new StatementImpl(null, a, b, c))
+		        .iterator());
+		assertEquals(1, bulkWrites[0]);
+		assertEquals(4, notified.size());
+		statisticsModel.removeModelChangedListener(listener);
+		// already there
+		statisticsModel.addStatement(a, b, c);
+		assertEquals(3, statisticsModel.size());
+		assertEquals(2, statistics.getInstanceCount(person));
+		assertEquals(1, statistics.getPredicateCount(b));
+		
+		// failed writes are not counted
+		fail[0] = true;
+		try {
+			statisticsModel.addStatement(c, b, c);
+			fail("the write failed");
+		} catch(ModelRuntimeException e) {
+			// expected
+		}
+		assertEquals(3, statisticsModel.size());
+		assertEquals(1, statistics.getPredicateCount(b));
+		fail[0] = false;
+		
+		// removing and adding a statement again is no change
+		statisticsModel.update(new DiffImpl(Arrays.asList(new StatementImpl(null, a, b, c),
+		        new StatementImpl(null, c, b, c)).iterator(), Arrays.asList(
+		        new StatementImpl(null, a, b, c), new StatementImpl(null, b, RDF.type, person),
+		        new StatementImpl(null, c, c, c)).iterator()));
+		assertEquals(3, statisticsModel.size());
+		assertEquals(1, statistics.getInstanceCount(person));
+		assertEquals(2, statistics.getPredicateCount(b));
+		
+		statisticsModel.removeStatements(Variable.ANY, b, Variable.ANY);
+		assertEquals(1, statisticsModel.size());
+		assertEquals(model.size(), statisticsModel.size());
+		assertEquals(0, statistics.getPredicateCount(b));
+		model.close();
+	}
+	
+	@Test
+	public void testFederatedModelCloseDoesNotInterrupt() throws Exception {
+		Model model2 = getModelFactory().createModel();
+		model2.open();
+		for(int i = 0; i < 50; i++) {
+			this.model.addStatement(a, b, new URIImpl("urn:test:o" + i));
+			model2.addStatement(a, b, new URIImpl("urn:test:p" + i));
+		}
+		final AtomicInteger opened = new AtomicInteger();
+		final AtomicInteger closed = new AtomicInteger();
+		final AtomicInteger interrupted = new AtomicInteger();
+		List<Model> members = new ArrayList<Model>();
+		for(Model member : Arrays.asList(this.model, model2)) {
+			members.add(new DelegatingModel(member) {
+				
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				public ClosableIterator<Statement> findStatements(ResourceOrVariable subject,
+				        UriOrVariable predicate, NodeOrVariable object)
+				        throws ModelRuntimeException {
+					final ClosableIterator<Statement> it = super.findStatements(subject,
+					        predicate, object);
+					opened.incrementAndGet();
+					return new ClosableIterator<Statement>() {
+						
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+						
+						@Override
+						public Statement next() {
+							try {
+								// a slow backend
+								Thread.sleep(1);
+							} catch(InterruptedException e) {
+								interrupted.incrementAndGet();
+								Thread.currentThread().interrupt();
+							}
+							return it.next();
+						}
+						
+						@Override
+						public void remove() {
+							it.remove();
+						}
+						
+						@Override
+						public void close() {
+							if(Thread.currentThread().isInterrupted()) {
+								interrupted.incrementAndGet();
+							}
+							it.close();
+							closed.incrementAndGet();
+						}
+					};
+				}
+			});
+		}
+		FederatedModel federation = new FederatedModel(members, 1);
+		federation.open();
+		try {
+			ClosableIterator<Statement> it = federation.findStatements(a, b, Variable.ANY);
+			assertTrue(it.hasNext());
+			it.next();
+			it.close();
+			// members which had not started yet are not asked at all
+			long deadline = System.currentTimeMillis() + 10000;
+			while(closed.get() < opened.get() && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(opened.get(), closed.get());
+			assertEquals(0, interrupted.get());
+		} finally {
+			federation.close();
+			model2.close();
+		}
+	}
 }
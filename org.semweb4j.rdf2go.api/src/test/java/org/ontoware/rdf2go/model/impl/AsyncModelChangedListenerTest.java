@@ -0,0 +1,157 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+import org.ontoware.rdf2go.model.AbstractModelChangeListener;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+/**
+ * @author agent
+ */
+public class AsyncModelChangedListenerTest extends TestCase {
+	
+	private static final URI a = new URIImpl("test://test/a", false);
+	
+	private static final URI b = new URIImpl("test://test/b", false);
+	
+	private static final URI c = new URIImpl("test://test/c", false);
+	
+	/** runs tasks only when asked to */
+	private static class ManualExecutor implements Executor {
+		
+		final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+		
+		@Override
+		public void execute(Runnable command) {
+			this.tasks.add(command);
+		}
+		
+		void runAll() {
+			while(!this.tasks.isEmpty()) {
+				this.tasks.removeFirst().run();
+			}
+		}
+	}
+	
+	/** records the batches delivered to it */
+	private static class RecordingListener extends AbstractModelChangeListener {
+		
+		final List<List<Statement>> added = new ArrayList<List<Statement>>();
+		
+		final List<List<Statement>> removed = new ArrayList<List<Statement>>();
+		
+		@Override
+		public synchronized void performedUpdate(DiffReader diff) {
+			List<Statement> batch = new ArrayList<Statement>();
+			for(Statement statement : diff.getAdded()) {
+				batch.add(statement);
+			}
+			this.added.add(batch);
+			batch = new ArrayList<Statement>();
+			for(Statement statement : diff.getRemoved()) {
+				batch.add(statement);
+			}
+			this.removed.add(batch);
+		}
+	}
+	
+	public void testBatching() {
+		ManualExecutor executor = new ManualExecutor();
+		RecordingListener target = new RecordingListener();
+		AsyncModelChangedListener listener = new AsyncModelChangedListener(target, 10, executor,
+		        false);
+		Statement abc = new StatementImpl(null, a, b, c);
+		Statement bbc = new StatementImpl(null, b, b, c);
+		Statement cbc = new StatementImpl(null, c, b, c);
+		listener.addedStatement(abc);
+		listener.addedStatements(Arrays.asList(bbc, cbc).iterator());
+		listener.removedStatement(bbc);
+		// only one delivery is scheduled for all events
+		assertEquals(1, executor.tasks.size());
+		assertTrue(target.added.isEmpty());
+		
+		executor.runAll();
+		assertEquals(1, target.added.size());
+		// the net effect: bbc was added and removed again
+		assertEquals(new HashSet<Statement>(Arrays.asList(abc, cbc)), new HashSet<Statement>(
+		        target.added.get(0)));
+		assertEquals(Arrays.asList(bbc), target.removed.get(0));
+		
+		listener.removedStatement(abc);
+		executor.runAll();
+		assertEquals(2, target.added.size());
+		assertTrue(target.added.get(1).isEmpty());
+		assertEquals(Arrays.asList(abc), target.removed.get(1));
+	}
+	
+	public void testDropWhenFull() {
+		ManualExecutor executor = new ManualExecutor();
+		RecordingListener target = new RecordingListener();
+		AsyncModelChangedListener listener = new AsyncModelChangedListener(target, 2, executor,
+		        true);
+		listener.addedStatement(new StatementImpl(null, a, b, c));
+		listener.addedStatement(new StatementImpl(null, b, b, c));
+		listener.addedStatement(new StatementImpl(null, c, b, c));
+		assertEquals(1, listener.getDroppedCount());
+		
+		executor.runAll();
+		assertEquals(2, target.added.get(0).size());
+		
+		listener.addedStatement(new StatementImpl(null, c, b, c));
+		executor.runAll();
+		assertEquals(1, target.added.get(1).size());
+		assertEquals(1, listener.getDroppedCount());
+	}
+	
+	public void testBlockWhenFull() throws Exception {
+		RecordingListener target = new RecordingListener();
+		Executor executor = new Executor() {
+			
+			@Override
+			public void execute(Runnable command) {
+				new Thread(command).start();
+			}
+		};
+		AsyncModelChangedListener listener = new AsyncModelChangedListener(target, 1, executor,
+		        false);
+		// the writer is stalled until the listener catches up
+		for(int i = 0; i < 100; i++) {
+			listener.addedStatement(new StatementImpl(null, a, b, new URIImpl("test://test/" + i,
+			        false)));
+		}
+		long deadline = System.currentTimeMillis() + 10000;
+		int delivered = 0;
+		while(delivered < 100 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+			synchronized(target) {
+				delivered = 0;
+				for(List<Statement> batch : target.added) {
+					delivered += batch.size();
+				}
+			}
+		}
+		assertEquals(0, listener.getDroppedCount());
+		assertEquals(100, delivered);
+	}
+	
+}
@@ -0,0 +1,117 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.model.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.ontoware.rdf2go.model.AbstractModelChangeListener;
+import org.ontoware.rdf2go.model.ModelChangedListener;
+import org.ontoware.rdf2go.model.QuadPattern;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+/**
+ * @author agent
+ */
+public class ListenerIndexTest extends TestCase {
+	
+	private static final URI a = new URIImpl("test://test/a", false);
+	
+	private static final URI b = new URIImpl("test://test/b", false);
+	
+	private static final URI c = new URIImpl("test://test/c", false);
+	
+	private static final URI graph = new URIImpl("test://test/graph", false);
+	
+	private static ModelChangedListener listener() {
+		return new AbstractModelChangeListener() {
+			// never called by the index
+		};
+	}
+	
+	private static QuadPattern pattern(URI context, URI subject, URI predicate, URI object) {
+		return new QuadPatternImpl(context == null ? Variable.ANY : context,
+		        subject == null ? Variable.ANY : subject, predicate == null ? Variable.ANY
+		                : predicate, object == null ? Variable.ANY : object);
+	}
+	
+	public void testDispatchBySubjectPredicateObject() {
+		ListenerIndex<QuadPattern> index = new ListenerIndex<QuadPattern>();
+		assertTrue(index.isEmpty());
+		ModelChangedListener bySubject = listener();
+		ModelChangedListener byPredicate = listener();
+		ModelChangedListener byObject = listener();
+		ModelChangedListener byContext = listener();
+		ModelChangedListener all = listener();
+		index.put(bySubject, pattern(null, a, null, null));
+		index.put(byPredicate, pattern(null, null, b, null));
+		index.put(byObject, pattern(null, null, null, c));
+		index.put(byContext, pattern(graph, null, null, null));
+		index.put(all, pattern(null, null, null, null));
+		assertFalse(index.isEmpty());
+		
+		List<ModelChangedListener> matching = index.getMatchingListeners(new StatementImpl(
+		        graph, a, b, c));
+		assertEquals(5, matching.size());
+		
+		matching = index.getMatchingListeners(new StatementImpl(graph, a, a, a));
+		assertEquals(3, matching.size());
+		assertTrue(matching.contains(bySubject));
+		assertTrue(matching.contains(byContext));
+		assertTrue(matching.contains(all));
+		
+		matching = index.getMatchingListeners(new StatementImpl(a, c, b, b));
+		assertEquals(2, matching.size());
+		assertTrue(matching.contains(byPredicate));
+		assertTrue(matching.contains(all));
+		
+		matching = index.getMatchingListeners(new StatementImpl(a, b, c, c));
+		assertEquals(2, matching.size());
+		assertTrue(matching.contains(byObject));
+	}
+	
+	public void testBoundPositionsAreAllChecked() {
+		ListenerIndex<QuadPattern> index = new ListenerIndex<QuadPattern>();
+		ModelChangedListener listener = listener();
+		// indexed by subject, but predicate and object have to match as well
+		index.put(listener, pattern(graph, a, b, c));
+		assertEquals(1, index.getMatchingListeners(new StatementImpl(graph, a, b, c)).size());
+		assertTrue(index.getMatchingListeners(new StatementImpl(graph, a, b, a)).isEmpty());
+		assertTrue(index.getMatchingListeners(new StatementImpl(graph, a, a, c)).isEmpty());
+		assertTrue(index.getMatchingListeners(new StatementImpl(a, a, b, c)).isEmpty());
+	}
+	
+	public void testPutReplacesAndRemove() {
+		ListenerIndex<QuadPattern> index = new ListenerIndex<QuadPattern>();
+		ModelChangedListener listener = listener();
+		index.put(listener, pattern(null, a, null, null));
+		index.put(listener, pattern(null, b, null, null));
+		assertEquals(1, index.getListeners().size());
+		assertTrue(index.getMatchingListeners(new StatementImpl(graph, a, b, c)).isEmpty());
+		assertEquals(1, index.getMatchingListeners(new StatementImpl(graph, b, b, c)).size());
+		
+		index.remove(listener);
+		assertTrue(index.isEmpty());
+		assertTrue(index.getMatchingListeners(new StatementImpl(graph, b, b, c)).isEmpty());
+	}
+	
+	public void testNullPatternMatchesEverything() {
+		ListenerIndex<QuadPattern> index = new ListenerIndex<QuadPattern>();
+		ModelChangedListener listener = listener();
+		index.put(listener, null);
+		assertEquals(1, index.getMatchingListeners(new StatementImpl(null, a, b, c)).size());
+	}
+	
+}
@@ -0,0 +1,121 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.ontoware.rdf2go.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+/**
+ * @author agent
+ */
+public class MerkleTreeTest extends TestCase {
+
+	private static final URI p = new URIImpl("test://test/p", false);
+
+	private static Statement statement(int i) {
+		return new StatementImpl(null, new URIImpl("test://test/s" + i, false), p,
+		        new PlainLiteralImpl("o" + i));
+	}
+
+	public void testOrderIndependent() {
+		MerkleTree forward = new MerkleTree(4);
+		MerkleTree backward = new MerkleTree(4);
+		for(int i = 0; i < 100; i++) {
+			forward.add(statement(i));
+			backward.add(statement(99 - i));
+		}
+		assertEquals(100, forward.size());
+		assertEquals(forward.getRootHash(), backward.getRootHash());
+		assertTrue(forward.getDifferingBuckets(backward).isEmpty());
+	}
+
+	public void testRemoveRestoresHash() {
+		MerkleTree tree = new MerkleTree(4);
+		assertEquals(0, tree.getRootHash());
+		tree.add(statement(1));
+		long one = tree.getRootHash();
+		tree.add(statement(2));
+		assertFalse(one == tree.getRootHash());
+		tree.remove(statement(2));
+		assertEquals(one, tree.getRootHash());
+		tree.remove(statement(1));
+		assertEquals(0, tree.getRootHash());
+		assertEquals(0, tree.size());
+	}
+
+	public void testDifferingBuckets() {
+		MerkleTree master = new MerkleTree(6);
+		MerkleTree replica = new MerkleTree(6);
+		for(int i = 0; i < 50; i++) {
+			master.add(statement(i));
+			replica.add(statement(i));
+		}
+		master.add(statement(50));
+		replica.remove(statement(7));
+		List<Integer> buckets = master.getDifferingBuckets(replica);
+		int added = master.getBucket(statement(50).getSubject());
+		int removed = master.getBucket(statement(7).getSubject());
+		if(added == removed) {
+			assertEquals(Arrays.asList(added), buckets);
+		} else {
+			assertEquals(Arrays.asList(Math.min(added, removed), Math.max(added, removed)),
+			        buckets);
+		}
+		assertEquals(buckets, replica.getDifferingBuckets(master));
+	}
+
+	public void testClear() {
+		MerkleTree tree = new MerkleTree(2);
+		tree.add(statement(1));
+		tree.clear();
+		assertEquals(0, tree.getRootHash());
+		assertEquals(0, tree.size());
+		assertTrue(tree.getSubjects(tree.getBucket(statement(1).getSubject())).isEmpty());
+	}
+
+	public void testRemoveAbsent() {
+		MerkleTree tree = new MerkleTree(2);
+		tree.add(statement(1));
+		try {
+			tree.remove(statement(2));
+			fail("removing an absent statement must fail");
+		} catch(IllegalStateException e) {
+			// expected
+		}
+		assertEquals(1, tree.size());
+	}
+
+	public void testDepth() {
+		assertEquals(1, new MerkleTree(0).getBucketCount());
+		assertEquals(1024, new MerkleTree(10).getBucketCount());
+		try {
+			new MerkleTree(MerkleTree.MAX_DEPTH + 1);
+			fail("depth above the maximum must fail");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			new MerkleTree(4).getDifferingBuckets(new MerkleTree(5));
+			fail("trees of different depth are not comparable");
+		} catch(IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+}
@@ -21,11 +21,15 @@
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractModel;
+import org.ontoware.rdf2go.model.impl.AbstractTransaction;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModel;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.DatatypeLiteral;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
@@ -36,8 +40,11 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.GraphUtil;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.graph.compose.Delta;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
@@ -51,6 +58,7 @@
 import com.hp.hpl.jena.rdf.model.impl.RDFWriterFImpl;
 import com.hp.hpl.jena.reasoner.ReasonerRegistry;
 import com.hp.hpl.jena.shared.BadURIException;
+import com.hp.hpl.jena.shared.Lock;
 
 
 // import de.fuberlin.wiwiss.ng4j.triql.TriQLQuery;
@@ -79,6 +87,12 @@ public class ModelImplJena extends AbstractModel implements Model {
 	
 	private boolean locked;
 	
+	/**
+	 * the active transaction, its changes are only visible to the thread which
+	 * began it
+	 */
+	private volatile DeltaTransaction transaction;
+	
 	/**
 	 * @param contextURI the first part of the quad, never null
 	 * @param reasoning never null
@@ -126,7 +140,7 @@ public void addAll(Iterator<? extends Statement> other) throws ModelRuntimeExcep
 		if(other instanceof ModelImplJena) {
 			com.hp.hpl.jena.rdf.model.Model otherJenaModel = (com.hp.hpl.jena.rdf.model.Model)((ModelImplJena)other)
 			        .getUnderlyingModelImplementation();
-			this.jenaModel.add(otherJenaModel);
+			model().add(otherJenaModel);
 		} else
 			super.addAll(other);
 	}
@@ -174,33 +188,34 @@ public void addStatement(org.ontoware.rdf2go.model.node.Resource subject, URI pr
 		try {
 			log.debug("adding a statement (" + subject + "," + predicate + "," + object + ")");
 			this.modificationCount++;
+			com.hp.hpl.jena.rdf.model.Model model = model();
 			if(!(object instanceof DatatypeLiteral)) {
-				this.jenaModel.getGraph().add(
-				        new Triple(TypeConversion.toJenaNode(subject, this.jenaModel),
-				                TypeConversion.toJenaNode(predicate, this.jenaModel),
-				                TypeConversion.toJenaNode(object, this.jenaModel)));
+				model.getGraph().add(
+				        new Triple(TypeConversion.toJenaNode(subject, model),
+				                TypeConversion.toJenaNode(predicate, model),
+				                TypeConversion.toJenaNode(object, model)));
 			} else
 			// DatatypeLiteral
 			{
 				// build Resources/Literals
 				Resource s = null;
 				if(subject instanceof URI) {
-					s = this.jenaModel.createResource(subject.toString());
+					s = model.createResource(subject.toString());
 				} else
 				// subject is a BlankNode
 				{
-					s = this.jenaModel.createResource(((Node)((AbstractBlankNodeImpl)subject)
+					s = model.createResource(((Node)((AbstractBlankNodeImpl)subject)
 					        .getUnderlyingBlankNode()).getBlankNodeId());
 				}
 				
-				Property p = this.jenaModel.createProperty(predicate.toString());
+				Property p = model.createProperty(predicate.toString());
 				
 				String datatypeValue = ((DatatypeLiteral)object).getValue();
 				String datatypeURI = ((DatatypeLiteral)object).getDatatype().toString();
-				Literal o = this.jenaModel.createTypedLiteral(datatypeValue, datatypeURI);
+				Literal o = model.createTypedLiteral(datatypeValue, datatypeURI);
 				
 				// Add the statement to the model
-				this.jenaModel.add(s, p, o);
+				model.add(s, p, o);
 			}
 		} catch(BadURIException e) {
 			throw new ModelRuntimeException(e);
@@ -220,12 +235,13 @@ public void removeStatement(org.ontoware.rdf2go.model.node.Resource subject, URI
 		
 		log.debug("removing a statement (" + subject + "," + predicate + "," + object + ")");
 		this.modificationCount++;
-		this.jenaModel.getGraph().delete(
+		com.hp.hpl.jena.rdf.model.Model model = model();
+		model.getGraph().delete(
 		        new Triple(
 		        
-		        TypeConversion.toJenaNode(subject, this.jenaModel), TypeConversion.toJenaNode(
-		                predicate, this.jenaModel), TypeConversion.toJenaNode(object,
-		                this.jenaModel)));
+		        TypeConversion.toJenaNode(subject, model), TypeConversion.toJenaNode(
+		                predicate, model), TypeConversion.toJenaNode(object,
+		                model)));
 	}
 	
 	@Override
@@ -233,7 +249,7 @@ public QueryResultTable sparqlSelect(String queryString) throws ModelRuntimeExce
 		assertModel();
 		log.debug("Query " + queryString);
 		Query query = QueryFactory.create(queryString);
-		return new QueryResultTableImpl(query, this.jenaModel);
+		return new QueryResultTableImpl(query, model());
 	}
 	
 	@Override
@@ -241,7 +257,7 @@ public ClosableIterable<Statement> sparqlConstruct(String queryString)
 	        throws ModelRuntimeException {
 		assertModel();
 		Query query = QueryFactory.create(queryString);
-		QueryExecution qexec = QueryExecutionFactory.create(query, this.jenaModel);
+		QueryExecution qexec = QueryExecutionFactory.create(query, model());
 		
 		if(query.isConstructType()) {
 			com.hp.hpl.jena.rdf.model.Model m = qexec.execConstruct();
@@ -263,7 +279,7 @@ public boolean sparqlAsk(String queryString) throws ModelRuntimeException {
 			throw new ModelRuntimeException("The given query is not an ASK query");
 		}
 		// else
-		QueryExecution qexec = QueryExecutionFactory.create(query, this.jenaModel);
+		QueryExecution qexec = QueryExecutionFactory.create(query, model());
 		return qexec.execAsk();
 	}
 	
@@ -275,7 +291,7 @@ public ClosableIterable<Statement> sparqlDescribe(String queryString)
 	        throws ModelRuntimeException {
 		assertModel();
 		Query query = QueryFactory.create(queryString);
-		QueryExecution qexec = QueryExecutionFactory.create(query, this.jenaModel);
+		QueryExecution qexec = QueryExecutionFactory.create(query, model());
 		
 		if(query.isDescribeType()) {
 			com.hp.hpl.jena.rdf.model.Model m = qexec.execDescribe();
@@ -296,7 +312,7 @@ public ClosableIterable<Statement> sparqlDescribe(String queryString)
 	 */
 	public com.hp.hpl.jena.rdf.model.Model getInternalJenaModel() {
 		assertModel();
-		return this.jenaModel;
+		return model();
 	}
 	
 	/*
@@ -307,7 +323,7 @@ public com.hp.hpl.jena.rdf.model.Model getInternalJenaModel() {
 	@Override
 	public long size() throws ModelRuntimeException {
 		assertModel();
-		return (int)this.jenaModel.size();
+		return (int)model().size();
 	}
 	
 	/**
@@ -320,7 +336,7 @@ public long getModificationCount() {
 	
 	@Override
 	public Object getUnderlyingModelImplementation() {
-		return this.jenaModel;
+		return model();
 	}
 	
 	public void setUnderlyingModelImplementation(Object o) {
@@ -331,7 +347,7 @@ public void setUnderlyingModelImplementation(Object o) {
 	@Override
 	public ClosableIterator<Statement> iterator() {
 		assertModel();
-		return new TripleIterator(this.jenaModel.getGraph().find(Node.ANY, Node.ANY, Node.ANY),
+		return new TripleIterator(model().getGraph().find(Node.ANY, Node.ANY, Node.ANY),
 		        this.modificationCount, this);
 	}
 	
@@ -375,7 +391,7 @@ public ClosableIterator<Statement> findStatements(ResourceOrVariable subject,
 	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
 		assertModel();
 		
-		return new TripleIterator(this.jenaModel.getGraph().find(
+		return new TripleIterator(model().getGraph().find(
 		        TypeConversion.toJenaNode(subject), TypeConversion.toJenaNode(predicate),
 		        TypeConversion.toJenaNode(object)), this.modificationCount, this);
 	}
@@ -394,7 +410,7 @@ public void readFrom(Reader reader, Syntax syntax) {
 	public void readFrom(Reader reader, Syntax syntax, String baseURI) {
 		assertModel();
 
-		RDFDataMgr.read(this.jenaModel, reader, baseURI, getJenaLang(syntax));
+		RDFDataMgr.read(model(), reader, baseURI, getJenaLang(syntax));
 	}
 	
 	private static void registerNamespaces(com.hp.hpl.jena.rdf.model.Model jenaModel) {
@@ -414,9 +430,9 @@ public void writeTo(Writer w) {
 	@Override
 	public void writeTo(Writer writer, Syntax syntax) {
 		assertModel();
-		registerNamespaces(this.jenaModel);
+		registerNamespaces(model());
 
-		RDFDataMgr.write(writer, this.jenaModel, RDFWriterRegistry.defaultSerialization(getJenaLang(syntax)));
+		RDFDataMgr.write(writer, model(), RDFWriterRegistry.defaultSerialization(getJenaLang(syntax)));
 	}
 	
 	@Override
@@ -440,7 +456,7 @@ public void readFrom(InputStream in, Syntax syntax, String baseURI) throws IOExc
 		assertModel();
 		assert in != null;
 
-		RDFDataMgr.read(this.jenaModel, in, baseURI, getJenaLang(syntax));
+		RDFDataMgr.read(model(), in, baseURI, getJenaLang(syntax));
 
 	}
 
@@ -459,7 +475,7 @@ public void writeTo(OutputStream out) throws ModelRuntimeException {
 	public void writeTo(OutputStream out, Syntax syntax) throws ModelRuntimeException {
 		assertModel();
 
-		RDFDataMgr.write(out, this.jenaModel, getJenaLang(syntax));
+		RDFDataMgr.write(out, model(), getJenaLang(syntax));
 	}
 	
     /**
@@ -486,12 +502,162 @@ public static Lang getJenaLang(Syntax syntax) throws SyntaxNotSupportedException
 	@Override
 	public boolean isIsomorphicWith(Model other) {
 		if(other instanceof ModelImplJena) {
-			return this.jenaModel.isIsomorphicWith(((ModelImplJena)other).getInternalJenaModel());
+			return model().isIsomorphicWith(((ModelImplJena)other).getInternalJenaModel());
 		} else {
 			// TODO: reasoning might be different
 			ModelImplJena otherJenaModel = new ModelImplJena(Reasoning.none);
 			otherJenaModel.addAll(other.iterator());
-			return this.jenaModel.isIsomorphicWith(otherJenaModel.getInternalJenaModel());
+			return model().isIsomorphicWith(otherJenaModel.getInternalJenaModel());
+		}
+	}
+	
+	/**
+	 * Copies the current content (including inferred statements) and the
+	 * namespace prefixes into a fresh in-memory Jena model while holding a
+	 * read lock, so the copy is consistent with respect to concurrent writers.
+	 * Jena in-memory models have no multi-version concurrency control, so this
+	 * is a full copy: it takes time and memory linear in the size of the model,
+	 * and lock-aware writers are blocked while it is made.
+	 */
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		assertModel();
+		com.hp.hpl.jena.rdf.model.Model model = model();
+		com.hp.hpl.jena.rdf.model.Model copy = ModelFactory.createDefaultModel();
+		model.enterCriticalSection(Lock.READ);
+		try {
+			copy.add(model);
+			copy.setNsPrefixes(model.getNsPrefixMap());
+		} finally {
+			model.leaveCriticalSection();
+		}
+		ModelImplJena snapshot = new ModelImplJena(this.contextURI, copy, Reasoning.none);
+		snapshot.open();
+		return new ReadOnlyModel(snapshot);
+	}
+	
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.READ_COMMITTED);
+	}
+	
+	/**
+	 * @return the Jena model the current thread works on: the working model of
+	 *         the active transaction if this thread began it, the underlying
+	 *         Jena model otherwise
+	 */
+	private com.hp.hpl.jena.rdf.model.Model model() {
+		DeltaTransaction current = this.transaction;
+		if(current != null && current.owner == Thread.currentThread()) {
+			return current.working;
+		}
+		return this.jenaModel;
+	}
+	
+	/**
+	 * Jena in-memory models have no native transactions. A transaction
+	 * collects its changes in a {@link Delta} over the current Jena model and
+	 * is bound to the thread which began it: only this thread reads and writes
+	 * through the delta, other threads keep working on the committed content.
+	 * The transaction has to be committed, rolled back or closed by the same
+	 * thread, otherwise a {@link ModelRuntimeException} is thrown. For
+	 * {@link IsolationLevel#SNAPSHOT} and stronger, the beginning thread holds
+	 * the write lock of the underlying Jena model until the transaction ends,
+	 * which blocks all other lock-aware readers and writers.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+	        throws ModelRuntimeException {
+		assertModel();
+		if(this.transaction != null) {
+			throw new ModelRuntimeException("A transaction is already active on this model");
+		}
+		this.transaction = new DeltaTransaction(isolationLevel);
+		return this.transaction;
+	}
+	
+	private class DeltaTransaction extends AbstractTransaction {
+		
+		private final com.hp.hpl.jena.rdf.model.Model base;
+		
+		private final Delta delta;
+		
+		private final com.hp.hpl.jena.rdf.model.Model working;
+		
+		private final boolean exclusive;
+		
+		/** the thread which began the transaction, Jena locks are per thread */
+		private final Thread owner = Thread.currentThread();
+		
+		public DeltaTransaction(IsolationLevel isolationLevel) {
+			super(isolationLevel);
+			this.base = ModelImplJena.this.jenaModel;
+			this.exclusive = isolationLevel.isCompatibleWith(IsolationLevel.SNAPSHOT);
+			if(this.exclusive) {
+				this.base.enterCriticalSection(Lock.WRITE);
+			}
+			this.delta = new Delta(this.base.getGraph());
+			this.working = ModelFactory.createModelForGraph(this.delta);
+			this.working.setNsPrefixes(this.base.getNsPrefixMap());
+		}
+		
+		private void assertOwner() {
+			if(this.owner != Thread.currentThread()) {
+				throw new ModelRuntimeException(
+				        "A transaction has to be ended by the thread which began it");
+			}
+		}
+		
+		@Override
+		public synchronized void commit() throws ModelRuntimeException {
+			assertOwner();
+			super.commit();
+		}
+		
+		@Override
+		public synchronized void rollback() throws ModelRuntimeException {
+			assertOwner();
+			super.rollback();
+		}
+		
+		@Override
+		public synchronized void close() throws ModelRuntimeException {
+			assertOwner();
+			super.close();
+		}
+		
+		@Override
+		protected void doCommit() throws ModelRuntimeException {
+			this.base.enterCriticalSection(Lock.WRITE);
+			try {
+				Graph graph = this.base.getGraph();
+				GraphUtil.deleteFrom(graph, this.delta.getDeletions());
+				GraphUtil.addInto(graph, this.delta.getAdditions());
+				Map<String,String> prefixes = this.working.getNsPrefixMap();
+				for(String prefix : this.base.getNsPrefixMap().keySet()) {
+					if(!prefixes.containsKey(prefix)) {
+						this.base.removeNsPrefix(prefix);
+					}
+				}
+				this.base.setNsPrefixes(prefixes);
+			} finally {
+				this.base.leaveCriticalSection();
+				ended();
+			}
+		}
+		
+		@Override
+		protected void doRollback() throws ModelRuntimeException {
+			ended();
+		}
+		
+		private void ended() {
+			synchronized(ModelImplJena.this) {
+				ModelImplJena.this.transaction = null;
+			}
+			if(this.exclusive) {
+				this.base.leaveCriticalSection();
+			}
 		}
 	}
 	
@@ -512,22 +678,22 @@ public boolean isValidURI(String uriString) {
 	
 	@Override
 	public String getNamespace(String prefix) {
-		return this.jenaModel.getNsPrefixURI(prefix);
+		return model().getNsPrefixURI(prefix);
 	}
 	
 	@Override
 	public Map<String,String> getNamespaces() {
-		return this.jenaModel.getNsPrefixMap();
+		return model().getNsPrefixMap();
 	}
 	
 	@Override
 	public void removeNamespace(String prefix) {
-		this.jenaModel.removeNsPrefix(prefix);
+		model().removeNsPrefix(prefix);
 	}
 	
 	@Override
 	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
-		this.jenaModel.setNsPrefix(prefix, namespaceURI);
+		model().setNsPrefix(prefix, namespaceURI);
 	}
 	
 	@Override
@@ -543,7 +709,7 @@ public QueryResultTable querySelect(String queryString, String querylanguage)
 			return super.querySelect(queryString, querylanguage);
 		}
 		Query query = QueryFactory.create(queryString, syntax);
-		return new QueryResultTableImpl(query, this.jenaModel);
+		return new QueryResultTableImpl(query, model());
 	}
 	
 	/**
@@ -560,7 +726,7 @@ public ClosableIterable<Statement> queryConstruct(String queryString, String que
 		}
 		Query query = QueryFactory.create(queryString, syntax);
 		
-		QueryExecution qexec = QueryExecutionFactory.create(query, this.jenaModel);
+		QueryExecution qexec = QueryExecutionFactory.create(query, model());
 		
 		if(query.isConstructType()) {
 			com.hp.hpl.jena.rdf.model.Model m = qexec.execConstruct();
@@ -574,12 +740,12 @@ public ClosableIterable<Statement> queryConstruct(String queryString, String que
 	
 	@Override
 	public boolean isEmpty() {
-		return this.jenaModel.isEmpty();
+		return model().isEmpty();
 	}
 
 	@Override
 	public void removeAll() throws ModelRuntimeException {
-		this.jenaModel.removeAll();
+		model().removeAll();
 	}
 
 	@Override
@@ -587,7 +753,7 @@ public void addModel(Model model) {
 		if (model.getUnderlyingModelImplementation() instanceof com.hp.hpl.jena.rdf.model.Model) {
 			com.hp.hpl.jena.rdf.model.Model otherJenaModel = (com.hp.hpl.jena.rdf.model.Model) model
 					.getUnderlyingModelImplementation();
-			this.jenaModel.add(otherJenaModel);
+			model().add(otherJenaModel);
 		} else {
 			super.addModel(model);
 		}
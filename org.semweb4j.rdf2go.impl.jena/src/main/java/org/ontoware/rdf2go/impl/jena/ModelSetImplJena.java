@@ -8,8 +8,12 @@
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.input.ReaderInputStream;
 import org.apache.commons.io.output.WriterOutputStream;
@@ -25,13 +29,17 @@
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractModelSetImpl;
+import org.ontoware.rdf2go.model.impl.AbstractTransaction;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModelSet;
 import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.Resource;
@@ -41,10 +49,13 @@
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
 
+import com.hp.hpl.jena.query.DatasetFactory;
 import com.hp.hpl.jena.query.Query;
 import com.hp.hpl.jena.query.QueryExecution;
 import com.hp.hpl.jena.query.QueryExecutionFactory;
 import com.hp.hpl.jena.query.QueryFactory;
+import com.hp.hpl.jena.query.ReadWrite;
+import com.hp.hpl.jena.sparql.core.Quad;
 
 
 /**
@@ -64,8 +75,8 @@ public class ModelSetImplJena extends AbstractModelSetImpl {
 	
 	private final com.hp.hpl.jena.query.Dataset dataset;
 	private final com.hp.hpl.jena.shared.Lock lock;
-	private Query countStatementsQuery;
 	private boolean open = true;
+	private DatasetTransaction transaction;
 	
 	private static class ContextIterator implements ClosableIterator<URI> {
 
@@ -288,6 +299,9 @@ public Model getModel(URI contextURI) {
 
 	@Override
 	public boolean removeModel(URI contextURI) {
+		if (isLogging()) {
+			removeStatements(contextURI, Variable.ANY, Variable.ANY, Variable.ANY);
+		}
 		this.dataset.removeNamedModel(contextURI.toString());
 		return true;
 	}
@@ -327,6 +341,40 @@ public Object getUnderlyingModelSetImplementation() {
 		return this.dataset;
 	}
 
+	/**
+	 * Copies the default graph and all named graphs into a fresh in-memory
+	 * dataset while holding the read lock of the dataset, so the copy is
+	 * consistent with respect to concurrent writers. In-memory datasets have no
+	 * multi-version concurrency control, so this is a full copy: it takes time
+	 * and memory linear in the number of statements, and writers are blocked
+	 * while it is made.
+	 */
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		com.hp.hpl.jena.query.Dataset copy = DatasetFactory.createMem();
+		this.lock.enterCriticalSection(com.hp.hpl.jena.shared.Lock.READ);
+		try {
+			copyInto(this.dataset.getDefaultModel(), copy.getDefaultModel());
+			Iterator<String> it = this.dataset.listNames();
+			while (it.hasNext()) {
+				String name = it.next();
+				com.hp.hpl.jena.rdf.model.Model named = com.hp.hpl.jena.rdf.model.ModelFactory
+						.createDefaultModel();
+				copyInto(this.dataset.getNamedModel(name), named);
+				copy.addNamedModel(name, named);
+			}
+		} finally {
+			this.lock.leaveCriticalSection();
+		}
+		return new ReadOnlyModelSet(new ModelSetImplJena(copy));
+	}
+
+	private static void copyInto(com.hp.hpl.jena.rdf.model.Model source,
+			com.hp.hpl.jena.rdf.model.Model target) {
+		target.add(source);
+		target.setNsPrefixes(source.getNsPrefixMap());
+	}
+
 	@Override
 	public ClosableIterable<Statement> queryConstruct(String query,
 			String querylanguage) throws QueryLanguageNotSupportedException,
@@ -472,6 +520,16 @@ public void readFrom(InputStream in, Syntax syntax) throws IOException,
 	public void readFrom(InputStream in, Syntax syntax, String baseURI)
 			throws IOException, ModelRuntimeException,
 			SyntaxNotSupportedException {
+		if (isLogging()) {
+			com.hp.hpl.jena.sparql.core.DatasetGraph parsed = DatasetFactory
+					.createMem().asDatasetGraph();
+			RDFDataMgr.read(parsed, in, baseURI, getJenaLang(syntax));
+			Iterator<Quad> it = parsed.find();
+			while (it.hasNext()) {
+				addQuad(it.next());
+			}
+			return;
+		}
 
 		RDFDataMgr.read(this.dataset.asDatasetGraph(), in, baseURI, getJenaLang(syntax));
 	}
@@ -572,15 +630,22 @@ public void addStatement(URI context, Resource subject, URI predicate,
 		} else {
 			jenaModel = this.dataset.getDefaultModel();
 		}
-		jenaModel.getGraph().add(
-				new com.hp.hpl.jena.graph.Triple(TypeConversion.toJenaNode(
-						subject, jenaModel), TypeConversion.toJenaNode(
-						predicate, jenaModel), TypeConversion.toJenaNode(
-						object, jenaModel)));
+		com.hp.hpl.jena.graph.Triple triple = new com.hp.hpl.jena.graph.Triple(
+				TypeConversion.toJenaNode(subject, jenaModel),
+				TypeConversion.toJenaNode(predicate, jenaModel),
+				TypeConversion.toJenaNode(object, jenaModel));
+		if (isLogging()) {
+			addQuad(new Quad(graphNode(context), triple));
+		} else {
+			jenaModel.getGraph().add(triple);
+		}
 	}
 
 	@Override
 	public void removeAll() throws ModelRuntimeException {
+		if (isLogging()) {
+			removeQuads(this.dataset.asDatasetGraph().find());
+		}
 		// Empty the default graph
 		this.dataset.getDefaultModel().removeAll();
 		// Remove all named graphs
@@ -602,6 +667,15 @@ public void removeStatements(QuadPattern quadPattern)
     public void removeStatements(UriOrVariable context,
 			ResourceOrVariable subject, UriOrVariable predicate,
 			NodeOrVariable object) throws ModelRuntimeException {
+		if (isLogging()) {
+			removeQuads(this.dataset.asDatasetGraph().find(
+					(context != null) ? TypeConversion.toJenaNode(context)
+							: com.hp.hpl.jena.graph.Node.ANY,
+					TypeConversion.toJenaNode(subject),
+					TypeConversion.toJenaNode(predicate),
+					TypeConversion.toJenaNode(object)));
+			return;
+		}
 		this.dataset.asDatasetGraph().deleteAny(
 				(context != null) ? TypeConversion.toJenaNode(context)
 						: com.hp.hpl.jena.graph.Node.ANY,
@@ -621,7 +695,16 @@ public void removeStatement(Statement statement)
 	public void removeStatement(URI context, Resource subject, URI predicate,
 			Node object) throws ModelRuntimeException {
 		
-		if (context == null) {
+		if (isLogging()) {
+			Quad quad = new Quad(graphNode(context),
+					TypeConversion.toJenaNode(subject),
+					TypeConversion.toJenaNode(predicate),
+					TypeConversion.toJenaNode(object));
+			if (this.dataset.asDatasetGraph().contains(quad)) {
+				this.dataset.asDatasetGraph().delete(quad);
+				this.transaction.removed(quad);
+			}
+		} else if (context == null) {
 			this.dataset
 					.getDefaultModel()
 					.getGraph()
@@ -640,38 +723,20 @@ public void removeStatement(URI context, Resource subject, URI predicate,
 
 	@Override
     public long countStatements(QuadPattern pattern) {
-		String context = (pattern.getContext() != null) ? pattern.getContext()
-				.toString() : com.hp.hpl.jena.graph.Node.ANY.getName();
-		String subject = pattern.getSubject().toString();
-		String predicate = pattern.getPredicate().toString();
-		String object = pattern.getObject().toString();
-
-		com.hp.hpl.jena.query.QuerySolutionMap initialBindings =
-				new com.hp.hpl.jena.query.QuerySolutionMap();
-		if (pattern.getContext() != null) {
-			initialBindings.add("c", this.dataset.getDefaultModel()
-					.createResource(context));
-		}
-		initialBindings.add("s",
-				this.dataset.getDefaultModel().createResource(subject));
-		initialBindings.add("p",
-				this.dataset.getDefaultModel().createResource(predicate));
-		initialBindings.add("o",
-				this.dataset.getDefaultModel().createResource(object));
-
-		String query = "SELECT (count(*) AS ?count) WHERE { GRAPH ?c { ?s ?p ?o } }";
-
-		// Initialize the reusable query
-		if (this.countStatementsQuery == null) {
-			this.countStatementsQuery = QueryFactory.create(query,
-					com.hp.hpl.jena.query.Syntax.syntaxARQ);
+		// counted while matching, as variables cannot be bound in a query
+		Iterator<?> it = this.dataset.asDatasetGraph().find(
+				(pattern.getContext() != null) ? TypeConversion
+						.toJenaNode(pattern.getContext())
+						: com.hp.hpl.jena.graph.Node.ANY,
+				TypeConversion.toJenaNode(pattern.getSubject()),
+				TypeConversion.toJenaNode(pattern.getPredicate()),
+				TypeConversion.toJenaNode(pattern.getObject()));
+		long count = 0;
+		while (it.hasNext()) {
+			it.next();
+			count++;
 		}
-
-		QueryExecution exec = QueryExecutionFactory.create(
-				this.countStatementsQuery, this.dataset, initialBindings);
-		QueryResultTable result = new QueryResultTableImpl(exec);
-		return Long
-				.parseLong(result.iterator().next().getLiteralValue("count"));
+		return count;
 	}
 
 	@Override
@@ -707,6 +772,141 @@ public void commit() throws ModelRuntimeException {
 	public void setAutocommit(boolean autocommit) {
 	}
 
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.READ_COMMITTED);
+	}
+
+	/**
+	 * If the dataset supports transactions (e.g. TDB), a Jena write
+	 * transaction is used. Otherwise the write lock of the dataset is held
+	 * until the transaction ends, and all statements added or removed through
+	 * this ModelSet are recorded, so they can be undone on rollback. This
+	 * means the transaction gives {@link IsolationLevel#SERIALIZABLE}
+	 * behaviour regardless of the requested level. Namespace changes and
+	 * changes made through models obtained from {@link #getModel(URI)} are
+	 * not recorded. Like the Jena lock, the transaction has to be ended by the
+	 * thread that started it.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+			throws ModelRuntimeException {
+		if (this.transaction != null) {
+			throw new ModelRuntimeException(
+					"A transaction is already active on this ModelSet");
+		}
+		this.transaction = new DatasetTransaction(isolationLevel);
+		return this.transaction;
+	}
+
+	private class DatasetTransaction extends AbstractTransaction {
+
+		/** statements added resp. removed by this transaction, null if native */
+		private final Set<Quad> added;
+		private final Set<Quad> removed;
+
+		public DatasetTransaction(IsolationLevel isolationLevel) {
+			super(isolationLevel);
+			if (ModelSetImplJena.this.dataset.supportsTransactions()) {
+				ModelSetImplJena.this.dataset.begin(ReadWrite.WRITE);
+				this.added = null;
+				this.removed = null;
+			} else {
+				ModelSetImplJena.this.lock
+						.enterCriticalSection(com.hp.hpl.jena.shared.Lock.WRITE);
+				this.added = new HashSet<Quad>();
+				this.removed = new HashSet<Quad>();
+			}
+		}
+
+		void added(Quad quad) {
+			if (!this.removed.remove(quad)) {
+				this.added.add(quad);
+			}
+		}
+
+		void removed(Quad quad) {
+			if (!this.added.remove(quad)) {
+				this.removed.add(quad);
+			}
+		}
+
+		@Override
+		protected void doCommit() throws ModelRuntimeException {
+			try {
+				if (this.added == null) {
+					ModelSetImplJena.this.dataset.commit();
+				}
+			} finally {
+				ended();
+			}
+		}
+
+		@Override
+		protected void doRollback() throws ModelRuntimeException {
+			try {
+				if (this.added == null) {
+					ModelSetImplJena.this.dataset.abort();
+				} else {
+					com.hp.hpl.jena.sparql.core.DatasetGraph dsg = ModelSetImplJena.this.dataset
+							.asDatasetGraph();
+					for (Quad quad : this.added) {
+						dsg.delete(quad);
+					}
+					for (Quad quad : this.removed) {
+						dsg.add(quad);
+					}
+				}
+			} finally {
+				ended();
+			}
+		}
+
+		private void ended() {
+			synchronized (ModelSetImplJena.this) {
+				ModelSetImplJena.this.transaction = null;
+			}
+			if (this.added == null) {
+				ModelSetImplJena.this.dataset.end();
+			} else {
+				ModelSetImplJena.this.lock.leaveCriticalSection();
+			}
+		}
+	}
+
+	/**
+	 * @return true if changes have to be recorded for a rollback
+	 */
+	private boolean isLogging() {
+		return this.transaction != null && this.transaction.added != null;
+	}
+
+	private void addQuad(Quad quad) {
+		com.hp.hpl.jena.sparql.core.DatasetGraph dsg = this.dataset.asDatasetGraph();
+		if (!dsg.contains(quad)) {
+			dsg.add(quad);
+			this.transaction.added(quad);
+		}
+	}
+
+	private void removeQuads(Iterator<Quad> it) {
+		// materialise first, the underlying graphs do not allow concurrent modification
+		List<Quad> quads = new ArrayList<Quad>();
+		while (it.hasNext()) {
+			quads.add(it.next());
+		}
+		com.hp.hpl.jena.sparql.core.DatasetGraph dsg = this.dataset.asDatasetGraph();
+		for (Quad quad : quads) {
+			dsg.delete(quad);
+			this.transaction.removed(quad);
+		}
+	}
+
+	private static com.hp.hpl.jena.graph.Node graphNode(URI context) {
+		return (context != null) ? TypeConversion.toJenaNode(context)
+				: Quad.defaultGraphIRI;
+	}
+
 	@Override
 	public String getNamespace(String prefix) {
 		// We use the default model because there is no prefix mapping on
@@ -788,8 +988,8 @@ public boolean addModel(Model model) {
 			this.dataset.getDefaultModel().setNsPrefix(prefix, model.getNamespace(prefix));
 		}
 			
-		if (model instanceof ModelImplJena) {
-			this.dataset.getNamedModel(model.getContextURI().toString()).add(
+		if (model instanceof ModelImplJena && !isLogging()) {
+			jenaModel(model.getContextURI()).add(
 					((com.hp.hpl.jena.rdf.model.Model) model
 							.getUnderlyingModelImplementation()));
 			return true;
@@ -799,14 +999,38 @@ public boolean addModel(Model model) {
 		}
 	}
 
+	/**
+	 * Graphs of another Jena model set are added graph by graph, without
+	 * converting the statements.
+	 */
+	@Override
+	public void addModelSet(ModelSet modelSet) throws ModelRuntimeException {
+		if (modelSet instanceof ModelSetImplJena && modelSet != this && !isLogging()) {
+			com.hp.hpl.jena.query.Dataset other = ((ModelSetImplJena) modelSet).dataset;
+			this.dataset.getDefaultModel().add(other.getDefaultModel());
+			Iterator<String> it = other.listNames();
+			while (it.hasNext()) {
+				String name = it.next();
+				this.dataset.getNamedModel(name).add(other.getNamedModel(name));
+			}
+		} else {
+			super.addModelSet(modelSet);
+		}
+	}
+
+	private com.hp.hpl.jena.rdf.model.Model jenaModel(URI contextURI) {
+		return contextURI == null ? this.dataset.getDefaultModel() : this.dataset
+				.getNamedModel(contextURI.toString());
+	}
+
 	@Override
 	public void addModel(Model model, URI contextURI) {
 		for (String prefix : model.getNamespaces().keySet()) {
 			this.dataset.getDefaultModel().setNsPrefix(prefix, model.getNamespace(prefix));
 		}
 		
-		if (model instanceof ModelImplJena) {
-			this.dataset.getNamedModel(contextURI.toString()).add(
+		if (model instanceof ModelImplJena && !isLogging()) {
+			jenaModel(contextURI).add(
 					((com.hp.hpl.jena.rdf.model.Model) model
 							.getUnderlyingModelImplementation()));
 		}
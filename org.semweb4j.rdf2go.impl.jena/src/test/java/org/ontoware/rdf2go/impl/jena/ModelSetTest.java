@@ -13,8 +13,11 @@
 import org.ontoware.rdf2go.ModelFactory;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.AbstractModelSetTest;
+import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.testdata.TestData;
 
 public class ModelSetTest extends AbstractModelSetTest {
@@ -108,5 +111,50 @@ public void testSerialize() throws Exception {
 		assertEquals(getModelSet().size(), m1.size());
 		m1.close();
 	}
+	
+	/**
+	 * Jena models and model sets are added graph by graph without converting
+	 * the statements.
+	 */
+	@Test
+	public void testAddJenaModels() {
+		ModelSet modelSet = getModelFactory().createModelSet();
+		modelSet.open();
+		Model model = getModelFactory().createModel();
+		model.open();
+		try {
+			model.addStatement(a, b, c);
+			BlankNode blank = model.createBlankNode();
+			model.addStatement(blank, a, c);
+			
+			modelSet.addModel(model, graphuri1);
+			Model graph = modelSet.getModel(graphuri1);
+			assertEquals(2, graph.size());
+			assertTrue(graph.contains(blank, a, c));
+			// to the same graph again
+			modelSet.addModel(graph, graphuri1);
+			assertEquals(2, graph.size());
+			graph.close();
+			
+			// the null context is the default graph
+			modelSet.addModel(model, null);
+			Model defaultModel = modelSet.getDefaultModel();
+			assertEquals(2, defaultModel.size());
+			defaultModel.close();
+			
+			ModelSet copy = getModelFactory().createModelSet();
+			copy.open();
+			copy.addModelSet(modelSet);
+			assertEquals(modelSet.size(), copy.size());
+			assertTrue(copy.containsStatements(graphuri1, blank, a, c));
+			defaultModel = copy.getDefaultModel();
+			assertTrue(defaultModel.contains(Variable.ANY, a, c));
+			defaultModel.close();
+			copy.close();
+		} finally {
+			model.close();
+			modelSet.close();
+		}
+	}
 
 }
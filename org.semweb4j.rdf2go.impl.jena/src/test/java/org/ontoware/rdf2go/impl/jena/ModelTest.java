@@ -1,12 +1,19 @@
 package org.ontoware.rdf2go.impl.jena;
 
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 import org.ontoware.rdf2go.ModelFactory;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.AbstractModelTest;
+import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
+import org.ontoware.rdf2go.model.node.BlankNode;
 
 public class ModelTest extends AbstractModelTest {
 
@@ -44,4 +51,82 @@ public void testWriteToSyntaxFiles() throws ModelRuntimeException, IOException {
 		
 		super.testWriteToSyntaxFiles();
 	}
+	
+	/**
+	 * Jena models are added to each other without converting the statements.
+	 */
+	@Test
+	public void testAddJenaModel() {
+		Model source = getModelFactory().createModel();
+		source.open();
+		Model target = getModelFactory().createModel();
+		target.open();
+		try {
+			source.addStatement(a, b, c);
+			BlankNode blank = source.createBlankNode();
+			source.addStatement(blank, a, c);
+			target.addModel(source);
+			assertEquals(2, target.size());
+			// the very same blank node
+			assertTrue(target.contains(blank, a, c));
+			
+			// adding a model to itself changes nothing
+			source.addModel(source);
+			assertEquals(2, source.size());
+		} finally {
+			source.close();
+			target.close();
+		}
+	}
+	
+	/**
+	 * The changes of a transaction are only visible to the thread which began
+	 * it, and only this thread can end it.
+	 */
+	@Test
+	public void testTransactionIsBoundToThread() throws Exception {
+		final Model model = getModelFactory().createModel();
+		model.open();
+		ExecutorService other = Executors.newSingleThreadExecutor();
+		try {
+			model.addStatement(a, b, c);
+			final Transaction tx = model.begin();
+			model.addStatement(b, b, c);
+			model.removeStatement(a, b, c);
+			assertTrue(model.contains(b, b, c));
+			assertFalse(model.contains(a, b, c));
+			
+			// other threads see the committed content
+			assertTrue(other.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return model.contains(a, b, c) && !model.contains(b, b, c);
+				}
+			}).get());
+			try {
+				other.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						tx.commit();
+						return null;
+					}
+				}).get();
+				fail("only the beginning thread may commit");
+			} catch(ExecutionException e) {
+				assertTrue(e.getCause() instanceof ModelRuntimeException);
+			}
+			assertTrue(tx.isActive());
+			
+			tx.commit();
+			assertTrue(other.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() {
+					return !model.contains(a, b, c) && model.contains(b, b, c);
+				}
+			}).get());
+		} finally {
+			other.shutdown();
+			model.close();
+		}
+	}
 }
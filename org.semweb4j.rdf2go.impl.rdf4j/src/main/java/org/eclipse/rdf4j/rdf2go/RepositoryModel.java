@@ -5,6 +5,7 @@
  */
 package org.eclipse.rdf4j.rdf2go;
 
+import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.common.iteration.CloseableIteration;
 
 import java.io.IOException;
@@ -23,13 +24,15 @@
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
-import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractLockingModel;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModel;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
@@ -38,6 +41,7 @@
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.UriOrVariable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.util.ModelCanonicalizer;
 import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Value;
@@ -305,6 +309,39 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 		}
 	}
 
+	/**
+	 * Statements of another RepositoryModel are copied without conversion to
+	 * RDF2Go objects, see {@link StatementTransfer}.
+	 */
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		if (!(model instanceof RepositoryModel)) {
+			super.addModel(model);
+			return;
+		}
+		if (this.isLocked()) {
+			throw new ModelRuntimeException("Model is locked, cannot perform an update.");
+		}
+		assertModel();
+		RepositoryModel other = (RepositoryModel) model;
+		try {
+			ensureTransaction();
+			boolean done = false;
+			try {
+				StatementTransfer.copy(other.connection, other.rdf4jContext, this.connection,
+						this.rdf4jContext, other.repository == this.repository);
+				done = true;
+			} finally {
+				if (!done && this.autoCommit) {
+					this.connection.rollback();
+				}
+				ensureAutoCommitted();
+			}
+		} catch (RDF4JException x) {
+			throw new ModelRuntimeException(x);
+		}
+	}
+
 	@Override
 	public void removeStatement(Resource subject, URI predicate, Node object)
 			throws ModelRuntimeException {
@@ -716,12 +753,81 @@ protected void assertModel() {
 
 	@Override
 	public boolean isIsomorphicWith(Model other) {
-		ClosableIterator<Statement> it = other.iterator();
-		Diff diff = this.getDiff(it);
-		it.close();
-		Iterator<Statement> addIt = diff.getAdded().iterator();
-		Iterator<Statement> removeIt = diff.getAdded().iterator();
-		return !addIt.hasNext() && !removeIt.hasNext();
+		// compares blank nodes by structure, not by id
+		return ModelCanonicalizer.isIsomorphic(this, other);
+	}
+
+	/**
+	 * Opens a dedicated connection on the same repository and starts a
+	 * transaction with {@link IsolationLevels#SNAPSHOT} isolation on it. The
+	 * transaction is rolled back when the snapshot is closed, so no data is
+	 * copied.
+	 */
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		assertModel();
+		return new ReadOnlyModel(new SnapshotModel(getContextURI(), this.repository, null).open());
+	}
+
+	/**
+	 * A RepositoryModel reading within a snapshot transaction. It either owns
+	 * its connection and transaction or shares those of a snapshot ModelSet.
+	 */
+	static class SnapshotModel extends RepositoryModel {
+
+		private static final long serialVersionUID = -4713330236402542816L;
+
+		private final RepositoryConnection sharedConnection;
+
+		SnapshotModel(URI context, Repository repository, RepositoryConnection sharedConnection) {
+			super(context, repository);
+			this.sharedConnection = sharedConnection;
+		}
+
+		@Override
+		public Model open() {
+			if (isOpen()) {
+				return this;
+			}
+			if (this.sharedConnection != null) {
+				this.connection = this.sharedConnection;
+				return this;
+			}
+			super.open();
+			try {
+				beginSnapshot(this.connection);
+			} catch (RepositoryException e) {
+				super.close();
+				throw new ModelRuntimeException(e);
+			}
+			return this;
+		}
+
+		@Override
+		public void close() {
+			if (this.sharedConnection != null) {
+				this.connection = null;
+				return;
+			}
+			try {
+				if (isOpen() && this.connection.isActive()) {
+					this.connection.rollback();
+				}
+			} catch (RepositoryException e) {
+				throw new ModelRuntimeException(e);
+			} finally {
+				super.close();
+			}
+		}
+	}
+
+	/**
+	 * Starts a snapshot transaction and reads once, so the snapshot is taken
+	 * now rather than on first use.
+	 */
+	static void beginSnapshot(RepositoryConnection connection) throws RepositoryException {
+		connection.begin(IsolationLevels.SNAPSHOT);
+		connection.hasStatement(null, null, null, false);
 	}
 
 	@Override
@@ -810,6 +916,36 @@ public void setNamespace(String prefix, String namespaceURI) throws IllegalArgum
 		}
 	}
 
+	/**
+	 * Starts a transaction with {@link IsolationLevel#SNAPSHOT_READ}, the
+	 * default of the RDF4J native and memory stores.
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.SNAPSHOT_READ);
+	}
+
+	/**
+	 * Starts a transaction on the connection of this model with the
+	 * corresponding RDF4J isolation level. Until it ends,
+	 * {@link #addAll(Iterator)}, {@link #removeAll(Iterator)} and
+	 * {@link #update(DiffReader)} join it instead of committing on their own.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+			throws ModelRuntimeException {
+		assertModel();
+		Transaction transaction = new RepositoryTransaction(this.connection, isolationLevel) {
+
+			@Override
+			protected void ended() {
+				RepositoryModel.this.autoCommit = true;
+			}
+		};
+		this.autoCommit = false;
+		return transaction;
+	}
+
 	protected void ensureTransaction() {
 		if (!connection.isActive()) {
 			connection.begin();
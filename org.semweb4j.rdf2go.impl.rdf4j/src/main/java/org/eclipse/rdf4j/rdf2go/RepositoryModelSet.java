@@ -13,10 +13,8 @@
 import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.WeakHashMap;
 
 import org.ontoware.aifbcommons.collection.ClosableIterable;
@@ -24,13 +22,16 @@
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractModelSetImpl;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModelSet;
 import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.ResourceOrVariable;
@@ -38,6 +39,7 @@
 import org.ontoware.rdf2go.model.node.UriOrVariable;
 import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.eclipse.rdf4j.IsolationLevels;
 import org.eclipse.rdf4j.RDF4JException;
 import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Resource;
@@ -305,6 +307,8 @@ public void remove() {
 	
 	private ValueFactory valueFactory;
 	
+	private boolean autoCommit = true;
+	
 	private final WeakHashMap<RepositoryModel,Object> openModels = new WeakHashMap<RepositoryModel,Object>();
 	
 	public RepositoryModelSet(Repository repository) throws ModelRuntimeException {
@@ -320,7 +324,7 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 		this.assertModel();
 		try {
 			
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// add
@@ -332,12 +336,13 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 						        this.valueFactory);
 						this.connection.add(sd, context);
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -370,24 +375,11 @@ public boolean addModel(Model model) throws ModelRuntimeException {
 				// copy statements directly from Repository to Repository,
 				// without using RDF2Go-specific wrappers
 				org.eclipse.rdf4j.model.IRI context = repositoryModel.getRDF4JContextURI();
-				
-				RepositoryResult<org.eclipse.rdf4j.model.Statement> statements = null;
 				try {
-					statements = repositoryModel.connection.getStatements(null, null, null, false,
-					        context);
-					
-					// doesn't hurt to explicitly add them to the same context
-					this.connection.add(statements, context);
+					StatementTransfer.copy(repositoryModel.connection, context, this.connection,
+					        context, false);
 				} catch(RepositoryException e) {
 					throw new ModelRuntimeException(e);
-				} finally {
-					if(statements != null) {
-						try {
-							statements.close();
-						} catch(RepositoryException e) {
-							throw new ModelRuntimeException(e);
-						}
-					}
 				}
 			}
 		} else {
@@ -415,57 +407,14 @@ public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
 			org.eclipse.rdf4j.model.IRI targetContext = ConversionUtil.toRDF4J(contextURI,
 			        this.valueFactory);
 			
-			if(repositoryModel.repository == this.repository) {
-				// When both instances use the same Repository instance, we need
-				// to copy
-				
-				// find the matching RDF4J Statements
-				try {
-					RepositoryResult<org.eclipse.rdf4j.model.Statement> statements = repositoryModel.connection
-					        .getStatements(null, null, null, true);
-					// buffer in memory to avoid deadlocks due to mixed
-					// read/write
-					Set<org.eclipse.rdf4j.model.Statement> stmts = new HashSet<org.eclipse.rdf4j.model.Statement>();
-					while (statements.hasNext()) {
-						stmts.add(statements.next());
-					}
-					// now insert with a different context URI
-					for(org.eclipse.rdf4j.model.Statement stmt : stmts) {
-						this.valueFactory.createStatement(stmt.getSubject(), stmt.getPredicate(),
-						        stmt.getObject(), targetContext);
-					}
-				} catch(RepositoryException e) {
-					throw new ModelRuntimeException(e);
-				}
-			} else {
-				// copy statements directly from Repository to Repository,
-				// without using RDF2Go-specific wrappers
-				org.eclipse.rdf4j.model.IRI context = repositoryModel.getRDF4JContextURI();
-				
-				RepositoryResult<org.eclipse.rdf4j.model.Statement> statements = null;
-				try {
-					statements = repositoryModel.connection.getStatements(null, null, null, false,
-					        context);
-					
-					// doesn't hurt to explicitly add them to the right context
-					while (statements.hasNext()) {
-						org.eclipse.rdf4j.model.Statement stmt = statements.next();
-						this.connection.add(
-						        this.valueFactory.createStatement(stmt.getSubject(),
-						                stmt.getPredicate(), stmt.getObject(), targetContext),
-						        targetContext);
-					}
-				} catch(RepositoryException e) {
-					throw new ModelRuntimeException(e);
-				} finally {
-					if(statements != null) {
-						try {
-							statements.close();
-						} catch(RepositoryException e) {
-							throw new ModelRuntimeException(e);
-						}
-					}
-				}
+			// within the same Repository this is a SPARQL ADD, otherwise the
+			// statements are streamed without RDF2Go-specific wrappers
+			try {
+				StatementTransfer.copy(repositoryModel.connection,
+				        repositoryModel.getRDF4JContextURI(), this.connection, targetContext,
+				        repositoryModel.repository == this.repository);
+			} catch(RepositoryException e) {
+				throw new ModelRuntimeException(e);
 			}
 		} else {
 			super.addModel(model, contextURI);
@@ -743,6 +692,101 @@ public Repository getUnderlyingModelSetImplementation() {
 		return this.repository;
 	}
 	
+	/**
+	 * Opens a dedicated connection on the same repository and starts a
+	 * transaction with {@link IsolationLevels#SNAPSHOT} isolation on it. Models
+	 * obtained from the snapshot read through the same transaction, which is
+	 * rolled back when the snapshot is closed.
+	 */
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		this.assertModel();
+		return new ReadOnlyModelSet(new SnapshotModelSet(this.repository).open());
+	}
+	
+	/**
+	 * A RepositoryModelSet reading within a snapshot transaction.
+	 */
+	private static class SnapshotModelSet extends RepositoryModelSet {
+		
+		private static final long serialVersionUID = 2307744125302924539L;
+		
+		public SnapshotModelSet(Repository repository) {
+			super(repository);
+		}
+		
+		private RepositoryConnection connection() {
+			return ((RepositoryModelSet)this).connection;
+		}
+		
+		@Override
+		public ModelSet open() {
+			if(this.isOpen()) {
+				return this;
+			}
+			super.open();
+			try {
+				RepositoryModel.beginSnapshot(connection());
+			} catch(RepositoryException e) {
+				super.close();
+				throw new ModelRuntimeException(e);
+			}
+			return this;
+		}
+		
+		@Override
+		public void close() {
+			try {
+				if(this.isOpen() && connection().isActive()) {
+					connection().rollback();
+				}
+			} catch(RepositoryException e) {
+				throw new ModelRuntimeException(e);
+			} finally {
+				super.close();
+			}
+		}
+		
+		@Override
+		public Model getDefaultModel() {
+			return getModel(null);
+		}
+		
+		@Override
+		public Model getModel(URI contextURI) {
+			this.assertModel();
+			return new RepositoryModel.SnapshotModel(contextURI,
+			        getUnderlyingModelSetImplementation(), connection()).open();
+		}
+		
+		@Override
+		public ClosableIterator<Model> getModels() {
+			final ClosableIterator<URI> uris = this.getModelURIs();
+			return new ClosableIterator<Model>() {
+				
+				@Override
+				public boolean hasNext() {
+					return uris.hasNext();
+				}
+				
+				@Override
+				public Model next() {
+					return getModel(uris.next());
+				}
+				
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+				
+				@Override
+				public void close() {
+					uris.close();
+				}
+			};
+		}
+	}
+	
 	/**
 	 * Returns whether the RepositoryModelSet is currently opened.
 	 */
@@ -882,7 +926,7 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 		// do not auto-commit
 		this.assertModel();
 		try {
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// add
@@ -894,12 +938,13 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 						        this.valueFactory);
 						this.connection.remove(sd, context);
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -972,13 +1017,72 @@ public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
 	@Override
 	@Deprecated
 	public void setAutocommit(boolean autocommit) {
+		this.assertModel();
 		try {
-			this.connection.setAutoCommit(autocommit);
+			if(!autocommit) {
+				this.ensureTransaction();
+				this.autoCommit = false;
+			} else {
+				this.autoCommit = true;
+				this.ensureAutoCommitted();
+			}
 		} catch(RepositoryException e) {
 			throw new ModelRuntimeException(e);
 		}
 	}
 	
+	/**
+	 * Starts a transaction with {@link IsolationLevel#SNAPSHOT_READ}, the
+	 * default of the RDF4J native and memory stores.
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.SNAPSHOT_READ);
+	}
+	
+	/**
+	 * Starts a transaction on the connection of this ModelSet with the
+	 * corresponding RDF4J isolation level, covering all quad operations on
+	 * this ModelSet. Models obtained via {@link #getModel(URI)} use their own
+	 * connections and do not take part.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+	        throws ModelRuntimeException {
+		this.assertModel();
+		Transaction transaction = new RepositoryTransaction(this.connection, isolationLevel) {
+			
+			@Override
+			protected void ended() {
+				RepositoryModelSet.this.autoCommit = true;
+			}
+		};
+		this.autoCommit = false;
+		return transaction;
+	}
+	
+	private void ensureTransaction() throws RepositoryException {
+		if(!this.connection.isActive()) {
+			this.connection.begin();
+		}
+	}
+	
+	private void ensureAutoCommitted() throws RepositoryException {
+		if(this.autoCommit && this.connection.isActive()) {
+			this.connection.commit();
+		}
+	}
+	
+	/**
+	 * Rolls back a failed bulk operation if it ran in its own transaction. A
+	 * transaction opened with {@link #begin()} is left to its owner.
+	 */
+	private void rollbackAutoCommitted() throws RepositoryException {
+		if(this.autoCommit && this.connection.isActive()) {
+			this.connection.rollback();
+		}
+	}
+	
 	@Override
 	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
 		this.assertModel();
@@ -1069,7 +1173,7 @@ public void update(DiffReader diff) throws ModelRuntimeException {
 		// do not auto-commit
 		this.assertModel();
 		try {
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// remove
@@ -1086,12 +1190,13 @@ public void update(DiffReader diff) throws ModelRuntimeException {
 						        this.valueFactory);
 						this.connection.add(s, s.getContext());
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
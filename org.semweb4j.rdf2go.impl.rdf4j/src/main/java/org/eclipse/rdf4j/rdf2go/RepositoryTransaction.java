@@ -0,0 +1,96 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.eclipse.rdf4j.rdf2go;
+
+import org.eclipse.rdf4j.IsolationLevels;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.impl.AbstractTransaction;
+
+/**
+ * A {@link org.ontoware.rdf2go.model.Transaction} backed by the transaction of
+ * a RepositoryConnection.
+ */
+class RepositoryTransaction extends AbstractTransaction {
+
+	private final RepositoryConnection connection;
+
+	/**
+	 * Begins a transaction on the given connection.
+	 *
+	 * @throws ModelRuntimeException if the connection already runs a
+	 *             transaction
+	 */
+	RepositoryTransaction(RepositoryConnection connection, IsolationLevel isolationLevel)
+			throws ModelRuntimeException {
+		super(isolationLevel);
+		this.connection = connection;
+		try {
+			if (connection.isActive()) {
+				throw new ModelRuntimeException("A transaction is already active");
+			}
+			connection.begin(toRDF4J(isolationLevel));
+		} catch (RepositoryException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	/**
+	 * The RDF2Go isolation levels are modeled after the RDF4J ones and have the
+	 * same names.
+	 */
+	static IsolationLevels toRDF4J(IsolationLevel isolationLevel) {
+		return IsolationLevels.valueOf(isolationLevel.name());
+	}
+
+	@Override
+	protected void doCommit() throws ModelRuntimeException {
+		try {
+			if (!this.connection.isActive()) {
+				throw new ModelRuntimeException(
+						"The transaction has been ended on the connection, probably by a failed update");
+			}
+			this.connection.commit();
+		} catch (RepositoryException e) {
+			try {
+				this.connection.rollback();
+			} catch (RepositoryException ignored) {
+				// report the original cause
+			}
+			throw new ModelRuntimeException(e);
+		} finally {
+			ended();
+		}
+	}
+
+	@Override
+	protected void doRollback() throws ModelRuntimeException {
+		try {
+			if (this.connection.isActive()) {
+				this.connection.rollback();
+			}
+		} catch (RepositoryException e) {
+			throw new ModelRuntimeException(e);
+		} finally {
+			ended();
+		}
+	}
+
+	/**
+	 * Called after commit or rollback, lets the owner switch back to
+	 * auto-commit mode.
+	 */
+	protected void ended() {
+		// nothing to do by default
+	}
+
+}
@@ -0,0 +1,76 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.eclipse.rdf4j.rdf2go;
+
+import java.util.List;
+
+import org.eclipse.rdf4j.common.iteration.Iterations;
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.query.QueryLanguage;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+
+/**
+ * Copies the statements of one context to another one without converting
+ * them to RDF2Go objects. Within one repository a SPARQL <code>ADD</code> is
+ * used, so no statements leave the store; between repositories the
+ * statements are streamed from one connection to the other.
+ *
+ * Within one repository, a context which is not an IRI (the null context or
+ * a blank node) cannot be named in a SPARQL update. Its statements are read
+ * into memory completely before they are added, so copying a large context
+ * of this kind needs room for all of its statements on the heap.
+ */
+class StatementTransfer {
+
+	private StatementTransfer() {
+		// static helper
+	}
+
+	/**
+	 * @param source connection to read from
+	 * @param sourceContext context to copy, null for the null context
+	 * @param target connection to write to, the caller handles transactions
+	 * @param targetContext context to copy to, null for the null context
+	 * @param sameRepository true if both connections belong to the same
+	 *            repository
+	 */
+	static void copy(RepositoryConnection source, Resource sourceContext,
+			RepositoryConnection target, Resource targetContext, boolean sameRepository) {
+		if (sameRepository) {
+			if (sourceContext == null ? targetContext == null : sourceContext.equals(targetContext)) {
+				// nothing to do
+				return;
+			}
+			if (sourceContext instanceof IRI && targetContext instanceof IRI) {
+				target.prepareUpdate(QueryLanguage.SPARQL,
+						"ADD <" + sourceContext + "> TO <" + targetContext + ">").execute();
+				return;
+			}
+			// reading and writing the same store through two connections can
+			// deadlock, so the whole context is buffered, see above
+			RepositoryResult<Statement> statements = source.getStatements(null, null, null, false,
+					sourceContext);
+			List<Statement> buffer = Iterations.asList(statements);
+			target.add(buffer, targetContext);
+		} else {
+			RepositoryResult<Statement> statements = source.getStatements(null, null, null, false,
+					sourceContext);
+			try {
+				target.add(statements, targetContext);
+			} finally {
+				statements.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.openrdf.rdf2go;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.openrdf.model.Namespace;
+import org.openrdf.model.Resource;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
+
+/**
+ * Creates point-in-time copies of (parts of) a repository. Sesame
+ * connections do not offer repeatable reads, so snapshots of a
+ * {@link RepositoryModel} or {@link RepositoryModelSet} are private in-memory
+ * repositories holding a copy of the data. Creating one reads all copied
+ * statements, so it takes time and memory linear in their number.
+ */
+class MemorySnapshot {
+
+	private MemorySnapshot() {
+		// static helper
+	}
+
+	/**
+	 * Copy all namespaces and the statements of the given contexts into a new
+	 * in-memory repository.
+	 *
+	 * @param source connection to read from
+	 * @param contexts contexts to copy, all contexts if none are given
+	 * @return an initialised repository, which has to be shut down by the
+	 *         caller
+	 */
+	static Repository copy(RepositoryConnection source, Resource... contexts)
+	        throws ModelRuntimeException {
+		Repository copy = new SailRepository(new MemoryStore());
+		try {
+			copy.initialize();
+			RepositoryConnection target = copy.getConnection();
+			try {
+				target.begin();
+				RepositoryResult<Namespace> namespaces = source.getNamespaces();
+				try {
+					while(namespaces.hasNext()) {
+						Namespace namespace = namespaces.next();
+						target.setNamespace(namespace.getPrefix(), namespace.getName());
+					}
+				} finally {
+					namespaces.close();
+				}
+				RepositoryResult<org.openrdf.model.Statement> statements = source.getStatements(
+				        null, null, null, false, contexts);
+				try {
+					target.add(statements);
+				} finally {
+					statements.close();
+				}
+				target.commit();
+			} finally {
+				target.close();
+			}
+		} catch(RepositoryException e) {
+			shutDown(copy);
+			throw new ModelRuntimeException(e);
+		}
+		return copy;
+	}
+
+	static void shutDown(Repository repository) {
+		try {
+			repository.shutDown();
+		} catch(RepositoryException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+}
@@ -24,13 +24,15 @@
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.exception.SyntaxNotSupportedException;
-import org.ontoware.rdf2go.model.Diff;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractLockingModel;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModel;
 import org.ontoware.rdf2go.model.node.BlankNode;
 import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
@@ -39,6 +41,7 @@
 import org.ontoware.rdf2go.model.node.URI;
 import org.ontoware.rdf2go.model.node.UriOrVariable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.util.ModelCanonicalizer;
 import org.openrdf.OpenRDFException;
 import org.openrdf.model.Namespace;
 import org.openrdf.model.Value;
@@ -95,6 +98,8 @@ public class RepositoryModel extends AbstractLockingModel implements Model {
 	
 	private org.openrdf.model.URI openRdfContext;
 	
+	private boolean autoCommit = true;
+	
 	public RepositoryModel(Repository repository) throws ModelRuntimeException {
 		if(repository == null) {
 			throw new IllegalArgumentException("Repository cannot be null");
@@ -207,7 +212,7 @@ public void addStatement(Resource subject, URI predicate, Node object)
 			this.connection.add(openRdfSubject, openRdfPredicate, openRdfObject,
 			        this.openRdfContext);
 			if(log.isDebugEnabled()) {
-				this.connection.commit();
+				ensureAutoCommitted();
 				if(!contains(subject, predicate, object)) {
 					log.warn("You just added a statement ("
 					        + subject
@@ -232,7 +237,7 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 		// do not auto-commit
 		assertModel();
 		try {
-			this.connection.begin();
+			ensureTransaction();
 			try {
 				try {
 					// remove all
@@ -241,12 +246,12 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 						        this.valueFactory);
 						this.connection.remove(s, this.openRdfContext);
 					}
-					this.connection.commit();
+					ensureAutoCommitted();
 				} catch(RepositoryException x) {
 					this.connection.rollback();
 				}
 			} finally {
-				this.connection.commit();
+				ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -262,10 +267,10 @@ public void removeAll() throws ModelRuntimeException {
 		// do not auto-commit
 		assertModel();
 		try {
-			this.connection.begin();
+			ensureTransaction();
 			// remove all
 			this.connection.clear(this.openRdfContext);
-			this.connection.commit();
+			ensureAutoCommitted();
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
 		}
@@ -280,7 +285,7 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 		// do not auto-commit
 		assertModel();
 		try {
-			this.connection.begin();
+			ensureTransaction();
 			try {
 				try {
 					// add
@@ -289,12 +294,45 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 						        this.valueFactory);
 						this.connection.add(s, this.openRdfContext);
 					}
-					this.connection.commit();
+					ensureAutoCommitted();
 				} catch(RepositoryException x) {
 					this.connection.rollback();
 				}
 			} finally {
-				this.connection.commit();
+				ensureAutoCommitted();
+			}
+		} catch(RepositoryException x) {
+			throw new ModelRuntimeException(x);
+		}
+	}
+	
+	/**
+	 * Statements of another RepositoryModel are copied without conversion to
+	 * RDF2Go objects, see {@link StatementTransfer}.
+	 */
+	@Override
+	public void addModel(Model model) throws ModelRuntimeException {
+		if(!(model instanceof RepositoryModel)) {
+			super.addModel(model);
+			return;
+		}
+		if(this.isLocked()) {
+			throw new ModelRuntimeException("Model is locked, cannot perform an update.");
+		}
+		assertModel();
+		RepositoryModel other = (RepositoryModel)model;
+		try {
+			ensureTransaction();
+			boolean done = false;
+			try {
+				StatementTransfer.copy(other.connection, other.openRdfContext, this.connection,
+				        this.openRdfContext, other.repository == this.repository);
+				done = true;
+			} finally {
+				if(!done && this.autoCommit) {
+					this.connection.rollback();
+				}
+				ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -701,19 +739,59 @@ public void commit() {
 	public void setAutocommit(boolean autocommit) {
 		assertModel();
 		
-		if (autocommit == false) {
-			try {
-				this.connection.begin();
-			} catch (RepositoryException e) {
-				throw new RuntimeException(e);
+		try {
+			if(!autocommit) {
+				ensureTransaction();
+				this.autoCommit = false;
+			} else {
+				this.autoCommit = true;
+				ensureAutoCommitted();
 			}
+		} catch(RepositoryException e) {
+			throw new RuntimeException(e);
 		}
-		else {
-			try {
-				this.connection.commit();
-			} catch(RepositoryException e) {
-				throw new RuntimeException(e);
+	}
+	
+	/**
+	 * Sesame 2.7 connections use the isolation of the underlying store, so the
+	 * transaction is reported with {@link IsolationLevel#READ_COMMITTED}.
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.READ_COMMITTED);
+	}
+	
+	/**
+	 * Starts a transaction on the connection of this model. Until it ends,
+	 * {@link #addAll(Iterator)}, {@link #removeAll(Iterator)} and
+	 * {@link #update(DiffReader)} join it instead of committing on their own.
+	 * The requested isolation level is not passed on, as Sesame 2.7 does not
+	 * support isolation levels.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+	        throws ModelRuntimeException {
+		assertModel();
+		Transaction transaction = new RepositoryTransaction(this.connection, isolationLevel) {
+			
+			@Override
+			protected void ended() {
+				RepositoryModel.this.autoCommit = true;
 			}
+		};
+		this.autoCommit = false;
+		return transaction;
+	}
+	
+	protected void ensureTransaction() throws RepositoryException {
+		if(!this.connection.isActive()) {
+			this.connection.begin();
+		}
+	}
+	
+	private void ensureAutoCommitted() throws RepositoryException {
+		if(this.autoCommit && this.connection.isActive()) {
+			this.connection.commit();
 		}
 	}
 	
@@ -744,13 +822,41 @@ protected void assertModel() {
 	
 	@Override
 	public boolean isIsomorphicWith(Model other) {
-		ClosableIterator<Statement> it = other.iterator();
-		Diff diff = this.getDiff(it);
-		it.close();
-		Iterator<Statement> addIt = diff.getAdded().iterator();
-		Iterator<Statement> removeIt = diff.getAdded().iterator();
-		boolean result = !addIt.hasNext() && !removeIt.hasNext();
-		return result;
+		// compares blank nodes by structure, not by id
+		return ModelCanonicalizer.isIsomorphic(this, other);
+	}
+	
+	/**
+	 * Copies the statements of this context and all namespaces into a private
+	 * in-memory repository, which takes time and memory linear in the size of
+	 * the context. The repository is shut down when the snapshot is closed.
+	 */
+	@Override
+	public Model snapshot() throws ModelRuntimeException {
+		assertModel();
+		Repository copy = MemorySnapshot.copy(this.connection, this.openRdfContext);
+		return new ReadOnlyModel(new SnapshotModel(getContextURI(), copy).open());
+	}
+	
+	/**
+	 * A RepositoryModel that owns its repository.
+	 */
+	private static class SnapshotModel extends RepositoryModel {
+		
+		private static final long serialVersionUID = -4713330236402542816L;
+		
+		public SnapshotModel(URI context, Repository repository) {
+			super(context, repository);
+		}
+		
+		@Override
+		public void close() {
+			try {
+				super.close();
+			} finally {
+				MemorySnapshot.shutDown(this.repository);
+			}
+		}
 	}
 	
 	@Override
@@ -761,7 +867,7 @@ public synchronized void update(DiffReader diff) throws ModelRuntimeException {
 		// do not auto-commit
 		assertModel();
 		try {
-			this.connection.begin();
+			ensureTransaction();
 			try {
 				try {
 					// remove
@@ -778,13 +884,13 @@ public synchronized void update(DiffReader diff) throws ModelRuntimeException {
 						        this.valueFactory);
 						this.connection.add(s, this.openRdfContext);
 					}
-					this.connection.commit();
+					ensureAutoCommitted();
 				} catch(RepositoryException x) {
 					this.logger.warn("Could not commit, rolling back.", x);
 					this.connection.rollback();
 				}
 			} finally {
-				this.connection.commit();
+				ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -13,10 +13,8 @@
 import java.io.Reader;
 import java.io.Writer;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.WeakHashMap;
 
 import org.ontoware.aifbcommons.collection.ClosableIterable;
@@ -24,13 +22,16 @@
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.exception.QueryLanguageNotSupportedException;
 import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.IsolationLevel;
 import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.QuadPattern;
 import org.ontoware.rdf2go.model.QueryResultTable;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.Transaction;
 import org.ontoware.rdf2go.model.impl.AbstractModelSetImpl;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModelSet;
 import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.NodeOrVariable;
 import org.ontoware.rdf2go.model.node.ResourceOrVariable;
@@ -305,6 +306,8 @@ public void remove() {
 	
 	private ValueFactory valueFactory;
 	
+	private boolean autoCommit = true;
+	
 	private final WeakHashMap<RepositoryModel,Object> openModels = new WeakHashMap<RepositoryModel,Object>();
 	
 	public RepositoryModelSet(Repository repository) throws ModelRuntimeException {
@@ -320,7 +323,7 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 		this.assertModel();
 		try {
 			
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// add
@@ -332,12 +335,13 @@ public void addAll(Iterator<? extends Statement> iterator) throws ModelRuntimeEx
 						        this.valueFactory);
 						this.connection.add(sd, context);
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -370,24 +374,11 @@ public boolean addModel(Model model) throws ModelRuntimeException {
 				// copy statements directly from Repository to Repository,
 				// without using RDF2Go-specific wrappers
 				org.openrdf.model.URI context = repositoryModel.getOpenRDFContextURI();
-				
-				RepositoryResult<org.openrdf.model.Statement> statements = null;
 				try {
-					statements = repositoryModel.connection.getStatements(null, null, null, false,
-					        context);
-					
-					// doesn't hurt to explicitly add them to the same context
-					this.connection.add(statements, context);
+					StatementTransfer.copy(repositoryModel.connection, context, this.connection,
+					        context, false);
 				} catch(RepositoryException e) {
 					throw new ModelRuntimeException(e);
-				} finally {
-					if(statements != null) {
-						try {
-							statements.close();
-						} catch(RepositoryException e) {
-							throw new ModelRuntimeException(e);
-						}
-					}
 				}
 			}
 		} else {
@@ -415,57 +406,14 @@ public void addModel(Model model, URI contextURI) throws ModelRuntimeException {
 			org.openrdf.model.URI openrdfContextURI = ConversionUtil.toOpenRDF(contextURI,
 			        this.valueFactory);
 			
-			if(repositoryModel.repository == this.repository) {
-				// When both instances use the same Repository instance, we need
-				// to copy
-				
-				// find the matching OpenRDF Statements
-				try {
-					RepositoryResult<org.openrdf.model.Statement> statements = repositoryModel.connection
-					        .getStatements(null, null, null, true);
-					// buffer in memory to avoid deadlocks due to mixed
-					// read/write
-					Set<org.openrdf.model.Statement> stmts = new HashSet<org.openrdf.model.Statement>();
-					while (statements.hasNext()) {
-						stmts.add(statements.next());
-					}
-					// now insert with a different context URI
-					for(org.openrdf.model.Statement stmt : stmts) {
-						this.valueFactory.createStatement(stmt.getSubject(), stmt.getPredicate(),
-						        stmt.getObject(), openrdfContextURI);
-					}
-				} catch(RepositoryException e) {
-					throw new ModelRuntimeException(e);
-				}
-			} else {
-				// copy statements directly from Repository to Repository,
-				// without using RDF2Go-specific wrappers
-				org.openrdf.model.URI context = repositoryModel.getOpenRDFContextURI();
-				
-				RepositoryResult<org.openrdf.model.Statement> statements = null;
-				try {
-					statements = repositoryModel.connection.getStatements(null, null, null, false,
-					        context);
-					
-					// doesn't hurt to explicitly add them to the right context
-					while (statements.hasNext()) {
-						org.openrdf.model.Statement stmt = statements.next();
-						this.connection.add(
-						        this.valueFactory.createStatement(stmt.getSubject(),
-						                stmt.getPredicate(), stmt.getObject(), openrdfContextURI),
-						        openrdfContextURI);
-					}
-				} catch(RepositoryException e) {
-					throw new ModelRuntimeException(e);
-				} finally {
-					if(statements != null) {
-						try {
-							statements.close();
-						} catch(RepositoryException e) {
-							throw new ModelRuntimeException(e);
-						}
-					}
-				}
+			// within the same Repository this is a SPARQL ADD, otherwise the
+			// statements are streamed without RDF2Go-specific wrappers
+			try {
+				StatementTransfer.copy(repositoryModel.connection,
+				        repositoryModel.getOpenRDFContextURI(), this.connection, openrdfContextURI,
+				        repositoryModel.repository == this.repository);
+			} catch(RepositoryException e) {
+				throw new ModelRuntimeException(e);
 			}
 		} else {
 			super.addModel(model, contextURI);
@@ -744,6 +692,39 @@ public Repository getUnderlyingModelSetImplementation() {
 		return this.repository;
 	}
 	
+	/**
+	 * Copies all statements and namespaces into a private in-memory
+	 * repository, which takes time and memory linear in the size of the
+	 * repository. The repository is shut down when the snapshot is closed.
+	 */
+	@Override
+	public ModelSet snapshot() throws ModelRuntimeException {
+		this.assertModel();
+		Repository copy = MemorySnapshot.copy(this.connection);
+		return new ReadOnlyModelSet(new SnapshotModelSet(copy).open());
+	}
+	
+	/**
+	 * A RepositoryModelSet that owns its repository.
+	 */
+	private static class SnapshotModelSet extends RepositoryModelSet {
+		
+		private static final long serialVersionUID = 2307744125302924539L;
+		
+		public SnapshotModelSet(Repository repository) {
+			super(repository);
+		}
+		
+		@Override
+		public void close() {
+			try {
+				super.close();
+			} finally {
+				MemorySnapshot.shutDown(getUnderlyingModelSetImplementation());
+			}
+		}
+	}
+	
 	/**
 	 * Returns whether the RepositoryModelSet is currently opened.
 	 */
@@ -883,7 +864,7 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 		// do not auto-commit
 		this.assertModel();
 		try {
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// add
@@ -895,12 +876,13 @@ public void removeAll(Iterator<? extends Statement> iterator) throws ModelRuntim
 						        this.valueFactory);
 						this.connection.remove(sd, context);
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -970,13 +952,73 @@ public void removeStatements(UriOrVariable context, ResourceOrVariable subject,
 	@Override
 	@Deprecated
 	public void setAutocommit(boolean autocommit) {
+		this.assertModel();
 		try {
-			this.connection.setAutoCommit(autocommit);
+			if(!autocommit) {
+				this.ensureTransaction();
+				this.autoCommit = false;
+			} else {
+				this.autoCommit = true;
+				this.ensureAutoCommitted();
+			}
 		} catch(RepositoryException e) {
 			throw new ModelRuntimeException(e);
 		}
 	}
 	
+	/**
+	 * Sesame 2.7 connections use the isolation of the underlying store, so the
+	 * transaction is reported with {@link IsolationLevel#READ_COMMITTED}.
+	 */
+	@Override
+	public Transaction begin() throws ModelRuntimeException {
+		return begin(IsolationLevel.READ_COMMITTED);
+	}
+	
+	/**
+	 * Starts a transaction on the connection of this ModelSet, covering all
+	 * quad operations on this ModelSet. Models obtained via
+	 * {@link #getModel(URI)} use their own connections and do not take part.
+	 * The requested isolation level is not passed on, as Sesame 2.7 does not
+	 * support isolation levels.
+	 */
+	@Override
+	public synchronized Transaction begin(IsolationLevel isolationLevel)
+	        throws ModelRuntimeException {
+		this.assertModel();
+		Transaction transaction = new RepositoryTransaction(this.connection, isolationLevel) {
+			
+			@Override
+			protected void ended() {
+				RepositoryModelSet.this.autoCommit = true;
+			}
+		};
+		this.autoCommit = false;
+		return transaction;
+	}
+	
+	private void ensureTransaction() throws RepositoryException {
+		if(!this.connection.isActive()) {
+			this.connection.begin();
+		}
+	}
+	
+	private void ensureAutoCommitted() throws RepositoryException {
+		if(this.autoCommit && this.connection.isActive()) {
+			this.connection.commit();
+		}
+	}
+	
+	/**
+	 * Rolls back a failed bulk operation if it ran in its own transaction. A
+	 * transaction opened with {@link #begin()} is left to its owner.
+	 */
+	private void rollbackAutoCommitted() throws RepositoryException {
+		if(this.autoCommit && this.connection.isActive()) {
+			this.connection.rollback();
+		}
+	}
+	
 	@Override
 	public void setNamespace(String prefix, String namespaceURI) throws IllegalArgumentException {
 		this.assertModel();
@@ -1067,7 +1109,7 @@ public void update(DiffReader diff) throws ModelRuntimeException {
 		// do not auto-commit
 		this.assertModel();
 		try {
-			this.connection.begin();
+			this.ensureTransaction();
 			try {
 				try {
 					// remove
@@ -1084,12 +1126,13 @@ public void update(DiffReader diff) throws ModelRuntimeException {
 						        this.valueFactory);
 						this.connection.add(s, s.getContext());
 					}
-					this.connection.commit();
+					this.ensureAutoCommitted();
 				} catch(RepositoryException x) {
-					this.connection.rollback();
+					this.rollbackAutoCommitted();
+					throw x;
 				}
 			} finally {
-				this.connection.commit();
+				this.ensureAutoCommitted();
 			}
 		} catch(RepositoryException x) {
 			throw new ModelRuntimeException(x);
@@ -0,0 +1,88 @@
+/**
+ * LICENSE INFORMATION
+ *
+ * Licensed under a BSD license (http://www.opensource.org/licenses/bsd-license.php),
+ * see LICENSE.txt.
+ *
+ * Further project information at http://semanticweb.org/wiki/RDF2Go
+ */
+
+package org.openrdf.rdf2go;
+
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.IsolationLevel;
+import org.ontoware.rdf2go.model.impl.AbstractTransaction;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+
+/**
+ * A {@link org.ontoware.rdf2go.model.Transaction} backed by the transaction of
+ * a RepositoryConnection. Sesame 2.7 has no isolation levels, the transaction
+ * runs with the isolation the underlying store provides.
+ */
+class RepositoryTransaction extends AbstractTransaction {
+
+	private final RepositoryConnection connection;
+
+	/**
+	 * Begins a transaction on the given connection.
+	 *
+	 * @throws ModelRuntimeException if the connection already runs a
+	 *             transaction
+	 */
+	RepositoryTransaction(RepositoryConnection connection, IsolationLevel isolationLevel)
+	        throws ModelRuntimeException {
+		super(isolationLevel);
+		this.connection = connection;
+		try {
+			if(connection.isActive()) {
+				throw new ModelRuntimeException("A transaction is already active");
+			}
+			connection.begin();
+		} catch(RepositoryException e) {
+			throw new ModelRuntimeException(e);
+		}
+	}
+
+	@Override
+	protected void doCommit() throws ModelRuntimeException {
+		try {
+			if(!this.connection.isActive()) {
+				throw new ModelRuntimeException(
+				        "The transaction has been ended on the connection, probably by a failed update");
+			}
+			this.connection.commit();
+		} catch(RepositoryException e) {
+			try {
+				this.connection.rollback();
+			} catch(RepositoryException ignored) {
+				// report the original cause
+			}
+			throw new ModelRuntimeException(e);
+		} finally {
+			ended();
+		}
+	}
+
+	@Override
+	protected void doRollback() throws ModelRuntimeException {
+		try {
+			if(this.connection.isActive()) {
+				this.connection.rollback();
+			}
+		} catch(RepositoryException e) {
+			throw new ModelRuntimeException(e);
+		} finally {
+			ended();
+		}
+	}
+
+	/**
+	 * Called after commit or rollback, lets the owner switch back to
+	 * auto-commit mode.
+	 */
+	protected void ended() {
+		// nothing to do by default
+	}
+
+}
@@ -5,11 +5,25 @@
  */
 package org.openrdf.rdf2go;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.ModelFactory;
 import org.ontoware.rdf2go.model.AbstractModelSetTest;
+import org.ontoware.rdf2go.model.Model;
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.impl.StatementImpl;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.openrdf.model.Resource;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.sail.SailRepository;
+import org.openrdf.sail.memory.MemoryStore;
 
 public class RepositoryModelSetTest extends AbstractModelSetTest {
 
@@ -23,4 +37,112 @@ public ModelFactory getModelFactory() {
 		return this.rmodelfactory;
 	}
 	
+	/**
+	 * Within one repository a model is copied with a SPARQL ADD, the null
+	 * context is buffered, and a context is not copied onto itself.
+	 */
+	@Test
+	public void testAddModelWithinRepository() throws Exception {
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		RepositoryModelSet modelSet = new RepositoryModelSet(repository);
+		modelSet.open();
+		try {
+			Model source = modelSet.getModel(graphuri1);
+			BlankNode blank = fill(source);
+			
+			modelSet.addModel(source, graphuri2);
+			Model target = modelSet.getModel(graphuri2);
+			assertEquals(2, target.size());
+			// the very same blank node
+			assertTrue(target.contains(blank, a, c));
+			
+			// onto itself
+			modelSet.addModel(source, graphuri1);
+			source.addModel(source);
+			assertEquals(2, source.size());
+			
+			// a model of the same repository
+			URI context3 = new URIImpl("urn:third");
+			Model model3 = modelSet.getModel(context3);
+			model3.addModel(source);
+			assertEquals(2, model3.size());
+			assertTrue(model3.contains(blank, a, c));
+			
+			modelSet.addModel(source, null);
+			assertEquals(2, nullContextSize(repository));
+			assertEquals(8, modelSet.size());
+		} finally {
+			modelSet.close();
+			repository.shutDown();
+		}
+	}
+	
+	/**
+	 * Between repositories the statements are streamed from one connection to
+	 * the other.
+	 */
+	@Test
+	public void testAddModelBetweenRepositories() throws Exception {
+		Repository repository = new SailRepository(new MemoryStore());
+		repository.initialize();
+		Repository other = new SailRepository(new MemoryStore());
+		other.initialize();
+		RepositoryModelSet modelSet = new RepositoryModelSet(repository);
+		modelSet.open();
+		RepositoryModelSet otherSet = new RepositoryModelSet(other);
+		otherSet.open();
+		RepositoryModel otherModel = new RepositoryModel(other);
+		otherModel.open();
+		try {
+			Model source = modelSet.getModel(graphuri1);
+			fill(source);
+			
+			otherModel.addModel(source);
+			assertEquals(2, otherModel.size());
+			assertBlankSubject(otherModel);
+			
+			otherSet.addModel(source);
+			Model target = otherSet.getModel(graphuri1);
+			assertEquals(2, target.size());
+			assertBlankSubject(target);
+			
+			otherSet.addModel(source, graphuri2);
+			assertEquals(2, otherSet.getModel(graphuri2).size());
+			otherSet.addModel(source, null);
+			assertEquals(2, nullContextSize(other));
+		} finally {
+			otherModel.close();
+			otherSet.close();
+			modelSet.close();
+			other.shutDown();
+			repository.shutDown();
+		}
+	}
+	
+	private static BlankNode fill(Model model) {
+		model.addStatement(a, b, c);
+		BlankNode blank = model.createBlankNode();
+		model.addStatement(blank, a, c);
+		return blank;
+	}
+	
+	private static void assertBlankSubject(Model model) {
+		ClosableIterator<Statement> it = model.findStatements(Variable.ANY, a, c);
+		try {
+			assertTrue(it.next().getSubject() instanceof BlankNode);
+		} finally {
+			it.close();
+		}
+	}
+	
+	private static long nullContextSize(Repository repository) throws Exception {
+		RepositoryConnection connection = repository.getConnection();
+		try {
+			return connection.size((Resource)null);
+		} finally {
+			connection.close();
+		}
+	}
+	
 }
@@ -32,6 +32,28 @@ public class CodeGenerator {
     
     public static final String SEMANTICS_RDFS_AND_OWL = "rdfs+owl";
     
+    /** generate static and instance methods for all ways of access */
+    public static final String PROFILE_DEFAULT = "default";
+    
+    /**
+     * generate only instance methods and a typed property handle for all
+     * other ways of access, which makes much smaller classes
+     */
+    public static final String PROFILE_LEAN = "lean";
+    
+    /**
+     * @return the template of the given generation profile
+     */
+    public static String getTemplate(String profile) {
+        if(profile == null || profile.equalsIgnoreCase(PROFILE_DEFAULT)) {
+            return SourceCodeWriter.TEMPLATE_CLASS;
+        } else if(profile.equalsIgnoreCase(PROFILE_LEAN)) {
+            return SourceCodeWriter.TEMPLATE_LEAN_CLASS;
+        } else {
+            throw new RuntimeException("Unknown profile: '" + profile + "'");
+        }
+    }
+    
     /**
      * Generate a Java class model from the given RDFS/OWL schema file
      * 
@@ -71,12 +93,54 @@ public static void generate(String schemafilename, String outdir, String package
      */
     public static void generate(String schemafilename, String outdir, String packagename,
             Reasoning semantics, boolean skipbuiltins, String methodnamePrefix) throws Exception {
+        generate(schemafilename, outdir, packagename, semantics, skipbuiltins, methodnamePrefix,
+                false);
+    }
+    
+    /**
+     * Generate a Java class model from the given RDFS/OWL schema file
+     * 
+     * @param schemafilename a path to an rdf or owl file.
+     * @param outdir e.g './src' or './gen-src'
+     * @param packagename - e.g. 'org.ontoware.myname.reactor'
+     * @param semantics - 'rdfs', 'owl' or 'rdfs+owl' (experimental)
+     * @param skipbuiltins if false, internal helper classes are re-generated.
+     * @param methodnamePrefix
+     * @param reflectionFree if true, generate code which needs no reflection
+     *            at runtime
+     * @throws Exception
+     */
+    public static void generate(String schemafilename, String outdir, String packagename,
+            Reasoning semantics, boolean skipbuiltins, String methodnamePrefix,
+            boolean reflectionFree) throws Exception {
+        generate(schemafilename, outdir, packagename, semantics, skipbuiltins, methodnamePrefix,
+                PROFILE_DEFAULT, reflectionFree);
+    }
+    
+    /**
+     * Generate a Java class model from the given RDFS/OWL schema file
+     * 
+     * @param schemafilename a path to an rdf or owl file.
+     * @param outdir e.g './src' or './gen-src'
+     * @param packagename - e.g. 'org.ontoware.myname.reactor'
+     * @param semantics - 'rdfs', 'owl' or 'rdfs+owl' (experimental)
+     * @param skipbuiltins if false, internal helper classes are re-generated.
+     * @param methodnamePrefix
+     * @param profile {@link #PROFILE_DEFAULT} or {@link #PROFILE_LEAN}
+     * @param reflectionFree if true, generate code which needs no reflection
+     *            at runtime
+     * @throws Exception
+     */
+    public static void generate(String schemafilename, String outdir, String packagename,
+            Reasoning semantics, boolean skipbuiltins, String methodnamePrefix, String profile,
+            boolean reflectionFree) throws Exception {
         
         // first step
         Model schemaDataModel = loadSchemaDataModel(schemafilename);
         File outDir = new File(outdir);
         
-        generate(schemaDataModel, outDir, packagename, semantics, skipbuiltins, methodnamePrefix);
+        generate(schemaDataModel, outDir, packagename, semantics, skipbuiltins, methodnamePrefix,
+                profile, reflectionFree);
         schemaDataModel.close();
     }
     
@@ -145,6 +209,49 @@ public static void generate(Model modelWithSchemaData, File outDir, String packa
      */
     public static void generate(Model modelWithSchemaData, File outDir, String packagename,
             Reasoning semantics, boolean skipbuiltins, String methodnamePrefix) throws IOException {
+        generate(modelWithSchemaData, outDir, packagename, semantics, skipbuiltins,
+                methodnamePrefix, false);
+    }
+    
+    /**
+     * 
+     * @param modelWithSchemaData a Model in which the ontology to generate Java
+     *            classes form is loaded
+     * @param outDir
+     * @param packagename
+     * @param semantics
+     * @param skipbuiltins
+     * @param methodnamePrefix
+     * @param reflectionFree if true, generate code which needs no reflection
+     *            at runtime, see
+     *            {@link SourceCodeWriter#write(JModel, File, String, String, boolean)}
+     * @throws IOException
+     */
+    public static void generate(Model modelWithSchemaData, File outDir, String packagename,
+            Reasoning semantics, boolean skipbuiltins, String methodnamePrefix,
+            boolean reflectionFree) throws IOException {
+        generate(modelWithSchemaData, outDir, packagename, semantics, skipbuiltins,
+                methodnamePrefix, PROFILE_DEFAULT, reflectionFree);
+    }
+    
+    /**
+     * 
+     * @param modelWithSchemaData a Model in which the ontology to generate Java
+     *            classes form is loaded
+     * @param outDir
+     * @param packagename
+     * @param semantics
+     * @param skipbuiltins
+     * @param methodnamePrefix
+     * @param profile {@link #PROFILE_DEFAULT} or {@link #PROFILE_LEAN}
+     * @param reflectionFree if true, generate code which needs no reflection
+     *            at runtime
+     * @throws IOException
+     */
+    public static void generate(Model modelWithSchemaData, File outDir, String packagename,
+            Reasoning semantics, boolean skipbuiltins, String methodnamePrefix, String profile,
+            boolean reflectionFree) throws IOException {
+        String template = getTemplate(profile);
         
         log.info("using semantics: " + semantics);
         // different semantics mean different ways to create the internal model
@@ -172,7 +279,7 @@ public static void generate(Model modelWithSchemaData, File outDir, String packa
         
         // third and final step
         log.info("write using sourceCodeWriter");
-        SourceCodeWriter.write(jm, outDir, SourceCodeWriter.TEMPLATE_CLASS, methodnamePrefix);
+        SourceCodeWriter.write(jm, outDir, template, methodnamePrefix, reflectionFree);
     }
     
     /**
@@ -35,8 +35,21 @@ public class JavaNamingUtils {
      * @return a new unique name from label or URI
      */
     public static String toBeanName(Resource rresource, Set<String> usedNames) {
+        return toBeanName(rresource.getResource(), rresource.getAllLabel_asList(), usedNames);
+    }
+    
+    /**
+     * Create a legal and unique Java Bean Identifier for a resource, whose
+     * labels are known already.
+     * 
+     * @param resource - URI or BlankNode for which to create the Identifier
+     * @param labels - the labels of the resource
+     * @param usedNames - Set of already used names
+     * @return a new unique name from label or URI
+     */
+    public static String toBeanName(org.ontoware.rdf2go.model.node.Resource resource,
+            List<String> labels, Set<String> usedNames) {
         // if we have at least one label, we use that
-        List<String> labels = rresource.getAllLabel_asList();
         // TODO improve: language handling in labels
         if(labels.size() > 0) {
             log.debug("Found a label, using first label: " + labels.get(0));
@@ -45,14 +58,14 @@ public static String toBeanName(Resource rresource, Set<String> usedNames) {
                 return labelName;
             // IMPROVE: might try other labels
             else {
-                String result = uri2beanname(rresource.getResource(), usedNames);
-                log.debug("NAME     " + rresource.getResource().toSPARQL() + " label '" + labelName
+                String result = uri2beanname(resource, usedNames);
+                log.debug("NAME     " + resource.toSPARQL() + " label '" + labelName
                         + "' is already used. Using '" + result + "' computed from URI.");
                 return result;
             }
         } else {
-            String result = uri2beanname(rresource.getResource(), usedNames);
-            log.debug("NAME     " + rresource.getResource().toSPARQL() + " found no label. Using '"
+            String result = uri2beanname(resource, usedNames);
+            log.debug("NAME     " + resource.toSPARQL() + " found no label. Using '"
                     + result + "' computed from URI.");
             return result;
         }
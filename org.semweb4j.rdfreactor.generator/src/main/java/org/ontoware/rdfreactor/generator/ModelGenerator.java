@@ -1,18 +1,18 @@
 package org.ontoware.rdfreactor.generator;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 
-import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.Reasoning;
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.Model;
-import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Resource;
 import org.ontoware.rdf2go.model.node.URI;
-import org.ontoware.rdf2go.model.node.Variable;
 import org.ontoware.rdf2go.util.ModelUtils;
 import org.ontoware.rdf2go.vocabulary.OWL;
 import org.ontoware.rdf2go.vocabulary.RDF;
@@ -24,16 +24,18 @@
 import org.ontoware.rdfreactor.schema.bootstrap.Class;
 import org.ontoware.rdfreactor.schema.bootstrap.DeprecatedProperty;
 import org.ontoware.rdfreactor.schema.bootstrap.OWL_Protege_NRL_Restriction;
+import org.ontoware.rdfreactor.schema.bootstrap.OwlClass;
 import org.ontoware.rdfreactor.schema.bootstrap.Property;
-import org.ontoware.rdfreactor.schema.bootstrap.Resource;
-import org.ontoware.rdfreactor.schema.bootstrap.TypeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * Creates an internal JModel from an ontology model.
- * 
+ *
+ * The schema is read once into a {@link SchemaIndex} after inferencing, all
+ * further analysis uses the index instead of querying the model.
+ *
  * @author voelkel
  */
 public class ModelGenerator {
@@ -68,100 +70,101 @@ public static JModel createFromRDFS_Schema(Model modelWithSchemaData, String pac
         ModelUtils.deanonymize(m);
         
         // analysis (triggers also inferencing)
-        List<? extends Class> rdfclasses = Class.getAllInstance_as(m).asList();
+        SchemaIndex schema = new SchemaIndex(m);
+        Set<Resource> rdfclasses = schema.getInstances(Class.RDFS_CLASS);
         log.info("Got " + rdfclasses.size() + " rdfs:Classes");
-        for(Class c : rdfclasses) {
-            log.debug("Found class: " + c.getResource());
+        for(Resource c : rdfclasses) {
+            log.debug("Found class: " + c);
         }
-        Property[] rdfproperties = Property.getAllInstance_as(m).asArray();
-        for(Property p : rdfproperties) {
-            log.debug("Found property: " + p.getResource());
+        Set<Resource> rdfproperties = schema.getInstances(Property.RDFS_CLASS);
+        for(Resource p : rdfproperties) {
+            log.debug("Found property: " + p);
         }
-        log.info("Got " + rdfproperties.length + " rdfs:Properties");
+        log.info("Got " + rdfproperties.size() + " rdfs:Properties");
         log.debug("Found " + m.size() + " statements in schema after inferencing.");
         
         // get all classes and assign to package
         Set<String> usedClassnames = new HashSet<String>();
         usedClassnames.add(jm.getRoot().getName());
-        Set<Class> rdfsClasses = new HashSet<Class>();
+        List<URI> rdfsClasses = new ArrayList<URI>();
         
-        for(Class rc : Class.getAllInstance_as(m).asList()) {
+        for(Resource rc : rdfclasses) {
             
-            if(skipbuiltins && jm.hasMapping(rc.getResource())) {
+            if(skipbuiltins && jm.hasMapping(rc)) {
                 log.debug("CLASS " + rc + " is known -> skipping generation");
-            } else if(!(rc.getResource() instanceof URI)) {
+            } else if(!(rc instanceof URI)) {
                 log.warn("A Class with a blank node ID makes not much sense -> ignored");
             } else {
-                rdfsClasses.add(rc);
+                rdfsClasses.add((URI)rc);
                 // TODO better classname guessing
-                String classname = JavaNamingUtils.toBeanName(rc, usedClassnames);
+                String classname = JavaNamingUtils.toBeanName(rc, schema.getLabels(rc),
+                        usedClassnames);
                 assert classname != null;
                 usedClassnames.add(classname);
                 
-                log.debug("CLASS " + classname + " generated for " + rc.getResource() + " ...");
-                assert rc.getResource() instanceof URI : "A Class with a blank node ID makes not much sense";
-                JClass jc = new JClass(jp, classname, (URI)rc.getResource());
-                jc.setComment(Utils.toJavaComment(rc.getAllComment_asList())); // might
-                                                                               // be
-                                                                               // null,
-                                                                               // ok.
-                jm.addMapping(rc.getResource(), jc);
+                log.debug("CLASS " + classname + " generated for " + rc + " ...");
+                JClass jc = new JClass(jp, classname, (URI)rc);
+                jc.setComment(Utils.toJavaComment(schema.getComments(rc))); // might
+                                                                            // be
+                                                                            // null,
+                                                                            // ok.
+                jm.addMapping(rc, jc);
             }
         }
         
         log.debug(">>>> Inheritance");
         // get all classes and link superclasses
-        for(org.ontoware.rdfreactor.schema.bootstrap.Class rc : rdfsClasses) {
-            log.debug("rdfs:Class " + rc.getResource());
-            JClass jc = jm.getMapping(rc.getResource());
-            for(org.ontoware.rdfreactor.schema.bootstrap.Class superclass : rc
-                    .getAllSubClassOf_asList())
-                jc.addSuperclass(jm.getMapping(superclass.getResource()));
+        for(URI rc : rdfsClasses) {
+            log.debug("rdfs:Class " + rc);
+            JClass jc = jm.getMapping(rc);
+            for(Resource superclass : schema.getSuperclasses(rc))
+                jc.addSuperclass(jm.getMapping(superclass));
         }
         
+        // the java hierarchy is needed to find unique property names
+        jm.flattenInheritanceHierarchy(jp);
+        
         log.info("-------------- PROPERTIES ...");
         
-        for(Property rp : Property.getAllInstance_as(m).asList()) {
-            log.info("PROPERTY " + rp.getResource());
+        JModel builtins = Semantics.getbuiltIns_RDFS();
+        for(Resource rp : rdfproperties) {
+            log.info("PROPERTY " + rp);
             
-            if(skipbuiltins && jm.knownProperties.contains(rp.getResource().asURI())) {
+            if(skipbuiltins && jm.knownProperties.contains(rp.asURI())) {
                 // do nothing
-                log.debug("Skipping built-in property " + rp.getResource().asURI().toSPARQL());
-            } else if(DeprecatedProperty.hasInstance(rp.getModel(), rp.getResource().asURI())) {
+                log.debug("Skipping built-in property " + rp.asURI().toSPARQL());
+            } else if(schema.isInstance(rp, DeprecatedProperty.RDFS_CLASS)) {
                 log.info("Skipping deprecated property " + rp
                         + " (as indicated by owl:DeprecatedProperty)");
             } else {
                 // inspect domains
-                List<Class> domains = rp.getAllDomain_asList();
+                List<Resource> domains = schema.getResources(rp, RDFS.domain);
                 // TODO: ignore if already in higher level
-                if(domains == null || domains.size() == 0) {
-                    log.warn("PROPERTY " + rp.getResource() + " has no domain, using root");
-                    handleProperty(m, jm, jm.getRoot(), rp);
+                if(domains.size() == 0) {
+                    log.warn("PROPERTY " + rp + " has no domain, using root");
+                    handleProperty(m, schema, jm, jm.getRoot(), rp.asURI());
                 } else {
                     for(Resource domain : domains) {
-                        log.info("PROPERTY " + rp.getResource() + " has domain " + domain);
-                        JClass domainClass = jm.getMapping(domain.getResource());
-                        assert domainClass != null : "found no JClass for "
-                                + rp.getAllDomain_asList().get(0).getResource();
+                        log.info("PROPERTY " + rp + " has domain " + domain);
+                        JClass domainClass = jm.getMapping(domain);
+                        assert domainClass != null : "found no JClass for " + domain;
                         
                         // domainclass might be a built-in, redirect to root
-                        if(Semantics.getbuiltIns_RDFS().containsJClass(domainClass)) {
+                        if(builtins.containsJClass(domainClass)) {
                             log.info("domain " + domainClass
                                     + " is a built-in, hence we attach the property to the root ("
                                     + jm.getRoot() + ")");
                             domainClass = jm.getRoot();
                         }
                         
-                        handleProperty(m, jm, domainClass, rp);
+                        handleProperty(m, schema, jm, domainClass, rp.asURI());
                     }
                 }
             }
-            
-            jm.flattenInheritanceHierarchy(jp);
-            
-            jm.materialiseMissingProperties(jp, skipbuiltins);
-            
         }
+        
+        jm.materialiseMissingProperties(jp, skipbuiltins);
+        
         m.close();
         m = null;
         return jm;
@@ -169,7 +172,7 @@ public static JModel createFromRDFS_Schema(Model modelWithSchemaData, String pac
     
     /**
      * TODO: this is experimental
-     * 
+     *
      * @param schemaDataModel com.hp.hpl.jena.rdf.model.Model
      * @param packagename
      * @param skipbuiltins if true, skips the re-generation of built-ins.
@@ -201,6 +204,7 @@ public static JModel createFromRDFS_AND_OWL(Model schemaDataModel, String packag
         m.addStatement(OWL.OntologyProperty, RDFS.subClassOf, RDF.Property);
         
         log.debug("MODEL after inferencing, found " + m.size() + " statements");
+        SchemaIndex schema = new SchemaIndex(m);
         JPackage jp = new JPackage(packagename);
         jm.getPackages().add(jp);
         
@@ -212,36 +216,35 @@ public static JModel createFromRDFS_AND_OWL(Model schemaDataModel, String packag
         // get all classes and assign to package
         Set<String> usedClassnames = new HashSet<String>();
         usedClassnames.add(jm.getRoot().getName());
-        Set<Class> rdfsClasses = new HashSet<Class>();
+        List<URI> rdfsClasses = new ArrayList<URI>();
         
-        for(Class rc : Class.getAllInstance_as(m).asList()) {
+        for(Resource rc : schema.getInstances(Class.RDFS_CLASS)) {
             
-            if(skipbuiltins && jm.hasMapping(rc.getResource())) {
+            if(skipbuiltins && jm.hasMapping(rc)) {
                 log.debug("CLASS " + rc + " is known -> skipping generation");
             } else {
-                rdfsClasses.add(rc);
+                rdfsClasses.add((URI)rc);
                 // TODO better class-name guessing
-                String classname = JavaNamingUtils.toBeanName(rc, usedClassnames);
+                String classname = JavaNamingUtils.toBeanName(rc, schema.getLabels(rc),
+                        usedClassnames);
                 assert classname != null;
                 usedClassnames.add(classname);
                 
-                log.debug("CLASS " + classname + " generated for " + rc.getResource().toSPARQL()
-                        + " ...");
-                JClass jc = new JClass(jp, classname, (URI)rc.getResource());
-                jc.setComment(rc.getAllComment_asList().get(0)); // might be
+                log.debug("CLASS " + classname + " generated for " + rc.toSPARQL() + " ...");
+                JClass jc = new JClass(jp, classname, (URI)rc);
+                jc.setComment(first(schema.getComments(rc))); // might be
                 // null, ok.
-                jm.addMapping(rc.getResource(), jc);
+                jm.addMapping(rc, jc);
             }
         }
         
         log.info(">>>> Inheritance");
         // get all classes and link super-classes
-        for(org.ontoware.rdfreactor.schema.bootstrap.Class rc : rdfsClasses) {
-            log.debug("rdfs:Class " + rc.getResource());
-            JClass jc = jm.getMapping(rc.getResource());
-            for(org.ontoware.rdfreactor.schema.bootstrap.Class superclass : rc
-                    .getAllSubClassOf_asList())
-                jc.addSuperclass(jm.getMapping(superclass.getResource()));
+        for(URI rc : rdfsClasses) {
+            log.debug("rdfs:Class " + rc);
+            JClass jc = jm.getMapping(rc);
+            for(Resource superclass : schema.getSuperclasses(rc))
+                jc.addSuperclass(jm.getMapping(superclass));
         }
         
         log.info(">>>> Flatten inheritance hierarchy");
@@ -249,21 +252,20 @@ public static JModel createFromRDFS_AND_OWL(Model schemaDataModel, String packag
         
         // get all properties
         log.info("-------------- PROPERTIES ...");
-        for(Property rp : Property.getAllInstance_as(m).asList()) {
-            log.debug("PROPERTY " + rp.getResource());
-            List<Class> domains = rp.getAllDomain_asList();
+        for(Resource rp : schema.getInstances(Property.RDFS_CLASS)) {
+            log.debug("PROPERTY " + rp);
+            List<Resource> domains = schema.getResources(rp, RDFS.domain);
             // no domain = no generated property
-            if(domains == null || domains.size() == 0) {
+            if(domains.size() == 0) {
                 // log.warn("PROPERTY " + rp.getID() + " has no domain, so we
                 // ignore it");
-                log.debug("PROPERTY " + rp.getResource() + " has no domain, using root");
-                handleProperty(m, jm, jm.getRoot(), rp);
+                log.debug("PROPERTY " + rp + " has no domain, using root");
+                handleProperty(m, schema, jm, jm.getRoot(), rp.asURI());
             } else {
                 for(Resource domain : domains) {
-                    JClass domainClass = jm.getMapping(domain.getResource());
-                    assert domainClass != null : "found no JClass for "
-                            + rp.getAllDomain_asList().get(0).getResource();
-                    handleProperty(m, jm, domainClass, rp);
+                    JClass domainClass = jm.getMapping(domain);
+                    assert domainClass != null : "found no JClass for " + domain;
+                    handleProperty(m, schema, jm, domainClass, rp.asURI());
                 }
             }
         }
@@ -303,6 +305,7 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
         ModelUtils.deanonymize(m);
         
         log.debug("after inferencing, found " + m.size() + " statements");
+        SchemaIndex schema = new SchemaIndex(m);
         
         // // DEBUG
         // File debugOut = new File(outDir, packagename + "/schema.nt");
@@ -326,18 +329,15 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
         jm.setRoot(localRoot);
         
         // get all classes and assign to package
-        Set<org.ontoware.rdfreactor.schema.bootstrap.OwlClass> owlClasses = new HashSet<org.ontoware.rdfreactor.schema.bootstrap.OwlClass>();
+        Set<Resource> owlClasses = new LinkedHashSet<Resource>();
         Set<String> usedClassnames = new HashSet<String>();
         
-        for(org.ontoware.rdfreactor.schema.bootstrap.OwlClass oc : org.ontoware.rdfreactor.schema.bootstrap.OwlClass
-                .getAllInstance_as(m).asList()) {
-            log.debug("Found owl:Class " + oc.getResource() + " (have " + owlClasses.size()
+        for(Resource classURI : schema.getInstances(OwlClass.RDFS_CLASS)) {
+            log.debug("Found owl:Class " + classURI + " (have " + owlClasses.size()
                     + " already)");
             
-            org.ontoware.rdf2go.model.node.Resource classURI = oc.getResource();
-            
             // check if restriction or real class
-            if(m.contains(classURI, RDF.type, OWL.Restriction)) {
+            if(schema.isInstance(classURI, OWL.Restriction)) {
                 log.debug("skipping restriction " + classURI);
             } else if(skipbuiltins && jm.hasMapping(classURI)) {
                 log.debug("skipping known class " + classURI);
@@ -346,31 +346,37 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
             } else if(classURI.toString().startsWith(Semantics.NS_XSD)) {
                 log.debug("skipping XML Schema class " + classURI);
                 // TODO: what is the purpose of this?
-            } else if(oc.getResource() instanceof BlankNode) {
+            } else if(classURI instanceof BlankNode) {
                 log.debug("skipping blank class " + classURI);
             } else {
                 log.debug("owl:Class : " + classURI);
-                owlClasses.add(oc);
+                owlClasses.add(classURI);
                 // TODO better classname guessing
-                String classname = JavaNamingUtils.toBeanName(oc, usedClassnames);
+                String classname = JavaNamingUtils.toBeanName(classURI, schema
+                        .getLabels(classURI), usedClassnames);
                 assert classname != null;
                 usedClassnames.add(classname);
                 log.debug("generating class " + classname + " for " + classURI + " ...");
-                JClass jc = new JClass(jp, classname, (URI)oc.getResource());
-                jc.setComment(oc.getAllComment_asList().get(0));
-                jm.addMapping(oc.getResource(), jc);
+                JClass jc = new JClass(jp, classname, (URI)classURI);
+                jc.setComment(first(schema.getComments(classURI)));
+                jm.addMapping(classURI, jc);
             }
         }
         log.debug("dealing with " + owlClasses.size() + " 'real' classes");
         
         log.debug(">>>> Inheritance");
-        // get all classes and link superclasses
-        for(org.ontoware.rdfreactor.schema.bootstrap.OwlClass oc : owlClasses) {
-            log.debug("owl:Class " + oc.getResource());
-            JClass jc = jm.getMapping(oc.getResource());
-            for(org.ontoware.rdfreactor.schema.bootstrap.OwlClass superclass : TypeUtils
-                    .getAllRealSuperclasses(oc, owlClasses))
-                jc.addSuperclass(jm.getMapping(superclass.getResource()));
+        // get all classes and link superclasses, ignore restrictions
+        for(Resource oc : owlClasses) {
+            log.debug("owl:Class " + oc);
+            JClass jc = jm.getMapping(oc);
+            for(Resource superclass : schema.getSuperclasses(oc)) {
+                if(schema.isInstance(superclass, OWL.Restriction)) {
+                    log.debug("Restriction as supertype");
+                } else if(owlClasses.contains(superclass)) {
+                    jc.addSuperclass(jm.getMapping(superclass));
+                } else
+                    log.debug("un-wanted class " + superclass);
+            }
         }
         jm.flattenInheritanceHierarchy(jp);
         
@@ -382,49 +388,42 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
         // but this might be more consistent anyways
         Set<String> usedPropertynames = new HashSet<String>();
         
-        for(Property rp : Property.getAllInstance_as(m).asList()) {
-            log.debug("> Processing property " + rp.getResource());
+        for(Resource rp : schema.getInstances(Property.RDFS_CLASS)) {
+            log.debug("> Processing property " + rp);
             // name it
-            String propertyName = JavaNamingUtils.toBeanName(rp, usedPropertynames);
+            String propertyName = JavaNamingUtils.toBeanName(rp, schema.getLabels(rp),
+                    usedPropertynames);
             usedPropertynames.add(propertyName);
             assert propertyName != null;
             
-            List<Class> domains = rp.getAllDomain_asList();
+            List<Resource> domains = schema.getResources(rp, RDFS.domain);
             // no domain = no generated property
-            if(domains == null || domains.size() == 0) {
-                log.warn("Property " + rp.getResource() + " has no domain, so we ignore it");
+            if(domains.size() == 0) {
+                log.warn("Property " + rp + " has no domain, so we ignore it");
             } else {
-                for(Class domain : domains) {
+                for(Resource domain : domains) {
                     if(!owlClasses.contains(domain)) {
                         // log.debug("ignored");
                     } else {
-                        JClass domainClass = jm.getMapping(domain.getResource());
-                        assert domainClass != null : "found no JClass for "
-                                + rp.getAllDomain_asList().get(0).getResource();
+                        JClass domainClass = jm.getMapping(domain);
+                        assert domainClass != null : "found no JClass for " + domain;
                         
-                        JProperty jprop = new JProperty(domainClass, propertyName,
-                                (URI)rp.getResource());
+                        JProperty jprop = new JProperty(domainClass, propertyName, (URI)rp);
                         // wire
                         log.debug("Adding property '" + jprop.getName() + "' to '"
                                 + domainClass.getName() + "'");
                         jprop.getJClass().getProperties().add(jprop);
-                        jprop.setComment(rp.getAllComment_asList().get(0));
+                        jprop.setComment(first(schema.getComments(rp)));
                         
-                        for(Class range : rp.getAllRange_asList()) {
-                            if(owlClasses.contains(range
-                                    .castTo(org.ontoware.rdfreactor.schema.owl.OwlClass.class)))
-                                jprop.addType(jm.getMapping(range.getResource()));
+                        for(Resource range : schema.getResources(rp, RDFS.range)) {
+                            if(owlClasses.contains(range))
+                                jprop.addType(jm.getMapping(range));
                         }
                         jprop.fixRanges(jm);
                         
                         // figure out cardinality
                         
-                        ClosableIterator<Statement> it = m.findStatements(Variable.ANY,
-                                OWL.onProperty, rp.getResource());
-                        while(it.hasNext()) {
-                            Statement stmt = it.next();
-                            org.ontoware.rdf2go.model.node.Resource restrictionResource = stmt
-                                    .getSubject();
+                        for(Resource restrictionResource : schema.getSubjects(OWL.onProperty, rp)) {
                             OWL_Protege_NRL_Restriction restriction = OWL_Protege_NRL_Restriction
                                     .getInstance(m, restrictionResource);
                             
@@ -437,7 +436,6 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
                             if(max != -1)
                                 jprop.setMaxCardinality(max);
                         }
-                        it.close();
                     }
                 }
             }
@@ -456,36 +454,45 @@ public static JModel createFromOWL(Model schemaDataModel, String packagename,
         return jm;
     }
     
+    /**
+     * @return the first of the values, or null if there are none
+     */
+    private static String first(List<String> values) {
+        return values.isEmpty() ? null : values.get(0);
+    }
+    
     /**
      * Handle all aspects of integrating a property into the JModel: construct
      * the JProperty, add all its ranges to the JProperty and set min and max
      * cardinality.
-     * 
+     *
      * @param m - the underlying RDF2Go model
+     * @param schema - the index of the underlying model
      * @param jm - the target JModel
      * @param domainClass - the JClass domain of the property
-     * @param property - the Property instance representing the Property in the
-     *            RDF2Go model
+     * @param property - the URI of the property in the RDF2Go model
      */
-    private static void handleProperty(Model m, JModel jm, JClass domainClass, Property property) {
+    private static void handleProperty(Model m, SchemaIndex schema, JModel jm,
+            JClass domainClass, URI property) {
         
         // obtain a nice Java-conform name which has not yet been used
-        String propertyName = JavaNamingUtils.toBeanName(property,
+        String propertyName = JavaNamingUtils.toBeanName(property, schema.getLabels(property),
                 domainClass.getUsedPropertyNames());
         assert propertyName != null;
-        JProperty jprop = new JProperty(domainClass, propertyName, (URI)property.getResource());
+        JProperty jprop = new JProperty(domainClass, propertyName, property);
         // carry over the comment from RDF to Java, might be null
-        jprop.setComment(Utils.toJavaComment(property.getAllComment_asList()));
+        jprop.setComment(Utils.toJavaComment(schema.getComments(property)));
         log.debug("PROPERTY Adding '" + jprop.getName() + "' to '" + domainClass.getName() + "'");
         jprop.getJClass().getProperties().add(jprop);
         
         // process range information
         log.debug("PROPERTY checking ranges...");
-        for(Class range : property.getAllRange_asList()) {
+        List<Resource> ranges = schema.getResources(property, RDFS.range);
+        for(Resource range : ranges) {
             log.debug("range is " + range);
-            jprop.addType(jm.getMapping(range.getResource()));
+            jprop.addType(jm.getMapping(range));
         }
-        if(property.getAllRange_asList().size() == 0) {
+        if(ranges.size() == 0) {
             // if no range is given, set to ontology root class (rdfs:Class or
             // owl:Class)
             jprop.addType(jm.getRoot());
@@ -493,8 +500,8 @@ private static void handleProperty(Model m, JModel jm, JClass domainClass, Prope
         
         // process cardinality constraints (convert this property to an OWL
         // restriction)
-        OWL_Protege_NRL_Restriction restriction = (OWL_Protege_NRL_Restriction)property
-                .castTo(OWL_Protege_NRL_Restriction.class);
+        OWL_Protege_NRL_Restriction restriction = OWL_Protege_NRL_Restriction.getInstance(m,
+                property);
         assert restriction != null;
         
         Integer card = restriction.getCardinality();
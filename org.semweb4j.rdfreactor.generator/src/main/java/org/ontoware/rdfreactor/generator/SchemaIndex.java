@@ -0,0 +1,193 @@
+package org.ontoware.rdfreactor.generator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.Literal;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.vocabulary.OWL;
+import org.ontoware.rdf2go.vocabulary.RDF;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+
+
+/**
+ * The schema triples needed to create a JModel, read with one pass over the
+ * (inferred) schema model. Asking the model for the super-classes, domains,
+ * ranges, labels and comments of each class and property one by one does not
+ * scale to ontologies with tens of thousands of classes.
+ *
+ * The super-classes of a class are the transitive closure of rdfs:subClassOf,
+ * computed once per class.
+ *
+ * @author agent
+ */
+class SchemaIndex {
+
+    /** the predicates which are indexed, besides rdf:type */
+    private static final URI[] PREDICATES = { RDFS.subClassOf, RDFS.domain, RDFS.range,
+            RDFS.comment, RDFS.label, OWL.onProperty };
+
+    /** rdf:type -> instances */
+    private final Map<Node,Set<Resource>> instances = new HashMap<Node,Set<Resource>>();
+
+    /** predicate -> subject -> objects */
+    private final Map<URI,Map<Resource,List<Node>>> values = new HashMap<URI,Map<Resource,List<Node>>>();
+
+    /** predicate -> object -> subjects */
+    private final Map<URI,Map<Node,List<Resource>>> inverseValues = new HashMap<URI,Map<Node,List<Resource>>>();
+
+    /** class -> all super-classes */
+    private final Map<Resource,Set<Resource>> superclasses = new HashMap<Resource,Set<Resource>>();
+
+    /**
+     * Reads all statements of the model once.
+     *
+     * @param m the schema, including inferred statements
+     */
+    public SchemaIndex(Model m) {
+        for(URI predicate : PREDICATES) {
+            this.values.put(predicate, new HashMap<Resource,List<Node>>());
+            this.inverseValues.put(predicate, new HashMap<Node,List<Resource>>());
+        }
+        ClosableIterator<Statement> it = m.iterator();
+        try {
+            while(it.hasNext()) {
+                Statement stmt = it.next();
+                if(stmt.getPredicate().equals(RDF.type)) {
+                    Set<Resource> typeInstances = this.instances.get(stmt.getObject());
+                    if(typeInstances == null) {
+                        typeInstances = new LinkedHashSet<Resource>();
+                        this.instances.put(stmt.getObject(), typeInstances);
+                    }
+                    typeInstances.add(stmt.getSubject());
+                    continue;
+                }
+                Map<Resource,List<Node>> objects = this.values.get(stmt.getPredicate());
+                if(objects != null) {
+                    add(objects, stmt.getSubject(), stmt.getObject());
+                    add(this.inverseValues.get(stmt.getPredicate()), stmt.getObject(), stmt
+                            .getSubject());
+                }
+            }
+        } finally {
+            it.close();
+        }
+    }
+
+    private static <K, V> void add(Map<K,List<V>> map, K key, V value) {
+        List<V> list = map.get(key);
+        if(list == null) {
+            list = new ArrayList<V>(1);
+            map.put(key, list);
+        }
+        if(!list.contains(value))
+            list.add(value);
+    }
+
+    /**
+     * @return all instances of the given class, in the order they have been
+     *         read
+     */
+    public Set<Resource> getInstances(URI type) {
+        Set<Resource> result = this.instances.get(type);
+        if(result == null)
+            return Collections.emptySet();
+        return result;
+    }
+
+    public boolean isInstance(Resource resource, URI type) {
+        return getInstances(type).contains(resource);
+    }
+
+    /**
+     * @return the objects of all statements (subject, predicate, *), the
+     *         predicate must be one of the indexed predicates
+     */
+    public List<Node> getValues(Resource subject, URI predicate) {
+        List<Node> result = this.values.get(predicate).get(subject);
+        if(result == null)
+            return Collections.emptyList();
+        return result;
+    }
+
+    /**
+     * @return the subjects of all statements (*, predicate, object), the
+     *         predicate must be one of the indexed predicates
+     */
+    public List<Resource> getSubjects(URI predicate, Node object) {
+        List<Resource> result = this.inverseValues.get(predicate).get(object);
+        if(result == null)
+            return Collections.emptyList();
+        return result;
+    }
+
+    /**
+     * @return all resources which are values of the predicate, e.g. the domains
+     *         of a property
+     */
+    public List<Resource> getResources(Resource subject, URI predicate) {
+        List<Resource> result = new ArrayList<Resource>();
+        for(Node node : getValues(subject, predicate)) {
+            if(node instanceof Resource)
+                result.add((Resource)node);
+        }
+        return result;
+    }
+
+    /**
+     * @return all values of the predicate as strings, e.g. the labels of a
+     *         resource
+     */
+    public List<String> getStrings(Resource subject, URI predicate) {
+        List<String> result = new ArrayList<String>();
+        for(Node node : getValues(subject, predicate)) {
+            if(node instanceof Literal)
+                result.add(((Literal)node).getValue());
+            else
+                result.add(node.toString());
+        }
+        return result;
+    }
+
+    public List<String> getLabels(Resource resource) {
+        return getStrings(resource, RDFS.label);
+    }
+
+    public List<String> getComments(Resource resource) {
+        return getStrings(resource, RDFS.comment);
+    }
+
+    /**
+     * @return all super-classes of the class, following rdfs:subClassOf
+     *         transitively. Contains the class itself only if the schema
+     *         states so, e.g. by RDFS inferencing.
+     */
+    public Set<Resource> getSuperclasses(Resource clazz) {
+        Set<Resource> result = this.superclasses.get(clazz);
+        if(result == null) {
+            result = new LinkedHashSet<Resource>();
+            LinkedList<Resource> queue = new LinkedList<Resource>();
+            queue.add(clazz);
+            while(!queue.isEmpty()) {
+                for(Resource superclass : getResources(queue.removeFirst(), RDFS.subClassOf)) {
+                    if(result.add(superclass))
+                        queue.add(superclass);
+                }
+            }
+            this.superclasses.put(clazz, result);
+        }
+        return result;
+    }
+
+}
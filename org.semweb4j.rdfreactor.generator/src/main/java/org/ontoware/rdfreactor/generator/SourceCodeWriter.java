@@ -1,13 +1,22 @@
 package org.ontoware.rdfreactor.generator;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.Random;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
@@ -34,6 +43,18 @@ public class SourceCodeWriter {
     
     public static final String TEMPLATE_CLASS = "class.vm";
     
+    /**
+     * template of the lean profile: only instance methods, other ways of
+     * access are offered by one ReactorProperty handle per property
+     */
+    public static final String TEMPLATE_LEAN_CLASS = "leanclass.vm";
+    
+    /** template of the factory registry written for reflection-free code */
+    public static final String TEMPLATE_FACTORIES = "factories.vm";
+    
+    /** name of the factory registry class in each package */
+    public static final String FACTORIES_CLASS = "ReactorFactories";
+    
     private static Logger log = LoggerFactory.getLogger(SourceCodeWriter.class);
     
     public static String memreport() {
@@ -69,6 +90,27 @@ public static void write(JModel jm, File outdir, String methodnamePrefix) throws
      */
     public static void write(JModel jm, File outdir, String templateName, String methodnamePrefix)
             throws IOException {
+        write(jm, outdir, templateName, methodnamePrefix, false);
+    }
+    
+    /**
+     * Writes model 'jm' to 'outdir' creating sub-directories for packages as
+     * needed. Uses 'templateName'. Prefixes all methods with 'prefix', e.g.
+     * with prefix="Sioc" one gets "getSiocName"
+     * 
+     * @param jm
+     * @param outdir
+     * @param templateName in resource-syntax, e.g. "com/example/myname.vm"
+     * @param methodnamePrefix
+     * @param reflectionFree if true, the generated classes have static
+     *            factories, call the converters of their property types
+     *            directly and each package gets a class registering the
+     *            factories with the runtime, so the runtime needs no
+     *            reflection for them
+     * @throws IOException
+     */
+    public static void write(JModel jm, File outdir, String templateName,
+            String methodnamePrefix, boolean reflectionFree) throws IOException {
         assert templateName != null;
         
         log.info("Adding inverse properties");
@@ -78,9 +120,7 @@ public static void write(JModel jm, File outdir, String templateName, String met
         
         outdir.mkdirs();
         File modelFile = new File(outdir, "rdfreactor.model.log");
-        FileWriter fw = new FileWriter(modelFile);
-        fw.write(jm.toString());
-        fw.close();
+        writeIfChanged(modelFile, jm.toString(), null);
         log.info("Wrote RDFReactors interpretation of the ontology into a readable textfile at "
                 + modelFile.getAbsolutePath());
         
@@ -92,17 +132,50 @@ public static void write(JModel jm, File outdir, String templateName, String met
         
         Calendar now = Calendar.getInstance();
         SourceCodeWriter sourceCodeWriter = new SourceCodeWriter(jm, methodnamePrefix, now,
-                templateName, outdir);
+                templateName, outdir, reflectionFree);
         sourceCodeWriter.initEngine();
         sourceCodeWriter.initTemplate();
-        sourceCodeWriter.initContext();
         sourceCodeWriter.writeModel();
     }
     
+    /** all templates used to generate code, including the parsed ones */
+    public static final String[] TEMPLATES = { TEMPLATE_CLASS, TEMPLATE_LEAN_CLASS,
+            TEMPLATE_FACTORIES, "get.vm", "add.vm", "set.vm", "remove.vm", "removeall.vm" };
+    
+    /** finds the generation time in the header of a generated file */
+    private static final Pattern GENERATED_ON = Pattern
+            .compile("generated by http://RDFReactor\\.semweb4j\\.org \\(.*\\) on (.+)");
+    
+    /**
+     * Write a file only if its content changed, so that unchanged generated
+     * classes need not be compiled again. The generation time in the header
+     * of generated files is not compared.
+     * 
+     * @param now the generation time in the content, or null
+     * @return true if the file was written
+     * @throws IOException
+     */
+    static boolean writeIfChanged(File file, String content, String now) throws IOException {
+        if(file.isFile()) {
+            String existing = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            Matcher matcher = GENERATED_ON.matcher(existing);
+            if(now != null && matcher.find()) {
+                existing = existing.replace(matcher.group(1), now);
+            }
+            if(existing.equals(content)) {
+                return false;
+            }
+        }
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+    
     private final JModel jm;
     
     private final String methodnamePrefix;
     
+    private final boolean reflectionFree;
+    
     private final Calendar now;
     
     private final File outdir;
@@ -111,29 +184,56 @@ public static void write(JModel jm, File outdir, String templateName, String met
     
     private final String templateName;
     
-    private VelocityContext velocityContext = null;
-    
     private VelocityEngine velocityEngine = null;
     
+    /** number of threads rendering classes */
+    private int threads = Runtime.getRuntime().availableProcessors();
+    
     public SourceCodeWriter(JModel jm, String methodnamePrefix, Calendar now, String templateName,
             File outdir) {
+        this(jm, methodnamePrefix, now, templateName, outdir, false);
+    }
+    
+    public SourceCodeWriter(JModel jm, String methodnamePrefix, Calendar now, String templateName,
+            File outdir, boolean reflectionFree) {
         this.jm = jm;
         this.methodnamePrefix = methodnamePrefix;
+        this.reflectionFree = reflectionFree;
         this.now = now;
         this.templateName = templateName;
         this.outdir = outdir;
     }
     
-    private void initContext() {
-        this.velocityContext = new VelocityContext();
-        this.velocityContext.put("methodnameprefix", this.methodnamePrefix);
+    /**
+     * Each class is rendered with its own context: contexts are not thread
+     * safe, and re-using one context lets the cache of velocity grow.
+     */
+    private VelocityContext createContext(JPackage jp) {
+        VelocityContext velocityContext = new VelocityContext();
+        velocityContext.put("methodnameprefix", this.methodnamePrefix);
         // for debug
-        this.velocityContext.put("now", DateFormat.getInstance().format(this.now.getTime()));
-        this.velocityContext.put("serialVersionUID", Long.toString(new Random().nextLong()));
-        this.velocityContext.put("root", this.jm.getRoot());
-        this.velocityContext.put("generatorVersion", CodeGenerator.GENERATOR_VERSION);
-        this.velocityContext.put("utils", new Utils());
-        
+        velocityContext.put("now", formatNow());
+        velocityContext.put("root", this.jm.getRoot());
+        velocityContext.put("generatorVersion", CodeGenerator.GENERATOR_VERSION);
+        velocityContext.put("utils", new Utils());
+        velocityContext.put("reflectionfree", this.reflectionFree);
+        velocityContext.put("jmodel", this.jm);
+        velocityContext.put("package", jp);
+        return velocityContext;
+    }
+    
+    private String formatNow() {
+        return DateFormat.getInstance().format(this.now.getTime());
+    }
+    
+    /**
+     * @return a serialVersionUID which stays the same when the class is
+     *         generated again
+     */
+    private static long serialVersionUID(JPackage jp, JClass jc) {
+        return UUID.nameUUIDFromBytes(
+                (jp.getName() + "." + jc.getName()).getBytes(StandardCharsets.UTF_8))
+                .getMostSignificantBits();
     }
     
     private void initEngine() {
@@ -159,12 +259,19 @@ private void initEngine() {
     }
     
     private void initTemplate() {
-        if(!this.velocityEngine.resourceExists(this.templateName))
-            throw new RuntimeException("template " + this.templateName
+        this.template = getTemplate(this.templateName);
+        assert this.template != null;
+        
+        log.debug("Initialised template. Free memory: " + Runtime.getRuntime().freeMemory());
+    }
+    
+    private Template getTemplate(String name) {
+        if(!this.velocityEngine.resourceExists(name))
+            throw new RuntimeException("template " + name
                     + " does not exist with resource loader " + RuntimeConstants.RESOURCE_LOADER);
         
         try {
-            this.template = this.velocityEngine.getTemplate(this.templateName);
+            return this.velocityEngine.getTemplate(name);
         } catch(ResourceNotFoundException e) {
             throw new RuntimeException(e);
         } catch(ParseErrorException e) {
@@ -172,36 +279,66 @@ private void initTemplate() {
         } catch(Exception e) {
             throw new RuntimeException(e);
         }
-        assert this.template != null;
-        
-        log.debug("Initialised template. Free memory: " + Runtime.getRuntime().freeMemory());
     }
     
+    /**
+     * Renders the classes of all packages in parallel, each file is only
+     * written if its content changed.
+     */
     private void writeModel() throws IOException {
+        List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
         for(JPackage jp : this.jm.getPackages())
-            writePackage(jp);
+            addPackage(jp, tasks);
+        
+        int written = 0;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(
+                this.threads, tasks.size())));
+        try {
+            for(Future<Boolean> result : executor.invokeAll(tasks)) {
+                if(result.get())
+                    written++;
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof IOException)
+                throw (IOException)e.getCause();
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException)e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        log.info("Wrote " + written + " of " + tasks.size() + " files, the others were unchanged");
     }
     
-    private void writeClass(JPackage jp, JClass jc, File packageOutdir) throws IOException {
+    private boolean writeClass(JPackage jp, JClass jc, File packageOutdir) throws IOException {
         assert this.template != null;
         assert jc != null;
         assert jc.getName() != null;
         assert jc.getSuperclass() != null;
-        this.velocityContext.put("package", jp);
-        this.velocityContext.put("class", jc);
-        File outfile = new File(packageOutdir, jc.getName() + ".java");
-        log.info("Generating " + outfile.getAbsolutePath());
-        FileWriter fw = new FileWriter(outfile);
-        BufferedWriter bw = new BufferedWriter(fw);
-        
+        VelocityContext velocityContext = createContext(jp);
+        velocityContext.put("class", jc);
+        velocityContext.put("serialVersionUID", Long.toString(serialVersionUID(jp, jc)));
+        return write(this.template, velocityContext, new File(packageOutdir, jc.getName()
+                + ".java"));
+    }
+    
+    private boolean writeFactories(JPackage jp, File packageOutdir) throws IOException {
+        VelocityContext velocityContext = createContext(jp);
+        velocityContext.put("registry", FACTORIES_CLASS);
+        return write(getTemplate(TEMPLATE_FACTORIES), velocityContext, new File(packageOutdir,
+                FACTORIES_CLASS + ".java"));
+    }
+    
+    private boolean write(Template template, VelocityContext velocityContext, File outfile)
+            throws IOException {
+        StringWriter sw = new StringWriter();
         try {
             log.debug("Before template merge.    " + memreport());
-            this.template.merge(this.velocityContext, bw);
+            template.merge(velocityContext, sw);
             log.debug("After template merge.     " + memreport());
-            // context has to be re-initialised every time to work around an
-            // ever-growing cache in velocity
-            initContext();
-            log.debug("After context re-init     " + memreport());
         } catch(ResourceNotFoundException e) {
             throw new RuntimeException(e);
         } catch(ParseErrorException e) {
@@ -209,15 +346,17 @@ private void writeClass(JPackage jp, JClass jc, File packageOutdir) throws IOExc
         } catch(MethodInvocationException e) {
             throw new RuntimeException(e);
         }
-        bw.close();
-        // re-enable if a newer version of velocity has no longer the
-        // cache-grow bug
-        // this.velocityContext.remove("class");
+        if(writeIfChanged(outfile, sw.toString(), formatNow())) {
+            log.info("Generated " + outfile.getAbsolutePath());
+            return true;
+        }
+        log.debug("Unchanged " + outfile.getAbsolutePath());
+        return false;
     }
     
-    private void writePackage(JPackage jp) throws IOException {
+    private void addPackage(final JPackage jp, List<Callable<Boolean>> tasks) {
         log.info("prepare for writing " + jp.getClasses().size() + " classes");
-        File packageOutdir = new File(this.outdir, jp.getName().replaceAll("\\.", "\\/"));
+        final File packageOutdir = new File(this.outdir, jp.getName().replaceAll("\\.", "\\/"));
         log.info("Out dir      " + packageOutdir.getAbsolutePath());
         if(!packageOutdir.exists())
             packageOutdir.mkdirs();
@@ -225,12 +364,24 @@ private void writePackage(JPackage jp) throws IOException {
         // package
         assert jp.isConsistent();
         jp.sortClasses();
-        for(JClass jc : jp.getClasses()) {
+        for(final JClass jc : jp.getClasses()) {
             assert jc != null;
-            writeClass(jp, jc, packageOutdir);
+            // sort the properties before the classes are rendered in parallel
+            jc.getProperties();
+            tasks.add(new Callable<Boolean>() {
+                
+                public Boolean call() throws IOException {
+                    return writeClass(jp, jc, packageOutdir);
+                }
+            });
+        }
+        if(this.reflectionFree) {
+            tasks.add(new Callable<Boolean>() {
+                
+                public Boolean call() throws IOException {
+                    return writeFactories(jp, packageOutdir);
+                }
+            });
         }
-        // re-enable if a newer version of velocity has no longer the
-        // cache-grow bug
-        // this.velocityContext.remove("package");
     }
 }
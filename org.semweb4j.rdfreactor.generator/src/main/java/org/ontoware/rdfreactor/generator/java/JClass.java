@@ -56,6 +56,9 @@ public class JClass extends JMapped implements Comparable<JClass> {
     /** List of superclasses, represented by JClass instances */
     private List<JClass> superclasses = new ArrayList<JClass>();
     
+    /** super-classes not inherited from in Java after flattening */
+    private Set<JClass> formerSuperclasses = new HashSet<JClass>();
+    
     /** as used for code generation */
     private JClass javaSuperclass;
     
@@ -234,15 +237,23 @@ private void addJavaSubclass(JClass javaSubclass) {
         
     }
     
+    private static final Comparator<JProperty> PROPERTY_ORDER = new Comparator<JProperty>() {
+        
+        public int compare(JProperty a, JProperty b) {
+            return a.getName().compareTo(b.getName());
+        }
+        
+    };
+    
     public List<JProperty> getProperties() {
-        // sort properties
-        Collections.sort(this.properties, new Comparator<JProperty>() {
-            
-            public int compare(JProperty a, JProperty b) {
-                return a.getName().compareTo(b.getName());
+        // sort properties, but only if needed: sorting counts as a
+        // modification and would break templates iterating over them
+        for(int i = 1; i < this.properties.size(); i++) {
+            if(PROPERTY_ORDER.compare(this.properties.get(i - 1), this.properties.get(i)) > 0) {
+                Collections.sort(this.properties, PROPERTY_ORDER);
+                break;
             }
-            
-        });
+        }
         
         // return
         return this.properties;
@@ -277,7 +288,7 @@ public JClass getSuperclass() {
         return this.javaSuperclass;
     }
     
-    private JPackage getPackage() {
+    JPackage getPackage() {
         return this.packagge;
     }
     
@@ -337,6 +348,14 @@ public List<JProperty> getMissingProperties() {
         return this.missingProperties;
     }
     
+    /**
+     * @return the super-classes which have been dropped when flattening the
+     *         inheritance hierarchy, their properties are missing in this class
+     */
+    Set<JClass> getFormerSuperclasses() {
+        return this.formerSuperclasses;
+    }
+    
     /** @return a verbose report of this JClass */
     public String toReport() {
         StringBuffer buf = new StringBuffer();
@@ -376,8 +395,27 @@ public boolean equals(Object other) {
         return false;
     }
     
+    /** consistent with equals, so JClasses can be kept in hash sets */
+    @Override
+    public int hashCode() {
+        return 31 * this.getName().hashCode() + this.getPackage().hashCode();
+    }
+    
+    /**
+     * @return true if the generated code throws CardinalityException, which
+     *         is the case as soon as a property has a cardinality restriction
+     */
     public boolean getCardinalityexception() {
-        return this.cardinalityexception;
+        if(this.cardinalityexception) {
+            return true;
+        }
+        for(JProperty jprop : this.properties) {
+            if(jprop.getMinCardinality() != JProperty.NOT_SET
+                    || jprop.getMaxCardinality() != JProperty.NOT_SET) {
+                return true;
+            }
+        }
+        return false;
     }
     
     public int compareTo(JClass other) {
@@ -1,11 +1,15 @@
 package org.ontoware.rdfreactor.generator.java;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.ontoware.rdf2go.model.node.Resource;
 import org.ontoware.rdf2go.model.node.URI;
@@ -62,6 +66,9 @@ public class JModel {
      */
     private Map<Resource,JClass> classMap;
     
+    /** the number of Java Objects mapped to each JClass */
+    private Map<JClass,Integer> mappedClasses;
+    
     public Set<URI> knownProperties;
     
     /** the root JClass of this JModel */
@@ -75,6 +82,7 @@ public class JModel {
     public JModel(JClass root) {
         this.packages = new ArrayList<JPackage>();
         this.classMap = new HashMap<Resource,JClass>();
+        this.mappedClasses = new HashMap<JClass,Integer>();
         this.knownProperties = new HashSet<URI>();
         this.root = root;
     }
@@ -120,10 +128,18 @@ public String toReport() {
      * 
      * circles always are of length two, due to RDFS and OWL semantics
      * 
+     * The super-classes which are not inherited from in Java any more are
+     * remembered, see {@link #materialiseMissingProperties(JPackage, boolean)}.
+     * As the super-classes of a class are not changed by properties, the
+     * hierarchy needs to be flattened only once, before adding properties.
+     * 
      * @param jp
      */
     public void flattenInheritanceHierarchy(JPackage jp) {
+        // super-classes of each super-class, for lookups
+        Map<JClass,Set<JClass>> superclassSets = new HashMap<JClass,Set<JClass>>();
         for(JClass jc : jp.getClasses()) {
+            jc.getFormerSuperclasses().clear();
             // FIXME for (JClass jc : mapping.values()) {
             switch(jc.getSuperclasses().size()) {
             case 0: {
@@ -168,9 +184,14 @@ public void flattenInheritanceHierarchy(JPackage jp) {
                 for(JClass superclass : jc.getSuperclasses()) {
                     log.debug("trying " + superclass + " (" + superclass.getSuperclasses().size()
                             + " superclasses)");
+                    Set<JClass> superclassSet = superclassSets.get(superclass);
+                    if(superclassSet == null) {
+                        superclassSet = new HashSet<JClass>(superclass.getSuperclasses());
+                        superclassSets.put(superclass, superclassSet);
+                    }
                     if((!superclass.equals(jc))
                             && superclass.getSuperclasses().size() > maxSuperclassCount
-                            && !superclass.getSuperclasses().contains(jc)) {
+                            && !superclassSet.contains(jc)) {
                         maxSuperclassCount = superclass.getSuperclasses().size();
                         mostSpecificSuperClass = superclass;
                         log.debug(superclass + " has " + maxSuperclassCount + " superclasses");
@@ -183,14 +204,10 @@ public void flattenInheritanceHierarchy(JPackage jp) {
                             + mostSpecificSuperClass);
                     jc.setJavaSuperclass(mostSpecificSuperClass);
                     
-                    // FIXME by throwing away other super-classes we must copy
-                    // their properties to this class
+                    // by throwing away other super-classes we must copy
+                    // their properties to this class, once they are known
                     lessSpecificSuperClasses.remove(mostSpecificSuperClass);
-                    for(JClass formerSuperClass : lessSpecificSuperClasses) {
-                        for(JProperty prop : formerSuperClass.getProperties()) {
-                            jc.getMissingProperties().add(prop);
-                        }
-                    }
+                    jc.getFormerSuperclasses().addAll(lessSpecificSuperClasses);
                     
                 } else {
                     log.debug("most specific superclass of " + jc.getName() + " is root");
@@ -212,11 +229,77 @@ public List<JPackage> getPackages() {
         return this.packages;
     }
     
+    private static final String CONVERTER_PACKAGE = "org.ontoware.rdfreactor.runtime.converter.";
+    
+    /** the runtime converter for each java type of literal values */
+    private static final Map<String,String> converters = new HashMap<String,String>();
+    
+    static {
+        converters.put("java.lang.String", CONVERTER_PACKAGE + "StringConverter");
+        converters.put("java.lang.Boolean", CONVERTER_PACKAGE + "BooleanConverter");
+        converters.put("java.lang.Byte", CONVERTER_PACKAGE + "ByteConverter");
+        converters.put("java.lang.Short", CONVERTER_PACKAGE + "ShortConverter");
+        converters.put("java.lang.Integer", CONVERTER_PACKAGE + "IntegerConverter");
+        converters.put("java.lang.Long", CONVERTER_PACKAGE + "LongConverter");
+        converters.put("java.lang.Float", CONVERTER_PACKAGE + "FloatConverter");
+        converters.put("java.lang.Double", CONVERTER_PACKAGE + "DoubleConverter");
+        converters.put("java.net.URI", CONVERTER_PACKAGE + "JavaNetUriConverter");
+        converters.put("java.net.URL", CONVERTER_PACKAGE + "UrlConverter");
+        converters.put("java.util.Calendar", CONVERTER_PACKAGE + "CalendarConverter");
+        converters.put("org.ontoware.rdf2go.model.node.Node", CONVERTER_PACKAGE + "NodeConverter");
+        converters.put("org.ontoware.rdf2go.model.node.Resource", CONVERTER_PACKAGE
+                + "ResourceConverter");
+        converters.put("org.ontoware.rdf2go.model.node.URI", CONVERTER_PACKAGE + "UriConverter");
+    }
+    
+    /**
+     * Used by reflection-free code: the converter constant for a literal type,
+     * or the static factory of a class generated from this JModel.
+     * 
+     * @param type the type of a property with a single type
+     * @return a java expression to pass to the runtime instead of the class
+     *         object, or null if the type is only known by its class object
+     */
+    public String getMapper(JClass type) {
+        String converter = converters.get(type.getName());
+        if(converter != null)
+            return getConverterField(converter);
+        if(this.packages.contains(type.getPackage()))
+            return type.getName() + ".FACTORY";
+        return null;
+    }
+    
+    /**
+     * @return the converter classes used by the reflection-free accessors of
+     *         the given class
+     */
+    public Set<String> getConverters(JClass jc) {
+        Set<String> result = new TreeSet<String>();
+        for(JProperty jprop : jc.getProperties()) {
+            if(jprop.getTypes().size() == 1) {
+                String converter = converters.get(jprop.getFirstType().getName());
+                if(converter != null)
+                    result.add(converter);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * @return the name of the constant holding an instance of the given
+     *         converter class, e.g. STRING_CONVERTER
+     */
+    public String getConverterField(String converter) {
+        String name = converter.substring(converter.lastIndexOf('.') + 1);
+        return name.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+    
     /**
      * generates artificial inverse properties, named propertyName + "_Inverse"
      * TODO read inverse props from OWL, this generates ALL inverse
      */
     public void addInverseProperties() {
+        Map<JClass,PropertyIndex> inverseIndexes = new IdentityHashMap<JClass,PropertyIndex>();
         // add inverse properties
         for(JPackage jp : getPackages()) {
             for(JClass jc : jp.getClasses()) {
@@ -233,8 +316,12 @@ public void addInverseProperties() {
                     
                     for(JClass type : jprop.getTypes()) {
                         // add only if not already present
-                        if(!type.getInverseProperties().contains(inverse))
+                        PropertyIndex inverses = getIndex(inverseIndexes, type, type
+                                .getInverseProperties());
+                        if(!inverses.contains(inverse)) {
                             type.getInverseProperties().add(inverse);
+                            inverses.add(inverse);
+                        }
                         // always:
                         inverse.addType(jc);
                     }
@@ -258,7 +345,14 @@ public JClass getRoot() {
      *            mapped
      */
     public void addMapping(Resource id, JClass jc) {
-        this.classMap.put(id, jc);
+        JClass replaced = this.classMap.put(id, jc);
+        if(replaced != null) {
+            int count = this.mappedClasses.remove(replaced);
+            if(count > 1)
+                this.mappedClasses.put(replaced, count - 1);
+        }
+        Integer count = this.mappedClasses.get(jc);
+        this.mappedClasses.put(jc, count == null ? 1 : count + 1);
     }
     
     /**
@@ -291,28 +385,90 @@ public void setRoot(JClass root) {
     }
     
     public boolean containsJClass(JClass jclass) {
-        return this.classMap.containsValue(jclass);
+        return this.mappedClasses.containsKey(jclass);
     }
     
     /**
      * Turn all those "missingProperties" that would have been present via
      * inheritance from the super-classes, but where the superclass has been
-     * removed by flattening the hierarchy
+     * removed by flattening the hierarchy. Call this once, after all
+     * properties have been added.
      * 
      * @param jp
      * @param skipbuiltins
      */
     public void materialiseMissingProperties(JPackage jp, boolean skipbuiltins) {
+        Map<JClass,PropertyIndex> indexes = new IdentityHashMap<JClass,PropertyIndex>();
         for(JClass jc : jp.getClasses()) {
+            Set<JProperty> missing = Collections
+                    .newSetFromMap(new IdentityHashMap<JProperty,Boolean>());
+            missing.addAll(jc.getMissingProperties());
+            for(JClass formerSuperClass : jc.getFormerSuperclasses()) {
+                for(JProperty prop : formerSuperClass.getProperties()) {
+                    if(missing.add(prop))
+                        jc.getMissingProperties().add(prop);
+                }
+            }
+            
             for(JProperty missingProp : jc.getMissingProperties()) {
                 if(skipbuiltins && this.knownProperties.contains(missingProp.getMappedTo())) {
                     // do nothing
-                } else if(!jc.hasJavaProperty(missingProp)) {
+                } else if(!hasJavaProperty(indexes, jc, missingProp)) {
                     jc.getProperties().add(missingProp);
+                    getIndex(indexes, jc, jc.getProperties()).add(missingProp);
                 }
             }
         }
     }
     
+    /**
+     * Same as {@link JClass#hasJavaProperty(JProperty)}, but uses an index of
+     * the properties of each class
+     */
+    private static boolean hasJavaProperty(Map<JClass,PropertyIndex> indexes, JClass jc,
+            JProperty prop) {
+        for(JClass c = jc; c != null; c = c.getSuperclass()) {
+            if(getIndex(indexes, c, c.getProperties()).contains(prop))
+                return true;
+        }
+        return false;
+    }
+    
+    private static PropertyIndex getIndex(Map<JClass,PropertyIndex> indexes, JClass jc,
+            Collection<JProperty> properties) {
+        PropertyIndex index = indexes.get(jc);
+        if(index == null) {
+            index = new PropertyIndex(properties);
+            indexes.put(jc, index);
+        }
+        return index;
+    }
+    
+    /**
+     * The names and URIs of some properties. Two JProperty are equal if they
+     * have the same name or the same URI, so this finds equal properties
+     * without comparing to each of them.
+     */
+    private static class PropertyIndex {
+        
+        private final Set<String> names = new HashSet<String>();
+        
+        private final Set<URI> uris = new HashSet<URI>();
+        
+        PropertyIndex(Collection<JProperty> properties) {
+            for(JProperty prop : properties)
+                add(prop);
+        }
+        
+        void add(JProperty prop) {
+            this.names.add(prop.getName());
+            this.uris.add(prop.getMappedTo());
+        }
+        
+        boolean contains(JProperty prop) {
+            return this.names.contains(prop.getName()) || this.uris.contains(prop.getMappedTo());
+        }
+    }
+    
     // TODO: implement equals() ?
 }
@@ -1,7 +1,18 @@
 package org.ontoware.rdfreactor.generator;
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
+import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.Reasoning;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdf2go.vocabulary.RDF;
+import org.ontoware.rdf2go.vocabulary.RDFS;
+import org.ontoware.rdfreactor.generator.java.JClass;
+import org.ontoware.rdfreactor.generator.java.JModel;
+import org.ontoware.rdfreactor.generator.java.JProperty;
 
 public class ModelGeneratorTest {
 
@@ -13,4 +24,38 @@ public void testGeneration() throws Exception {
 				outdir, "com.example.modelgeneratortest", Reasoning.owl, true);
 	}
 
+	@Test
+	public void testMultipleInheritance() throws Exception {
+		URI a = new URIImpl("urn:ex:A");
+		URI b = new URIImpl("urn:ex:B");
+		URI c = new URIImpl("urn:ex:C");
+		URI d = new URIImpl("urn:ex:D");
+		URI pa = new URIImpl("urn:ex:pa");
+		URI pb = new URIImpl("urn:ex:pb");
+		Model m = RDF2Go.getModelFactory().createModel();
+		m.open();
+		for(URI clazz : new URI[] { a, b, c, d })
+			m.addStatement(clazz, RDF.type, RDFS.Class);
+		m.addStatement(c, RDFS.subClassOf, a);
+		m.addStatement(c, RDFS.subClassOf, b);
+		m.addStatement(d, RDFS.subClassOf, c);
+		m.addStatement(pa, RDF.type, RDF.Property);
+		m.addStatement(pa, RDFS.domain, a);
+		m.addStatement(pb, RDF.type, RDF.Property);
+		m.addStatement(pb, RDFS.domain, b);
+
+		JModel jm = ModelGenerator.createFromRDFS_Schema(m, "com.example.inheritance", true);
+		m.close();
+
+		JClass jc = jm.getMapping(c);
+		assertEquals(4, jc.getSuperclasses().size());
+		assertEquals(jc, jm.getMapping(d).getSuperclass());
+		// the properties of the super-class which is not inherited from
+		JClass former = jc.getSuperclass().equals(jm.getMapping(a)) ? jm.getMapping(b) : jm
+		        .getMapping(a);
+		assertEquals(1, jc.getProperties().size());
+		JProperty missing = jc.getProperties().get(0);
+		assertEquals(former.getProperties().get(0), missing);
+	}
+
 }
@@ -1,7 +1,24 @@
 package org.ontoware.rdfreactor.generator;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
 
+import org.junit.Assume;
 import org.junit.Test;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.ontoware.rdfreactor.generator.java.JClass;
@@ -41,4 +58,108 @@ public void testWrite() throws Exception {
 		SourceCodeWriter.write(jm, new File(outdir), SourceCodeWriter.TEMPLATE_CLASS,"Prefix");
 
 	}
+
+	/**
+	 * @return a model with the class Person in the given package, which has
+	 *         the properties friend and name
+	 */
+	private static JModel personModel(String packageName) {
+		JModel jm = new JModel(JClass.RDFS_CLASS);
+		JPackage jp = new JPackage(packageName);
+		jm.addPackage(jp);
+		JClass jc1 = new JClass(jp, "Person", new URIImpl("urn:ex:Person"));
+		jc1.setJavaSuperclass(new JClass(new JPackage(""),"org.ontoware.rdfreactor.runtime.ReactorBaseImpl",new URIImpl("urn:ex:object")));
+		JProperty friend = new JProperty(jc1, "friend", new URIImpl("urn:ex:knows"), JProperty.NOT_SET, JProperty.NOT_SET );
+		friend.addType(jc1);
+		jc1.getProperties().add(friend);
+		JProperty name = new JProperty(jc1, "name", new URIImpl("urn:ex:name"), JProperty.NOT_SET, 1 );
+		name.addType(JClass.STRING);
+		jc1.getProperties().add(name);
+		return jm;
+	}
+
+	@Test
+	public void testWriteReflectionFree() throws Exception {
+		JModel jm = personModel("test.reflectionfree");
+		File dir = new File(outdir, "reflectionfree");
+		SourceCodeWriter.write(jm, dir, SourceCodeWriter.TEMPLATE_CLASS, "", true);
+
+		File packageDir = new File(dir, "test/reflectionfree");
+		String person = new String(Files.readAllBytes(new File(packageDir, "Person.java").toPath()), StandardCharsets.UTF_8);
+		assertTrue(person.contains("public static final ReactorFactory<Person> FACTORY"));
+		assertTrue(person.contains("Base.getAll(this.model, this.getResource(), FRIEND, Person.FACTORY)"));
+		assertTrue(person.contains("Base.get(this.model, this.getResource(), NAME, STRING_CONVERTER)"));
+		assertFalse(person.contains("Base.getAll(model, instanceResource, FRIEND, Person.class)"));
+		String registry = new String(Files.readAllBytes(new File(packageDir, SourceCodeWriter.FACTORIES_CLASS + ".java").toPath()), StandardCharsets.UTF_8);
+		assertTrue(registry.contains("RDFReactorRuntime.registerFactory(Person.FACTORY, Person.RDFS_CLASS)"));
+
+		compile(new File(packageDir, "Person.java"), new File(packageDir, SourceCodeWriter.FACTORIES_CLASS + ".java"));
+	}
+
+	/**
+	 * Compiles the given sources against the test class path and fails on any
+	 * compiler error. Skipped if no system compiler is available.
+	 */
+	private static void compile(File... sources) throws Exception {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		Assume.assumeNotNull(compiler);
+		File classes = new File(outdir, "classes");
+		assertTrue(classes.isDirectory() || classes.mkdirs());
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+		try {
+			List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", classes.getPath());
+			boolean success = compiler.getTask(null, fileManager, diagnostics, options, null,
+					fileManager.getJavaFileObjects(sources)).call();
+			List<String> errors = new ArrayList<String>();
+			for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+				if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+					errors.add(diagnostic.toString());
+				}
+			}
+			assertEquals(new ArrayList<String>(), errors);
+			assertTrue(success);
+		} finally {
+			fileManager.close();
+		}
+	}
+
+	@Test
+	public void testWriteLean() throws Exception {
+		JModel jm = personModel("test.lean");
+		File dir = new File(outdir, "lean");
+		SourceCodeWriter.write(jm, dir, CodeGenerator.getTemplate(CodeGenerator.PROFILE_LEAN), "");
+
+		String person = new String(Files.readAllBytes(new File(dir, "test/lean/Person.java").toPath()), StandardCharsets.UTF_8);
+		assertTrue(person.contains("public static final ReactorProperty<java.lang.String> NAME = new ReactorProperty<java.lang.String>(\"urn:ex:name\", java.lang.String.class);"));
+		assertTrue(person.contains("public java.lang.String getName() {"));
+		assertTrue(person.contains("return FRIEND.getAll(this.model, this.getResource());"));
+		assertFalse(person.contains("Resource instanceResource"));
+	}
+
+	@Test
+	public void testWriteUnchanged() throws Exception {
+		JModel jm = new JModel(JClass.RDFS_CLASS);
+		JPackage jp = new JPackage("test.unchanged");
+		jm.addPackage(jp);
+		JClass jc1 = new JClass(jp, "Person", new URIImpl("urn:ex:Person"));
+		jc1.setJavaSuperclass(new JClass(new JPackage(""),"org.ontoware.rdfreactor.runtime.ReactorBaseImpl",new URIImpl("urn:ex:object")));
+		jp.getClasses().add(jc1);
+		JClass jc2 = new JClass(jp, "Group", new URIImpl("urn:ex:Group"));
+		jc2.setJavaSuperclass(jc1.getSuperclass());
+		jp.getClasses().add(jc2);
+		JProperty member = new JProperty(jc2, "member", new URIImpl("urn:ex:member"), JProperty.NOT_SET, JProperty.NOT_SET );
+		member.addType(jc1);
+		jc2.getProperties().add(member);
+		File dir = new File(outdir, "unchanged");
+		SourceCodeWriter.write(jm, dir, SourceCodeWriter.TEMPLATE_CLASS, "", true);
+
+		File person = new File(dir, "test/unchanged/Person.java");
+		File group = new File(dir, "test/unchanged/Group.java");
+		assertTrue(person.setLastModified(1000));
+		assertTrue(group.setLastModified(1000));
+		SourceCodeWriter.write(jm, dir, SourceCodeWriter.TEMPLATE_CLASS, "", true);
+		assertEquals(1000, person.lastModified());
+		assertEquals(1000, group.lastModified());
+	}
 }
@@ -38,9 +38,15 @@
 import org.apache.maven.project.MavenProject;
 import org.ontoware.rdf2go.Reasoning;
 import org.ontoware.rdfreactor.generator.CodeGenerator;
+import org.ontoware.rdfreactor.generator.SourceCodeWriter;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * Goal which generates Java classes from an RDF Schema file. Source code generation
@@ -93,6 +99,24 @@ public class RdfSClassGenerator extends AbstractMojo
 	 */
 	private String methodPrefix;
 
+	/**
+	 * Specifies whether the generated classes shall have static factories and call type converters
+	 * directly, so that the RDFReactor runtime needs no reflection for them. Each package then also
+	 * contains a class registering all factories with the runtime.
+	 * 
+	 * @parameter default-value="false" 
+	 */
+	private boolean reflectionFree;
+
+	/**
+	 * The kind of generated code: "default" generates static and instance methods for every way
+	 * to access a property, "lean" generates only instance methods and offers the other ways of
+	 * access through one typed property handle per property, which makes much smaller classes.
+	 * 
+	 * @parameter default-value="default" 
+	 */
+	private String profile;
+
 	/**
 	 * The Maven Project Object
 	 *
@@ -109,6 +133,14 @@ public class RdfSClassGenerator extends AbstractMojo
 	 */
     private File rdfReactorLogfile;
 
+	/**
+	 * Hash of the schema, the templates and the options of the last generation
+	 * 
+	 * @parameter default-value="target/rdfreactor.hash"
+	 * @readonly
+	 */
+    private File rdfReactorHashfile;
+
 	public void execute()
 		throws MojoExecutionException, MojoFailureException
 	{
@@ -119,8 +151,10 @@ public void execute()
 	    	methodPrefix = "";
 	    }
 	    
-	    if ( needsRegeneration() ) {
+	    String hash = computeHash();
+	    if ( needsRegeneration(hash) ) {
 			generateCode();
+			writeHash(hash);
 		} else {
 			getLog().info("Generated classes are up to date - not regenerating.");
 		}
@@ -133,46 +167,75 @@ public void execute()
 
     /**
      * Checks for indicators that source code should be regenerated from the
-     * schema. Specifically, it checks modification time of the log file,
-     * existence of <code>outputDirectory</code> and of package
-     * sub-directories as well modification time of generated files.
+     * schema. Specifically, it compares the hash of the last generation with
+     * the current one and checks existence of <code>outputDirectory</code>
+     * and of the package sub-directory with generated files. Unlike
+     * modification times, the hash does not change when the schema is only
+     * touched, e.g. by a checkout.
      * 
+     * @param hash the hash of the current schema, templates and options
      * @return <code>true</code> if source code must be regenerated,
      *         otherwise <code>false</code>
      */
-    private boolean needsRegeneration() {
-        boolean regenerationReq = false;
-        regenerationReq |= !rdfReactorLogfile.exists();
-        regenerationReq |= schemaFile.lastModified() >= rdfReactorLogfile.lastModified();
-        regenerationReq |= !outputDirectory.exists();
-            
-        // split package name at dot separators
-        String[] pkgComponents = packageName.split("\\.");
-        String packageDirPath = outputDirectory.getAbsolutePath(); 
-        for (int i=0; i< pkgComponents.length; i++) {
-            if (regenerationReq)
-                break;
-
-            packageDirPath = packageDirPath + File.separator + pkgComponents[i]; 
-            File subDir = new File(packageDirPath);
-
-            regenerationReq |= !subDir.exists();
-            
-            if (i == pkgComponents.length-1) { // reached bottom of generated dir tree
-                File[] fileList = subDir.listFiles();
-                for (int j = 0; j < fileList.length; j++) {
-                    File genFile = fileList[j];
-                    // if schema file is newer than _any_ the generated files, regenerate!
-                    if (genFile.isFile() 
-                            && schemaFile.lastModified() >= genFile.lastModified()) {
-                        regenerationReq = true;
-                        break;
-                    }
+    private boolean needsRegeneration(String hash) throws MojoExecutionException {
+        if (!rdfReactorHashfile.isFile())
+            return true;
+        try {
+            String lastHash = new String(Files.readAllBytes(rdfReactorHashfile.toPath()), StandardCharsets.UTF_8);
+            if (!lastHash.trim().equals(hash))
+                return true;
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Cannot read " + rdfReactorHashfile, ioe);
+        }
+
+        File packageDir = new File(outputDirectory, packageName.replace('.', File.separatorChar));
+        String[] generated = packageDir.list();
+        return generated == null || generated.length == 0;
+    }
+
+    /**
+     * @return a SHA-256 hash over the schema file, the templates of the
+     *         generator and all options which change the generated code
+     */
+    private String computeHash() throws MojoExecutionException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(Files.readAllBytes(schemaFile.toPath()));
+            for (String template : SourceCodeWriter.TEMPLATES) {
+                InputStream in = CodeGenerator.class.getClassLoader().getResourceAsStream(template);
+                if (in == null)
+                    throw new MojoExecutionException("Template " + template + " not found");
+                try {
+                    byte[] buffer = new byte[8192];
+                    for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+                        digest.update(buffer, 0, n);
+                } finally {
+                    in.close();
                 }
             }
+            String options = CodeGenerator.GENERATOR_VERSION + "|" + outputDirectory.getAbsolutePath()
+                    + "|" + packageName + "|" + methodPrefix + "|" + skipBuiltins + "|" + profile
+                    + "|" + reflectionFree;
+            digest.update(options.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest())
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Cannot read " + schemaFile, ioe);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new MojoExecutionException("SHA-256 is not available", nsae);
         }
+    }
 
-        return regenerationReq;
+    private void writeHash(String hash) throws MojoExecutionException {
+        try {
+            rdfReactorHashfile.getParentFile().mkdirs();
+            Files.write(rdfReactorHashfile.toPath(), hash.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ioe) {
+            throw new MojoExecutionException("Cannot write " + rdfReactorHashfile, ioe);
+        }
     }
 
 	private void generateCode() throws MojoExecutionException, MojoFailureException {
@@ -189,12 +252,12 @@ private void generateCode() throws MojoExecutionException, MojoFailureException
 		}
 
 		getLog().info("Generating code from RDF schema file " + schemaFile + " into dir " + outputDirectory
-				+ ". Classes will be in package " + packageName + " and with method prefix " + methodPrefix +". skipBuiltins is " + skipBuiltins + ".");
+				+ ". Classes will be in package " + packageName + " and with method prefix " + methodPrefix +". skipBuiltins is " + skipBuiltins + ". reflectionFree is " + reflectionFree + ". profile is " + profile + ".");
 		getLog().info("RDFReactor's log messages are written to " + rdfReactorLogfile);
 
 
 		try {
-			CodeGenerator.generate(schemaFile.getAbsolutePath(), outputDirectory.getAbsolutePath(), packageName, Reasoning.rdfs, skipBuiltins, methodPrefix);
+			CodeGenerator.generate(schemaFile.getAbsolutePath(), outputDirectory.getAbsolutePath(), packageName, Reasoning.rdfs, skipBuiltins, methodPrefix, profile, reflectionFree);
 		} catch (Exception e) {
 			e.printStackTrace();
 		    throw new MojoFailureException(e, "RDFS processing error", "Could not generate code from the specified RDF schema file.");
@@ -2,6 +2,7 @@
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.ontoware.aifbcommons.collection.ClosableIterator;
@@ -117,6 +118,22 @@ public static <T> T getInstance(Model model, Resource resource, Class<?> returnT
 		return (T)RDFReactorRuntime.node2javatype(model, resource, returnType);
 	}
 	
+	/**
+	 * @param model RDF2Go model
+	 * @param resource instance identifier
+	 * @param factory creates the instance, without reflection
+	 * @return an instance created by the factory
+	 */
+	public static <T> T getInstance(Model model, Resource resource, ReactorFactory<T> factory) {
+		if(model == null)
+			throw new IllegalArgumentException("model may not be null");
+		if(resource == null)
+			throw new IllegalArgumentException("resource may not be null");
+		if(factory == null)
+			throw new IllegalArgumentException("factory may not be null");
+		return RDFReactorRuntime.node2javatype(model, resource, factory);
+	}
+	
 	/**
 	 * Removes rdf:type rdfsClass
 	 * 
@@ -191,6 +208,86 @@ public static <T> ClosableIterator<T> getAll(Model model, Resource resourceSubje
 		        ProjectingIterator.projection.Object), model, returnType);
 	}
 	
+	/**
+	 * Get the value of a property with the given converter, without looking
+	 * up a converter for the return type.
+	 * 
+	 * @return the converted value or null
+	 */
+	public static <T> T get(Model model, Resource resourceSubject, URI propertyURI,
+	        INodeConverter<T> converter) throws RDFDataException, ModelRuntimeException {
+		if(converter == null)
+			throw new IllegalArgumentException("converter may not be null");
+		return converter.toJava(getValue(model, resourceSubject, propertyURI));
+	}
+	
+	/**
+	 * Get the value of a property as an instance created by the given factory,
+	 * without reflection.
+	 * 
+	 * @return the instance or null
+	 */
+	public static <T> T get(Model model, Resource resourceSubject, URI propertyURI,
+	        ReactorFactory<T> factory) throws RDFDataException, ModelRuntimeException {
+		if(factory == null)
+			throw new IllegalArgumentException("factory may not be null");
+		return RDFReactorRuntime.node2javatype(model, getValue(model, resourceSubject,
+		        propertyURI), factory);
+	}
+	
+	private static Node getValue(Model model, Resource resourceSubject, URI propertyURI) {
+		if(model == null)
+			throw new IllegalArgumentException("model may not be null");
+		if(resourceSubject == null)
+			throw new IllegalArgumentException("resourceSubject may not be null");
+		if(propertyURI == null)
+			throw new IllegalArgumentException("propertyURI may not be null");
+		assertOpen(model);
+		Resource rdfResource = RDFReactorRuntime.genericResource2RDF2Goresource(model,
+		        resourceSubject);
+		return ResourceUtils.getSingleValue(model, rdfResource, propertyURI);
+	}
+	
+	/**
+	 * Get all values of a property with the given converter, without looking
+	 * up a converter for the return type.
+	 */
+	public static <T> ClosableIterator<T> getAll(Model model, Resource resourceSubject,
+	        URI propertyURI, INodeConverter<T> converter) {
+		if(converter == null)
+			throw new IllegalArgumentException("converter may not be null");
+		return new ConvertingClosableIterator<T>(getValues(model, resourceSubject, propertyURI),
+		        model, converter);
+	}
+	
+	/**
+	 * Get all values of a property as instances created by the given factory,
+	 * without reflection.
+	 */
+	public static <T> ClosableIterator<T> getAll(Model model, Resource resourceSubject,
+	        URI propertyURI, ReactorFactory<T> factory) {
+		if(factory == null)
+			throw new IllegalArgumentException("factory may not be null");
+		return new ConvertingClosableIterator<T>(getValues(model, resourceSubject, propertyURI),
+		        model, factory);
+	}
+	
+	private static ClosableIterator<Node> getValues(Model model, Resource resourceSubject,
+	        URI propertyURI) {
+		if(model == null)
+			throw new IllegalArgumentException("model may not be null");
+		if(resourceSubject == null)
+			throw new IllegalArgumentException("resourceSubject may not be null");
+		if(propertyURI == null)
+			throw new IllegalArgumentException("propertyURI may not be null");
+		assertOpen(model);
+		Resource rdfResource = RDFReactorRuntime.genericResource2RDF2Goresource(model,
+		        resourceSubject);
+		ClosableIterator<Statement> it = model.findStatements(rdfResource, propertyURI,
+		        Variable.ANY);
+		return new ProjectingIterator<Node>(it, ProjectingIterator.projection.Object);
+	}
+	
 	public static <T> ReactorResult<T> getAll_as(Model model, Resource resourceSubject,
 	        URI propertyURI, Class<T> returnType) {
 		if(model == null)
@@ -530,6 +627,31 @@ public static void set(Model model, Resource resourceSubject, URI propertyURI, O
 		}
 	}
 	
+	/**
+	 * Load the given properties of the resources, or all of their properties
+	 * if none are given, in one go. This only has an effect if the model is a
+	 * {@link ReactorSession}, which then answers the getters of these
+	 * resources without asking the model again. Other models have no cache to
+	 * fill, so nothing is loaded and false is returned.
+	 * 
+	 * @param resources {@link Resource}s or {@link ResourceEntity}s
+	 * @return true if the properties were loaded, false if the model is no
+	 *         {@link ReactorSession}
+	 */
+	public static boolean prefetch(Model model, Collection<?> resources, URI... properties) {
+		if(model == null)
+			throw new IllegalArgumentException("model may not be null");
+		if(resources == null)
+			throw new IllegalArgumentException("resources may not be null");
+		assertOpen(model);
+		if(model instanceof ReactorSession) {
+			((ReactorSession)model).prefetch(resources, properties);
+			return true;
+		}
+		log.debug("Not prefetching, " + model.getClass().getName() + " is no ReactorSession");
+		return false;
+	}
+	
 	public static <T> List<T> asList(ClosableIterator<T> it) {
 		if(it == null)
 			throw new IllegalArgumentException("it may not be null");
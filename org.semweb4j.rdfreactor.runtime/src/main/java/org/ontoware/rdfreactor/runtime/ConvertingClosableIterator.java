@@ -20,6 +20,10 @@
 	
 	private Class<T> returnType;
 	
+	private INodeConverter<T> converter;
+	
+	private ReactorFactory<T> factory;
+	
 	private Model model;
 	
 	/**
@@ -33,6 +37,30 @@ public ConvertingClosableIterator(ClosableIterator<Node> it, Model model, Class<
 		this.returnType = returnType;
 	}
 	
+	/**
+	 * @param it
+	 * @param model
+	 * @param converter converts each node, without looking up a converter
+	 */
+	public ConvertingClosableIterator(ClosableIterator<Node> it, Model model,
+	        INodeConverter<T> converter) {
+		this.model = model;
+		this.it = it;
+		this.converter = converter;
+	}
+	
+	/**
+	 * @param it
+	 * @param model
+	 * @param factory creates an object for each node, without reflection
+	 */
+	public ConvertingClosableIterator(ClosableIterator<Node> it, Model model,
+	        ReactorFactory<T> factory) {
+		this.model = model;
+		this.it = it;
+		this.factory = factory;
+	}
+	
 	public boolean hasNext() {
 		return this.it.hasNext();
 	}
@@ -44,6 +72,12 @@ public void close() {
 	@SuppressWarnings("unchecked")
 	public T next() {
 		Node node = this.it.next();
+		if(this.converter != null) {
+			return this.converter.toJava(node);
+		}
+		if(this.factory != null) {
+			return RDFReactorRuntime.node2javatype(this.model, node, this.factory);
+		}
 		Object typedObject = RDFReactorRuntime.node2javatype(this.model, node, this.returnType);
 		return (T)typedObject;
 	}
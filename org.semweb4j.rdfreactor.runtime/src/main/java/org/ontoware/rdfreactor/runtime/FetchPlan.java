@@ -0,0 +1,160 @@
+package org.ontoware.rdfreactor.runtime;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.ontoware.aifbcommons.collection.ClosableIterable;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.impl.ReadOnlyModel;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+
+
+/**
+ * Describes which statements to load around some resources: paths of
+ * properties starting at the resources. A plan is loaded with one SPARQL
+ * CONSTRUCT query into a separate in-memory model, so objects read from it can
+ * be navigated without asking the original model again.
+ *
+ * <pre>
+ * FetchPlan plan = new FetchPlan().path(Person.NAME)
+ *         .path(Person.AFFILIATION, Affiliation.ORGANIZATION, Organization.ADDRESS);
+ * Person person = plan.fetch(model, uri, Person.class);
+ * </pre>
+ *
+ * The loaded model is read-only, it is not updated when the original model
+ * changes.
+ *
+ * @author agent
+ */
+public class FetchPlan {
+
+	private final List<UriOrVariable[]> paths = new ArrayList<UriOrVariable[]>();
+
+	/**
+	 * Load the statements along a path of properties. {@link Variable#ANY}
+	 * stands for any property.
+	 *
+	 * @return this plan
+	 */
+	public FetchPlan path(UriOrVariable... properties) {
+		if(properties.length == 0)
+			throw new IllegalArgumentException("path may not be empty");
+		for(UriOrVariable property : properties) {
+			if(!(property instanceof URI || property == Variable.ANY))
+				throw new IllegalArgumentException("path may contain only URIs and Variable.ANY");
+		}
+		this.paths.add(properties.clone());
+		return this;
+	}
+
+	/**
+	 * Load all statements up to the given number of steps away.
+	 *
+	 * @return this plan
+	 */
+	public FetchPlan depth(int depth) {
+		UriOrVariable[] path = new UriOrVariable[depth];
+		Arrays.fill(path, Variable.ANY);
+		return path(path);
+	}
+
+	/**
+	 * @return the SPARQL CONSTRUCT query loading this plan for the given
+	 *         resources
+	 */
+	public String toSPARQL(URI... roots) {
+		if(this.paths.isEmpty())
+			throw new IllegalStateException("the plan has no paths");
+		if(roots.length == 0)
+			throw new IllegalArgumentException("roots may not be empty");
+		StringBuilder template = new StringBuilder();
+		StringBuilder where = new StringBuilder();
+		for(int i = 0; i < this.paths.size(); i++) {
+			UriOrVariable[] path = this.paths.get(i);
+			if(i > 0) {
+				where.append(" UNION");
+			}
+			where.append(" {");
+			String subject = "?root";
+			for(int j = 0; j < path.length; j++) {
+				String predicate = path[j] instanceof URI ? ((URI)path[j]).toSPARQL() : "?p" + i
+				        + "_" + j;
+				String object = "?o" + i + "_" + j;
+				String triple = " " + subject + " " + predicate + " " + object + " .";
+				template.append(triple);
+				if(j > 0) {
+					where.append(" OPTIONAL {");
+				}
+				where.append(triple);
+				subject = object;
+			}
+			for(int j = 1; j < path.length; j++) {
+				where.append(" }");
+			}
+			where.append(" }");
+		}
+		StringBuilder query = new StringBuilder("CONSTRUCT {");
+		query.append(template).append(" } WHERE { VALUES ?root {");
+		for(URI root : roots) {
+			query.append(' ').append(root.toSPARQL());
+		}
+		query.append(" }").append(where).append(" }");
+		return query.toString();
+	}
+
+	/**
+	 * Load this plan for the given resources with one query.
+	 *
+	 * @return a read-only in-memory model with the loaded statements, which
+	 *         should be closed after use
+	 */
+	public Model fetch(Model model, URI... roots) throws ModelRuntimeException {
+		ClosableIterable<Statement> result = model.sparqlConstruct(toSPARQL(roots));
+		Model loaded = RDF2Go.getModelFactory().createModel();
+		loaded.open();
+		ClosableIterator<Statement> it = result.iterator();
+		try {
+			loaded.addAll(it);
+		} catch(ModelRuntimeException e) {
+			loaded.close();
+			throw e;
+		} finally {
+			it.close();
+		}
+		return new ReadOnlyModel(loaded);
+	}
+
+	/**
+	 * Load this plan for the given resource with one query.
+	 *
+	 * @return an object of the given type for the resource, bound to the
+	 *         read-only model with the loaded statements
+	 */
+	public <T> T fetch(Model model, URI root, Class<T> type) throws ModelRuntimeException {
+		return type.cast(RDFReactorRuntime.resource2reactorbase(fetch(model, root), root, type));
+	}
+
+	/**
+	 * Load this plan for the given resources with one query.
+	 *
+	 * @return objects of the given type for the resources, bound to the
+	 *         read-only model with the loaded statements
+	 */
+	public <T> List<T> fetch(Model model, List<URI> roots, Class<T> type)
+	        throws ModelRuntimeException {
+		Model loaded = fetch(model, roots.toArray(new URI[roots.size()]));
+		List<T> result = new ArrayList<T>();
+		for(URI root : roots) {
+			result.add(type.cast(RDFReactorRuntime.resource2reactorbase(loaded, root, type)));
+		}
+		return result;
+	}
+
+}
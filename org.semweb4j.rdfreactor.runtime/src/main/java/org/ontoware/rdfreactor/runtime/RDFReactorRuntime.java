@@ -1,8 +1,8 @@
 package org.ontoware.rdfreactor.runtime;
 
 import java.lang.reflect.Constructor;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.ontoware.rdf2go.exception.ModelRuntimeException;
 import org.ontoware.rdf2go.model.Model;
@@ -43,7 +43,13 @@ public class RDFReactorRuntime {
 	 * Map from java types to convertes that can handle this type and convert it
 	 * to RDF2Go types.
 	 */
-	private static Map<Class<?>,INodeConverter<?>> converterMap = new HashMap<Class<?>,INodeConverter<?>>();
+	private static Map<Class<?>,INodeConverter<?>> converterMap = new ConcurrentHashMap<Class<?>,INodeConverter<?>>();
+	
+	/*
+	 * The converter used for instances of each class, replaced whenever a
+	 * converter is registered.
+	 */
+	private static volatile ClassValue<INodeConverter<?>> resolvedConverters = resolvedConverters();
 	
 	static {
 		/* register converters */
@@ -68,12 +74,98 @@ public class RDFReactorRuntime {
 	
 	public static void registerConverter(Class<?> type, INodeConverter<?> converter) {
 		converterMap.put(type, converter);
+		resolvedConverters = resolvedConverters();
+	}
+	
+	/**
+	 * Remove the converter registered for exactly the given type.
+	 * 
+	 * @return the removed converter, or null
+	 */
+	public static INodeConverter<?> unregisterConverter(Class<?> type) {
+		INodeConverter<?> converter = converterMap.remove(type);
+		resolvedConverters = resolvedConverters();
+		return converter;
+	}
+	
+	private static ClassValue<INodeConverter<?>> resolvedConverters() {
+		return new ClassValue<INodeConverter<?>>() {
+			
+			@Override
+			protected INodeConverter<?> computeValue(Class<?> type) {
+				return resolveConverter(type);
+			}
+		};
+	}
+	
+	/**
+	 * @return the converter registered for the most specific supertype of the
+	 *         given type, or null
+	 */
+	private static INodeConverter<?> resolveConverter(Class<?> type) {
+		Class<?> best = null;
+		for(Class<?> registered : converterMap.keySet()) {
+			if(registered.isAssignableFrom(type)
+			        && (best == null || best.isAssignableFrom(registered))) {
+				best = registered;
+			}
+		}
+		return best == null ? null : converterMap.get(best);
 	}
 	
 	public static INodeConverter<?> getConverter(Class<?> type) {
 		return converterMap.get(type);
 	}
 	
+	/*
+	 * Factories registered by classes generated in reflection-free mode, by
+	 * class and by the URI of their RDFS class.
+	 */
+	private static Map<Class<?>,ReactorFactory<?>> factoryMap = new ConcurrentHashMap<Class<?>,ReactorFactory<?>>();
+	
+	private static Map<URI,ReactorFactory<?>> classURIFactoryMap = new ConcurrentHashMap<URI,ReactorFactory<?>>();
+	
+	private static Map<Class<?>,URI> classURIMap = new ConcurrentHashMap<Class<?>,URI>();
+	
+	/**
+	 * Register the factory of a generated class. It is used instead of
+	 * reflection to create instances of the class and to find its RDFS class.
+	 * 
+	 * @param factory creates instances of the class
+	 * @param classURI the RDFS class of the instances
+	 */
+	public static void registerFactory(ReactorFactory<?> factory, URI classURI) {
+		if(factory == null)
+			throw new IllegalArgumentException("factory may not be null");
+		if(classURI == null)
+			throw new IllegalArgumentException("classURI may not be null");
+		factoryMap.put(factory.getType(), factory);
+		classURIMap.put(factory.getType(), classURI);
+		classURIFactoryMap.put(classURI, factory);
+	}
+	
+	/**
+	 * @return the factory registered for the given class, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> ReactorFactory<T> getFactory(Class<T> type) {
+		return (ReactorFactory<T>)factoryMap.get(type);
+	}
+	
+	/**
+	 * @return the factory registered for the given RDFS class, or null
+	 */
+	public static ReactorFactory<?> getFactory(URI classURI) {
+		return classURIFactoryMap.get(classURI);
+	}
+	
+	/**
+	 * @return the RDFS class registered for the given class, or null
+	 */
+	public static URI getClassURI(Class<?> type) {
+		return classURIMap.get(type);
+	}
+	
 	// /////////////////////
 	// type conversion
 	
@@ -130,64 +222,129 @@ public static Object resource2reactorbase(Model model, Node node, Class<?> targe
 		if(targetType.isArray())
 			throw new IllegalArgumentException("targetType may not be an array");
 		
-		if(node instanceof URI) {
-			log.debug("URI node");
+		if(node instanceof URI || node instanceof BlankNode) {
+			if(model instanceof ReactorSession) {
+				return ((ReactorSession)model).getObject((Resource)node, targetType);
+			}
+			return newInstance(model, (Resource)node, targetType);
+		} else if(node == null) {
+			return null;
+		} else {
+			throw new RuntimeException("cannot convert " + node + " of class <" + node.getClass()
+			        + "> from " + node + " and convert it to " + targetType);
+		}
+		
+	}
+	
+	/**
+	 * Convert an RDF2Go resource with the factory of a generated class,
+	 * without reflection.
+	 * 
+	 * @param model - the underlying RDF2Go model
+	 * @param node - convert this object, can be a URI, a BlankNode or null
+	 * @param factory - creates the returned object
+	 * @return object created by the factory, or null if node is null
+	 */
+	public static <T> T node2javatype(Model model, Node node, ReactorFactory<T> factory) {
+		if(node instanceof URI || node instanceof BlankNode) {
+			if(model instanceof ReactorSession) {
+				return ((ReactorSession)model).getObject((Resource)node, factory.getType());
+			}
+			return factory.create(model, (Resource)node, false);
+		} else if(node == null) {
+			return null;
+		} else {
+			throw new RuntimeException("cannot convert " + node + " of class <" + node.getClass()
+			        + "> to " + factory.getType());
+		}
+	}
+	
+	/**
+	 * @param resource a URI or a BlankNode
+	 * @return a new object of the target type
+	 */
+	static Object newInstance(Model model, Resource resource, Class<?> targetType) {
+		ReactorFactory<?> factory = factoryMap.get(targetType);
+		if(factory != null) {
+			return factory.create(model, resource, false);
+		}
+		if(resource instanceof URI) {
+			return constructors.get(targetType).forURI.newInstance(model, resource);
+		} else {
+			return constructors.get(targetType).forBlankNode.newInstance(model, resource);
+		}
+	}
+	
+	/*
+	 * The constructors of each class used by resource2reactorbase, looked up
+	 * once per class.
+	 */
+	private static final ClassValue<Constructors> constructors = new ClassValue<Constructors>() {
+		
+		@Override
+		protected Constructors computeValue(Class<?> type) {
+			return new Constructors(type);
+		}
+	};
+	
+	/**
+	 * Creates instances of one class from URIs and blank nodes.
+	 */
+	private static class Constructors {
+		
+		final Instantiator forURI;
+		
+		final Instantiator forBlankNode;
+		
+		Constructors(Class<?> type) {
+			this.forURI = new Instantiator(type, URI.class, "URI/Resource");
+			this.forBlankNode = new Instantiator(type, BlankNode.class, "BlankNode/Resource");
+		}
+	}
+	
+	/**
+	 * Calls the constructor c(Model, nodeType, boolean) of a class, or else
+	 * c(Model, Resource, boolean). If there is no such constructor, the error
+	 * is reported on each call.
+	 * 
+	 * The constructor is called reflectively: javac compiles
+	 * MethodHandle.invokeExact only from source level 1.7 on, and below that
+	 * just invokeWithArguments is available, which boxes the arguments into
+	 * an array and is slower than Constructor.newInstance.
+	 */
+	private static class Instantiator {
+		
+		private final Constructor<?> constructor;
+		
+		private final String missing;
+		
+		Instantiator(Class<?> type, Class<? extends Resource> nodeType, String signature) {
+			Constructor<?> constructor = null;
+			String missing = null;
 			try {
-				
-				// // TODO: experimental
-				// URI classURI = (URI)
-				// targetType.getDeclaredField("RDFS_CLASS")
-				// .get(null);
-				
-				Constructor<?> constructor;
 				try {
-					constructor = targetType.getConstructor(new java.lang.Class[] { Model.class,
-					        URI.class, boolean.class });
+					constructor = type.getConstructor(Model.class, nodeType, boolean.class);
 				} catch(NoSuchMethodException nsme) {
-					constructor = targetType.getConstructor(new java.lang.Class[] { Model.class,
-					        Resource.class, boolean.class });
+					constructor = type.getConstructor(Model.class, Resource.class, boolean.class);
 				}
-				
-				return constructor.newInstance(new Object[] { model, node, false });
-				
-			} catch(ClassCastException cce) {
-				throw new RuntimeException(cce);
 			} catch(NoSuchMethodException nsme) {
-				throw new RuntimeException("found no constructor " + targetType
-				        + "(Model, URI/Resource, boolean) " + nsme);
-			} catch(Exception e) {
-				throw new ConversionException(e);
+				missing = "found no constructor " + type + "(Model, " + signature + ", boolean) "
+				        + nsme;
+			}
+			this.constructor = constructor;
+			this.missing = missing;
+		}
+		
+		Object newInstance(Model model, Resource resource) {
+			if(this.missing != null) {
+				throw new RuntimeException(this.missing);
 			}
-		} else if(node instanceof BlankNode) {
-			log.debug("BlankNode node");
-			Constructor<?> constructor;
 			try {
-				try {
-					constructor = targetType.getConstructor(new java.lang.Class[] { Model.class,
-					        BlankNode.class, boolean.class });
-				} catch(NoSuchMethodException nsme) {
-					log.debug("Class " + targetType + " has no constructor for BlankNode");
-					constructor = targetType.getConstructor(new java.lang.Class[] { Model.class,
-					        Resource.class, boolean.class });
-				}
-				BlankNode bnode = (BlankNode)node;
-				return constructor.newInstance(new Object[] { model, bnode, false });
-			} catch(ClassCastException cce) {
-				throw new RuntimeException(cce);
-			} catch(NoSuchMethodException nsme) {
-				throw new RuntimeException("found no constructor " + targetType
-				        + "(Model, BlankNode/Resource, boolean) " + nsme);
+				return this.constructor.newInstance(model, resource, false);
 			} catch(Exception e) {
 				throw new ConversionException(e);
 			}
-			
-		} else if(node == null) {
-			return null;
-		} else {
-			throw new RuntimeException("cannot convert " + node + " of class <" + node.getClass()
-			        + "> from " + node + " and convert it to " + targetType);
 		}
-		
 	}
 	
 	/**
@@ -221,19 +378,14 @@ public static Node java2node(Model model, Object reactorValue) {
 		}
 		
 		// convert value to rdfnode
-		log.debug("value is instance of " + reactorValue.getClass().getName());
 		if(reactorValue instanceof ReactorRuntimeEntity) {
-			log.debug("object is an instanceof ReactorBase, so will add as single resource");
 			// add as resource
 			Resource objectID = ((ReactorRuntimeEntity)reactorValue).getResource();
 			return objectID;
 		} else {
-			for(Class<?> clazz : converterMap.keySet()) {
-				log.debug("Can a " + reactorValue.getClass() + " be converted as " + clazz + " ?");
-				if(clazz.isInstance(reactorValue)) {
-					log.debug("Yes");
-					return getConverter(clazz).toNode(model, reactorValue);
-				}
+			INodeConverter<?> converter = resolvedConverters.get(reactorValue.getClass());
+			if(converter != null) {
+				return converter.toNode(model, reactorValue);
 			}
 		}
 		
@@ -156,9 +156,14 @@ public URI getRDFSClassURI() {
 	 * 
 	 * @param javaClass
 	 *            for which the RDFS schema class should be found
-	 * @return the RDFs_CLASS URI of an instance by using reflection
+	 * @return the RDFs_CLASS URI registered with the factory of the class,
+	 *         or else found by using reflection
 	 */
 	private static URI getClassURI(Class<?> javaClass) {
+		URI registered = RDFReactorRuntime.getClassURI(javaClass);
+		if (registered != null) {
+			return registered;
+		}
 		// TODO experimental
 		try {
 			URI classURI;
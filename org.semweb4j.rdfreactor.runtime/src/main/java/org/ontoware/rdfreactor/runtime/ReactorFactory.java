@@ -0,0 +1,31 @@
+package org.ontoware.rdfreactor.runtime;
+
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.Resource;
+
+
+/**
+ * Creates instances of a generated class without reflection. Code generated
+ * in reflection-free mode has a static factory for each class and registers it
+ * with {@link RDFReactorRuntime#registerFactory(ReactorFactory, org.ontoware.rdf2go.model.node.URI)}.
+ *
+ * @author agent
+ *
+ * @param <T>
+ */
+public interface ReactorFactory<T> {
+
+	/**
+	 * @return the class of the created instances
+	 */
+	Class<T> getType();
+
+	/**
+	 * @param model an RDF2Go model
+	 * @param resource a URI or a BlankNode
+	 * @param write if true, the rdf:type of the class is added to the model
+	 * @return a new instance for the resource
+	 */
+	T create(Model model, Resource resource, boolean write);
+
+}
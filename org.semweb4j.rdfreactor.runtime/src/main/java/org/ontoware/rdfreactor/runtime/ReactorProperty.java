@@ -0,0 +1,170 @@
+package org.ontoware.rdfreactor.runtime;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+/**
+ * A typed handle on a property, used by classes generated with the lean
+ * profile. Instead of a static and an instance method for each access variant
+ * of each property, generated classes have one handle per property which
+ * offers all variants:
+ *
+ * <pre>
+ * Person.NAME.getAll_as(model, person.getResource()).asList();
+ * Person.KNOWS.getAll_Inverse(model, person);
+ * </pre>
+ *
+ * The URI of the property is created on first use. Values of types with a
+ * registered converter are converted without looking up the converter again.
+ *
+ * @author agent
+ *
+ * @param <T> the java type of the values
+ */
+public class ReactorProperty<T> {
+
+	private final String uriString;
+
+	private final Class<T> type;
+
+	private final INodeConverter<T> converter;
+
+	private volatile URI uri;
+
+	/**
+	 * @param uri the URI of the property
+	 * @param type the java type of the values
+	 */
+	@SuppressWarnings("unchecked")
+	public ReactorProperty(String uri, Class<T> type) {
+		if(uri == null)
+			throw new IllegalArgumentException("uri may not be null");
+		if(type == null)
+			throw new IllegalArgumentException("type may not be null");
+		this.uriString = uri;
+		this.type = type;
+		this.converter = (INodeConverter<T>)RDFReactorRuntime.getConverter(type);
+	}
+
+	/**
+	 * @return the URI of the property
+	 */
+	public URI getURI() {
+		URI result = this.uri;
+		if(result == null) {
+			result = new URIImpl(this.uriString, false);
+			this.uri = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return the java type of the values
+	 */
+	public Class<T> getType() {
+		return this.type;
+	}
+
+	// /////////////////////
+	// read
+
+	/**
+	 * @return the single value or null
+	 * @throws RDFDataException if the property has multiple values
+	 */
+	public T get(Model model, Resource resource) {
+		if(this.converter != null) {
+			return Base.get(model, resource, getURI(), this.converter);
+		}
+		return this.type.cast(Base.get(model, resource, getURI(), this.type));
+	}
+
+	public Node get_asNode(Model model, Resource resource) {
+		return Base.get_asNode(model, resource, getURI());
+	}
+
+	public ClosableIterator<T> getAll(Model model, Resource resource) {
+		if(this.converter != null) {
+			return Base.getAll(model, resource, getURI(), this.converter);
+		}
+		return Base.getAll(model, resource, getURI(), this.type);
+	}
+
+	public ReactorResult<T> getAll_as(Model model, Resource resource) {
+		return Base.getAll_as(model, resource, getURI(), this.type);
+	}
+
+	public ClosableIterator<Node> getAll_asNode(Model model, Resource resource) {
+		return Base.getAll_asNode(model, resource, getURI());
+	}
+
+	/**
+	 * @return all resources which have the given value for this property
+	 */
+	public ClosableIterator<Resource> getAll_Inverse(Model model, Object value) {
+		return Base.getAll_Inverse(model, getURI(), value);
+	}
+
+	/**
+	 * @return true if the resource has at least one value for this property
+	 */
+	public boolean has(Model model, Resource resource) {
+		return Base.has(model, resource, getURI());
+	}
+
+	public boolean hasValue(Model model, Resource resource, Object value) {
+		return Base.hasValue(model, resource, getURI(), value);
+	}
+
+	public long count(Model model, Resource resource) {
+		return Base.countPropertyValues(model, resource, getURI());
+	}
+
+	// /////////////////////
+	// write
+
+	public void add(Model model, Resource resource, Object value) {
+		Base.add(model, resource, getURI(), value);
+	}
+
+	/**
+	 * @throws CardinalityException if the resource has maxCardinality values
+	 *             already
+	 */
+	public void add(Model model, Resource resource, Object value, int maxCardinality)
+	        throws CardinalityException {
+		Base.add(model, resource, getURI(), value, maxCardinality);
+	}
+
+	public void set(Model model, Resource resource, Object value) {
+		Base.set(model, resource, getURI(), value);
+	}
+
+	public void remove(Model model, Resource resource, Object value) {
+		Base.remove(model, resource, getURI(), value);
+	}
+
+	/**
+	 * @throws CardinalityException if the resource has only minCardinality
+	 *             values
+	 */
+	public void remove(Model model, Resource resource, Object value, int minCardinality)
+	        throws CardinalityException {
+		Base.remove(model, resource, getURI(), value, minCardinality);
+	}
+
+	public void removeAll(Model model, Resource resource) {
+		Base.removeAll(model, resource, getURI());
+	}
+
+	@Override
+	public String toString() {
+		return this.uriString;
+	}
+
+}
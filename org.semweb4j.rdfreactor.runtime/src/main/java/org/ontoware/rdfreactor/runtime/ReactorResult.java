@@ -9,6 +9,8 @@
 import org.ontoware.rdf2go.model.Statement;
 import org.ontoware.rdf2go.model.impl.TriplePatternImpl;
 import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
 
 public class ReactorResult<T> {
 	
@@ -63,6 +65,26 @@ public List<T> asList() {
 		return list;
 	}
 
+	/**
+	 * Like {@link #asList()}, and loads the given properties of the resulting
+	 * resources, or all of their properties if none are given, in one go.
+	 * Prefetching needs a {@link ReactorSession}, for other models this is the
+	 * same as {@link #asList()}.
+	 * 
+	 * @see Base#prefetch(Model, java.util.Collection, URI...)
+	 */
+	public List<T> asPrefetchedList(URI... properties) {
+		List<T> list = asList();
+		List<Object> resources = new ArrayList<Object>();
+		for (T value : list) {
+			if (value instanceof Resource || value instanceof ResourceEntity) {
+				resources.add(value);
+			}
+		}
+		Base.prefetch(this.model, resources, properties);
+		return list;
+	}
+
 	@SuppressWarnings("unchecked")
 	public T[] asArray() {
 		Object[] resultAsArray = (Object[]) Array.newInstance(this.returnType, 0);
@@ -0,0 +1,673 @@
+package org.ontoware.rdfreactor.runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Diff;
+import org.ontoware.rdf2go.model.DiffReader;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.TriplePattern;
+import org.ontoware.rdf2go.model.impl.DelegatingModel;
+import org.ontoware.rdf2go.model.impl.DiffImpl;
+import org.ontoware.rdf2go.model.impl.PseudoClosableIterator;
+import org.ontoware.rdf2go.model.impl.TriplePatternImpl;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A unit of work over a model. Objects created with the session as their
+ * model share it:
+ * <ul>
+ * <li>Each resource is represented by one Java object per class, as long as
+ * that object is referenced.</li>
+ * <li>The values of a property of a resource are loaded once, the first time
+ * they are read, and then answered from the session. Reading all properties
+ * of a resource loads all its statements. The statements of many resources
+ * can be loaded at once with {@link #prefetch}.</li>
+ * <li>Changes are kept in the session and written to the model as one
+ * {@link Diff} by {@link #flush()}.</li>
+ * </ul>
+ *
+ * Queries are answered by the model and do not see changes which are not
+ * flushed yet. Reading from a stream flushes the changes first and then writes
+ * to the model directly. Changes made to the model by others are not seen for
+ * resources already loaded, until {@link #clear()} is called. A session is
+ * meant to be used by one thread at a time; its state is guarded by the
+ * session itself, so a hand-over between threads is safe.
+ *
+ * @author agent
+ */
+public class ReactorSession extends DelegatingModel {
+
+	private static final long serialVersionUID = -1843395296536419547L;
+
+	private static final Logger log = LoggerFactory.getLogger(ReactorSession.class);
+
+	/** number of resources loaded by one query in {@link #prefetch} */
+	private static final int BATCH_SIZE = 500;
+
+	/** the statements of the loaded resources, including the changes */
+	private final Map<Resource,Loaded> loaded = new HashMap<Resource,Loaded>();
+
+	private final Set<Statement> added = new LinkedHashSet<Statement>();
+
+	private final Set<Statement> removed = new LinkedHashSet<Statement>();
+
+	private final Map<Class<?>,Map<Resource,ObjectReference>> objects = new HashMap<Class<?>,Map<Resource,ObjectReference>>();
+
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+
+	public ReactorSession(Model model) {
+		super(model);
+	}
+
+	// /////////////////////
+	// objects
+
+	private static class ObjectReference extends WeakReference<Object> {
+
+		final Class<?> type;
+
+		final Resource resource;
+
+		ObjectReference(Object object, Class<?> type, Resource resource,
+		        ReferenceQueue<Object> queue) {
+			super(object, queue);
+			this.type = type;
+			this.resource = resource;
+		}
+	}
+
+	/**
+	 * @return the object of the given type representing the resource in this
+	 *         session, created if there is none yet. The type must have a
+	 *         constructor c(Model, URI|BlankNode|Resource, boolean).
+	 */
+	public synchronized <T> T getObject(Resource resource, Class<T> type) {
+		expungeCollected();
+		Map<Resource,ObjectReference> ofType = this.objects.get(type);
+		if(ofType == null) {
+			ofType = new HashMap<Resource,ObjectReference>();
+			this.objects.put(type, ofType);
+		}
+		ObjectReference reference = ofType.get(resource);
+		Object object = reference == null ? null : reference.get();
+		if(object == null) {
+			object = RDFReactorRuntime.newInstance(this, resource, type);
+			ofType.put(resource, new ObjectReference(object, type, resource, this.collected));
+		}
+		return type.cast(object);
+	}
+
+	private void expungeCollected() {
+		ObjectReference reference;
+		while((reference = (ObjectReference)this.collected.poll()) != null) {
+			Map<Resource,ObjectReference> ofType = this.objects.get(reference.type);
+			if(ofType != null && ofType.get(reference.resource) == reference) {
+				ofType.remove(reference.resource);
+			}
+		}
+	}
+
+	// /////////////////////
+	// changes
+
+	/**
+	 * @return true if there are changes which are not flushed yet
+	 */
+	public synchronized boolean isDirty() {
+		return !this.added.isEmpty() || !this.removed.isEmpty();
+	}
+
+	/**
+	 * @return the changes which are not flushed yet
+	 */
+	public synchronized Diff getChanges() {
+		return new DiffImpl(this.added.iterator(), this.removed.iterator());
+	}
+
+	/**
+	 * Write the changes to the model in one update.
+	 */
+	public synchronized void flush() throws ModelRuntimeException {
+		if(isDirty()) {
+			getDelegatedModel().update(getChanges());
+			this.added.clear();
+			this.removed.clear();
+		}
+	}
+
+	/**
+	 * Forget the changes which are not flushed yet.
+	 */
+	public synchronized void discard() {
+		this.added.clear();
+		this.removed.clear();
+		this.loaded.clear();
+	}
+
+	/**
+	 * Forget the loaded statements, they are loaded again from the model when
+	 * they are next read. Changes which are not flushed yet are kept.
+	 */
+	public synchronized void clear() {
+		this.loaded.clear();
+	}
+
+	// /////////////////////
+	// reading
+
+	/**
+	 * The statements of a resource, with the changes applied, for all or only
+	 * some properties.
+	 */
+	private static class Loaded {
+
+		final Map<URI,Set<Node>> values = new LinkedHashMap<URI,Set<Node>>();
+
+		/** the properties which are loaded, null if all are */
+		Set<URI> properties = new HashSet<URI>();
+
+		boolean isLoaded(URI property) {
+			return this.properties == null || this.properties.contains(property);
+		}
+	}
+
+	/**
+	 * @return the properties of the resource which are not loaded yet, of the
+	 *         given ones or of all if null. Null means all properties.
+	 */
+	private Set<URI> missing(Resource subject, Set<URI> properties) {
+		Loaded loaded = this.loaded.get(subject);
+		if(loaded == null) {
+			return properties;
+		}
+		if(loaded.properties == null) {
+			return Collections.emptySet();
+		}
+		if(properties == null) {
+			return null;
+		}
+		Set<URI> missing = new HashSet<URI>(properties);
+		missing.removeAll(loaded.properties);
+		return missing;
+	}
+
+	/**
+	 * Keep the values of the given properties, or of all if null, fetched
+	 * from the model, with the changes applied.
+	 */
+	private void keep(Resource subject, Map<URI,Set<Node>> fetched, Set<URI> properties) {
+		Loaded loaded = this.loaded.get(subject);
+		if(loaded == null) {
+			loaded = new Loaded();
+			this.loaded.put(subject, loaded);
+		}
+		if(properties == null) {
+			loaded.values.clear();
+			loaded.properties = null;
+		} else {
+			loaded.values.keySet().removeAll(properties);
+			loaded.properties.addAll(properties);
+		}
+		for(Map.Entry<URI,Set<Node>> entry : fetched.entrySet()) {
+			if(properties == null || properties.contains(entry.getKey())) {
+				for(Node value : entry.getValue()) {
+					if(!this.removed.contains(getDelegatedModel().createStatement(subject, entry
+					        .getKey(), value))) {
+						values(loaded.values, entry.getKey()).add(value);
+					}
+				}
+			}
+		}
+		for(Statement statement : this.added) {
+			if(statement.getSubject().equals(subject)
+			        && (properties == null || properties.contains(statement.getPredicate()))) {
+				values(loaded.values, statement.getPredicate()).add(statement.getObject());
+			}
+		}
+	}
+
+	/**
+	 * Load the values of one property of the resource, or all its statements
+	 * if the property is null.
+	 */
+	private Map<URI,Set<Node>> load(Resource subject, URI property) {
+		Map<URI,Set<Node>> fetched = new HashMap<URI,Set<Node>>();
+		ClosableIterator<Statement> it = getDelegatedModel().findStatements(subject,
+		        property == null ? Variable.ANY : property, Variable.ANY);
+		try {
+			while(it.hasNext()) {
+				Statement statement = it.next();
+				values(fetched, statement.getPredicate()).add(statement.getObject());
+			}
+		} finally {
+			it.close();
+		}
+		keep(subject, fetched, property == null ? null : Collections.singleton(property));
+		return this.loaded.get(subject).values;
+	}
+
+	/**
+	 * Load the given properties of the resources, or all of their properties if
+	 * none are given, with one query per {@value #BATCH_SIZE} resources. The
+	 * resources can be given as {@link Resource}s or {@link ResourceEntity}s.
+	 * Properties which are loaded already are not loaded again. Blank nodes
+	 * cannot be named in a query and are loaded one by one, as are all
+	 * resources if the model does not support SPARQL.
+	 */
+	public synchronized void prefetch(Collection<?> resources, URI ... properties)
+	        throws ModelRuntimeException {
+		Set<URI> wanted = properties.length == 0 ? null : new HashSet<URI>(Arrays
+		        .asList(properties));
+		List<URI> batch = new ArrayList<URI>();
+		for(Object resource : resources) {
+			Resource subject = resource instanceof ResourceEntity ? ((ResourceEntity)resource)
+			        .getResource() : (Resource)resource;
+			Set<URI> missing = missing(subject, wanted);
+			if(missing != null && missing.isEmpty()) {
+				continue;
+			}
+			if(subject instanceof URI) {
+				batch.add((URI)subject);
+				if(batch.size() == BATCH_SIZE) {
+					prefetch(batch, wanted);
+					batch.clear();
+				}
+			} else {
+				load(subject, null);
+			}
+		}
+		if(!batch.isEmpty()) {
+			prefetch(batch, wanted);
+		}
+	}
+
+	private void prefetch(List<URI> subjects, Set<URI> properties) {
+		StringBuilder query = new StringBuilder("SELECT ?s ?p ?o WHERE { VALUES ?s {");
+		for(URI subject : subjects) {
+			query.append(' ').append(subject.toSPARQL());
+		}
+		query.append(" }");
+		if(properties != null) {
+			query.append(" VALUES ?p {");
+			for(URI property : properties) {
+				query.append(' ').append(property.toSPARQL());
+			}
+			query.append(" }");
+		}
+		query.append(" ?s ?p ?o }");
+
+		Map<Resource,Map<URI,Set<Node>>> fetched = new HashMap<Resource,Map<URI,Set<Node>>>();
+		ClosableIterator<QueryRow> it;
+		try {
+			it = getDelegatedModel().sparqlSelect(query.toString()).iterator();
+		} catch(UnsupportedOperationException e) {
+			log.debug("Model does not support SPARQL, loading resources one by one");
+			for(URI subject : subjects) {
+				load(subject, null);
+			}
+			return;
+		}
+		try {
+			while(it.hasNext()) {
+				QueryRow row = it.next();
+				Resource subject = row.getValue("s").asURI();
+				Map<URI,Set<Node>> byProperty = fetched.get(subject);
+				if(byProperty == null) {
+					byProperty = new HashMap<URI,Set<Node>>();
+					fetched.put(subject, byProperty);
+				}
+				values(byProperty, row.getValue("p").asURI()).add(row.getValue("o"));
+			}
+		} finally {
+			it.close();
+		}
+		Map<URI,Set<Node>> none = Collections.emptyMap();
+		for(URI subject : subjects) {
+			Map<URI,Set<Node>> byProperty = fetched.get(subject);
+			keep(subject, byProperty == null ? none : byProperty, missing(subject, properties));
+		}
+	}
+
+	private static Set<Node> values(Map<URI,Set<Node>> byProperty, URI predicate) {
+		Set<Node> values = byProperty.get(predicate);
+		if(values == null) {
+			values = new LinkedHashSet<Node>();
+			byProperty.put(predicate, values);
+		}
+		return values;
+	}
+
+	@Override
+	public synchronized ClosableIterator<Statement> findStatements(ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		Set<Statement> result = new LinkedHashSet<Statement>();
+		if(subject instanceof Resource) {
+			Loaded loaded = this.loaded.get(subject);
+			Map<URI,Set<Node>> byProperty;
+			if(loaded != null
+			        && (predicate instanceof URI ? loaded.isLoaded((URI)predicate)
+			                : loaded.properties == null)) {
+				byProperty = loaded.values;
+			} else if(predicate instanceof URI) {
+				byProperty = load((Resource)subject, (URI)predicate);
+			} else {
+				byProperty = load((Resource)subject, null);
+			}
+			for(Map.Entry<URI,Set<Node>> entry : byProperty.entrySet()) {
+				if(predicate instanceof URI && !predicate.equals(entry.getKey())) {
+					continue;
+				}
+				for(Node value : entry.getValue()) {
+					if(!(object instanceof Node) || object.equals(value)) {
+						result.add(getDelegatedModel().createStatement((Resource)subject,
+						        entry.getKey(), value));
+					}
+				}
+			}
+			return new PseudoClosableIterator<Statement>(result.iterator());
+		}
+		ClosableIterator<Statement> it = getDelegatedModel().findStatements(subject,
+		        predicate, object);
+		try {
+			while(it.hasNext()) {
+				Statement statement = it.next();
+				if(!this.removed.contains(statement)) {
+					result.add(statement);
+				}
+			}
+		} finally {
+			it.close();
+		}
+		TriplePattern pattern = new TriplePatternImpl(subject, predicate, object);
+		for(Statement statement : this.added) {
+			if(pattern.matches(statement)) {
+				result.add(statement);
+			}
+		}
+		return new PseudoClosableIterator<Statement>(result.iterator());
+	}
+
+	@Override
+	public ClosableIterator<Statement> findStatements(TriplePattern pattern)
+	        throws ModelRuntimeException {
+		return findStatements(pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+	}
+
+	@Override
+	public boolean contains(ResourceOrVariable subject, UriOrVariable predicate,
+	        NodeOrVariable object) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = findStatements(subject, predicate, object);
+		try {
+			return it.hasNext();
+		} finally {
+			it.close();
+		}
+	}
+
+	@Override
+	public ClosableIterator<Statement> iterator() {
+		return findStatements(Variable.ANY, Variable.ANY, Variable.ANY);
+	}
+
+	/** the size of the model, corrected by looking up each change */
+	@Override
+	public synchronized long size() throws ModelRuntimeException {
+		long size = super.size();
+		// a statement is either added or removed
+		for(Statement statement : this.added) {
+			if(!getDelegatedModel().contains(statement)) {
+				size++;
+			}
+		}
+		for(Statement statement : this.removed) {
+			if(getDelegatedModel().contains(statement)) {
+				size--;
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	// /////////////////////
+	// writing
+
+	@Override
+	public synchronized void addStatement(Statement statement) throws ModelRuntimeException {
+		this.removed.remove(statement);
+		this.added.add(statement);
+		Loaded loaded = this.loaded.get(statement.getSubject());
+		if(loaded != null && loaded.isLoaded(statement.getPredicate())) {
+			values(loaded.values, statement.getPredicate()).add(statement.getObject());
+		}
+	}
+
+	@Override
+	public synchronized void removeStatement(Statement statement) throws ModelRuntimeException {
+		this.added.remove(statement);
+		this.removed.add(statement);
+		Loaded loaded = this.loaded.get(statement.getSubject());
+		if(loaded != null && loaded.values.containsKey(statement.getPredicate())) {
+			loaded.values.get(statement.getPredicate()).remove(statement.getObject());
+		}
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		addStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		addStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		addStatement(subject, predicate, getDelegatedModel().createLanguageTagLiteral(literal,
+		        languageTag));
+	}
+
+	@Override
+	public void addStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		addStatement(subject, predicate, getDelegatedModel().createDatatypeLiteral(literal,
+		        datatypeURI));
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void addStatement(String subjectURIString, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		addStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, Node object)
+	        throws ModelRuntimeException {
+		removeStatement(getDelegatedModel().createStatement(subject, predicate, object));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		removeStatement(subject, predicate, getDelegatedModel().createPlainLiteral(literal));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, String languageTag)
+	        throws ModelRuntimeException {
+		removeStatement(subject, predicate, getDelegatedModel().createLanguageTagLiteral(
+		        literal, languageTag));
+	}
+
+	@Override
+	public void removeStatement(Resource subject, URI predicate, String literal, URI datatypeURI)
+	        throws ModelRuntimeException {
+		removeStatement(subject, predicate, getDelegatedModel().createDatatypeLiteral(literal,
+		        datatypeURI));
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal)
+	        throws ModelRuntimeException {
+		removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        String languageTag) throws ModelRuntimeException {
+		removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        languageTag);
+	}
+
+	@Override
+	public void removeStatement(String subjectURIString, URI predicate, String literal,
+	        URI datatypeURI) throws ModelRuntimeException {
+		removeStatement(getDelegatedModel().createURI(subjectURIString), predicate, literal,
+		        datatypeURI);
+	}
+
+	@Override
+	public synchronized void addAll(Iterator<? extends Statement> other)
+	        throws ModelRuntimeException {
+		while(other.hasNext()) {
+			addStatement(other.next());
+		}
+	}
+
+	@Override
+	public synchronized void removeAll(Iterator<? extends Statement> other)
+	        throws ModelRuntimeException {
+		while(other.hasNext()) {
+			removeStatement(other.next());
+		}
+	}
+
+	@Override
+	public synchronized void removeStatements(ResourceOrVariable subject,
+	        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+		removeAll(findStatements(subject, predicate, object));
+	}
+
+	@Override
+	public synchronized void removeAll() throws ModelRuntimeException {
+		removeAll(iterator());
+	}
+
+	@Override
+	public synchronized void addModel(Model model) throws ModelRuntimeException {
+		ClosableIterator<Statement> it = model.iterator();
+		try {
+			addAll(it);
+		} finally {
+			it.close();
+		}
+	}
+
+	/** removals are applied before additions */
+	@Override
+	public synchronized void update(DiffReader diff) throws ModelRuntimeException {
+		removeAll(diff.getRemoved().iterator());
+		addAll(diff.getAdded().iterator());
+	}
+
+	// /////////////////////
+	// reading from streams flushes the changes and writes to the model directly
+
+	@Override
+	public synchronized void readFrom(InputStream in) throws IOException, ModelRuntimeException {
+		flush();
+		super.readFrom(in);
+		clear();
+	}
+
+	@Override
+	public synchronized void readFrom(InputStream reader, Syntax syntax) throws IOException,
+	        ModelRuntimeException {
+		flush();
+		super.readFrom(reader, syntax);
+		clear();
+	}
+
+	@Override
+	public synchronized void readFrom(InputStream reader, Syntax syntax, String baseURI)
+	        throws IOException, ModelRuntimeException {
+		flush();
+		super.readFrom(reader, syntax, baseURI);
+		clear();
+	}
+
+	@Override
+	public synchronized void readFrom(Reader r) throws IOException, ModelRuntimeException {
+		flush();
+		super.readFrom(r);
+		clear();
+	}
+
+	@Override
+	public synchronized void readFrom(Reader reader, Syntax syntax) throws ModelRuntimeException,
+	        IOException {
+		flush();
+		super.readFrom(reader, syntax);
+		clear();
+	}
+
+	@Override
+	public synchronized void readFrom(Reader in, Syntax syntax, String baseURI) throws IOException,
+	        ModelRuntimeException {
+		flush();
+		super.readFrom(in, syntax, baseURI);
+		clear();
+	}
+
+}
@@ -0,0 +1,107 @@
+package org.ontoware.rdfreactor.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+public class FetchPlanTest {
+
+	private static final URI name = new URIImpl("urn:test:name");
+
+	private static final URI affiliation = new URIImpl("urn:test:affiliation");
+
+	private static final URI organization = new URIImpl("urn:test:organization");
+
+	private static final URI address = new URIImpl("urn:test:address");
+
+	private static final URI city = new URIImpl("urn:test:city");
+
+	private static final URI a = new URIImpl("urn:test:A");
+
+	private static final URI b = new URIImpl("urn:test:B");
+
+	private static final URI org = new URIImpl("urn:test:Org");
+
+	private static final URI addr = new URIImpl("urn:test:Addr");
+
+	public static class Person {
+
+		final Model model;
+
+		final Resource resource;
+
+		public Person(Model model, Resource resource, boolean write) {
+			this.model = model;
+			this.resource = resource;
+		}
+	}
+
+	private Model model;
+
+	@Before
+	public void setUp() {
+		this.model = RDF2Go.getModelFactory().createModel();
+		this.model.open();
+		this.model.addStatement(a, name, "a");
+		this.model.addStatement(b, name, "b");
+		Resource aff = this.model.createBlankNode();
+		this.model.addStatement(a, affiliation, aff);
+		this.model.addStatement(aff, organization, org);
+		this.model.addStatement(org, name, "org");
+		this.model.addStatement(org, address, addr);
+		this.model.addStatement(addr, city, "Karlsruhe");
+	}
+
+	@After
+	public void tearDown() {
+		this.model.close();
+	}
+
+	@Test
+	public void testPaths() {
+		FetchPlan plan = new FetchPlan().path(name).path(affiliation, organization, address);
+		List<Person> people = plan.fetch(this.model, Arrays.asList(a, b), Person.class);
+		Model loaded = people.get(0).model;
+		assertSame(loaded, people.get(1).model);
+		assertEquals(5, loaded.size());
+		assertTrue(loaded.contains(a, name, "a"));
+		assertTrue(loaded.contains(b, name, "b"));
+		assertTrue(loaded.contains(org, address, addr));
+		assertFalse(loaded.contains(org, name, "org"));
+		assertFalse(loaded.contains(addr, city, Variable.ANY));
+		assertEquals("a", Base.get(loaded, a, name, String.class));
+		try {
+			Base.set(loaded, a, name, "c");
+			fail();
+		} catch(ModelRuntimeException e) {
+			// read-only
+		}
+		loaded.close();
+	}
+
+	@Test
+	public void testDepth() {
+		Person person = new FetchPlan().depth(2).fetch(this.model, a, Person.class);
+		assertEquals(3, person.model.size());
+		assertTrue(person.model.contains(Variable.ANY, organization, org));
+		person.model.close();
+	}
+
+}
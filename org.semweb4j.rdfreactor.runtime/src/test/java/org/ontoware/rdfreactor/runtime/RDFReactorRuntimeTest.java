@@ -1,12 +1,27 @@
 package org.ontoware.rdfreactor.runtime;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
 import java.util.Calendar;
+import java.util.GregorianCalendar;
 
 import org.junit.Test;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.RDF2Go;
 import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.Node;
+import org.ontoware.rdf2go.model.node.Resource;
 import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.PlainLiteralImpl;
 import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.ontoware.rdfreactor.runtime.converter.StringConverter;
+import org.ontoware.rdf2go.vocabulary.XSD;
 
 public class RDFReactorRuntimeTest {
 
@@ -20,5 +35,145 @@ public void testCalendarHandling() {
 		BridgeBase.add(model, s, p, cal);
 	}
 	
+	public static class Thing {
+		
+		final Resource resource;
+		
+		public Thing(Model model, Resource resource, boolean write) {
+			this.resource = resource;
+		}
+	}
+	
+	public static class NamedThing extends Thing {
+		
+		public NamedThing(Model model, URI uri, boolean write) {
+			super(model, uri, write);
+		}
+	}
+	
+	@Test
+	public void testResource2ReactorBase() {
+		Model model = RDF2Go.getModelFactory().createModel();
+		model.open();
+		URI uri = new URIImpl("urn:test:S");
+		BlankNode blankNode = model.createBlankNode();
+		for(int i = 0; i < 2; i++) {
+			Object thing = RDFReactorRuntime.resource2reactorbase(model, uri, Thing.class);
+			assertEquals(uri, ((Thing)thing).resource);
+			thing = RDFReactorRuntime.resource2reactorbase(model, blankNode, Thing.class);
+			assertEquals(blankNode, ((Thing)thing).resource);
+			thing = RDFReactorRuntime.resource2reactorbase(model, uri, NamedThing.class);
+			assertEquals(NamedThing.class, thing.getClass());
+		}
+		assertNull(RDFReactorRuntime.resource2reactorbase(model, null, Thing.class));
+		try {
+			RDFReactorRuntime.resource2reactorbase(model, blankNode, NamedThing.class);
+			fail();
+		} catch(RuntimeException e) {
+			assertTrue(e.getMessage().startsWith("found no constructor"));
+		}
+		model.close();
+	}
+	
+	public static class Label {
+		
+		final String text;
+		
+		public Label(String text) {
+			this.text = text;
+		}
+	}
+	
+	@Test
+	public void testJava2Node() {
+		Model model = RDF2Go.getModelFactory().createModel();
+		model.open();
+		URI uri = new URIImpl("urn:test:S");
+		assertEquals(uri, RDFReactorRuntime.java2node(model, uri));
+		assertEquals(new PlainLiteralImpl("a"), RDFReactorRuntime.java2node(model, "a"));
+		Node node = RDFReactorRuntime.java2node(model, new GregorianCalendar());
+		assertEquals(XSD._dateTime, node.asDatatypeLiteral().getDatatype());
+		try {
+			RDFReactorRuntime.java2node(model, new Label("a"));
+			fail();
+		} catch(ConversionException e) {
+			// no converter yet
+		}
+		RDFReactorRuntime.registerConverter(Label.class, new INodeConverter<Label>() {
+			
+			@Override
+			public Label toJava(Node node) {
+				return new Label(node.asLiteral().getValue());
+			}
+			
+			@Override
+			public Node toNode(Model model, Object javaValue) {
+				return model.createPlainLiteral(((Label)javaValue).text);
+			}
+		});
+		try {
+			assertEquals(new PlainLiteralImpl("a"),
+			        RDFReactorRuntime.java2node(model, new Label("a")));
+		} finally {
+			RDFReactorRuntime.unregisterConverter(Label.class);
+		}
+		try {
+			RDFReactorRuntime.java2node(model, new Label("a"));
+			fail();
+		} catch(ConversionException e) {
+			// unregistered again
+		}
+		model.close();
+	}
+	
+	/** has no constructor which could be called by reflection */
+	public static class Generated {
+		
+		final Resource resource;
+		
+		Generated(Resource resource) {
+			this.resource = resource;
+		}
+	}
+	
+	@Test
+	public void testFactory() {
+		ReactorFactory<Generated> factory = new ReactorFactory<Generated>() {
+			
+			@Override
+			public Class<Generated> getType() {
+				return Generated.class;
+			}
+			
+			@Override
+			public Generated create(Model model, Resource resource, boolean write) {
+				return new Generated(resource);
+			}
+		};
+		URI classURI = new URIImpl("urn:test:Generated");
+		RDFReactorRuntime.registerFactory(factory, classURI);
+		assertSame(factory, RDFReactorRuntime.getFactory(Generated.class));
+		assertSame(factory, RDFReactorRuntime.getFactory(classURI));
+		assertEquals(classURI, RDFReactorRuntime.getClassURI(Generated.class));
+		
+		Model model = RDF2Go.getModelFactory().createModel();
+		model.open();
+		URI s = new URIImpl("urn:test:S");
+		URI p = new URIImpl("urn:test:P");
+		URI name = new URIImpl("urn:test:name");
+		model.addStatement(s, p, s);
+		model.addStatement(s, name, "a");
+		Object generated = RDFReactorRuntime.resource2reactorbase(model, s, Generated.class);
+		assertEquals(s, ((Generated)generated).resource);
+		assertEquals(s, Base.get(model, s, p, factory).resource);
+		assertNull(Base.get(model, s, new URIImpl("urn:test:none"), factory));
+		assertEquals("a", Base.get(model, s, name, new StringConverter()));
+		ClosableIterator<Generated> it = Base.getAll(model, s, p, factory);
+		assertEquals(s, it.next().resource);
+		assertFalse(it.hasNext());
+		it.close();
+		model.close();
+	}
+	
 }
 
@@ -0,0 +1,81 @@
+package org.ontoware.rdfreactor.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+public class ReactorPropertyTest {
+
+	private static final URI s = new URIImpl("urn:test:S");
+
+	private static final URI o = new URIImpl("urn:test:O");
+
+	public static class Thing {
+
+		final Resource resource;
+
+		public Thing(Model model, Resource resource, boolean write) {
+			this.resource = resource;
+		}
+	}
+
+	private static final ReactorProperty<String> NAME = new ReactorProperty<String>(
+	        "urn:test:name", String.class);
+
+	private static final ReactorProperty<Thing> KNOWS = new ReactorProperty<Thing>(
+	        "urn:test:knows", Thing.class);
+
+	private Model model;
+
+	@Before
+	public void setUp() {
+		this.model = RDF2Go.getModelFactory().createModel();
+		this.model.open();
+	}
+
+	@After
+	public void tearDown() {
+		this.model.close();
+	}
+
+	@Test
+	public void testValues() throws Exception {
+		assertEquals(new URIImpl("urn:test:name"), NAME.getURI());
+		assertNull(NAME.get(this.model, s));
+		NAME.set(this.model, s, "a");
+		assertEquals("a", NAME.get(this.model, s));
+		assertTrue(NAME.hasValue(this.model, s, "a"));
+		NAME.add(this.model, s, "b");
+		assertEquals(2, NAME.getAll_as(this.model, s).asList().size());
+		try {
+			NAME.add(this.model, s, "c", 2);
+			fail();
+		} catch(CardinalityException e) {
+			// two values already
+		}
+		NAME.removeAll(this.model, s);
+		assertFalse(NAME.has(this.model, s));
+	}
+
+	@Test
+	public void testResources() {
+		KNOWS.add(this.model, s, o);
+		assertEquals(o, KNOWS.get(this.model, s).resource);
+		assertEquals(o, KNOWS.getAll(this.model, s).next().resource);
+		assertEquals(s, KNOWS.getAll_Inverse(this.model, o).next());
+		assertEquals(1, KNOWS.count(this.model, s));
+	}
+
+}
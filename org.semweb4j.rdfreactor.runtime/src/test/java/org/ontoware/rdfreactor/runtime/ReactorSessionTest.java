@@ -0,0 +1,229 @@
+package org.ontoware.rdfreactor.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
+import org.ontoware.rdf2go.RDF2Go;
+import org.ontoware.rdf2go.exception.ModelRuntimeException;
+import org.ontoware.rdf2go.model.Model;
+import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.Syntax;
+import org.ontoware.rdf2go.model.impl.DelegatingModel;
+import org.ontoware.rdf2go.model.node.BlankNode;
+import org.ontoware.rdf2go.model.node.NodeOrVariable;
+import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.ResourceOrVariable;
+import org.ontoware.rdf2go.model.node.URI;
+import org.ontoware.rdf2go.model.node.UriOrVariable;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+
+
+public class ReactorSessionTest {
+
+	private static final URI s = new URIImpl("urn:test:S");
+
+	private static final URI name = new URIImpl("urn:test:name");
+
+	private static final URI knows = new URIImpl("urn:test:knows");
+
+	public static class Person {
+
+		final Model model;
+
+		final Resource resource;
+
+		public Person(Model model, Resource resource, boolean write) {
+			this.model = model;
+			this.resource = resource;
+		}
+
+		Person getKnows() {
+			return (Person)Base.get(this.model, this.resource, knows, Person.class);
+		}
+	}
+
+	private static class CountingModel extends DelegatingModel {
+
+		private static final long serialVersionUID = 1L;
+
+		int finds = 0;
+
+		CountingModel(Model model) {
+			super(model);
+		}
+
+		@Override
+		public ClosableIterator<Statement> findStatements(ResourceOrVariable subject,
+		        UriOrVariable predicate, NodeOrVariable object) throws ModelRuntimeException {
+			this.finds++;
+			return super.findStatements(subject, predicate, object);
+		}
+	}
+
+	private Model model;
+
+	private CountingModel counting;
+
+	private ReactorSession session;
+
+	@Before
+	public void setUp() {
+		this.model = RDF2Go.getModelFactory().createModel();
+		this.model.open();
+		this.model.addStatement(s, name, "a");
+		this.model.addStatement(s, knows, s);
+		this.counting = new CountingModel(this.model);
+		this.session = new ReactorSession(this.counting);
+	}
+
+	@After
+	public void tearDown() {
+		this.model.close();
+	}
+
+	@Test
+	public void testIdentity() {
+		Person person = this.session.getObject(s, Person.class);
+		assertSame(this.session, person.model);
+		assertSame(person, person.getKnows());
+		assertSame(person, RDFReactorRuntime.resource2reactorbase(this.session, s, Person.class));
+		assertNotSame(person, RDFReactorRuntime.resource2reactorbase(this.model, s, Person.class));
+	}
+
+	@Test
+	public void testPropertyCache() {
+		for(int i = 0; i < 3; i++) {
+			assertEquals("a", Base.get(this.session, s, name, String.class));
+			assertTrue(Base.has(this.session, s, knows));
+		}
+		// one lookup per property
+		assertEquals(2, this.counting.finds);
+		this.session.clear();
+		assertEquals("a", Base.get(this.session, s, name, String.class));
+		assertEquals(3, this.counting.finds);
+		// all properties are loaded at once, and then answered from the session
+		ClosableIterator<Statement> it = this.session.findStatements(s, Variable.ANY,
+		        Variable.ANY);
+		it.close();
+		assertTrue(Base.has(this.session, s, knows));
+		assertEquals(4, this.counting.finds);
+	}
+
+	@Test
+	public void testSize() {
+		assertEquals(2, this.session.size());
+		Base.set(this.session, s, name, "b");
+		assertEquals(2, this.session.size());
+		this.session.addStatement(s, knows, s);
+		assertEquals(2, this.session.size());
+		this.session.removeStatement(s, knows, s);
+		assertEquals(1, this.session.size());
+		this.session.addStatement(s, knows, knows);
+		assertEquals(2, this.session.size());
+		this.session.flush();
+		assertEquals(2, this.model.size());
+	}
+
+	@Test
+	public void testReadFrom() throws IOException {
+		this.session.removeStatement(s, name, "a");
+		this.session.readFrom(new StringReader("<urn:test:S> <urn:test:name> \"a\" .\n"),
+		        Syntax.Ntriples);
+		// the pending removal is written before the statements which are read
+		assertFalse(this.session.isDirty());
+		assertTrue(this.model.contains(s, name, "a"));
+		assertEquals("a", Base.get(this.session, s, name, String.class));
+	}
+
+	@Test
+	public void testFlush() {
+		Base.set(this.session, s, name, "b");
+		Base.removeAll(this.session, s, knows);
+		assertTrue(this.session.isDirty());
+		assertEquals("b", Base.get(this.session, s, name, String.class));
+		assertNull(Base.get(this.session, s, knows, Person.class));
+		assertTrue(this.model.contains(s, name, "a"));
+		assertTrue(this.model.contains(s, knows, s));
+
+		this.session.flush();
+		assertFalse(this.session.isDirty());
+		assertFalse(this.model.contains(s, name, "a"));
+		assertTrue(this.model.contains(s, name, "b"));
+		assertFalse(this.model.contains(s, knows, s));
+	}
+
+	@Test
+	public void testDiscard() {
+		Base.set(this.session, s, name, "b");
+		assertTrue(this.session.getChanges().getAdded().iterator().hasNext());
+		this.session.discard();
+		assertFalse(this.session.isDirty());
+		assertEquals("a", Base.get(this.session, s, name, String.class));
+		assertEquals(2, this.session.size());
+	}
+
+	@Test
+	public void testPrefetch() {
+		List<Resource> people = new ArrayList<Resource>();
+		for(int i = 0; i < 3; i++) {
+			URI person = new URIImpl("urn:test:P" + i);
+			this.model.addStatement(person, name, "p" + i);
+			this.model.addStatement(person, knows, s);
+			people.add(person);
+		}
+		BlankNode blankNode = this.model.createBlankNode();
+		this.model.addStatement(blankNode, name, "b");
+		people.add(blankNode);
+
+		Base.prefetch(this.session, people, name);
+		assertEquals(1, this.counting.finds);
+		for(int i = 0; i < 3; i++) {
+			assertEquals("p" + i, Base.get(this.session, people.get(i), name, String.class));
+		}
+		assertEquals("b", Base.get(this.session, blankNode, name, String.class));
+		assertEquals(1, this.counting.finds);
+		assertEquals(s, Base.get(this.session, people.get(0), knows, URI.class));
+		assertEquals(2, this.counting.finds);
+
+		this.session.clear();
+		Base.set(this.session, people.get(1), name, "changed");
+		Base.prefetch(this.session, people);
+		for(int i = 0; i < 3; i++) {
+			assertEquals(s, Base.get(this.session, people.get(i), knows, URI.class));
+		}
+		assertEquals("changed", Base.get(this.session, people.get(1), name, String.class));
+		// set loads one resource, the blank node is loaded on its own
+		assertEquals(4, this.counting.finds);
+	}
+
+	@Test
+	public void testPrefetchWithoutSession() {
+		List<Resource> people = new ArrayList<Resource>();
+		people.add(s);
+		assertFalse(Base.prefetch(this.counting, people, name));
+		assertEquals(0, this.counting.finds);
+
+		List<URI> known = Base.getAll_as(this.counting, s, knows, URI.class).asPrefetchedList();
+		assertEquals(1, known.size());
+		assertEquals(s, known.get(0));
+		// only the query itself
+		assertEquals(1, this.counting.finds);
+
+		assertTrue(Base.prefetch(this.session, people, name));
+	}
+
+}